@@ -0,0 +1,197 @@
+package project.Common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.chart.Chart;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableView;
+import javafx.util.Duration;
+
+/**
+ * The AsyncLoader class runs blocking work, such as facade calls that go to the network, on the shared
+ * TaskExecutors executor so that the JavaFX application thread stays responsive. Each controller owns one
+ * loader.
+ *
+ * While a load is running the charts and tables passed to it show a loading state: they are dimmed,
+ * charts show a "Loading..." title and tables show a progress indicator. The result is handed back to the
+ * application thread with Platform.runLater, after which the nodes are restored.
+ *
+ * Loads are identified by a key. Starting a load with a key that is still running cancels the older one,
+ * and cancelAll() drops every running load, which controllers call when the user navigates away. Results
+ * of cancelled loads are never delivered and their nodes are taken out of the loading state right away.
+ * Cancelling interrupts the thread of the load. The services wait for their downloads with
+ * TaskExecutors.await(), which gives up on an interrupt, so a cancelled load frees its thread at once;
+ * a download it started keeps running, as other loads may share it, and fills the caches when it ends.
+ *
+ * Controls that fire many events in a row, such as a list whose selection changes once per item on
+ * selectAll(), start their loads through debounce(): the running load with the key is cancelled at the
+ * first event, and the action that starts the new load runs only once the events have stopped for the
+ * given delay, so a burst of events costs a single load of the final state.
+ */
+public class AsyncLoader {
+    private final Map<String, RunningLoad> runningLoads = new HashMap<>();
+    private final Map<String, PauseTransition> pendingActions = new HashMap<>();
+
+    /**
+     * Runs the work in the background and passes its result to onSuccess on the application thread.
+     * Must be called from the application thread.
+     *
+     * @param key          Identifies the load; a running or debounced load with the same key is cancelled
+     * @param work         The blocking work to run in the background
+     * @param onSuccess    Receives the result on the application thread
+     * @param placeholders Nodes that show a loading state until the work has finished
+     */
+    public <T> void load(String key, Callable<T> work, Consumer<T> onSuccess, Node... placeholders) {
+        cancel(key);
+
+        RunningLoad load = new RunningLoad(showPlaceholders(placeholders));
+        runningLoads.put(key, load);
+
+        load.future = TaskExecutors.submit(() -> {
+            T result = null;
+            Exception failure = null;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                failure = e;
+            }
+
+            T value = result;
+            Exception error = failure;
+            Platform.runLater(() -> {
+                // Drop results of loads that were cancelled or replaced in the meantime
+                if (runningLoads.get(key) != load) {
+                    return;
+                }
+                runningLoads.remove(key);
+                load.restorePlaceholders();
+
+                if (error != null) {
+                    error.printStackTrace();
+                } else {
+                    onSuccess.accept(value);
+                }
+            });
+        });
+    }
+
+    /**
+     * Runs the action once no other debounce() call with the same key has been made for the given delay.
+     * The running load with the key is cancelled right away, as its result would be replaced anyway. Must
+     * be called from the application thread; the action runs on it too, so it can read the controls and
+     * start the load with their final state.
+     *
+     * @param key    Identifies the load the action starts
+     * @param delay  How long the events have to stop before the action runs
+     * @param action Starts the load, usually with load() and the same key
+     */
+    public void debounce(String key, Duration delay, Runnable action) {
+        cancelRunning(key);
+
+        PauseTransition pending = pendingActions.get(key);
+        if (pending == null) {
+            pending = new PauseTransition();
+            pendingActions.put(key, pending);
+        }
+        pending.stop();
+        pending.setDuration(delay);
+        pending.setOnFinished(event -> {
+            pendingActions.remove(key);
+            action.run();
+        });
+        pending.playFromStart();
+    }
+
+    // Cancels the running load with the given key and any debounced action that would start it
+    public void cancel(String key) {
+        PauseTransition pending = pendingActions.remove(key);
+        if (pending != null) {
+            pending.stop();
+        }
+        cancelRunning(key);
+    }
+
+    private void cancelRunning(String key) {
+        RunningLoad load = runningLoads.remove(key);
+        if (load != null) {
+            load.cancel();
+        }
+    }
+
+    /**
+     * Cancels all running loads; called when the user navigates away from the view.
+     */
+    public void cancelAll() {
+        for (PauseTransition pending : pendingActions.values()) {
+            pending.stop();
+        }
+        pendingActions.clear();
+        for (RunningLoad load : runningLoads.values()) {
+            load.cancel();
+        }
+        runningLoads.clear();
+    }
+
+    // Puts every node into its loading state and returns the actions that undo it
+    private List<Runnable> showPlaceholders(Node... nodes) {
+        List<Runnable> restoreActions = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node == null) {
+                continue;
+            }
+            double opacity = node.getOpacity();
+            node.setOpacity(0.5);
+
+            if (node instanceof Chart) {
+                Chart chart = (Chart) node;
+                String title = chart.getTitle();
+                chart.setTitle("Loading...");
+                restoreActions.add(() -> {
+                    node.setOpacity(opacity);
+                    chart.setTitle(title);
+                });
+            } else if (node instanceof TableView) {
+                TableView<?> table = (TableView<?>) node;
+                Node placeholder = table.getPlaceholder();
+                table.setPlaceholder(new ProgressIndicator());
+                restoreActions.add(() -> {
+                    node.setOpacity(opacity);
+                    table.setPlaceholder(placeholder);
+                });
+            } else {
+                restoreActions.add(() -> node.setOpacity(opacity));
+            }
+        }
+        return restoreActions;
+    }
+
+    // A load in progress together with the actions that take its nodes out of the loading state
+    private static class RunningLoad {
+        private final List<Runnable> restoreActions;
+        private Future<?> future;
+
+        RunningLoad(List<Runnable> restoreActions) {
+            this.restoreActions = restoreActions;
+        }
+
+        void restorePlaceholders() {
+            restoreActions.forEach(Runnable::run);
+        }
+
+        void cancel() {
+            if (future != null) {
+                future.cancel(true);
+            }
+            restorePlaceholders();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package project.Common;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * The CachingDataRetrievable class is a DataRetrievable that answers repeated queries from a ResponseCache
+ * and passes everything else on to the DataRetrievable it wraps.
+ *
+ * Responses are cached under the endpoint URL together with a SHA-256 hash of the normalized query: the
+ * query is parsed and its object keys are sorted before hashing, so queries that differ only in formatting
+ * or key order share one entry. Failed requests (null responses) are never cached. Cache misses for the same
+ * key that overlap, from any instance, share one request to the source through a SingleFlight.
+ *
+ * The cached JsonObject is handed to every caller, so callers must treat it as read-only.
+ */
+public class CachingDataRetrievable implements DataRetrievable {
+    // Only requests in flight are shared; once a response is in, the cache shares it for its time-to-live
+    private static final SingleFlight<String, JsonObject> misses = new SingleFlight<>(0);
+    // Rough size in memory of a JSON element or object member apart from its text
+    private static final int ELEMENT_OVERHEAD = 32;
+
+    private final DataRetrievable source;
+    private final String apiUrl;
+    private final long ttlMillis;
+    private final ResponseCache<JsonObject> cache;
+
+    /**
+     * @param source    Fetches the responses that are not cached yet
+     * @param apiUrl    Endpoint the source queries, used as part of the cache key
+     * @param ttlMillis How long a response stays cached in milliseconds
+     * @param cache     The cache to keep the responses in; it can be shared by several endpoints
+     */
+    public CachingDataRetrievable(DataRetrievable source, String apiUrl, long ttlMillis, ResponseCache<JsonObject> cache) {
+        this.source = source;
+        this.apiUrl = apiUrl;
+        this.ttlMillis = ttlMillis;
+        this.cache = cache;
+    }
+
+    @Override
+    public JsonObject fetchData(String jsonQuery) {
+        String key = cacheKey(apiUrl, jsonQuery);
+        JsonObject cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        return misses.call(key, () -> {
+            JsonObject result = source.fetchData(jsonQuery);
+            store(key, result);
+            return result;
+        });
+    }
+
+    @Override
+    public CompletableFuture<JsonObject> fetchDataAsync(String jsonQuery) {
+        String key = cacheKey(apiUrl, jsonQuery);
+        JsonObject cached = cache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return misses.execute(key, () -> source.fetchDataAsync(jsonQuery).thenApply(result -> {
+            store(key, result);
+            return result;
+        }));
+    }
+
+    /**
+     * Replaces the cached response for the query, e.g. with a newer copy downloaded in the background.
+     */
+    public void update(String jsonQuery, JsonObject result) {
+        store(cacheKey(apiUrl, jsonQuery), result);
+    }
+
+    private void store(String key, JsonObject result) {
+        if (result != null) {
+            cache.put(key, result, estimateWeight(result), ttlMillis);
+        }
+    }
+
+    /**
+     * Estimates the memory a parsed response takes: two bytes for every character of its keys and values,
+     * plus a fixed overhead per element. The tree is walked rather than serialized, so weighing a large
+     * response does not build a copy of it as text.
+     */
+    private static long estimateWeight(JsonElement root) {
+        long weight = 0;
+        Deque<JsonElement> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            JsonElement element = pending.pop();
+            weight += ELEMENT_OVERHEAD;
+            if (element.isJsonObject()) {
+                for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                    weight += ELEMENT_OVERHEAD + 2L * member.getKey().length();
+                    pending.push(member.getValue());
+                }
+            } else if (element.isJsonArray()) {
+                for (JsonElement item : element.getAsJsonArray()) {
+                    pending.push(item);
+                }
+            } else if (element.isJsonPrimitive()) {
+                weight += 2L * element.getAsString().length();
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the cache key for a query sent to the given endpoint: the URL followed by the SHA-256 hash
+     * of the normalized query.
+     */
+    public static String cacheKey(String apiUrl, String jsonQuery) {
+        return apiUrl + "#" + queryHash(jsonQuery);
+    }
+
+    // Returns the SHA-256 hash of the normalized query as a hex string
+    public static String queryHash(String jsonQuery) {
+        return sha256(normalizeQuery(jsonQuery));
+    }
+
+    /**
+     * Returns the query in a canonical form: compact JSON with the keys of every object sorted. Queries
+     * that cannot be parsed as JSON are returned trimmed but otherwise unchanged.
+     */
+    public static String normalizeQuery(String jsonQuery) {
+        if (jsonQuery == null) {
+            return "";
+        }
+        try {
+            return canonicalize(JsonParser.parseString(jsonQuery)).toString();
+        } catch (RuntimeException exception) {
+            return jsonQuery.trim();
+        }
+    }
+
+    private static JsonElement canonicalize(JsonElement element) {
+        if (element.isJsonObject()) {
+            Map<String, JsonElement> sorted = new TreeMap<>();
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                sorted.put(member.getKey(), canonicalize(member.getValue()));
+            }
+            JsonObject result = new JsonObject();
+            sorted.forEach(result::add);
+            return result;
+        }
+        if (element.isJsonArray()) {
+            JsonArray result = new JsonArray();
+            for (JsonElement item : element.getAsJsonArray()) {
+                result.add(canonicalize(item));
+            }
+            return result;
+        }
+        return element;
+    }
+
+    // Returns the SHA-256 hash of the text, encoded in UTF-8, as a hex string
+    public static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException exception) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+}
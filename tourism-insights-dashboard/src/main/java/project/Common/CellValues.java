@@ -0,0 +1,29 @@
+package project.Common;
+
+import java.util.function.Function;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.control.TableColumn;
+import javafx.util.Callback;
+
+/**
+ * The CellValues class creates cell value factories for tables of immutable model objects. The models hold
+ * plain fields instead of JavaFX properties, so the factory wraps the value of a cell in a read-only
+ * property only when the table renders that cell; rows that are never shown, or are only aggregated into
+ * charts, never get any. Unlike PropertyValueFactory no reflection is involved.
+ */
+public final class CellValues {
+
+    private CellValues() {
+    }
+
+    /**
+     * Returns a cell value factory reading the value with the getter.
+     *
+     * @param getter Reads the value of the column from a row, e.g. WeatherData::getAirTemperature
+     */
+    public static <S, T> Callback<TableColumn.CellDataFeatures<S, T>, ObservableValue<T>> of(Function<? super S, ? extends T> getter) {
+        return cell -> new ReadOnlyObjectWrapper<>(getter.apply(cell.getValue()));
+    }
+}
@@ -0,0 +1,457 @@
+package project.Common;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * The CubeStore class keeps every cell fetched from one PxWeb table in memory and answers queries on the
+ * table from them, so that narrowing a selection, selecting its values in another order or going back to
+ * an earlier selection needs no request at all. Only the cells a query asks for that have not been
+ * fetched yet are requested, and the response is merged into the store.
+ *
+ * The store is laid out like a DataCube over all categories of the table, as listed by its metadata, with
+ * a bit per cell telling whether the cell has been fetched; fetched cells without a value hold NaN like
+ * in a cube. A query the store can answer is diced out of it as a DataCube with the dimensions in table
+ * order and the categories in the order the query lists them.
+ *
+ * missingQueries() splits the cells of a query that have not been fetched into hyper-rectangles, each a
+ * query of its own, so ticking one more year asks for that year alone rather than the whole selection
+ * again and the network volume follows what changed.
+ *
+ * The store only handles queries that select every variable of the table with the "item" or "all"
+ * filter; callers send other queries as they are. Tables with more than MAX_CELLS cells are not stored.
+ */
+public class CubeStore {
+    public static final int MAX_CELLS = Integer.getInteger("tourism.cubeStore.maxCells", 4_000_000);
+    public static final int MAX_DELTA_QUERIES = Integer.getInteger("tourism.cubeStore.maxDeltaQueries", 8);
+
+    private final String tableUrl;
+    private final String[] dimensionIds;
+    private final String[][] codes;
+    private final String[][] labels;
+    private final List<Map<String, Integer>> positions = new ArrayList<>();
+    private final int[] strides;
+    private final double[] values;
+    private final BitSet fetched;
+
+    /**
+     * @param tableUrl     The URL of the table the queries are sent to
+     * @param dimensionIds The codes of the variables of the table
+     * @param codes        For every variable, the codes of all its values
+     * @param labels       For every variable, the texts of all its values
+     */
+    public CubeStore(String tableUrl, String[] dimensionIds, String[][] codes, String[][] labels) {
+        this.tableUrl = tableUrl;
+        this.dimensionIds = dimensionIds;
+        this.codes = codes;
+        this.labels = labels;
+        this.strides = new int[dimensionIds.length];
+
+        long cells = 1;
+        for (int d = dimensionIds.length - 1; d >= 0; d--) {
+            strides[d] = (int) cells;
+            cells *= codes[d].length;
+            if (cells > MAX_CELLS) {
+                throw new IllegalArgumentException("Table " + tableUrl + " has more than " + MAX_CELLS + " cells");
+            }
+        }
+        for (String[] dimensionCodes : codes) {
+            Map<String, Integer> byCode = new HashMap<>(dimensionCodes.length * 2);
+            for (int i = 0; i < dimensionCodes.length; i++) {
+                byCode.put(dimensionCodes[i], i);
+            }
+            positions.add(byCode);
+        }
+        this.values = new double[(int) cells];
+        this.fetched = new BitSet(values.length);
+    }
+
+    /**
+     * Creates an empty store from the metadata of the table, the response to a GET of the table URL.
+     *
+     * @return The store, or null if the metadata cannot be read or the table is too large
+     */
+    public static CubeStore fromMetadata(String tableUrl, JsonObject metadata) {
+        try {
+            JsonArray variables = metadata.getAsJsonArray("variables");
+            String[] dimensionIds = new String[variables.size()];
+            String[][] codes = new String[variables.size()][];
+            String[][] labels = new String[variables.size()][];
+            for (int d = 0; d < variables.size(); d++) {
+                JsonObject variable = variables.get(d).getAsJsonObject();
+                dimensionIds[d] = variable.get("code").getAsString();
+                codes[d] = strings(variable.getAsJsonArray("values"));
+                labels[d] = strings(variable.getAsJsonArray("valueTexts"));
+            }
+            return new CubeStore(tableUrl, dimensionIds, codes, labels);
+        } catch (RuntimeException exception) {
+            System.err.println("Cannot keep table " + tableUrl + " in memory: " + exception.getMessage());
+            return null;
+        }
+    }
+
+    private static String[] strings(JsonArray array) {
+        String[] strings = new String[array.size()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = array.get(i).getAsString();
+        }
+        return strings;
+    }
+
+    // Whether the store can answer the query once its cells are fetched
+    public boolean handles(PxWebQuery query) {
+        return resolve(query) != null;
+    }
+
+    /**
+     * Returns a query for the cells of the query that have not been fetched yet: for every variable the
+     * values that belong to at least one missing cell. The query may ask for some cells again, but never
+     * for a value the query did not select.
+     *
+     * @return The query to send, or null if every cell is fetched already
+     * @throws IllegalArgumentException if the store does not handle the query
+     */
+    public synchronized PxWebQuery missing(PxWebQuery query) {
+        int[][] selected = require(query);
+        boolean[][] needed = new boolean[selected.length][];
+        for (int d = 0; d < selected.length; d++) {
+            needed[d] = new boolean[selected[d].length];
+        }
+
+        boolean anyMissing = false;
+        int[] at = new int[selected.length];
+        if (hasCells(selected)) {
+            do {
+                if (!fetched.get(offset(selected, at))) {
+                    anyMissing = true;
+                    for (int d = 0; d < at.length; d++) {
+                        needed[d][at[d]] = true;
+                    }
+                }
+            } while (next(at, selected));
+        }
+        if (!anyMissing) {
+            return null;
+        }
+
+        PxWebQuery.Builder builder = PxWebQuery.forTable(tableUrl).format(query.getFormat());
+        for (int d = 0; d < selected.length; d++) {
+            List<String> neededCodes = new ArrayList<>();
+            for (int i = 0; i < selected[d].length; i++) {
+                if (needed[d][i]) {
+                    neededCodes.add(codes[d][selected[d][i]]);
+                }
+            }
+            builder.select(dimensionIds[d], neededCodes);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns queries for exactly the cells of the query that have not been fetched yet. The missing cells
+     * are split into disjoint hyper-rectangles, one query each: the bounding box of the missing cells is
+     * taken as it is when all of its cells are missing, and otherwise cut along the variable whose values
+     * fall into the fewest groups with the same missing cells. When that would take more than
+     * MAX_DELTA_QUERIES queries, the single query of missing() is returned instead.
+     *
+     * @return The queries to send; empty if every cell is fetched already
+     * @throws IllegalArgumentException if the store does not handle the query
+     */
+    public synchronized List<PxWebQuery> missingQueries(PxWebQuery query) {
+        List<int[][]> boxes = new ArrayList<>();
+        int[][] selected = require(query);
+        if (hasCells(selected) && !split(selected, boxes)) {
+            return List.of(missing(query));
+        }
+        List<PxWebQuery> queries = new ArrayList<>(boxes.size());
+        for (int[][] box : boxes) {
+            queries.add(toQuery(box, query.getFormat()));
+        }
+        return queries;
+    }
+
+    // Adds the hyper-rectangles covering the missing cells of the box; false once there would be too many
+    private boolean split(int[][] box, List<int[][]> boxes) {
+        int[][] bounds = missingBounds(box);
+        if (bounds == null) {
+            return true;
+        }
+        if (allMissing(bounds)) {
+            boxes.add(bounds);
+            return boxes.size() <= MAX_DELTA_QUERIES;
+        }
+
+        // Cut along the variable with the fewest distinct patterns of missing cells; one always has several
+        List<List<Integer>> bestGroups = null;
+        int bestDimension = -1;
+        for (int d = 0; d < bounds.length; d++) {
+            List<List<Integer>> groups = groupByMissingCells(bounds, d);
+            if (groups.size() > 1 && (bestGroups == null || groups.size() < bestGroups.size())) {
+                bestGroups = groups;
+                bestDimension = d;
+            }
+        }
+        for (List<Integer> group : bestGroups) {
+            int[][] part = bounds.clone();
+            part[bestDimension] = new int[group.size()];
+            for (int i = 0; i < group.size(); i++) {
+                part[bestDimension][i] = bounds[bestDimension][group.get(i)];
+            }
+            if (!split(part, boxes)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The values of the box that belong to at least one missing cell; null if no cell is missing
+    private int[][] missingBounds(int[][] box) {
+        boolean[][] needed = new boolean[box.length][];
+        for (int d = 0; d < box.length; d++) {
+            needed[d] = new boolean[box[d].length];
+        }
+        boolean anyMissing = false;
+        int[] at = new int[box.length];
+        do {
+            if (!fetched.get(offset(box, at))) {
+                anyMissing = true;
+                for (int d = 0; d < at.length; d++) {
+                    needed[d][at[d]] = true;
+                }
+            }
+        } while (next(at, box));
+        if (!anyMissing) {
+            return null;
+        }
+
+        int[][] bounds = new int[box.length][];
+        for (int d = 0; d < box.length; d++) {
+            int count = 0;
+            for (boolean value : needed[d]) {
+                count += value ? 1 : 0;
+            }
+            bounds[d] = new int[count];
+            for (int i = 0, next = 0; i < box[d].length; i++) {
+                if (needed[d][i]) {
+                    bounds[d][next++] = box[d][i];
+                }
+            }
+        }
+        return bounds;
+    }
+
+    private boolean allMissing(int[][] box) {
+        int[] at = new int[box.length];
+        do {
+            if (fetched.get(offset(box, at))) {
+                return false;
+            }
+        } while (next(at, box));
+        return true;
+    }
+
+    // Groups the values of the variable (by index in the box) whose cells are missing at the same places
+    private List<List<Integer>> groupByMissingCells(int[][] box, int dimension) {
+        Map<BitSet, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < box[dimension].length; i++) {
+            int[][] slice = box.clone();
+            slice[dimension] = new int[]{box[dimension][i]};
+            BitSet missingCells = new BitSet();
+            int[] at = new int[box.length];
+            int cell = 0;
+            do {
+                if (!fetched.get(offset(slice, at))) {
+                    missingCells.set(cell);
+                }
+                cell++;
+            } while (next(at, slice));
+            groups.computeIfAbsent(missingCells, k -> new ArrayList<>()).add(i);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private PxWebQuery toQuery(int[][] box, String format) {
+        PxWebQuery.Builder builder = PxWebQuery.forTable(tableUrl).format(format);
+        for (int d = 0; d < box.length; d++) {
+            List<String> boxCodes = new ArrayList<>(box[d].length);
+            for (int position : box[d]) {
+                boxCodes.add(codes[d][position]);
+            }
+            builder.select(dimensionIds[d], boxCodes);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Stores the cells of a fetched cube. Dimensions and categories are matched by code, so the cube may
+     * lay them out in any order; cells of categories the table metadata does not list are ignored.
+     *
+     * @return false if the cube does not have the variables of the table
+     */
+    public synchronized boolean merge(DataCube cube) {
+        if (cube == null || cube.getDimensionCount() != dimensionIds.length) {
+            return false;
+        }
+        // For every dimension of the cube, the store dimension and the store position of each category
+        int[] storeDimension = new int[cube.getDimensionCount()];
+        int[][] storePosition = new int[cube.getDimensionCount()][];
+        for (int c = 0; c < cube.getDimensionCount(); c++) {
+            storeDimension[c] = dimensionIndex(cube.getDimensionId(c));
+            if (storeDimension[c] < 0) {
+                return false;
+            }
+            storePosition[c] = new int[cube.getSize(c)];
+            for (int i = 0; i < cube.getSize(c); i++) {
+                Integer position = positions.get(storeDimension[c]).get(cube.getCode(c, i));
+                storePosition[c][i] = position != null ? position : -1;
+            }
+        }
+
+        cells:
+        for (int offset = 0; offset < cube.getCellCount(); offset++) {
+            int target = 0;
+            for (int c = 0; c < storeDimension.length; c++) {
+                int position = storePosition[c][cube.coordinate(offset, c)];
+                if (position < 0) {
+                    continue cells;
+                }
+                target += position * strides[storeDimension[c]];
+            }
+            values[target] = cube.getAt(offset);
+            fetched.set(target);
+        }
+        return true;
+    }
+
+    /**
+     * Answers the query from the store.
+     *
+     * @return The cells of the query, with the categories in the order the query lists them; null if some
+     * of them have not been fetched yet
+     * @throws IllegalArgumentException if the store does not handle the query
+     */
+    public synchronized DataCube dice(PxWebQuery query) {
+        int[][] selected = require(query);
+        String[][] subCodes = new String[selected.length][];
+        String[][] subLabels = new String[selected.length][];
+        int cellCount = 1;
+        for (int d = 0; d < selected.length; d++) {
+            subCodes[d] = new String[selected[d].length];
+            subLabels[d] = new String[selected[d].length];
+            for (int i = 0; i < selected[d].length; i++) {
+                subCodes[d][i] = codes[d][selected[d][i]];
+                subLabels[d][i] = labels[d][selected[d][i]];
+            }
+            cellCount *= selected[d].length;
+        }
+
+        // Walks the selection in row-major order, which is the layout of the diced cube
+        double[] cells = new double[cellCount];
+        int[] at = new int[selected.length];
+        if (cellCount > 0) {
+            int next = 0;
+            do {
+                int offset = offset(selected, at);
+                if (!fetched.get(offset)) {
+                    return null;
+                }
+                cells[next++] = values[offset];
+            } while (next(at, selected));
+        }
+        return new DataCube(dimensionIds.clone(), subCodes, subLabels, DoubleBuffer.wrap(cells));
+    }
+
+    // Number of fetched cells
+    public synchronized int getFetchedCount() {
+        return fetched.cardinality();
+    }
+
+    public int getCellCount() {
+        return values.length;
+    }
+
+    private int dimensionIndex(String dimensionId) {
+        for (int d = 0; d < dimensionIds.length; d++) {
+            if (dimensionIds[d].equals(dimensionId)) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    private int[][] require(PxWebQuery query) {
+        int[][] selected = resolve(query);
+        if (selected == null) {
+            throw new IllegalArgumentException("Query cannot be answered from the table in memory: " + query);
+        }
+        return selected;
+    }
+
+    // The store positions of the selected values of every variable; null if the store cannot answer the query
+    private int[][] resolve(PxWebQuery query) {
+        if (!tableUrl.equals(query.getTableUrl()) || query.getSelections().size() != dimensionIds.length) {
+            return null;
+        }
+        int[][] selected = new int[dimensionIds.length][];
+        for (int d = 0; d < dimensionIds.length; d++) {
+            PxWebQuery.Selection selection = query.getSelection(dimensionIds[d]);
+            if (selection == null) {
+                return null;
+            }
+            if (PxWebQuery.FILTER_ALL.equals(selection.getFilter()) && selection.getValues().equals(List.of("*"))) {
+                selected[d] = new int[codes[d].length];
+                for (int i = 0; i < codes[d].length; i++) {
+                    selected[d][i] = i;
+                }
+            } else if (PxWebQuery.FILTER_ITEM.equals(selection.getFilter())) {
+                selected[d] = new int[selection.getValues().size()];
+                for (int i = 0; i < selected[d].length; i++) {
+                    Integer position = positions.get(d).get(selection.getValues().get(i));
+                    if (position == null) {
+                        return null;
+                    }
+                    selected[d][i] = position;
+                }
+            } else {
+                return null;
+            }
+        }
+        return selected;
+    }
+
+    private static boolean hasCells(int[][] selected) {
+        for (int[] values : selected) {
+            if (values.length == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int offset(int[][] selected, int[] at) {
+        int offset = 0;
+        for (int d = 0; d < at.length; d++) {
+            offset += selected[d][at[d]] * strides[d];
+        }
+        return offset;
+    }
+
+    // Advances to the next combination of selected values, the last variable fastest; false after the last one
+    private static boolean next(int[] at, int[][] selected) {
+        for (int d = at.length - 1; d >= 0; d--) {
+            if (++at[d] < selected[d].length) {
+                return true;
+            }
+            at[d] = 0;
+        }
+        return false;
+    }
+}
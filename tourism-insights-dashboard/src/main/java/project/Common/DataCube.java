@@ -0,0 +1,408 @@
+package project.Common;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The DataCube class holds a statistics table as a dense, multi-dimensional array of numbers, the way the
+ * JSON-stat format describes it.
+ *
+ * Each dimension (for example year or region) has a fixed list of categories. A category is stored once,
+ * as a code and a label, and cells refer to it only by its position, so a dimension with ten regions costs
+ * ten strings no matter how many cells the table has. The cells themselves live in a single DoubleBuffer
+ * in row-major order (the last dimension varies fastest); cells without a value hold NaN.
+ *
+ * A cell is found in constant time from its coordinates, one category position per dimension, through the
+ * precomputed stride of every dimension. Cubes are immutable once built.
+ *
+ * slice(), rollup() and pivot() derive new cubes: the cells of one category, the totals over a dimension
+ * and the same cells with the dimensions in another order. EconomicImpactServiceFacade rolls the cubes of
+ * the economic impact page up into the totals its charts show.
+ * stitch() joins the cubes of the chunks QueryPlanner splits a large query into.
+ *
+ * A cube can be written to a Snapshot with writeTo() and opened again with fromSnapshot(). The opened cube
+ * reads its cells directly from the snapshot's mapped column, so nothing is copied or parsed.
+ */
+public class DataCube {
+    private final String[] dimensionIds;
+    private final String[][] codes;
+    private final String[][] labels;
+    private final List<Map<String, Integer>> positions;
+    private final int[] sizes;
+    private final int[] strides;
+    private final DoubleBuffer values;
+
+    /**
+     * @param dimensionIds The ids of the dimensions, in the order the cells are laid out
+     * @param codes        For every dimension, the category codes in position order
+     * @param labels       For every dimension, the category labels in position order
+     * @param values       The cell values in row-major order; its length must be the product of the dimension sizes
+     * @param present      Marks the cells that have a value; the values of the other cells are set to NaN
+     */
+    public DataCube(String[] dimensionIds, String[][] codes, String[][] labels, double[] values, BitSet present) {
+        this(dimensionIds, codes, labels, DoubleBuffer.wrap(withMissingAsNaN(values, present)));
+    }
+
+    /**
+     * @param dimensionIds The ids of the dimensions, in the order the cells are laid out
+     * @param codes        For every dimension, the category codes in position order
+     * @param labels       For every dimension, the category labels in position order
+     * @param values       The cell values in row-major order, NaN for cells without a value; the cube reads
+     *                     them from the buffer's position to its limit and must be the only one to write it
+     */
+    public DataCube(String[] dimensionIds, String[][] codes, String[][] labels, DoubleBuffer values) {
+        this.dimensionIds = dimensionIds;
+        this.codes = codes;
+        this.labels = labels;
+        this.values = values.slice();
+
+        int dimensions = dimensionIds.length;
+        this.sizes = new int[dimensions];
+        this.strides = new int[dimensions];
+        this.positions = new ArrayList<>(dimensions);
+
+        int stride = 1;
+        for (int d = dimensions - 1; d >= 0; d--) {
+            sizes[d] = codes[d].length;
+            strides[d] = stride;
+            stride *= sizes[d];
+        }
+        for (int d = 0; d < dimensions; d++) {
+            Map<String, Integer> dimensionPositions = new HashMap<>(codes[d].length * 2);
+            for (int i = 0; i < codes[d].length; i++) {
+                dimensionPositions.put(codes[d][i], i);
+            }
+            positions.add(dimensionPositions);
+        }
+        if (stride != this.values.capacity()) {
+            throw new IllegalArgumentException("Expected " + stride + " values but got " + this.values.capacity());
+        }
+    }
+
+    private static double[] withMissingAsNaN(double[] values, BitSet present) {
+        for (int offset = present.nextClearBit(0); offset < values.length; offset = present.nextClearBit(offset + 1)) {
+            values[offset] = Double.NaN;
+        }
+        return values;
+    }
+
+    /**
+     * Opens a cube written with writeTo(). The cells are read from the snapshot's column as they are
+     * visited.
+     *
+     * @return The cube, or null if the snapshot does not hold a cube
+     */
+    public static DataCube fromSnapshot(Snapshot snapshot) {
+        try {
+            String[] dimensionIds = snapshot.getDictionary("dimensions");
+            DoubleBuffer values = snapshot.getDoubleColumn("values");
+            if (dimensionIds == null || values == null) {
+                return null;
+            }
+            String[][] codes = new String[dimensionIds.length][];
+            String[][] labels = new String[dimensionIds.length][];
+            for (int d = 0; d < dimensionIds.length; d++) {
+                codes[d] = snapshot.getDictionary("codes/" + dimensionIds[d]);
+                labels[d] = snapshot.getDictionary("labels/" + dimensionIds[d]);
+                if (codes[d] == null || labels[d] == null || codes[d].length != labels[d].length) {
+                    return null;
+                }
+            }
+            return new DataCube(dimensionIds, codes, labels, values);
+        } catch (IllegalArgumentException exception) {
+            System.err.println("Snapshot does not hold a valid cube: " + exception.getMessage());
+            return null;
+        }
+    }
+
+    // Adds the dimensions, their categories and the cells to the snapshot
+    public void writeTo(Snapshot.Writer writer) {
+        writer.dictionary("dimensions", dimensionIds);
+        for (int d = 0; d < dimensionIds.length; d++) {
+            writer.dictionary("codes/" + dimensionIds[d], codes[d]);
+            writer.dictionary("labels/" + dimensionIds[d], labels[d]);
+        }
+        writer.doubleColumn("values", values);
+    }
+
+    public int getDimensionCount() {
+        return dimensionIds.length;
+    }
+
+    public String getDimensionId(int dimension) {
+        return dimensionIds[dimension];
+    }
+
+    // Returns the position of the dimension with the given id, or -1 if the cube has no such dimension
+    public int dimensionIndex(String dimensionId) {
+        for (int d = 0; d < dimensionIds.length; d++) {
+            if (dimensionIds[d].equals(dimensionId)) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the number of categories of the dimension
+    public int getSize(int dimension) {
+        return sizes[dimension];
+    }
+
+    // Returns how far apart, in cells, two neighbouring categories of the dimension are
+    public int getStride(int dimension) {
+        return strides[dimension];
+    }
+
+    public String getCode(int dimension, int position) {
+        return codes[dimension][position];
+    }
+
+    public String getLabel(int dimension, int position) {
+        return labels[dimension][position];
+    }
+
+    // Returns the position of the category with the given code, or -1 if the dimension has no such category
+    public int indexOf(int dimension, String code) {
+        Integer position = positions.get(dimension).get(code);
+        return position != null ? position : -1;
+    }
+
+    public int getCellCount() {
+        return values.capacity();
+    }
+
+    // Returns the offset of the cell with the given coordinates, one category position per dimension
+    public int offset(int... coordinates) {
+        int offset = 0;
+        for (int d = 0; d < coordinates.length; d++) {
+            offset += coordinates[d] * strides[d];
+        }
+        return offset;
+    }
+
+    // Returns the category position of the dimension for the cell at the given offset
+    public int coordinate(int offset, int dimension) {
+        return (offset / strides[dimension]) % sizes[dimension];
+    }
+
+    // Returns the value of the cell with the given coordinates, or NaN if it has none
+    public double get(int... coordinates) {
+        return getAt(offset(coordinates));
+    }
+
+    public boolean isPresent(int... coordinates) {
+        return isPresentAt(offset(coordinates));
+    }
+
+    // Returns the value of the cell at the given offset, or NaN if it has none
+    public double getAt(int offset) {
+        return values.get(offset);
+    }
+
+    public boolean isPresentAt(int offset) {
+        return !Double.isNaN(values.get(offset));
+    }
+
+    /**
+     * Returns the cells that have the given category in the dimension, without that dimension.
+     *
+     * @return The slice, or null if the cube has no such dimension or category
+     */
+    public DataCube slice(String dimensionId, String code) {
+        int dimension = dimensionIndex(dimensionId);
+        int position = dimension >= 0 ? indexOf(dimension, code) : -1;
+        if (position < 0) {
+            return null;
+        }
+        int[] kept = without(dimension);
+        double[] result = new double[getCellCount() / sizes[dimension]];
+        int base = position * strides[dimension];
+        for (int offset = 0; offset < result.length; offset++) {
+            result[offset] = values.get(base + sourceOffset(offset, kept, result.length));
+        }
+        return subCube(kept, result);
+    }
+
+    /**
+     * Sums the cells over the dimension, leaving the cube without it. Cells without a value are skipped; a
+     * total with no values at all is NaN.
+     *
+     * @return The rolled-up cube, or null if the cube has no such dimension
+     */
+    public DataCube rollup(String dimensionId) {
+        int dimension = dimensionIndex(dimensionId);
+        if (dimension < 0) {
+            return null;
+        }
+        int[] kept = without(dimension);
+        double[] result = new double[getCellCount() / sizes[dimension]];
+        for (int offset = 0; offset < result.length; offset++) {
+            int base = sourceOffset(offset, kept, result.length);
+            double total = Double.NaN;
+            for (int i = 0; i < sizes[dimension]; i++) {
+                double value = values.get(base + i * strides[dimension]);
+                if (!Double.isNaN(value)) {
+                    total = Double.isNaN(total) ? value : total + value;
+                }
+            }
+            result[offset] = total;
+        }
+        return subCube(kept, result);
+    }
+
+    /**
+     * Returns the same cells with the dimensions laid out in the given order, e.g. to put the dimension
+     * shown as columns last.
+     *
+     * @param dimensionOrder Every dimension id of the cube, once
+     * @throws IllegalArgumentException if the order does not list every dimension exactly once
+     */
+    public DataCube pivot(String... dimensionOrder) {
+        int[] order = new int[dimensionOrder.length];
+        BitSet seen = new BitSet();
+        for (int i = 0; i < order.length; i++) {
+            order[i] = dimensionIndex(dimensionOrder[i]);
+            if (order[i] < 0 || seen.get(order[i])) {
+                throw new IllegalArgumentException("Not a dimension order of the cube: " + String.join(", ", dimensionOrder));
+            }
+            seen.set(order[i]);
+        }
+        if (order.length != dimensionIds.length) {
+            throw new IllegalArgumentException("Not a dimension order of the cube: " + String.join(", ", dimensionOrder));
+        }
+        double[] result = new double[getCellCount()];
+        for (int offset = 0; offset < result.length; offset++) {
+            result[offset] = values.get(sourceOffset(offset, order, result.length));
+        }
+        return subCube(order, result);
+    }
+
+    /**
+     * Joins cubes with the same dimensions that hold different cells of one table, such as the responses to
+     * the chunks of a query split by QueryPlanner. The dimensions are laid out like in the first cube; the
+     * categories of each dimension are listed in the order they first appear in the parts. Cells that no
+     * part has are NaN.
+     *
+     * @return The joined cube, or null if there are no parts or they do not have the same dimensions
+     */
+    public static DataCube stitch(List<DataCube> parts) {
+        if (parts.isEmpty()) {
+            return null;
+        }
+        DataCube first = parts.get(0);
+        if (parts.size() == 1) {
+            return first;
+        }
+
+        int dimensions = first.dimensionIds.length;
+        List<Map<String, Integer>> stitchedPositions = new ArrayList<>();
+        List<List<String>> stitchedCodes = new ArrayList<>();
+        List<List<String>> stitchedLabels = new ArrayList<>();
+        for (int d = 0; d < dimensions; d++) {
+            stitchedPositions.add(new HashMap<>());
+            stitchedCodes.add(new ArrayList<>());
+            stitchedLabels.add(new ArrayList<>());
+        }
+        // For every part, the stitched dimension of each of its dimensions
+        int[][] dimensionOf = new int[parts.size()][];
+        for (int p = 0; p < parts.size(); p++) {
+            DataCube part = parts.get(p);
+            if (part.dimensionIds.length != dimensions) {
+                return null;
+            }
+            dimensionOf[p] = new int[dimensions];
+            for (int c = 0; c < dimensions; c++) {
+                int d = first.dimensionIndex(part.dimensionIds[c]);
+                if (d < 0) {
+                    return null;
+                }
+                dimensionOf[p][c] = d;
+                for (int i = 0; i < part.sizes[c]; i++) {
+                    if (stitchedPositions.get(d).putIfAbsent(part.codes[c][i], stitchedCodes.get(d).size()) == null) {
+                        stitchedCodes.get(d).add(part.codes[c][i]);
+                        stitchedLabels.get(d).add(part.labels[c][i]);
+                    }
+                }
+            }
+        }
+
+        String[][] codes = new String[dimensions][];
+        String[][] labels = new String[dimensions][];
+        int[] strides = new int[dimensions];
+        long cellCount = 1;
+        for (int d = dimensions - 1; d >= 0; d--) {
+            codes[d] = stitchedCodes.get(d).toArray(new String[0]);
+            labels[d] = stitchedLabels.get(d).toArray(new String[0]);
+            strides[d] = (int) cellCount;
+            cellCount *= codes[d].length;
+            if (cellCount > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Stitched cube has too many cells: " + cellCount);
+            }
+        }
+
+        double[] cells = new double[(int) cellCount];
+        Arrays.fill(cells, Double.NaN);
+        for (int p = 0; p < parts.size(); p++) {
+            DataCube part = parts.get(p);
+            for (int offset = 0; offset < part.getCellCount(); offset++) {
+                int target = 0;
+                for (int c = 0; c < dimensions; c++) {
+                    int d = dimensionOf[p][c];
+                    target += stitchedPositions.get(d).get(part.codes[c][part.coordinate(offset, c)]) * strides[d];
+                }
+                cells[target] = part.getAt(offset);
+            }
+        }
+        return new DataCube(first.dimensionIds.clone(), codes, labels, DoubleBuffer.wrap(cells));
+    }
+
+    // The dimensions other than the given one, in cube order
+    private int[] without(int dimension) {
+        int[] kept = new int[dimensionIds.length - 1];
+        for (int d = 0, next = 0; d < dimensionIds.length; d++) {
+            if (d != dimension) {
+                kept[next++] = d;
+            }
+        }
+        return kept;
+    }
+
+    // Offset in this cube of the cell at the offset of a cube laid out over the given dimensions
+    private int sourceOffset(int offset, int[] dimensions, int cellCount) {
+        int source = 0;
+        int remaining = cellCount;
+        for (int dimension : dimensions) {
+            remaining /= sizes[dimension];
+            source += (offset / remaining) % sizes[dimension] * strides[dimension];
+        }
+        return source;
+    }
+
+    private DataCube subCube(int[] dimensions, double[] cells) {
+        String[] ids = new String[dimensions.length];
+        String[][] subCodes = new String[dimensions.length][];
+        String[][] subLabels = new String[dimensions.length][];
+        for (int i = 0; i < dimensions.length; i++) {
+            ids[i] = dimensionIds[dimensions[i]];
+            subCodes[i] = codes[dimensions[i]];
+            subLabels[i] = labels[dimensions[i]];
+        }
+        return new DataCube(ids, subCodes, subLabels, DoubleBuffer.wrap(cells));
+    }
+
+    // Approximate memory held by the cube in bytes, used as its weight in the response cache
+    public long estimateBytes() {
+        long bytes = 8L * values.capacity();
+        for (int d = 0; d < dimensionIds.length; d++) {
+            for (int i = 0; i < codes[d].length; i++) {
+                bytes += 80 + 2L * (codes[d][i].length() + labels[d][i].length());
+            }
+        }
+        return bytes;
+    }
+}
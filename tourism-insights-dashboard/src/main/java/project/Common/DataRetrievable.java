@@ -1,12 +1,20 @@
 package project.Common;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.google.gson.JsonObject;
 
 /**
  * The DataRetrievable interface defines a contract for fetching data 
  * from an external source using a specified JSON query. It serves as 
  * an abstraction for data retrieval operations
+ *
+ * fetchData blocks until the response has been received, while fetchDataAsync
+ * returns immediately and completes the future once the response arrives, so
+ * several queries can be in flight at the same time.
  */
 public interface DataRetrievable {
     JsonObject fetchData(String jsonQuery);
+
+    CompletableFuture<JsonObject> fetchDataAsync(String jsonQuery);
 }
\ No newline at end of file
@@ -0,0 +1,381 @@
+package project.Common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * The DiskResponseCache class keeps raw API responses in the application data directory, so that after a
+ * restart the dashboard can show the last downloaded data right away instead of waiting for the network.
+ *
+ * Every response is stored as a Snapshot file named after the hash of its URL and query: the metadata (URL,
+ * query hash, fetch time and size) are properties of the snapshot and the body, as it came from the server,
+ * is its "body" column. Snapshots are written to a temporary name first and then moved in place, so a
+ * crash while writing never leaves a half-written response behind; entries whose body does not match
+ * their metadata are ignored.
+ *
+ * Next to the raw responses the cache keeps decoded snapshots, such as a DataCube written with writeTo().
+ * These are opened with FileChannel.map, so a decoded table is available again after a restart without
+ * parsing its response. A decoded snapshot carries the hash of the body it was decoded from, so it can be
+ * compared with a newer download.
+ *
+ * A mapped file must not be rewritten, and on Windows it cannot even be replaced, so every version of a
+ * snapshot is written under its own file name, e.g. with the hash of its body in it. Reading opens the
+ * newest version; the older ones are deleted when a newer one is written or read, and a version that is
+ * still mapped, which Windows does not let go of, is deleted on a later try.
+ *
+ * Entries older than the maximum age are not served and are deleted. After every write the oldest files
+ * are deleted until the cache is back under its size limit; a snapshot that is still mapped, and so cannot
+ * be deleted on every platform, is left for the next write.
+ *
+ * The default instance stores its files in the directory given by the tourism.cache.dir system property,
+ * or in .tourism-insights-dashboard/cache under the user's home directory. Its size limit is set with
+ * tourism.cache.maxBytes (default 256 MB) and its maximum age with tourism.cache.maxAgeDays (default 30).
+ * Setting tourism.cache.disk to false turns the disk tier off.
+ */
+public class DiskResponseCache {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("tourism.cache.disk", "true"));
+    private static final long MAX_BYTES = Long.getLong("tourism.cache.maxBytes", 256L * 1024 * 1024);
+    private static final Duration MAX_AGE = Duration.ofDays(Long.getLong("tourism.cache.maxAgeDays", 30));
+    private static final DiskResponseCache defaultCache = new DiskResponseCache(Paths.get(System.getProperty("tourism.cache.dir",
+            Paths.get(System.getProperty("user.home"), ".tourism-insights-dashboard", "cache").toString())));
+
+    private static final String RESPONSE_SUFFIX = ".response";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Duration maxAge;
+    private final LongSupplier clock;
+
+    public DiskResponseCache(Path directory) {
+        this(directory, MAX_BYTES, MAX_AGE, System::currentTimeMillis);
+    }
+
+    /**
+     * @param maxBytes The size the files of the cache are kept under
+     * @param maxAge   How long after its download an entry is served
+     * @param clock    Supplies the current time in milliseconds
+     */
+    public DiskResponseCache(Path directory, long maxBytes, Duration maxAge, LongSupplier clock) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    // Returns the cache in the application data directory, or null if the disk tier is turned off
+    public static DiskResponseCache getDefault() {
+        return ENABLED ? defaultCache : null;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stores the response body in the default cache, if the disk tier is on, so it is still available
+     * offline.
+     */
+    public static void storeBody(String url, String jsonQuery, String body) {
+        DiskResponseCache diskCache = getDefault();
+        if (diskCache != null) {
+            diskCache.write(url, jsonQuery, body);
+        }
+    }
+
+    // Returns the body stored in the default cache by the last successful request, or null if there is none
+    public static String readBody(String url, String jsonQuery) {
+        DiskResponseCache diskCache = getDefault();
+        Entry entry = diskCache != null ? diskCache.read(url, jsonQuery) : null;
+        return entry != null ? entry.getBody() : null;
+    }
+
+    /**
+     * Returns the stored response for the query sent to the URL, or null if there is none or it cannot
+     * be read.
+     *
+     * @param url       Endpoint the query was sent to
+     * @param jsonQuery The query body; null or empty for GET requests
+     */
+    public Entry read(String url, String jsonQuery) {
+        Path file = directory.resolve(fileName(url, jsonQuery) + RESPONSE_SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try {
+            // The whole body is decoded anyway, so the file is read onto the heap instead of being mapped
+            Snapshot snapshot = Snapshot.read(ByteBuffer.wrap(Files.readAllBytes(file)));
+            ByteBuffer body = snapshot.getByteColumn("body");
+
+            // A body that does not match its metadata was left behind by an interrupted write
+            long size = Long.parseLong(snapshot.getProperties().getOrDefault("size", "-1"));
+            if (body == null || size != body.remaining() || !url.equals(snapshot.getProperty("url"))) {
+                return null;
+            }
+            if (isExpired(snapshot)) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return new Entry(url, snapshot.getProperty("queryHash"), getFetchedAt(snapshot),
+                    size, StandardCharsets.UTF_8.decode(body).toString());
+        } catch (IOException | RuntimeException exception) {
+            System.err.println("Could not read cached response for " + url + ": " + exception.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the response body for the query sent to the URL, replacing any earlier copy. Failures are
+     * logged and otherwise ignored, as the cache is only an optimization.
+     */
+    public void write(String url, String jsonQuery, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        Snapshot.Writer writer = new Snapshot.Writer()
+                .property("size", Integer.toString(bytes.length))
+                .byteColumn("body", bytes);
+        write(url, jsonQuery, writer, RESPONSE_SUFFIX, "response");
+    }
+
+    /**
+     * Returns the decoded snapshot stored for the query sent to the URL, mapped into memory, or null if
+     * there is none or it cannot be read.
+     */
+    public Snapshot readSnapshot(String url, String jsonQuery) {
+        String name = fileName(url, jsonQuery);
+        Path file = newestSnapshot(name);
+        if (file == null) {
+            return null;
+        }
+        deleteOtherSnapshots(name, file);
+        try {
+            Snapshot snapshot = Snapshot.open(file);
+            return url.equals(snapshot.getProperty("url")) && !isExpired(snapshot) ? snapshot : null;
+        } catch (IOException exception) {
+            System.err.println("Could not read snapshot for " + url + ": " + exception.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores a decoded snapshot for the query sent to the URL as a new version, named after the time it is
+     * written. See writeSnapshot(String, String, String, Snapshot.Writer).
+     */
+    public void writeSnapshot(String url, String jsonQuery, Snapshot.Writer writer) {
+        writeSnapshot(url, jsonQuery, Long.toString(clock.getAsLong(), 36), writer);
+    }
+
+    /**
+     * Stores a decoded snapshot for the query sent to the URL under the given version, which replaces the
+     * earlier versions for later reads; files that are still mapped are left alone. The URL, query hash and
+     * fetch time are added to the snapshot's properties. Failures are logged and otherwise ignored.
+     *
+     * @param version Names the content of the snapshot, e.g. the hash of the body it was decoded from; a
+     *                version that is already stored is not written again
+     */
+    public void writeSnapshot(String url, String jsonQuery, String version, Snapshot.Writer writer) {
+        String name = fileName(url, jsonQuery);
+        String suffix = "-" + version.replaceAll("[^A-Za-z0-9]", "") + SNAPSHOT_SUFFIX;
+        Path file = directory.resolve(name + suffix);
+        if (Files.isRegularFile(file)) {
+            // The same content; it may be mapped, so it is only marked as the newest version
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(clock.getAsLong()));
+            } catch (IOException exception) {
+                System.err.println("Could not update snapshot for " + url + ": " + exception.getMessage());
+            }
+        } else {
+            write(url, jsonQuery, writer, suffix, "snapshot");
+        }
+        deleteOtherSnapshots(name, file);
+    }
+
+    // Returns the most recently written version of the snapshot, or null if there is none
+    private Path newestSnapshot(String name) {
+        Path newest = null;
+        long newestModified = Long.MIN_VALUE;
+        for (Path file : snapshotVersions(name)) {
+            try {
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (modified > newestModified) {
+                    newest = file;
+                    newestModified = modified;
+                }
+            } catch (IOException exception) {
+                // Deleted in the meantime
+            }
+        }
+        return newest;
+    }
+
+    // Deletes the versions of the snapshot other than the given one, skipping those still mapped
+    private void deleteOtherSnapshots(String name, Path keep) {
+        for (Path file : snapshotVersions(name)) {
+            if (!file.equals(keep)) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException exception) {
+                    // Still mapped on Windows; tried again with the next version
+                }
+            }
+        }
+    }
+
+    private List<Path> snapshotVersions(String name) {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        // The name is a hash of fixed length, so the pattern matches the versions of this snapshot alone
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, name + "*" + SNAPSHOT_SUFFIX)) {
+            stream.forEach(files::add);
+        } catch (IOException exception) {
+            System.err.println("Could not list snapshots: " + exception.getMessage());
+        }
+        return files;
+    }
+
+    // Returns when the response a snapshot was written from was downloaded
+    public static Instant getFetchedAt(Snapshot snapshot) {
+        return Instant.ofEpochMilli(Long.parseLong(snapshot.getProperties().getOrDefault("fetchedAt", "0")));
+    }
+
+    private boolean isExpired(Snapshot snapshot) {
+        return getFetchedAt(snapshot).plus(maxAge).toEpochMilli() <= clock.getAsLong();
+    }
+
+    private void write(String url, String jsonQuery, Snapshot.Writer writer, String suffix, String kind) {
+        long now = clock.getAsLong();
+        writer.property("url", url)
+                .property("queryHash", CachingDataRetrievable.queryHash(jsonQuery))
+                .property("fetchedAt", Long.toString(now));
+        try {
+            Path file = directory.resolve(fileName(url, jsonQuery) + suffix);
+            writer.write(file);
+            // Eviction goes by modification time, so it follows the same clock as the fetch time
+            Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+        } catch (IOException exception) {
+            System.err.println("Could not cache " + kind + " for " + url + ": " + exception.getMessage());
+            return;
+        }
+        trim();
+    }
+
+    /**
+     * Deletes the expired files, then the oldest ones until the cache is under its size limit. Files
+     * that cannot be deleted, such as snapshots still mapped on Windows, are skipped.
+     */
+    public synchronized void trim() {
+        List<StoredFile> files = new ArrayList<>();
+        long totalBytes = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                file -> file.toString().endsWith(RESPONSE_SUFFIX) || file.toString().endsWith(SNAPSHOT_SUFFIX))) {
+            for (Path file : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                files.add(new StoredFile(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                totalBytes += attributes.size();
+            }
+        } catch (IOException exception) {
+            System.err.println("Could not list the response cache: " + exception.getMessage());
+            return;
+        }
+
+        long expiredBefore = clock.getAsLong() - maxAge.toMillis();
+        files.sort(Comparator.comparingLong(file -> file.modified));
+        for (StoredFile file : files) {
+            if (totalBytes <= maxBytes && file.modified > expiredBefore) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(file.path);
+                totalBytes -= file.size;
+            } catch (IOException exception) {
+                System.err.println("Could not evict " + file.path.getFileName() + ": " + exception.getMessage());
+            }
+        }
+    }
+
+    // Deletes every stored response
+    public void clear() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException exception) {
+            System.err.println("Could not clear the response cache: " + exception.getMessage());
+        }
+    }
+
+    private static String fileName(String url, String jsonQuery) {
+        return CachingDataRetrievable.sha256(CachingDataRetrievable.cacheKey(url, jsonQuery));
+    }
+
+    // A file of the cache with what eviction needs to know about it
+    private static class StoredFile {
+        private final Path path;
+        private final long size;
+        private final long modified;
+
+        StoredFile(Path path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * A response read from disk together with its metadata.
+     */
+    public static class Entry {
+        private final String url;
+        private final String queryHash;
+        private final Instant fetchedAt;
+        private final long size;
+        private final String body;
+
+        Entry(String url, String queryHash, Instant fetchedAt, long size, String body) {
+            this.url = url;
+            this.queryHash = queryHash;
+            this.fetchedAt = fetchedAt;
+            this.size = size;
+            this.body = body;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getQueryHash() {
+            return queryHash;
+        }
+
+        public Instant getFetchedAt() {
+            return fetchedAt;
+        }
+
+        // Size of the body in bytes
+        public long getSize() {
+            return size;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package project.Common;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+
+/**
+ * The HostLimiter class admits the requests to one remote host. PxWeb allows about 30 requests per 10
+ * seconds from one address, and page loads, revalidation and the chunks of a large query together would
+ * exceed that, so every request first takes a token from a bucket that refills at the allowed rate and
+ * holds one of a limited number of concurrency slots while it runs.
+ *
+ * The number of slots adapts the way TCP adapts its window (additive increase, multiplicative decrease):
+ * it grows by about one for every round of successful requests, up to the configured maximum, and is
+ * halved when the host answers 429 Too Many Requests. A throttled request is not failed: the host is paused
+ * for the time its Retry-After header asks for, and the request queues again. Only after MAX_RETRIES
+ * throttled attempts is the ThrottledException passed on to the caller.
+ *
+ * Requests that cannot start at once wait in a queue ordered by priority, then by arrival, so a page the
+ * user is waiting for goes before background revalidation. The limiter counts how many requests had to
+ * wait and for how long, which TaskExecutors exposes per host.
+ *
+ * A waiting request holds no thread: every waiter is a future that is completed when a request ends, or by
+ * a shared timer thread when the next token is due or a pause is over. runAsync() sends its request on the
+ * executor only once it is admitted, so requests queued behind a throttled host cannot take up the pool
+ * that the threads waiting for them run on.
+ *
+ * One limiter per host is kept by TaskExecutors.onHost(); the quota is tuned with these system properties:
+ *
+ *  tourism.limiter.requests       requests allowed per window (default 30)
+ *  tourism.limiter.windowSeconds  length of the window in seconds (default 10)
+ *  tourism.limiter.maxRetries     attempts repeated after a 429 before giving up (default 3)
+ */
+public class HostLimiter {
+    public static final int REQUESTS_PER_WINDOW = Integer.getInteger("tourism.limiter.requests", 30);
+    public static final Duration WINDOW = Duration.ofSeconds(Long.getLong("tourism.limiter.windowSeconds", 10L));
+    public static final int MAX_RETRIES = Integer.getInteger("tourism.limiter.maxRetries", 3);
+
+    /**
+     * The order in which waiting requests are admitted.
+     */
+    public enum Priority {
+        NORMAL, BACKGROUND
+    }
+
+    /**
+     * Thrown by a request the host answered with 429, or with 503 and a Retry-After header.
+     */
+    public static class ThrottledException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+        private final long retryAfterMillis;
+
+        // @param retryAfterMillis The wait the host asked for; negative if it did not say
+        public ThrottledException(int statusCode, long retryAfterMillis) {
+            super("HTTP code " + statusCode + (retryAfterMillis >= 0 ? ", retry after " + retryAfterMillis + " ms" : ""));
+            this.statusCode = statusCode;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        // The wait the host asked for; negative if it did not say, in which case a whole window is waited
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+
+    // Wakes the limiters up when a token is due or a pause is over
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "host-limiter-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final class Waiter implements Comparable<Waiter> {
+        private final Priority priority;
+        private final long sequence;
+        private final long queuedAt = System.nanoTime();
+        // Completed when the request is admitted; cancelling it takes the request out of the queue
+        private final CompletableFuture<Void> admission = new CompletableFuture<>();
+        private boolean waited;
+
+        Waiter(Priority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final int capacity;
+    private final double tokensPerNano;
+    private final int maxConcurrency;
+    private final long defaultRetryAfterMillis;
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+
+    private double tokens;
+    private long refilledAt;
+    private double concurrencyLimit;
+    private int inFlight;
+    private long pausedUntil;
+    private long nextSequence;
+    // When the timer wakes the limiter up next, in System.nanoTime(); Long.MAX_VALUE if it is not set
+    private long wakeUpAt = Long.MAX_VALUE;
+
+    private long admittedCount;
+    private long waitedCount;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+    private long throttledCount;
+
+    /**
+     * @param requestsPerWindow The size of the bucket: requests allowed at once and per window
+     * @param window            The time in which the bucket refills completely
+     * @param maxConcurrency    The most requests running at the same time; also the starting limit
+     */
+    public HostLimiter(int requestsPerWindow, Duration window, int maxConcurrency) {
+        this.capacity = requestsPerWindow;
+        this.tokensPerNano = (double) requestsPerWindow / window.toNanos();
+        this.maxConcurrency = maxConcurrency;
+        this.defaultRetryAfterMillis = window.toMillis();
+        this.tokens = requestsPerWindow;
+        this.refilledAt = System.nanoTime();
+        this.concurrencyLimit = maxConcurrency;
+    }
+
+    // Whether the response asks the client to slow down
+    public static boolean isThrottled(HttpResponse response) {
+        return response.getCode() == 429 || (response.getCode() == 503 && response.getFirstHeader("Retry-After") != null);
+    }
+
+    // The exception a request throws for a throttled response, with the wait its Retry-After header asks for
+    public static ThrottledException throttled(HttpResponse response) {
+        Header retryAfter = response.getFirstHeader("Retry-After");
+        return new ThrottledException(response.getCode(), retryAfterMillis(retryAfter != null ? retryAfter.getValue() : null));
+    }
+
+    /**
+     * Reads a Retry-After value, either a number of seconds or an HTTP date.
+     *
+     * @return The wait in milliseconds; -1 if the value is missing or unreadable
+     */
+    static long retryAfterMillis(String value) {
+        if (value != null) {
+            try {
+                return Math.max(0, Long.parseLong(value.trim()) * 1000);
+            } catch (NumberFormatException notSeconds) {
+                try {
+                    ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                    return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+                } catch (DateTimeParseException notDate) {
+                    System.err.println("Unreadable Retry-After header: " + value);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Runs a blocking request once the host admits it. A throttled request waits and is sent again. A
+     * thread interrupted while it waits, e.g. because its load was cancelled, gives up its place in the
+     * queue and the request is not sent.
+     *
+     * @throws E if the request throws it
+     * @throws CancellationException if the thread is interrupted before the request is admitted
+     * @throws ThrottledException if the request is still throttled after MAX_RETRIES attempts
+     */
+    public <V, E extends Exception> V run(Priority priority, TaskExecutors.HostCall<V, E> call) throws E {
+        for (int attempt = 0; ; attempt++) {
+            acquire(priority);
+            V result;
+            try {
+                result = call.call();
+            } catch (ThrottledException exception) {
+                onThrottled(exception);
+                if (attempt >= MAX_RETRIES) {
+                    throw exception;
+                }
+                continue;
+            } catch (Throwable failure) {
+                release(false);
+                throw failure;
+            }
+            release(true);
+            return result;
+        }
+    }
+
+    /**
+     * Starts a non-blocking request once the host admits it. No thread waits for the admission: the request
+     * is started on the executor when it is admitted, and the permit is held until the request's future
+     * completes. A future that completes with a ThrottledException is retried like in run(). Cancelling
+     * the returned future takes a request that has not been admitted yet out of the queue.
+     */
+    public <V> CompletableFuture<V> runAsync(Priority priority, Supplier<CompletableFuture<V>> call, Executor executor) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        attempt(priority, call, executor, result, 0);
+        return result;
+    }
+
+    private <V> void attempt(Priority priority, Supplier<CompletableFuture<V>> call, Executor executor,
+                             CompletableFuture<V> result, int attempt) {
+        CompletableFuture<Void> admission = admit(priority);
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                admission.cancel(false);  // Does nothing once the request has been admitted
+            }
+        });
+        admission.thenComposeAsync(ignored -> call.get(), executor).whenComplete((value, failure) -> {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+            if (admission.isCompletedExceptionally()) {
+                result.completeExceptionally(cause);  // Cancelled before it was admitted
+                return;
+            }
+            if (cause instanceof ThrottledException) {
+                onThrottled((ThrottledException) cause);
+                if (attempt < MAX_RETRIES && !result.isDone()) {
+                    attempt(priority, call, executor, result, attempt + 1);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+                return;
+            }
+            release(cause == null);
+            if (cause == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+
+    /**
+     * Waits until the request is admitted. An interrupt leaves the queue without taking a slot or a token,
+     * keeping the interrupt status.
+     *
+     * @throws CancellationException if the thread is interrupted before or while it waits
+     */
+    private void acquire(Priority priority) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Request cancelled before it was sent");
+        }
+        CompletableFuture<Void> admission = admit(priority);
+        try {
+            admission.get();
+        } catch (InterruptedException exception) {
+            if (!admission.cancel(false)) {
+                // Admitted just as the thread was interrupted, so the slot and the token are handed back
+                synchronized (this) {
+                    tokens += 1;
+                }
+                release(false);
+            }
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Request cancelled while waiting for the host");
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException(exception.getCause());  // The admission never fails
+        }
+    }
+
+    /**
+     * Queues a request. The future completes when the request may start, having taken a slot and a token;
+     * it is completed at once if nothing is waiting and the host has room.
+     */
+    private CompletableFuture<Void> admit(Priority priority) {
+        Waiter waiter;
+        List<Waiter> admitted;
+        synchronized (this) {
+            waiter = new Waiter(priority, nextSequence++);
+            waiters.add(waiter);
+            admitted = admitReady();
+            if (!admitted.contains(waiter)) {
+                waiter.waited = true;
+            }
+        }
+        complete(admitted);
+
+        waiter.admission.whenComplete((ignored, failure) -> {
+            if (waiter.admission.isCancelled()) {
+                withdraw(waiter);
+            }
+        });
+        return waiter.admission;
+    }
+
+    private void withdraw(Waiter waiter) {
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+        dispatch();  // Another waiter may be first in the queue now
+    }
+
+    // Admits the waiters that may start now
+    private void dispatch() {
+        List<Waiter> admitted;
+        synchronized (this) {
+            admitted = admitReady();
+        }
+        complete(admitted);
+    }
+
+    // Completed outside the lock, as a blocked caller resumes and an async one starts right away
+    private static void complete(List<Waiter> admitted) {
+        for (Waiter waiter : admitted) {
+            waiter.admission.complete(null);
+        }
+    }
+
+    /**
+     * Takes a slot and a token for every waiter, in queue order, that may start now. If the first one left
+     * has to wait for a token or for a pause to end, the timer is set to try again then; if it waits for a
+     * slot, the request that ends next tries again.
+     */
+    private List<Waiter> admitReady() {
+        List<Waiter> admitted = new ArrayList<>();
+        while (!waiters.isEmpty()) {
+            Waiter head = waiters.peek();
+            if (head.admission.isDone()) {
+                waiters.poll();  // Cancelled, and not withdrawn yet
+                continue;
+            }
+            long now = System.nanoTime();
+            refill(now);
+            long delay = admissionDelay(now);
+            if (delay < 0) {
+                break;
+            }
+            if (delay > 0) {
+                wakeUpIn(now, delay);
+                break;
+            }
+
+            waiters.poll();
+            tokens -= 1;
+            inFlight++;
+            admittedCount++;
+            if (head.waited) {
+                long waitNanos = now - head.queuedAt;
+                waitedCount++;
+                totalWaitNanos += waitNanos;
+                maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            }
+            admitted.add(head);
+        }
+        return admitted;
+    }
+
+    private void wakeUpIn(long now, long delay) {
+        if (wakeUpAt > now && wakeUpAt <= now + delay) {
+            return;  // Already set to wake up by then
+        }
+        wakeUpAt = now + delay;
+        timer.schedule(() -> {
+            synchronized (this) {
+                wakeUpAt = Long.MAX_VALUE;
+            }
+            dispatch();
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    // 0 if a request may start now, the nanoseconds until it may, or -1 if it has to wait for a free slot
+    private long admissionDelay(long now) {
+        if (now < pausedUntil) {
+            return pausedUntil - now;
+        }
+        if (inFlight >= (int) concurrencyLimit) {
+            return -1;
+        }
+        if (tokens < 1) {
+            return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+        }
+        return 0;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+
+    // A successful request widens the limit by one slot per round of requests; a failed one leaves it
+    private void release(boolean succeeded) {
+        synchronized (this) {
+            inFlight--;
+            if (succeeded) {
+                concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+            }
+        }
+        dispatch();
+    }
+
+    // Halves the limit, empties the bucket and pauses the host for as long as it asked
+    private void onThrottled(ThrottledException exception) {
+        synchronized (this) {
+            inFlight--;
+            throttledCount++;
+            concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+            tokens = Math.min(tokens, 0);
+            long retryAfter = exception.getRetryAfterMillis() >= 0 ? exception.getRetryAfterMillis() : defaultRetryAfterMillis;
+            pausedUntil = Math.max(pausedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfter));
+            System.err.println("Host throttled the request (" + exception.getMessage() + "), limit now " + (int) concurrencyLimit);
+        }
+        dispatch();  // Sets the timer for the end of the pause
+    }
+
+    // Number of requests waiting to be admitted
+    public synchronized int getWaitingCount() {
+        return waiters.size();
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    // The current number of slots, between 1 and the maximum concurrency
+    public synchronized int getConcurrencyLimit() {
+        return (int) concurrencyLimit;
+    }
+
+    public synchronized long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    // Number of requests that could not start at once
+    public synchronized long getWaitedCount() {
+        return waitedCount;
+    }
+
+    public synchronized long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos);
+    }
+
+    public synchronized long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    // Average wait of the admitted requests, counting the ones that did not wait as 0
+    public synchronized double getMeanWaitMillis() {
+        return admittedCount == 0 ? 0 : totalWaitNanos / 1e6 / admittedCount;
+    }
+
+    // Number of responses that asked the client to slow down
+    public synchronized long getThrottledCount() {
+        return throttledCount;
+    }
+}
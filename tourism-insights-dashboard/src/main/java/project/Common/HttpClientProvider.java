@@ -0,0 +1,144 @@
+package project.Common;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * The HttpClientProvider class holds the single, application-scoped HTTP transport shared by every service
+ * that talks to Statistics Finland, VisitFinland or Digitraffic.
+ *
+ * Connections are kept in a pool and reused across requests, so repeated queries to the same host do not
+ * pay for a new TCP and TLS handshake every time. Pool sizes and timeouts can be tuned with the system
+ * properties below; the defaults are sized for the handful of hosts the dashboard talks to.
+ * The same settings are applied to the non-blocking client used by the asynchronous fetch methods,
+ * which keeps its own connection pool.
+ *
+ *  tourism.http.maxTotal            maximum number of pooled connections (default 20)
+ *  tourism.http.maxPerRoute         maximum number of pooled connections per host (default 6)
+ *  tourism.http.connectTimeoutMs    connect timeout in milliseconds (default 10000)
+ *  tourism.http.socketTimeoutMs     socket read timeout in milliseconds (default 30000)
+ *  tourism.http.requestTimeoutMs    time to wait for a free pooled connection in milliseconds (default 10000)
+ *  tourism.http.keepAliveMs         keep-alive used when the server does not send one in milliseconds (default 60000)
+ */
+public class HttpClientProvider {
+    private static final int MAX_TOTAL = Integer.getInteger("tourism.http.maxTotal", 20);
+    private static final int MAX_PER_ROUTE = Integer.getInteger("tourism.http.maxPerRoute", 6);
+    private static final long CONNECT_TIMEOUT_MS = Long.getLong("tourism.http.connectTimeoutMs", 10_000L);
+    private static final long SOCKET_TIMEOUT_MS = Long.getLong("tourism.http.socketTimeoutMs", 30_000L);
+    private static final long REQUEST_TIMEOUT_MS = Long.getLong("tourism.http.requestTimeoutMs", 10_000L);
+    private static final long KEEP_ALIVE_MS = Long.getLong("tourism.http.keepAliveMs", 60_000L);
+
+    private static PoolingHttpClientConnectionManager connectionManager;
+    private static CloseableHttpClient httpClient;
+    private static PoolingAsyncClientConnectionManager asyncConnectionManager;
+    private static CloseableHttpAsyncClient asyncHttpClient;
+
+    private HttpClientProvider() {
+    }
+
+    /**
+     * Returns the shared pooled client, creating it on first use. Callers must not close the returned
+     * client; they should only close the responses they receive from it.
+     */
+    public static synchronized CloseableHttpClient getClient() {
+        if (httpClient == null) {
+            connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                    .setMaxConnTotal(MAX_TOTAL)
+                    .setMaxConnPerRoute(MAX_PER_ROUTE)
+                    .setDefaultConnectionConfig(ConnectionConfig.custom()
+                            .setConnectTimeout(Timeout.ofMilliseconds(CONNECT_TIMEOUT_MS))
+                            .setSocketTimeout(Timeout.ofMilliseconds(SOCKET_TIMEOUT_MS))
+                            .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                            .build())
+                    .build();
+
+            httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectionRequestTimeout(Timeout.ofMilliseconds(REQUEST_TIMEOUT_MS))
+                            .setResponseTimeout(Timeout.ofMilliseconds(SOCKET_TIMEOUT_MS))
+                            .setConnectionKeepAlive(TimeValue.ofMilliseconds(KEEP_ALIVE_MS))
+                            .build())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(TimeValue.ofMilliseconds(KEEP_ALIVE_MS))
+                    .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Returns the shared non-blocking client, creating and starting it on first use. Requests executed
+     * on it complete on the client's I/O threads, so callers never block while waiting for a response.
+     */
+    public static synchronized CloseableHttpAsyncClient getAsyncClient() {
+        if (asyncHttpClient == null) {
+            asyncConnectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                    .setMaxConnTotal(MAX_TOTAL)
+                    .setMaxConnPerRoute(MAX_PER_ROUTE)
+                    .setDefaultConnectionConfig(ConnectionConfig.custom()
+                            .setConnectTimeout(Timeout.ofMilliseconds(CONNECT_TIMEOUT_MS))
+                            .setSocketTimeout(Timeout.ofMilliseconds(SOCKET_TIMEOUT_MS))
+                            .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                            .build())
+                    .build();
+
+            asyncHttpClient = HttpAsyncClients.custom()
+                    .setConnectionManager(asyncConnectionManager)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectionRequestTimeout(Timeout.ofMilliseconds(REQUEST_TIMEOUT_MS))
+                            .setResponseTimeout(Timeout.ofMilliseconds(SOCKET_TIMEOUT_MS))
+                            .setConnectionKeepAlive(TimeValue.ofMilliseconds(KEEP_ALIVE_MS))
+                            .build())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(TimeValue.ofMilliseconds(KEEP_ALIVE_MS))
+                    .build();
+            asyncHttpClient.start();
+        }
+        return asyncHttpClient;
+    }
+
+    /**
+     * Returns a snapshot of the pool usage: leased and idle (available) connections, requests
+     * waiting for a connection (pending) and the configured maximum.
+     */
+    public static synchronized PoolStats getPoolStats() {
+        if (connectionManager == null) {
+            return new PoolStats(0, 0, 0, MAX_TOTAL);
+        }
+        return connectionManager.getTotalStats();
+    }
+
+    // Same as getPoolStats() for the connection pool of the non-blocking client
+    public static synchronized PoolStats getAsyncPoolStats() {
+        if (asyncConnectionManager == null) {
+            return new PoolStats(0, 0, 0, MAX_TOTAL);
+        }
+        return asyncConnectionManager.getTotalStats();
+    }
+
+    // Closes both pools; called once when the application stops
+    public static synchronized void shutdown() {
+        if (httpClient != null) {
+            httpClient.close(CloseMode.GRACEFUL);
+            httpClient = null;
+            connectionManager = null;
+        }
+        if (asyncHttpClient != null) {
+            asyncHttpClient.close(CloseMode.GRACEFUL);
+            asyncHttpClient = null;
+            asyncConnectionManager = null;
+        }
+    }
+}
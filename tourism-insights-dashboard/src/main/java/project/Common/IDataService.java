@@ -6,8 +6,14 @@ import java.util.List;
  * The IDataService interface defines a generic contract for processing and filtering data.
  * It is designed to support with various types of data by leveraging  generics, providing 
  * a flexible and reusable framework for data handling operations.
+ *
+ * processData() returns an IndexedDataset indexed on the keys filterData() looks up, so filtering the
+ * processed list is a lookup rather than a scan. Plain lists are indexed on the first filter.
  */
 public interface IDataService<T> {
     List<T> processData();
     List<T> filterData(List<T> tripDataList, String filter);
+
+    // Returns the rows as a dataset indexed on the keys filterData() uses; indexed datasets are returned as they are
+    IndexedDataset<T> index(List<T> data);
 }
@@ -0,0 +1,177 @@
+package project.Common;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+/**
+ * The IndexedDataset class is a read-only list of model objects with hash indexes on the keys the services
+ * filter by, such as the season, the year or the region. The indexes are built once when the services
+ * process their data, so a filter afterwards costs a map lookup and returns a view of the matching rows
+ * instead of scanning and copying the whole list.
+ *
+ * Keys are compared the way the filters always compared them, ignoring case; they are also trimmed. Rows
+ * whose key is null are left out of that index. Lookups return the rows in their original order.
+ */
+public class IndexedDataset<T> extends AbstractList<T> implements RandomAccess {
+    private static final int[] NO_ROWS = new int[0];
+
+    private final Object[] rows;
+    private final Map<String, Function<? super T, String>> keys;
+    private final Map<String, Map<String, int[]>> indexes = new HashMap<>();
+
+    /**
+     * Copies the rows and indexes them on the given keys.
+     *
+     * @param rows The model objects
+     * @param keys The name of each index and the function reading its key from a row
+     */
+    public IndexedDataset(List<? extends T> rows, Map<String, Function<? super T, String>> keys) {
+        this.rows = rows.toArray();
+        this.keys = keys;
+        for (Map.Entry<String, Function<? super T, String>> key : keys.entrySet()) {
+            indexes.put(key.getKey(), buildIndex(key.getValue()));
+        }
+    }
+
+    /**
+     * Returns the rows as a dataset indexed on the keys. A dataset that was built with the same keys is
+     * returned as it is, so services can index whatever list they are given without copying it twice.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> IndexedDataset<T> of(List<? extends T> rows, Map<String, Function<? super T, String>> keys) {
+        if (rows instanceof IndexedDataset && ((IndexedDataset<?>) rows).keys.equals(keys)) {
+            return (IndexedDataset<T>) rows;
+        }
+        return new IndexedDataset<>(rows, keys);
+    }
+
+    // Trims and lower-cases the key so that lookups ignore case like equalsIgnoreCase did
+    public static String normalize(String key) {
+        return key == null ? null : key.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) rows[index];
+    }
+
+    @Override
+    public int size() {
+        return rows.length;
+    }
+
+    public boolean hasIndex(String index) {
+        return indexes.containsKey(index);
+    }
+
+    /**
+     * Returns the rows whose key equals the value, ignoring case.
+     *
+     * @param index The name of the index, one of the keys the dataset was built with
+     * @param value The key to look up
+     * @return A read-only view of the matching rows; empty if there are none
+     * @throws IllegalArgumentException if the dataset has no such index
+     */
+    public List<T> lookup(String index, String value) {
+        return new RowView(positions(index, value));
+    }
+
+    /**
+     * Returns the rows matching any of the values, grouped by value in the order the values are given.
+     */
+    public List<T> lookupAll(String index, String... values) {
+        int[][] matches = new int[values.length][];
+        int total = 0;
+        for (int i = 0; i < values.length; i++) {
+            matches[i] = positions(index, values[i]);
+            total += matches[i].length;
+        }
+        if (values.length == 1) {
+            return new RowView(matches[0]);
+        }
+
+        int[] positions = new int[total];
+        int next = 0;
+        for (int[] match : matches) {
+            System.arraycopy(match, 0, positions, next, match.length);
+            next += match.length;
+        }
+        return new RowView(positions);
+    }
+
+    // Number of rows with the key, without creating a view
+    public int count(String index, String value) {
+        return positions(index, value).length;
+    }
+
+    // The distinct keys of the index, normalized
+    public List<String> keys(String index) {
+        return List.copyOf(index(index).keySet());
+    }
+
+    private int[] positions(String index, String value) {
+        int[] positions = index(index).get(normalize(value));
+        return positions != null ? positions : NO_ROWS;
+    }
+
+    private Map<String, int[]> index(String index) {
+        Map<String, int[]> positions = indexes.get(index);
+        if (positions == null) {
+            throw new IllegalArgumentException("No index " + index);
+        }
+        return positions;
+    }
+
+    // Two passes: count the rows per key, then fill arrays of exactly that size
+    @SuppressWarnings("unchecked")
+    private Map<String, int[]> buildIndex(Function<? super T, String> key) {
+        String[] normalized = new String[rows.length];
+        Map<String, int[]> counts = new HashMap<>();
+        for (int row = 0; row < rows.length; row++) {
+            normalized[row] = normalize(key.apply((T) rows[row]));
+            if (normalized[row] != null) {
+                counts.computeIfAbsent(normalized[row], k -> new int[1])[0]++;
+            }
+        }
+
+        Map<String, int[]> index = new HashMap<>(counts.size() * 2);
+        Map<String, int[]> filled = new HashMap<>(counts.size() * 2);
+        for (Map.Entry<String, int[]> count : counts.entrySet()) {
+            index.put(count.getKey(), new int[count.getValue()[0]]);
+            filled.put(count.getKey(), new int[1]);
+        }
+        for (int row = 0; row < rows.length; row++) {
+            if (normalized[row] != null) {
+                int[] next = filled.get(normalized[row]);
+                index.get(normalized[row])[next[0]++] = row;
+            }
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    // The rows at the given positions, read through to the dataset
+    private class RowView extends AbstractList<T> implements RandomAccess {
+        private final int[] positions;
+
+        RowView(int[] positions) {
+            this.positions = positions;
+        }
+
+        @Override
+        public T get(int index) {
+            return IndexedDataset.this.get(positions[index]);
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+    }
+}
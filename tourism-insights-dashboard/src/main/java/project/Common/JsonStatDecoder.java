@@ -0,0 +1,291 @@
+package project.Common;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * The JsonStatDecoder class turns a JSON-stat2 dataset, the "json-stat2" response format of the PxWeb API,
+ * into a DataCube.
+ *
+ * The dataset is read as a stream, like PxJsonDecoder reads the "json" format: values are written into a
+ * growing primitive array as they are read, so no JSON tree is built and a large selection costs one
+ * double per cell. The "value" member may come before "dimension"; it is buffered until the sizes of the
+ * dimensions are known.
+ *
+ * The dimension order is taken from the "id" array of the dataset. The categories of a dimension are
+ * ordered by their "index", which may be an object of code positions or an array of codes; a dimension
+ * with a single category may leave the index out. Values can be given as an array or, for sparse
+ * datasets, as an object keyed by cell offset; null values are marked as missing in the cube.
+ */
+public class JsonStatDecoder {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<String> ids = new ArrayList<>();
+    // Codes and labels of every dimension, in the order the dimensions appear in the dataset
+    private final Map<String, String[]> dimensionCodes = new LinkedHashMap<>();
+    private final Map<String, String[]> dimensionLabels = new HashMap<>();
+
+    private boolean hasValues;
+    private boolean sparse;
+    private int valueCount;
+    private double[] values = new double[INITIAL_CAPACITY];
+    // The cell offset of each value of a sparse dataset
+    private int[] offsets;
+
+    private JsonStatDecoder() {
+    }
+
+    /**
+     * Decodes a response body into a cube.
+     *
+     * @return The cube, or null if the body is not a JSON-stat2 dataset
+     */
+    public static DataCube decode(String responseBody) {
+        if (responseBody == null) {
+            return null;
+        }
+        try {
+            return decode(new StringReader(responseBody));
+        } catch (IOException | RuntimeException exception) {
+            System.err.println("Could not decode JSON-stat2 response: " + exception.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a dataset that has already been parsed, e.g. a cached response. Bodies that are still text
+     * should be decoded with decode(String) or decode(Reader), which do not build the tree.
+     *
+     * @param dataset The parsed JSON-stat2 response
+     * @return The cube, or null if the response is not a JSON-stat2 dataset
+     */
+    public static DataCube decode(JsonObject dataset) {
+        return dataset != null ? decode(dataset.toString()) : null;
+    }
+
+    /**
+     * Decodes a response read from the stream, e.g. straight from an HTTP response.
+     *
+     * @return The cube, or null if the response is a JSON object but not a JSON-stat2 dataset
+     * @throws IOException if the stream cannot be read or is not valid JSON
+     * @throws IllegalStateException if the dataset is malformed, e.g. has a category index out of range
+     * @throws ArithmeticException if the dataset has more cells than fit in a cube
+     */
+    public static DataCube decode(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return null;
+        }
+        return new JsonStatDecoder().read(reader);
+    }
+
+    private DataCube read(JsonReader reader) throws IOException {
+        boolean hasDimensions = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    ids.add(reader.nextString());
+                }
+                reader.endArray();
+            } else if ("dimension".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readDimensions(reader);
+                hasDimensions = true;
+            } else if ("value".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                readValueArray(reader);
+            } else if ("value".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readValueObject(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return hasDimensions && hasValues ? buildCube() : null;
+    }
+
+    private void readDimensions(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String id = reader.nextName();
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("category".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    readCategory(reader, id);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
+    // Reads the codes in position order and the labels in the order of the codes
+    private void readCategory(JsonReader reader, String id) throws IOException {
+        String[] codes = null;
+        Map<String, String> labelsByCode = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("index".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                List<String> indexCodes = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    indexCodes.add(reader.nextString());
+                }
+                reader.endArray();
+                codes = indexCodes.toArray(new String[0]);
+            } else if ("index".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                codes = readIndexObject(reader, id);
+            } else if ("label".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String code = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        labelsByCode.put(code, reader.nextString());
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (codes == null) {
+            // Without an index the dimension has a single category, given by its label
+            codes = labelsByCode.keySet().toArray(new String[0]);
+        }
+        // Categories without a label are labelled with their code
+        String[] labels = Arrays.copyOf(codes, codes.length);
+        for (int i = 0; i < codes.length; i++) {
+            labels[i] = labelsByCode.getOrDefault(codes[i], codes[i]);
+        }
+        dimensionCodes.put(id, codes);
+        dimensionLabels.put(id, labels);
+    }
+
+    private static String[] readIndexObject(JsonReader reader, String id) throws IOException {
+        List<String> codesRead = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            codesRead.add(reader.nextName());
+            positions.add(reader.nextInt());
+        }
+        reader.endObject();
+
+        String[] codes = new String[codesRead.size()];
+        for (int i = 0; i < codes.length; i++) {
+            int position = positions.get(i);
+            if (position < 0 || position >= codes.length || codes[position] != null) {
+                throw new IllegalStateException("Invalid index " + position + " of category " + codesRead.get(i) + " in " + id);
+            }
+            codes[position] = codesRead.get(i);
+        }
+        return codes;
+    }
+
+    private void readValueArray(JsonReader reader) throws IOException {
+        hasValues = true;
+        sparse = false;
+        valueCount = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            addValue(readValue(reader));
+        }
+        reader.endArray();
+    }
+
+    private void readValueObject(JsonReader reader) throws IOException {
+        hasValues = true;
+        sparse = true;
+        valueCount = 0;
+        offsets = new int[values.length];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int offset = Integer.parseInt(reader.nextName());
+            double value = readValue(reader);
+            if (offset >= 0 && !Double.isNaN(value)) {
+                addValue(value);
+                offsets[valueCount - 1] = offset;
+            }
+        }
+        reader.endObject();
+    }
+
+    // A number, or NaN for a cell without a value
+    private static double readValue(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return Double.NaN;
+        }
+        return reader.nextDouble();
+    }
+
+    private void addValue(double value) {
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, valueCount * 2);
+            if (offsets != null && sparse) {
+                offsets = Arrays.copyOf(offsets, valueCount * 2);
+            }
+        }
+        values[valueCount++] = value;
+    }
+
+    private DataCube buildCube() {
+        // Datasets without an "id" list their dimensions in order
+        String[] dimensionIds = (ids.isEmpty() ? dimensionCodes.keySet() : ids).toArray(new String[0]);
+        String[][] codes = new String[dimensionIds.length][];
+        String[][] labels = new String[dimensionIds.length][];
+        int cellCount = 1;
+        for (int d = 0; d < dimensionIds.length; d++) {
+            codes[d] = dimensionCodes.get(dimensionIds[d]);
+            if (codes[d] == null) {
+                throw new IllegalStateException("No categories for dimension " + dimensionIds[d]);
+            }
+            labels[d] = dimensionLabels.get(dimensionIds[d]);
+            cellCount = Math.multiplyExact(cellCount, codes[d].length);
+        }
+
+        double[] cells;
+        if (sparse) {
+            cells = new double[cellCount];
+            Arrays.fill(cells, Double.NaN);
+            for (int i = 0; i < valueCount; i++) {
+                if (offsets[i] < cellCount) {
+                    cells[offsets[i]] = values[i];
+                }
+            }
+        } else if (valueCount == cellCount && values.length == cellCount) {
+            cells = values;
+        } else {
+            cells = Arrays.copyOf(values, cellCount);
+            if (valueCount < cellCount) {
+                Arrays.fill(cells, valueCount, cellCount, Double.NaN);
+            }
+        }
+        return new DataCube(dimensionIds, codes, labels, DoubleBuffer.wrap(cells));
+    }
+}
@@ -0,0 +1,87 @@
+package project.Common;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The LabelDictionary class maps the labels of one attribute, such as the age groups or the regions, to
+ * small int codes. Models that repeat the same few labels in every row store the code instead of the
+ * String, and grouping compares and indexes codes: the codes of a dictionary are dense, starting at 0, so
+ * a group-by can sum into an array of size() slots instead of a map keyed by String.
+ *
+ * Codes are handed out in the order the labels are first seen and are never reused, so a code stays valid
+ * for as long as the application runs. Encoding and decoding are safe from any thread.
+ */
+public class LabelDictionary {
+    public static final int NOT_FOUND = -1;
+
+    private final String name;
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] labels = new String[8];
+    private volatile int size;
+
+    // @param name Names the attribute, e.g. "age group"; used in error messages
+    public LabelDictionary(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the code of the label, assigning the next free code if the label is new. A null label is
+     * encoded as NOT_FOUND, which decodes back to null.
+     */
+    public int encode(String label) {
+        if (label == null) {
+            return NOT_FOUND;
+        }
+        Integer code = codes.get(label);
+        return code != null ? code : add(label);
+    }
+
+    // The code of the label, or NOT_FOUND if it has not been encoded; never adds the label
+    public int lookup(String label) {
+        Integer code = label != null ? codes.get(label) : null;
+        return code != null ? code : NOT_FOUND;
+    }
+
+    /**
+     * Returns the label of the code; null for NOT_FOUND.
+     *
+     * @throws IllegalArgumentException if the code was not handed out by this dictionary
+     */
+    public String decode(int code) {
+        if (code == NOT_FOUND) {
+            return null;
+        }
+        // Size first: the labels read after it hold at least that many entries
+        int current = size;
+        String[] known = labels;
+        if (code < 0 || code >= current) {
+            throw new IllegalArgumentException("No " + name + " with code " + code);
+        }
+        return known[code];
+    }
+
+    // Number of codes handed out; every code is below it
+    public int size() {
+        return size;
+    }
+
+    // The size is published after the label is stored, so readers that see a code can always decode it
+    private synchronized int add(String label) {
+        Integer existing = codes.get(label);
+        if (existing != null) {
+            return existing;
+        }
+        int code = size;
+        String[] current = labels;
+        if (code == current.length) {
+            current = Arrays.copyOf(current, code * 2);
+        }
+        current[code] = label;
+        labels = current;
+        size = code + 1;
+        codes.put(label, code);
+        return code;
+    }
+}
@@ -0,0 +1,625 @@
+package project.Common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * The LocalTableStore class keeps complete PxWeb tables on disk as PX files and answers PxWeb queries from
+ * them, so the dashboard can work without sending a query for every interaction.
+ *
+ * The first time a table is needed, its variables are read from the table URL and the whole table is
+ * downloaded in the PX format, written to the store directory and read with PxFileReader. A table larger
+ * than PxWeb answers in one response is split by a QueryPlanner into chunks under the cell limit; every
+ * chunk is kept as a PX file of its own, and the chunks are stitched back into one table when read. Later queries,
+ * including those after a restart, are answered from the table in memory: the selected values are cut out
+ * of the table, variables the query leaves out are eliminated the way PxWeb does it, and the answer is
+ * written in the "json" or "json-stat2" format the query asks for, so callers cannot tell it apart from a
+ * PxWeb response. A query the store cannot answer, such as one with an aggregation filter, gets null and
+ * is sent to PxWeb as before.
+ *
+ * The store is off unless the tourism.tables.offline system property is true. Its files are kept in the
+ * directory given by tourism.tables.dir, or in .tourism-insights-dashboard/tables under the user's home
+ * directory, and a table is downloaded again once its file is older than tourism.tables.maxAgeDays
+ * (default 30). Deleting the directory forces every table to be downloaded again.
+ */
+public class LocalTableStore {
+    /**
+     * Sends a request for a table and returns the response body: a GET of the table URL when the query is
+     * null, otherwise a POST of the query.
+     */
+    @FunctionalInterface
+    public interface TableFetch {
+        byte[] fetch(String tableUrl, String jsonQuery) throws IOException;
+    }
+
+    private static final boolean ENABLED = Boolean.getBoolean("tourism.tables.offline");
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(Long.getLong("tourism.tables.maxAgeDays", 30L));
+    private static final LocalTableStore defaultStore = new LocalTableStore(Paths.get(System.getProperty("tourism.tables.dir",
+            Paths.get(System.getProperty("user.home"), ".tourism-insights-dashboard", "tables").toString())));
+
+    private static final String MISSING_SYMBOL = ".";
+
+    private final Path directory;
+    private final long maxCells;
+    private final TableFetch fetch;
+    private final Map<String, PxTable> tables = new ConcurrentHashMap<>();
+    private final Map<String, Object> tableLocks = new ConcurrentHashMap<>();
+
+    public LocalTableStore(Path directory) {
+        this(directory, QueryPlanner.MAX_CELLS, LocalTableStore::fetchOverHttp);
+    }
+
+    /**
+     * @param maxCells The largest number of cells requested in one query
+     * @param fetch    Sends the requests for a table
+     */
+    public LocalTableStore(Path directory, long maxCells, TableFetch fetch) {
+        this.directory = directory;
+        this.maxCells = maxCells;
+        this.fetch = fetch;
+    }
+
+    // Returns the store in the application data directory, or null if the offline mode is off
+    public static LocalTableStore getDefault() {
+        return ENABLED ? defaultStore : null;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Answers the query from the local copy of its table, downloading the table first if there is no
+     * copy yet. Blocks while the table is downloaded.
+     *
+     * @param tableUrl  The URL of the table the query would be posted to
+     * @param jsonQuery The query in the PxWeb JSON form
+     * @return The response body PxWeb would send, or null if the table is not available or the query
+     *         cannot be answered locally
+     */
+    public String answer(String tableUrl, String jsonQuery) {
+        PxWebQuery query;
+        try {
+            query = PxWebQuery.parse(tableUrl, jsonQuery);
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+        PxTable table = getTable(tableUrl);
+        return table != null ? answer(table, query) : null;
+    }
+
+    /**
+     * Answers a GET of the table URL from the local copy: the title and the variables with their value
+     * codes and texts.
+     *
+     * @return The metadata in the PxWeb JSON form, or null if the table is not available
+     */
+    public String answerMetadata(String tableUrl) {
+        PxTable table = getTable(tableUrl);
+        if (table == null) {
+            return null;
+        }
+
+        DataCube cube = table.getCube();
+        JsonArray variables = new JsonArray();
+        for (int d = 0; d < cube.getDimensionCount(); d++) {
+            JsonArray values = new JsonArray();
+            JsonArray valueTexts = new JsonArray();
+            for (int i = 0; i < cube.getSize(d); i++) {
+                values.add(cube.getCode(d, i));
+                valueTexts.add(cube.getLabel(d, i));
+            }
+            JsonObject variable = new JsonObject();
+            variable.addProperty("code", cube.getDimensionId(d));
+            variable.addProperty("text", table.getVariableText(d));
+            variable.add("values", values);
+            variable.add("valueTexts", valueTexts);
+            variable.addProperty("elimination", table.isEliminable(d));
+            variable.addProperty("time", d == table.getTimeDimension());
+            variables.add(variable);
+        }
+
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("title", table.getTitle());
+        metadata.add("variables", variables);
+        return metadata.toString();
+    }
+
+    /**
+     * Returns the table, reading it from its file or downloading it if it is not in memory yet. Only one
+     * thread downloads a table; others asking for it at the same time wait for that download.
+     *
+     * @return The table, or null if there is no usable copy and it cannot be downloaded
+     */
+    public PxTable getTable(String tableUrl) {
+        PxTable table = tables.get(tableUrl);
+        if (table != null) {
+            return table;
+        }
+
+        synchronized (tableLocks.computeIfAbsent(tableUrl, url -> new Object())) {
+            table = tables.get(tableUrl);
+            if (table == null) {
+                table = loadTable(tableUrl);
+                if (table != null) {
+                    tables.put(tableUrl, table);
+                }
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Downloads the whole table again and replaces the local copy.
+     *
+     * @throws IOException if the table cannot be downloaded or read
+     */
+    public PxTable ingest(String tableUrl) throws IOException {
+        synchronized (tableLocks.computeIfAbsent(tableUrl, url -> new Object())) {
+            download(tableUrl);
+            PxTable table = readTable(tableUrl);
+            tables.put(tableUrl, table);
+            return table;
+        }
+    }
+
+    private PxTable loadTable(String tableUrl) {
+        Path file = tableFile(tableUrl);
+        try {
+            boolean fresh = Files.isRegularFile(file)
+                    && System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() < MAX_AGE_MILLIS;
+            if (!fresh) {
+                try {
+                    download(tableUrl);
+                } catch (IOException exception) {
+                    // An old copy is still better than no table at all
+                    System.err.println("Could not download table " + tableUrl + ": " + exception.getMessage());
+                    if (!Files.isRegularFile(file)) {
+                        return null;
+                    }
+                }
+            }
+            return readTable(tableUrl);
+        } catch (IOException | RuntimeException exception) {
+            System.err.println("Could not read local table " + file + ": " + exception.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the variables of the table, then posts queries selecting all of their values in the PX format,
+     * split into chunks under the cell limit. The chunks replace the stored ones once all of them are
+     * downloaded.
+     */
+    private void download(String tableUrl) throws IOException {
+        JsonObject metadata = JsonParser.parseString(new String(fetch.fetch(tableUrl, null), StandardCharsets.UTF_8))
+                .getAsJsonObject();
+        PxWebQuery.Builder everything = PxWebQuery.forTable(tableUrl).format(PxWebQuery.FORMAT_PX);
+        for (JsonElement variable : metadata.getAsJsonArray("variables")) {
+            everything.selectAll(variable.getAsJsonObject().get("code").getAsString());
+        }
+        List<PxWebQuery> chunks = new QueryPlanner(metadata, maxCells).plan(everything.build());
+
+        Files.createDirectories(directory);
+        List<Path> temps = new ArrayList<>(chunks.size());
+        long bytes = 0;
+        try {
+            for (PxWebQuery chunk : chunks) {
+                byte[] px = fetch.fetch(tableUrl, chunk.toJson());
+                Path temp = Files.createTempFile(directory, "table", ".tmp");
+                temps.add(temp);
+                Files.write(temp, px);
+                bytes += px.length;
+            }
+            // The first chunk is moved last, as the age of its file tells whether the table is fresh
+            for (int i = temps.size() - 1; i >= 0; i--) {
+                Files.move(temps.get(i), chunkFile(tableUrl, i), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            temps.clear();
+            // Chunks left from an earlier download that was split into more of them
+            int stale = chunks.size();
+            while (Files.deleteIfExists(chunkFile(tableUrl, stale))) {
+                stale++;
+            }
+        } finally {
+            for (Path temp : temps) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        System.out.println("Stored table " + tableUrl + " (" + bytes + " bytes in " + chunks.size() + " chunks)");
+    }
+
+    // Reads the chunks of the table and stitches them together
+    private PxTable readTable(String tableUrl) throws IOException {
+        List<PxTable> chunks = new ArrayList<>();
+        chunks.add(PxFileReader.read(tableFile(tableUrl)));
+        for (int i = 1; Files.isRegularFile(chunkFile(tableUrl, i)); i++) {
+            chunks.add(PxFileReader.read(chunkFile(tableUrl, i)));
+        }
+        PxTable table = PxTable.stitch(chunks);
+        if (table == null) {
+            throw new IOException("The chunks of the table do not fit together");
+        }
+        return table;
+    }
+
+    private static byte[] fetchOverHttp(String tableUrl, String jsonQuery) throws IOException {
+        if (jsonQuery == null) {
+            return execute(tableUrl, new HttpGet(tableUrl));
+        }
+        HttpPost post = new HttpPost(tableUrl);
+        post.setEntity(new StringEntity(jsonQuery, ContentType.APPLICATION_JSON));
+        return execute(tableUrl, post);
+    }
+
+    private static byte[] execute(String tableUrl, ClassicHttpRequest request) throws IOException {
+        try {
+            return TaskExecutors.onHost(tableUrl, () -> send(request));
+        } catch (HostLimiter.ThrottledException exception) {
+            throw new IOException(exception.getMessage(), exception);
+        }
+    }
+
+    private static byte[] send(ClassicHttpRequest request) throws IOException {
+        try (ClassicHttpResponse response = HttpClientProvider.getClient().executeOpen(null, request, null)) {
+            HttpEntity entity = response.getEntity();
+            if (HostLimiter.isThrottled(response)) {
+                EntityUtils.consume(entity);
+                throw HostLimiter.throttled(response);
+            }
+            if (response.getCode() != 200) {
+                EntityUtils.consume(entity);
+                throw new IOException("HTTP code " + response.getCode());
+            }
+            try (InputStream body = entity.getContent()) {
+                return body.readAllBytes();
+            }
+        }
+    }
+
+    // Names the file after the table, with a hash of the URL as the same table exists in several languages
+    Path tableFile(String tableUrl) {
+        String name = tableUrl.substring(tableUrl.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9_.-]", "_");
+        return directory.resolve(name + "-" + CachingDataRetrievable.sha256(tableUrl).substring(0, 12));
+    }
+
+    // The first chunk is kept in the table file, the others in files numbered after it
+    private Path chunkFile(String tableUrl, int chunk) {
+        Path file = tableFile(tableUrl);
+        return chunk == 0 ? file : file.resolveSibling(file.getFileName() + "." + chunk);
+    }
+
+    /**
+     * Answers the query from the table the way PxWeb would.
+     *
+     * @return The response body in the query's format ("json" or "json-stat2"), or null if the query
+     *         selects a variable or value the table does not have, leaves out a variable that cannot be
+     *         eliminated, or uses a filter or format the store does not support
+     */
+    public static String answer(PxTable table, PxWebQuery query) {
+        String format = query.getFormat();
+        if (!PxWebQuery.FORMAT_JSON.equals(format) && !PxWebQuery.FORMAT_JSON_STAT2.equals(format)) {
+            return null;
+        }
+
+        DataCube cube = table.getCube();
+        int dimensionCount = cube.getDimensionCount();
+        for (PxWebQuery.Selection selection : query.getSelections()) {
+            if (cube.dimensionIndex(selection.getCode()) < 0) {
+                return null;
+            }
+        }
+
+        int[][] selected = new int[dimensionCount][];
+        for (int d = 0; d < dimensionCount; d++) {
+            PxWebQuery.Selection selection = query.getSelection(cube.getDimensionId(d));
+            if (selection == null) {
+                if (!table.isEliminable(d)) {
+                    return null;
+                }
+            } else {
+                selected[d] = selectPositions(cube, d, selection);
+                if (selected[d] == null || selected[d].length == 0) {
+                    return null;
+                }
+            }
+        }
+
+        Slice slice = Slice.of(table, selected);
+        return PxWebQuery.FORMAT_JSON.equals(format) ? writeJson(table, slice) : writeJsonStat(table, slice);
+    }
+
+    // Returns the selected positions of the dimension in table order, or null if the selection cannot be answered
+    private static int[] selectPositions(DataCube cube, int dimension, PxWebQuery.Selection selection) {
+        int size = cube.getSize(dimension);
+        BitSet positions = new BitSet(size);
+        switch (selection.getFilter()) {
+            case PxWebQuery.FILTER_ITEM:
+                for (String code : selection.getValues()) {
+                    int position = cube.indexOf(dimension, code);
+                    if (position < 0) {
+                        return null;
+                    }
+                    positions.set(position);
+                }
+                break;
+            case PxWebQuery.FILTER_ALL:
+                for (String pattern : selection.getValues()) {
+                    for (int i = 0; i < size; i++) {
+                        if (matches(pattern, cube.getCode(dimension, i))) {
+                            positions.set(i);
+                        }
+                    }
+                }
+                break;
+            case PxWebQuery.FILTER_TOP:
+                try {
+                    int count = Math.min(size, Integer.parseInt(selection.getValues().get(0)));
+                    positions.set(size - count, size);
+                } catch (RuntimeException exception) {
+                    return null;
+                }
+                break;
+            default:
+                return null;
+        }
+        return positions.stream().toArray();
+    }
+
+    // Matches a value code against a pattern of the "all" filter, where * stands for any characters
+    private static boolean matches(String pattern, String code) {
+        int star = pattern.indexOf('*');
+        if (star < 0) {
+            return pattern.equals(code);
+        }
+        String prefix = pattern.substring(0, star);
+        String suffix = pattern.substring(pattern.lastIndexOf('*') + 1);
+        return code.length() >= prefix.length() + suffix.length() && code.startsWith(prefix) && code.endsWith(suffix);
+    }
+
+    private static String writeJsonStat(PxTable table, Slice slice) {
+        DataCube cube = table.getCube();
+        JsonArray ids = new JsonArray();
+        JsonArray sizes = new JsonArray();
+        JsonObject dimensions = new JsonObject();
+        for (int r = 0; r < slice.dimensions.length; r++) {
+            int d = slice.dimensions[r];
+            JsonObject index = new JsonObject();
+            JsonObject labels = new JsonObject();
+            for (int i = 0; i < slice.positions[r].length; i++) {
+                String code = cube.getCode(d, slice.positions[r][i]);
+                index.addProperty(code, i);
+                labels.addProperty(code, cube.getLabel(d, slice.positions[r][i]));
+            }
+            JsonObject category = new JsonObject();
+            category.add("index", index);
+            category.add("label", labels);
+            JsonObject dimension = new JsonObject();
+            dimension.addProperty("label", table.getVariableText(d));
+            dimension.add("category", category);
+
+            ids.add(cube.getDimensionId(d));
+            sizes.add(slice.positions[r].length);
+            dimensions.add(cube.getDimensionId(d), dimension);
+        }
+
+        JsonArray values = new JsonArray();
+        for (int i = 0; i < slice.values.length; i++) {
+            if (slice.present.get(i)) {
+                values.add(slice.values[i]);
+            } else {
+                values.add(JsonNull.INSTANCE);
+            }
+        }
+
+        JsonObject dataset = new JsonObject();
+        dataset.addProperty("class", "dataset");
+        dataset.addProperty("label", table.getTitle());
+        dataset.add("id", ids);
+        dataset.add("size", sizes);
+        dataset.add("dimension", dimensions);
+        dataset.add("value", values);
+        return dataset.toString();
+    }
+
+    // Writes one row per combination of the key variables, with one value per selected content value
+    private static String writeJson(PxTable table, Slice slice) {
+        DataCube cube = table.getCube();
+        int contentIndex = -1;
+        List<Integer> keyIndexes = new ArrayList<>();
+        for (int r = 0; r < slice.dimensions.length; r++) {
+            if (slice.dimensions[r] == table.getContentDimension()) {
+                contentIndex = r;
+            } else {
+                keyIndexes.add(r);
+            }
+        }
+
+        JsonArray columns = new JsonArray();
+        for (int r : keyIndexes) {
+            int d = slice.dimensions[r];
+            JsonObject column = new JsonObject();
+            column.addProperty("code", cube.getDimensionId(d));
+            column.addProperty("text", table.getVariableText(d));
+            column.addProperty("type", d == table.getTimeDimension() ? "t" : "d");
+            columns.add(column);
+        }
+        int valueCount = contentIndex >= 0 ? slice.positions[contentIndex].length : 1;
+        for (int v = 0; v < valueCount; v++) {
+            JsonObject column = new JsonObject();
+            column.addProperty("code", contentIndex >= 0 ? cube.getCode(table.getContentDimension(), slice.positions[contentIndex][v]) : "value");
+            column.addProperty("text", contentIndex >= 0 ? cube.getLabel(table.getContentDimension(), slice.positions[contentIndex][v]) : table.getTitle());
+            column.addProperty("type", "c");
+            columns.add(column);
+        }
+
+        JsonArray data = new JsonArray();
+        int rowCount = slice.values.length / valueCount;
+        int[] coordinates = new int[slice.dimensions.length];
+        for (int row = 0; row < rowCount; row++) {
+            // Walk the key variables in row-major order; the content variable is fixed at 0 here
+            int rest = row;
+            for (int k = keyIndexes.size() - 1; k >= 0; k--) {
+                int r = keyIndexes.get(k);
+                coordinates[r] = rest % slice.positions[r].length;
+                rest /= slice.positions[r].length;
+            }
+
+            JsonArray key = new JsonArray();
+            for (int r : keyIndexes) {
+                key.add(cube.getCode(slice.dimensions[r], slice.positions[r][coordinates[r]]));
+            }
+            JsonArray values = new JsonArray();
+            for (int v = 0; v < valueCount; v++) {
+                if (contentIndex >= 0) {
+                    coordinates[contentIndex] = v;
+                }
+                int offset = slice.offset(coordinates);
+                values.add(slice.present.get(offset) ? formatNumber(slice.values[offset]) : MISSING_SYMBOL);
+            }
+
+            JsonObject dataRow = new JsonObject();
+            dataRow.add("key", key);
+            dataRow.add("values", values);
+            data.add(dataRow);
+        }
+
+        JsonObject response = new JsonObject();
+        response.add("columns", columns);
+        response.add("comments", new JsonArray());
+        response.add("data", data);
+        return response.toString();
+    }
+
+    // PxWeb sends the numbers of the "json" format as strings, without a fraction when there is none
+    private static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * The selected part of a table: the selected dimensions in table order with their selected positions,
+     * and the values in row-major order over them. Eliminated dimensions are fixed at their elimination
+     * value or summed over.
+     */
+    private static final class Slice {
+        private final int[] dimensions;
+        private final int[][] positions;
+        private final int[] strides;
+        private final double[] values;
+        private final BitSet present;
+
+        private Slice(int[] dimensions, int[][] positions, double[] values, BitSet present) {
+            this.dimensions = dimensions;
+            this.positions = positions;
+            this.values = values;
+            this.present = present;
+            this.strides = new int[dimensions.length];
+            int stride = 1;
+            for (int r = dimensions.length - 1; r >= 0; r--) {
+                strides[r] = stride;
+                stride *= positions[r].length;
+            }
+        }
+
+        int offset(int[] coordinates) {
+            int offset = 0;
+            for (int r = 0; r < coordinates.length; r++) {
+                offset += coordinates[r] * strides[r];
+            }
+            return offset;
+        }
+
+        static Slice of(PxTable table, int[][] selected) {
+            DataCube cube = table.getCube();
+            List<Integer> kept = new ArrayList<>();
+            int fixedOffset = 0;
+            // Offsets of every combination of the dimensions that are eliminated by summing
+            int[] sumOffsets = {0};
+            for (int d = 0; d < selected.length; d++) {
+                if (selected[d] != null) {
+                    kept.add(d);
+                } else if (table.getEliminationPosition(d) >= 0) {
+                    fixedOffset += table.getEliminationPosition(d) * cube.getStride(d);
+                } else {
+                    int size = cube.getSize(d);
+                    int[] combined = new int[sumOffsets.length * size];
+                    for (int i = 0; i < sumOffsets.length; i++) {
+                        for (int j = 0; j < size; j++) {
+                            combined[i * size + j] = sumOffsets[i] + j * cube.getStride(d);
+                        }
+                    }
+                    sumOffsets = combined;
+                }
+            }
+
+            int[] dimensions = kept.stream().mapToInt(Integer::intValue).toArray();
+            int[][] positions = new int[dimensions.length][];
+            int cellCount = 1;
+            for (int r = 0; r < dimensions.length; r++) {
+                positions[r] = selected[dimensions[r]];
+                cellCount *= positions[r].length;
+            }
+
+            double[] values = new double[cellCount];
+            BitSet present = new BitSet(cellCount);
+            int[] coordinates = new int[dimensions.length];
+            for (int cell = 0; cell < cellCount; cell++) {
+                int base = fixedOffset;
+                for (int r = 0; r < dimensions.length; r++) {
+                    base += positions[r][coordinates[r]] * cube.getStride(dimensions[r]);
+                }
+
+                double sum = 0;
+                boolean any = false;
+                for (int sumOffset : sumOffsets) {
+                    if (cube.isPresentAt(base + sumOffset)) {
+                        sum += cube.getAt(base + sumOffset);
+                        any = true;
+                    }
+                }
+                if (any) {
+                    values[cell] = sum;
+                    present.set(cell);
+                }
+
+                // Advance the coordinates in row-major order
+                for (int r = dimensions.length - 1; r >= 0; r--) {
+                    if (++coordinates[r] < positions[r].length) {
+                        break;
+                    }
+                    coordinates[r] = 0;
+                }
+            }
+            return new Slice(dimensions, positions, values, present);
+        }
+    }
+}
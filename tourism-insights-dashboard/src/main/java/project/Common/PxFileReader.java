@@ -0,0 +1,429 @@
+package project.Common;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The PxFileReader class reads a table in the PX file format, the native format of PxWeb, into a PxTable.
+ *
+ * A PX file is a list of keywords, such as STUB="Year","Region"; or VALUES("Year")="2020","2021";, followed
+ * by the DATA keyword with every value of the table. The file is read as a byte stream in one pass: the
+ * keywords are parsed as they come, and once DATA is reached the sizes of all variables are known, so the
+ * values are parsed straight into a preallocated array without building strings for the numbers. Quoted
+ * symbols in the data, such as "." or "..", mark missing values.
+ *
+ * Strings are decoded with the charset given by the CODEPAGE keyword, which PX files set before any
+ * variable. Keywords in other languages than the default one (those with a [language] suffix) are
+ * skipped.
+ */
+public class PxFileReader {
+    private static final double[] POWERS_OF_TEN = new double[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final InputStream in;
+    private int peeked = -2;
+    private Charset charset = StandardCharsets.ISO_8859_1;
+
+    private String title = "";
+    private List<String> stub = new ArrayList<>();
+    private List<String> heading = new ArrayList<>();
+    private String contentVariable;
+    private final Map<String, List<String>> values = new HashMap<>();
+    private final Map<String, List<String>> codes = new HashMap<>();
+    private final Map<String, String> variableCodes = new HashMap<>();
+    private final Map<String, String> eliminations = new HashMap<>();
+    private final Set<String> timeVariables = new HashSet<>();
+
+    private double[] data;
+    private BitSet present;
+
+    private PxFileReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads a table from the stream. The stream is not closed.
+     *
+     * @throws IOException if the stream cannot be read or is not a valid PX file
+     */
+    public static PxTable read(InputStream in) throws IOException {
+        return new PxFileReader(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 1 << 16)).readTable();
+    }
+
+    public static PxTable read(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    private PxTable readTable() throws IOException {
+        while (true) {
+            skipWhitespace();
+            if (peek() < 0) {
+                break;
+            }
+            Keyword keyword = readKeyword();
+            if ("DATA".equals(keyword.name)) {
+                readData();
+                break;
+            }
+            List<String> value = readValue();
+            if (keyword.language == null) {
+                apply(keyword, value);
+            }
+        }
+        if (data == null) {
+            throw new IOException("PX file has no DATA");
+        }
+        return buildTable();
+    }
+
+    private void apply(Keyword keyword, List<String> value) {
+        String argument = keyword.arguments.isEmpty() ? null : keyword.arguments.get(0);
+        String first = value.isEmpty() ? "" : value.get(0);
+        switch (keyword.name) {
+            case "CHARSET":
+                if ("ANSI".equalsIgnoreCase(first)) {
+                    charset = Charset.forName("windows-1252");
+                }
+                break;
+            case "CODEPAGE":
+                try {
+                    charset = Charset.forName(first);
+                } catch (IllegalArgumentException exception) {
+                    System.err.println("Unknown PX code page " + first + ", reading as " + charset);
+                }
+                break;
+            case "TITLE":
+                title = first;
+                break;
+            case "STUB":
+                stub = value;
+                break;
+            case "HEADING":
+                heading = value;
+                break;
+            case "CONTVARIABLE":
+                contentVariable = first;
+                break;
+            case "VALUES":
+                values.put(argument, value);
+                break;
+            case "CODES":
+                codes.put(argument, value);
+                break;
+            case "VARIABLECODE":
+                variableCodes.put(argument, first);
+                break;
+            case "ELIMINATION":
+                eliminations.put(argument, first);
+                break;
+            case "TIMEVAL":
+                timeVariables.add(argument);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Reads NAME, NAME[language] or NAME("argument", ...) up to and including the "="
+    private Keyword readKeyword() throws IOException {
+        StringBuilder name = new StringBuilder();
+        String language = null;
+        List<String> arguments = new ArrayList<>();
+
+        int c = next();
+        while (c != '=' && c != '[' && c != '(') {
+            if (c < 0) {
+                throw new EOFException("PX file ends inside a keyword");
+            }
+            if (!Character.isWhitespace(c)) {
+                name.append((char) c);
+            }
+            c = next();
+        }
+        if (c == '[') {
+            StringBuilder languageCode = new StringBuilder();
+            for (c = next(); c != ']'; c = next()) {
+                if (c < 0) {
+                    throw new EOFException("PX file ends inside a keyword");
+                }
+                languageCode.append((char) c);
+            }
+            language = languageCode.toString();
+            c = nextNonWhitespace();
+        }
+        if (c == '(') {
+            for (c = nextNonWhitespace(); c != ')'; c = nextNonWhitespace()) {
+                if (c == '"') {
+                    arguments.add(readQuoted());
+                } else if (c < 0) {
+                    throw new EOFException("PX file ends inside a keyword");
+                }
+            }
+            c = nextNonWhitespace();
+        }
+        if (c != '=') {
+            throw new IOException("Expected '=' after PX keyword " + name);
+        }
+        return new Keyword(name.toString(), language, arguments);
+    }
+
+    /**
+     * Reads a value up to and including the ";". Items are separated by commas; quoted strings that follow
+     * each other without a comma, as long texts are split over lines, are joined into one item.
+     */
+    private List<String> readValue() throws IOException {
+        List<String> items = new ArrayList<>();
+        boolean joinNext = false;
+        while (true) {
+            int c = nextNonWhitespace();
+            if (c < 0) {
+                throw new EOFException("PX file ends inside a value");
+            }
+            if (c == ';') {
+                return items;
+            }
+            if (c == ',') {
+                joinNext = false;
+            } else if (c == '"') {
+                String text = readQuoted();
+                if (joinNext) {
+                    items.set(items.size() - 1, items.get(items.size() - 1) + text);
+                } else {
+                    items.add(text);
+                }
+                joinNext = true;
+            } else {
+                items.add(readBare(c));
+                joinNext = false;
+            }
+        }
+    }
+
+    // Reads an unquoted item such as YES or TLIST(A1, "2020"-"2024"), including anything in parentheses
+    private String readBare(int first) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int depth = 0;
+        int c = first;
+        while (true) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            }
+            bytes.write(c);
+            c = peek();
+            if (c < 0 || (depth <= 0 && (c == ',' || c == ';' || Character.isWhitespace(c)))) {
+                return new String(bytes.toByteArray(), charset);
+            }
+            next();
+        }
+    }
+
+    // Reads the rest of a quoted string after its opening quote
+    private String readQuoted() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int c = next(); c != '"'; c = next()) {
+            if (c < 0) {
+                throw new EOFException("PX file ends inside a string");
+            }
+            if (c != '\r' && c != '\n') {
+                bytes.write(c);
+            }
+        }
+        return new String(bytes.toByteArray(), charset);
+    }
+
+    private void readData() throws IOException {
+        int cellCount = 1;
+        for (String variable : variables()) {
+            List<String> variableValues = values.get(variable);
+            if (variableValues == null) {
+                throw new IOException("PX file has no VALUES for " + variable);
+            }
+            cellCount = Math.multiplyExact(cellCount, variableValues.size());
+        }
+        data = new double[cellCount];
+        present = new BitSet(cellCount);
+
+        int index = 0;
+        while (true) {
+            int c = next();
+            while (c == ',' || (c >= 0 && Character.isWhitespace(c))) {
+                c = next();
+            }
+            if (c < 0 || c == ';') {
+                break;
+            }
+            if (index >= cellCount) {
+                throw new IOException("PX file has more than " + cellCount + " values");
+            }
+            if (c == '"') {
+                // A symbol such as "." or ".." for a value that is missing or confidential
+                readQuoted();
+            } else {
+                double value = readNumber(c);
+                if (!Double.isNaN(value)) {
+                    data[index] = value;
+                    present.set(index);
+                }
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Parses a number such as 1234, -5 or 12.75 from the stream. Numbers with up to 18 digits and no
+     * exponent are computed from their digits directly; anything else is handed to Double.parseDouble.
+     * Returns NaN for items that are not numbers.
+     */
+    private double readNumber(int first) throws IOException {
+        StringBuilder text = new StringBuilder(16);
+        boolean negative = false;
+        boolean simple = true;
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+
+        int c = first;
+        while (true) {
+            text.append((char) c);
+            if (c == '-' && text.length() == 1) {
+                negative = true;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (++digits > 18) {
+                    simple = false;
+                }
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                simple = false;
+            }
+
+            c = peek();
+            if (c < 0 || c == ',' || c == ';' || Character.isWhitespace(c)) {
+                break;
+            }
+            next();
+        }
+
+        if (simple && digits > 0) {
+            double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(text.toString());
+        } catch (NumberFormatException exception) {
+            return Double.NaN;
+        }
+    }
+
+    private List<String> variables() {
+        List<String> variables = new ArrayList<>(stub);
+        variables.addAll(heading);
+        return variables;
+    }
+
+    private PxTable buildTable() {
+        List<String> variables = variables();
+        int count = variables.size();
+        String[] dimensionIds = new String[count];
+        String[] variableTexts = new String[count];
+        String[][] categoryCodes = new String[count][];
+        String[][] categoryLabels = new String[count][];
+        boolean[] eliminable = new boolean[count];
+        int[] eliminationPositions = new int[count];
+        int contentDimension = -1;
+        int timeDimension = -1;
+
+        for (int d = 0; d < count; d++) {
+            String variable = variables.get(d);
+            List<String> labels = values.get(variable);
+            List<String> variableCodesList = codes.getOrDefault(variable, labels);
+
+            dimensionIds[d] = variableCodes.getOrDefault(variable, variable);
+            variableTexts[d] = variable;
+            categoryLabels[d] = labels.toArray(new String[0]);
+            categoryCodes[d] = variableCodesList.size() == labels.size() ? variableCodesList.toArray(new String[0]) : categoryLabels[d];
+
+            if (variable.equals(contentVariable)) {
+                contentDimension = d;
+            }
+            if (timeVariables.contains(variable)) {
+                timeDimension = d;
+            }
+
+            // ELIMINATION is YES (sum over the variable), NO, or the text of the value to answer with
+            String elimination = eliminations.get(variable);
+            eliminable[d] = elimination != null && !"NO".equalsIgnoreCase(elimination);
+            eliminationPositions[d] = eliminable[d] && !"YES".equalsIgnoreCase(elimination) ? labels.indexOf(elimination) : -1;
+        }
+
+        DataCube cube = new DataCube(dimensionIds, categoryCodes, categoryLabels, data, present);
+        return new PxTable(title, cube, variableTexts, contentDimension, timeDimension, eliminable, eliminationPositions);
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = in.read();
+        }
+        return peeked;
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        peeked = -2;
+        return c;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = next();
+        while (c >= 0 && Character.isWhitespace(c)) {
+            c = next();
+        }
+        return c;
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (peek() >= 0 && Character.isWhitespace(peek())) {
+            next();
+        }
+    }
+
+    private static final class Keyword {
+        private final String name;
+        private final String language;
+        private final List<String> arguments;
+
+        Keyword(String name, String language, List<String> arguments) {
+            this.name = name;
+            this.language = language;
+            this.arguments = arguments;
+        }
+    }
+}
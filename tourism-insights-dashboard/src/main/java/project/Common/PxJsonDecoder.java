@@ -0,0 +1,271 @@
+package project.Common;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * The PxJsonDecoder class reads a response in the PxWeb "json" format straight into a PxJsonTable.
+ *
+ * The response is read as a stream: rows are written into growing primitive column buffers as they are
+ * read, so no JSON tree of the response is built. The "columns" list tells which columns are keys and
+ * which are values (content variables have the type "c"); "comments", "metadata" and anything else are
+ * skipped. Values that are not numbers, such as the "." PxWeb uses for missing data, are stored as NaN.
+ *
+ * Any PxWeb table requested with "format": "json" can be decoded with this class; see
+ * PxJsonTableDataService for the service base class that uses it.
+ */
+public class PxJsonDecoder {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final List<String> keyColumns = new ArrayList<>();
+    private final List<String> valueColumns = new ArrayList<>();
+
+    private int keyCount = -1;
+    private int valueCount = -1;
+    private int rowCount;
+    private int capacity = INITIAL_CAPACITY;
+
+    private int[][] keys;
+    private double[][] values;
+    private List<List<String>> dictionaries;
+    private List<Map<String, Integer>> dictionaryCodes;
+
+    // Keys and values of the row being read; a row lists its keys and values in either order
+    private String[] rowKeys = new String[8];
+    private int rowKeyCount;
+    private double[] rowValues = new double[8];
+    private int rowValueCount;
+
+    private PxJsonDecoder() {
+    }
+
+    /**
+     * Decodes a response body.
+     *
+     * @return The table, or null if the body is not a valid PxWeb "json" response
+     */
+    public static PxJsonTable decode(String responseBody) {
+        if (responseBody == null) {
+            return null;
+        }
+        try {
+            return decode(new StringReader(responseBody));
+        } catch (IOException | IllegalStateException | NumberFormatException exception) {
+            System.err.println("Error while decoding PxWeb table: " + exception.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a response read from the stream.
+     *
+     * @throws IOException if the stream cannot be read or is not valid JSON
+     * @throws IllegalStateException if the JSON does not have the shape of a PxWeb "json" response
+     */
+    public static PxJsonTable decode(Reader in) throws IOException {
+        return new PxJsonDecoder().read(new JsonReader(in));
+    }
+
+    private PxJsonTable read(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("columns".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                readColumns(reader);
+            } else if ("data".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readRow(reader);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return buildTable();
+    }
+
+    private void readColumns(JsonReader reader) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String code = null;
+            String type = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if ("code".equals(field) && reader.peek() == JsonToken.STRING) {
+                    code = reader.nextString();
+                } else if ("type".equals(field) && reader.peek() == JsonToken.STRING) {
+                    type = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if ("c".equals(type)) {
+                valueColumns.add(code);
+            } else {
+                keyColumns.add(code);
+            }
+        }
+        reader.endArray();
+    }
+
+    private void readRow(JsonReader reader) throws IOException {
+        rowKeyCount = 0;
+        rowValueCount = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if ("key".equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    addRowKey(reader.nextString());
+                }
+                reader.endArray();
+            } else if ("values".equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    addRowValue(readValue(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        commitRow();
+    }
+
+    // Reads a value; PxWeb sends numbers as strings and marks missing ones with symbols such as "."
+    private static double readValue(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NUMBER) {
+            return reader.nextDouble();
+        }
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return Double.NaN;
+        }
+        String text = reader.nextString();
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException exception) {
+            return Double.NaN;
+        }
+    }
+
+    private void addRowKey(String key) {
+        if (rowKeyCount == rowKeys.length) {
+            rowKeys = Arrays.copyOf(rowKeys, rowKeys.length * 2);
+        }
+        rowKeys[rowKeyCount++] = key;
+    }
+
+    private void addRowValue(double value) {
+        if (rowValueCount == rowValues.length) {
+            rowValues = Arrays.copyOf(rowValues, rowValues.length * 2);
+        }
+        rowValues[rowValueCount++] = value;
+    }
+
+    private void commitRow() {
+        if (keyCount < 0) {
+            allocate(rowKeyCount, rowValueCount);
+        } else if (rowKeyCount != keyCount || rowValueCount != valueCount) {
+            throw new IllegalStateException("Row " + rowCount + " has " + rowKeyCount + " keys and " + rowValueCount
+                    + " values, expected " + keyCount + " and " + valueCount);
+        }
+        if (rowCount == capacity) {
+            grow();
+        }
+
+        for (int column = 0; column < keyCount; column++) {
+            keys[column][rowCount] = encode(column, rowKeys[column]);
+        }
+        for (int column = 0; column < valueCount; column++) {
+            values[column][rowCount] = rowValues[column];
+        }
+        rowCount++;
+    }
+
+    // Returns the dictionary code of the key, adding it to the column's dictionary if it is new
+    private int encode(int column, String key) {
+        Map<String, Integer> codes = dictionaryCodes.get(column);
+        Integer code = codes.get(key);
+        if (code == null) {
+            List<String> dictionary = dictionaries.get(column);
+            code = dictionary.size();
+            dictionary.add(key);
+            codes.put(key, code);
+        }
+        return code;
+    }
+
+    private void allocate(int keyColumnCount, int valueColumnCount) {
+        keyCount = keyColumnCount;
+        valueCount = valueColumnCount;
+        keys = new int[keyCount][capacity];
+        values = new double[valueCount][capacity];
+        dictionaries = new ArrayList<>(keyCount);
+        dictionaryCodes = new ArrayList<>(keyCount);
+        for (int column = 0; column < keyCount; column++) {
+            dictionaries.add(new ArrayList<>());
+            dictionaryCodes.add(new HashMap<>());
+        }
+    }
+
+    private void grow() {
+        capacity *= 2;
+        for (int column = 0; column < keyCount; column++) {
+            keys[column] = Arrays.copyOf(keys[column], capacity);
+        }
+        for (int column = 0; column < valueCount; column++) {
+            values[column] = Arrays.copyOf(values[column], capacity);
+        }
+    }
+
+    private PxJsonTable buildTable() {
+        if (keyCount < 0) {
+            // No rows: the columns are still known from the "columns" list
+            allocate(keyColumns.size(), valueColumns.size());
+        }
+
+        int[][] keyData = new int[keyCount][];
+        String[][] dictionaryData = new String[keyCount][];
+        for (int column = 0; column < keyCount; column++) {
+            keyData[column] = Arrays.copyOf(keys[column], rowCount);
+            dictionaryData[column] = dictionaries.get(column).toArray(new String[0]);
+        }
+        double[][] valueData = new double[valueCount][];
+        for (int column = 0; column < valueCount; column++) {
+            valueData[column] = Arrays.copyOf(values[column], rowCount);
+        }
+
+        return new PxJsonTable(columnNames(keyColumns, keyCount, "key"), columnNames(valueColumns, valueCount, "value"),
+                dictionaryData, keyData, valueData);
+    }
+
+    // Uses the codes from the "columns" list, or generated names if the list does not match the rows
+    private static String[] columnNames(List<String> codes, int count, String prefix) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = codes.size() == count && codes.get(i) != null ? codes.get(i) : prefix + i;
+        }
+        return names;
+    }
+}
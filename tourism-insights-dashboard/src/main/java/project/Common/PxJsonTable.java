@@ -0,0 +1,218 @@
+package project.Common;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The PxJsonTable class holds a table in the PxWeb "json" response format as primitive columns.
+ *
+ * In that format every row has a list of keys (the categories of the dimensions that were queried, for
+ * example year and municipality) and a list of values (one per content variable). Here each key column
+ * is an int column of dictionary codes: every distinct key is stored once per column and rows refer to it
+ * by its code. Each value column is a double column; values the API marks as missing, such as ".", read as
+ * NaN.
+ *
+ * Tables are produced by PxJsonDecoder and are immutable. Like a DataCube, a table can be written to a
+ * Snapshot with writeTo() and opened again with fromSnapshot(), reading its columns from the mapped file.
+ */
+public class PxJsonTable {
+    private final String[] keyColumns;
+    private final String[] valueColumns;
+    private final String[][] dictionaries;
+    private final List<Map<String, Integer>> dictionaryCodes;
+    private final IntBuffer[] keys;
+    private final DoubleBuffer[] values;
+    private final int rowCount;
+
+    // Every column holds one entry per row
+    PxJsonTable(String[] keyColumns, String[] valueColumns, String[][] dictionaries, int[][] keys, double[][] values) {
+        this(keyColumns, valueColumns, dictionaries, wrap(keys), wrap(values));
+    }
+
+    private PxJsonTable(String[] keyColumns, String[] valueColumns, String[][] dictionaries, IntBuffer[] keys,
+                        DoubleBuffer[] values) {
+        this.keyColumns = keyColumns;
+        this.valueColumns = valueColumns;
+        this.dictionaries = dictionaries;
+        this.keys = keys;
+        this.values = values;
+        this.rowCount = keys.length > 0 ? keys[0].capacity() : values.length > 0 ? values[0].capacity() : 0;
+
+        this.dictionaryCodes = new ArrayList<>(dictionaries.length);
+        for (String[] dictionary : dictionaries) {
+            Map<String, Integer> codes = new HashMap<>(dictionary.length * 2);
+            for (int code = 0; code < dictionary.length; code++) {
+                codes.put(dictionary[code], code);
+            }
+            dictionaryCodes.add(codes);
+        }
+        for (IntBuffer column : keys) {
+            checkRowCount(column.capacity());
+        }
+        for (DoubleBuffer column : values) {
+            checkRowCount(column.capacity());
+        }
+    }
+
+    private void checkRowCount(int columnLength) {
+        if (columnLength != rowCount) {
+            throw new IllegalArgumentException("Expected " + rowCount + " rows but a column has " + columnLength);
+        }
+    }
+
+    private static IntBuffer[] wrap(int[][] columns) {
+        IntBuffer[] buffers = new IntBuffer[columns.length];
+        for (int column = 0; column < columns.length; column++) {
+            buffers[column] = IntBuffer.wrap(columns[column]);
+        }
+        return buffers;
+    }
+
+    private static DoubleBuffer[] wrap(double[][] columns) {
+        DoubleBuffer[] buffers = new DoubleBuffer[columns.length];
+        for (int column = 0; column < columns.length; column++) {
+            buffers[column] = DoubleBuffer.wrap(columns[column]);
+        }
+        return buffers;
+    }
+
+    /**
+     * Opens a table written with writeTo(). The rows are read from the snapshot's columns as they are
+     * visited.
+     *
+     * @return The table, or null if the snapshot does not hold a table
+     */
+    public static PxJsonTable fromSnapshot(Snapshot snapshot) {
+        String[] keyColumns = snapshot.getDictionary("keyColumns");
+        String[] valueColumns = snapshot.getDictionary("valueColumns");
+        if (keyColumns == null || valueColumns == null) {
+            return null;
+        }
+
+        String[][] dictionaries = new String[keyColumns.length][];
+        IntBuffer[] keys = new IntBuffer[keyColumns.length];
+        for (int column = 0; column < keyColumns.length; column++) {
+            dictionaries[column] = snapshot.getDictionary("keys/" + keyColumns[column]);
+            keys[column] = snapshot.getIntColumn("keys/" + keyColumns[column]);
+            if (dictionaries[column] == null || keys[column] == null) {
+                return null;
+            }
+        }
+        DoubleBuffer[] values = new DoubleBuffer[valueColumns.length];
+        for (int column = 0; column < valueColumns.length; column++) {
+            values[column] = snapshot.getDoubleColumn("values/" + valueColumns[column]);
+            if (values[column] == null) {
+                return null;
+            }
+        }
+
+        try {
+            return new PxJsonTable(keyColumns, valueColumns, dictionaries, keys, values);
+        } catch (IllegalArgumentException exception) {
+            System.err.println("Snapshot does not hold a valid table: " + exception.getMessage());
+            return null;
+        }
+    }
+
+    // Adds the columns and their dictionaries to the snapshot
+    public void writeTo(Snapshot.Writer writer) {
+        writer.dictionary("keyColumns", keyColumns);
+        writer.dictionary("valueColumns", valueColumns);
+        for (int column = 0; column < keyColumns.length; column++) {
+            writer.dictionary("keys/" + keyColumns[column], dictionaries[column]);
+            writer.intColumn("keys/" + keyColumns[column], keys[column]);
+        }
+        for (int column = 0; column < valueColumns.length; column++) {
+            writer.doubleColumn("values/" + valueColumns[column], values[column]);
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getKeyColumnCount() {
+        return keyColumns.length;
+    }
+
+    public int getValueColumnCount() {
+        return valueColumns.length;
+    }
+
+    // Returns the variable code of the key column, e.g. "Vuosi"
+    public String getKeyColumn(int column) {
+        return keyColumns[column];
+    }
+
+    // Returns the content code of the value column, e.g. "yop_matkoja"
+    public String getValueColumn(int column) {
+        return valueColumns[column];
+    }
+
+    // Returns the position of the key column with the given variable code, or -1 if there is none
+    public int keyColumnIndex(String code) {
+        return indexOf(keyColumns, code);
+    }
+
+    // Returns the position of the value column with the given content code, or -1 if there is none
+    public int valueColumnIndex(String code) {
+        return indexOf(valueColumns, code);
+    }
+
+    // Returns the dictionary code of the key in the given row
+    public int getKeyCode(int column, int row) {
+        return keys[column].get(row);
+    }
+
+    public String getKey(int column, int row) {
+        return dictionaries[column][keys[column].get(row)];
+    }
+
+    // Returns the number of distinct keys in the column
+    public int getDictionarySize(int column) {
+        return dictionaries[column].length;
+    }
+
+    public String getDictionaryEntry(int column, int code) {
+        return dictionaries[column][code];
+    }
+
+    // Returns the dictionary code of the key, or -1 if no row of the column has it
+    public int lookupKeyCode(int column, String key) {
+        Integer code = dictionaryCodes.get(column).get(key);
+        return code != null ? code : -1;
+    }
+
+    // Returns the value in the given row, or NaN if it is missing
+    public double getValue(int column, int row) {
+        return values[column].get(row);
+    }
+
+    public boolean isMissing(int column, int row) {
+        return Double.isNaN(values[column].get(row));
+    }
+
+    // Approximate memory held by the table in bytes, used as its weight in the response cache
+    public long estimateBytes() {
+        long bytes = (long) rowCount * (4L * keyColumns.length + 8L * valueColumns.length);
+        for (String[] dictionary : dictionaries) {
+            for (String key : dictionary) {
+                bytes += 40 + 2L * key.length();
+            }
+        }
+        return bytes;
+    }
+
+    private static int indexOf(String[] columns, String code) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(code)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,109 @@
+package project.Common;
+
+import java.util.List;
+
+/**
+ * The PxTable class is a complete PxWeb table read from a PX file: the values as a DataCube, plus the
+ * metadata needed to answer PxWeb queries on it locally.
+ *
+ * The dimensions of the cube are the variables of the table in PX order (the STUB variables followed by
+ * the HEADING variables) and are identified by their variable codes, the same codes PxWeb queries use.
+ * For every variable the table also knows its text, whether it is the content or the time variable, and
+ * how PxWeb eliminates it when a query does not select it.
+ *
+ * Tables are produced by PxFileReader and are immutable. stitch() joins the tables read from the chunks a
+ * large table is downloaded in.
+ */
+public class PxTable {
+    private final String title;
+    private final DataCube cube;
+    private final String[] variableTexts;
+    private final int contentDimension;
+    private final int timeDimension;
+    private final boolean[] eliminable;
+    private final int[] eliminationPositions;
+
+    PxTable(String title, DataCube cube, String[] variableTexts, int contentDimension, int timeDimension,
+            boolean[] eliminable, int[] eliminationPositions) {
+        this.title = title;
+        this.cube = cube;
+        this.variableTexts = variableTexts;
+        this.contentDimension = contentDimension;
+        this.timeDimension = timeDimension;
+        this.eliminable = eliminable;
+        this.eliminationPositions = eliminationPositions;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public DataCube getCube() {
+        return cube;
+    }
+
+    // Returns the text of the variable, e.g. "Year" for the variable with the code "Vuosi"
+    public String getVariableText(int dimension) {
+        return variableTexts[dimension];
+    }
+
+    // Returns the dimension of the content variable (CONTVARIABLE), or -1 if the table has none
+    public int getContentDimension() {
+        return contentDimension;
+    }
+
+    // Returns the dimension of the time variable (the one with TIMEVAL), or -1 if the table has none
+    public int getTimeDimension() {
+        return timeDimension;
+    }
+
+    // Whether PxWeb leaves the variable out of an answer when a query does not select it
+    public boolean isEliminable(int dimension) {
+        return eliminable[dimension];
+    }
+
+    /**
+     * Returns the position of the category PxWeb answers with when the variable is eliminated, or -1 if
+     * an eliminated variable is summed over all of its categories.
+     */
+    public int getEliminationPosition(int dimension) {
+        return eliminationPositions[dimension];
+    }
+
+    /**
+     * Joins tables holding different values of the same variables, such as the chunks of one table, the way
+     * DataCube.stitch() joins their cubes. The metadata is taken from the first table.
+     *
+     * @return The joined table, or null if the tables do not have the same variables
+     */
+    static PxTable stitch(List<PxTable> parts) {
+        PxTable first = parts.get(0);
+        if (parts.size() == 1) {
+            return first;
+        }
+        DataCube[] cubes = new DataCube[parts.size()];
+        for (int p = 0; p < parts.size(); p++) {
+            cubes[p] = parts.get(p).cube;
+        }
+        DataCube cube = DataCube.stitch(List.of(cubes));
+        if (cube == null) {
+            return null;
+        }
+
+        // The value to answer with for an eliminated variable may be in any of the parts
+        int[] eliminationPositions = new int[first.eliminationPositions.length];
+        for (int d = 0; d < eliminationPositions.length; d++) {
+            eliminationPositions[d] = -1;
+            for (PxTable part : parts) {
+                int c = part.cube.dimensionIndex(cube.getDimensionId(d));
+                int position = part.eliminationPositions[c];
+                if (position >= 0) {
+                    eliminationPositions[d] = cube.indexOf(d, part.cube.getCode(c, position));
+                    break;
+                }
+            }
+        }
+        return new PxTable(first.title, cube, first.variableTexts, first.contentDimension, first.timeDimension,
+                first.eliminable, eliminationPositions);
+    }
+}
@@ -0,0 +1,345 @@
+package project.Common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * The PxWebQuery class is a typed query for a PxWeb table: the table URL, a selection of values for each
+ * queried variable, and the response format. Queries are built with forTable() and are immutable.
+ *
+ * A query is serialized once, when it is built, into its canonical form: compact JSON with the selections
+ * ordered by variable code and the keys of every object sorted. Two queries that select the same values
+ * therefore have the same JSON, and it is the same string CachingDataRetrievable.normalizeQuery() makes of
+ * it, so getCacheKey() matches the key the response caches use for the query.
+ *
+ * A query that is sent with different values for one variable, such as one municipality at a time, is
+ * built as a Template. The template keeps the serialized bytes before and after that variable's values,
+ * so binding values only has to write the values in between.
+ */
+public final class PxWebQuery {
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_JSON_STAT2 = "json-stat2";
+    public static final String FORMAT_PX = "px";
+
+    public static final String FILTER_ITEM = "item";
+    public static final String FILTER_ALL = "all";
+    public static final String FILTER_TOP = "top";
+
+    private final String tableUrl;
+    private final List<Selection> selections;
+    private final String format;
+    private final String json;
+    private final byte[] body;
+    private final String cacheKey;
+
+    private PxWebQuery(String tableUrl, List<Selection> selections, String format, byte[] body) {
+        this.tableUrl = tableUrl;
+        this.selections = selections;
+        this.format = format;
+        this.body = body;
+        this.json = new String(body, StandardCharsets.UTF_8);
+        this.cacheKey = tableUrl + "#" + CachingDataRetrievable.sha256(json);
+    }
+
+    /**
+     * Starts building a query for the table.
+     *
+     * @param tableUrl The URL of the table, e.g. ".../PxWeb/api/v1/en/StatFin/smat/statfin_smat_pxt_13h2.px"
+     */
+    public static Builder forTable(String tableUrl) {
+        return new Builder(tableUrl);
+    }
+
+    /**
+     * Reads a query from its JSON form, as it is posted to the table.
+     *
+     * @throws IllegalArgumentException if the JSON is not a PxWeb query
+     */
+    public static PxWebQuery parse(String tableUrl, String json) {
+        try {
+            JsonObject root = JsonParser.parseString(json).getAsJsonObject();
+            Builder builder = forTable(tableUrl);
+            if (root.has("query")) {
+                for (JsonElement element : root.getAsJsonArray("query")) {
+                    JsonObject item = element.getAsJsonObject();
+                    JsonObject selection = item.getAsJsonObject("selection");
+                    List<String> values = new ArrayList<>();
+                    for (JsonElement value : selection.getAsJsonArray("values")) {
+                        values.add(value.getAsString());
+                    }
+                    builder.select(item.get("code").getAsString(), selection.get("filter").getAsString(), values);
+                }
+            }
+            if (root.has("response") && root.getAsJsonObject("response").has("format")) {
+                builder.format(root.getAsJsonObject("response").get("format").getAsString());
+            }
+            return builder.build();
+        } catch (RuntimeException exception) {
+            throw new IllegalArgumentException("Not a PxWeb query: " + exception.getMessage(), exception);
+        }
+    }
+
+    public String getTableUrl() {
+        return tableUrl;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    // Returns the selections ordered by variable code
+    public List<Selection> getSelections() {
+        return selections;
+    }
+
+    // Returns the selection of the variable, or null if the variable is not queried
+    public Selection getSelection(String code) {
+        for (Selection selection : selections) {
+            if (selection.getCode().equals(code)) {
+                return selection;
+            }
+        }
+        return null;
+    }
+
+    // Returns the canonical JSON form of the query, the body that is posted to the table
+    public String toJson() {
+        return json;
+    }
+
+    // Returns the canonical JSON form encoded in UTF-8
+    public byte[] toBytes() {
+        return body.clone();
+    }
+
+    /**
+     * Returns the key the query is cached under: the table URL followed by the SHA-256 hash of the
+     * canonical JSON, the same as CachingDataRetrievable.cacheKey(getTableUrl(), toJson()).
+     */
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof PxWebQuery)) {
+            return false;
+        }
+        PxWebQuery query = (PxWebQuery) other;
+        return tableUrl.equals(query.tableUrl) && json.equals(query.json);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * tableUrl.hashCode() + json.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return tableUrl + " " + json;
+    }
+
+    /**
+     * The values selected for one variable of the table.
+     */
+    public static final class Selection {
+        private final String code;
+        private final String filter;
+        private final List<String> values;
+
+        Selection(String code, String filter, List<String> values) {
+            this.code = code;
+            this.filter = filter;
+            this.values = Collections.unmodifiableList(new ArrayList<>(values));
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getFilter() {
+            return filter;
+        }
+
+        public List<String> getValues() {
+            return values;
+        }
+    }
+
+    /**
+     * Builds a PxWebQuery. Selecting a variable again replaces its earlier selection.
+     */
+    public static final class Builder {
+        private final String tableUrl;
+        private final Map<String, Selection> selections = new TreeMap<>();
+        private String format = FORMAT_JSON_STAT2;
+
+        private Builder(String tableUrl) {
+            if (tableUrl == null || tableUrl.isEmpty()) {
+                throw new IllegalArgumentException("Table URL must not be empty");
+            }
+            this.tableUrl = tableUrl;
+        }
+
+        // Selects the listed values of the variable
+        public Builder select(String code, String... values) {
+            return select(code, Arrays.asList(values));
+        }
+
+        public Builder select(String code, List<String> values) {
+            return select(code, FILTER_ITEM, values);
+        }
+
+        // Selects every value of the variable
+        public Builder selectAll(String code) {
+            return select(code, FILTER_ALL, List.of("*"));
+        }
+
+        /**
+         * Selects values of the variable with any PxWeb filter, e.g. "top" with the number of latest values
+         * or "agg:..." with the codes of an aggregation.
+         */
+        public Builder select(String code, String filter, List<String> values) {
+            if (code == null || filter == null || values == null) {
+                throw new IllegalArgumentException("Selection code, filter and values must not be null");
+            }
+            selections.put(code, new Selection(code, filter, values));
+            return this;
+        }
+
+        // Sets the response format; FORMAT_JSON_STAT2 unless set
+        public Builder format(String format) {
+            if (format == null || format.isEmpty()) {
+                throw new IllegalArgumentException("Response format must not be empty");
+            }
+            this.format = format;
+            return this;
+        }
+
+        public PxWebQuery build() {
+            List<Selection> ordered = List.copyOf(selections.values());
+            byte[] body = serialize(ordered, format).toString().getBytes(StandardCharsets.UTF_8);
+            return new PxWebQuery(tableUrl, ordered, format, body);
+        }
+
+        /**
+         * Builds a template in which the values of the given variable are left open and bound with
+         * Template.bind(). The variable uses the "item" filter; a selection made for it on this builder is
+         * ignored.
+         */
+        public Template template(String parameterCode) {
+            if (parameterCode == null) {
+                throw new IllegalArgumentException("Parameter code must not be null");
+            }
+            Map<String, Selection> withParameter = new TreeMap<>(selections);
+            withParameter.put(parameterCode, new Selection(parameterCode, FILTER_ITEM, List.of(Template.PLACEHOLDER)));
+            List<Selection> ordered = List.copyOf(withParameter.values());
+
+            // Cut the serialized query around the placeholder value list
+            String serialized = serialize(ordered, format).toString();
+            String placeholder = "[" + new JsonPrimitive(Template.PLACEHOLDER) + "]";
+            int start = serialized.indexOf(placeholder);
+            byte[] prefix = serialized.substring(0, start).getBytes(StandardCharsets.UTF_8);
+            byte[] suffix = serialized.substring(start + placeholder.length()).getBytes(StandardCharsets.UTF_8);
+            return new Template(tableUrl, ordered, format, parameterCode, prefix, suffix);
+        }
+
+        // The selections are already ordered by code and the keys are added in sorted order
+        private static JsonObject serialize(List<Selection> selections, String format) {
+            JsonArray query = new JsonArray();
+            for (Selection selection : selections) {
+                JsonArray values = new JsonArray();
+                for (String value : selection.getValues()) {
+                    values.add(value);
+                }
+                JsonObject filter = new JsonObject();
+                filter.addProperty("filter", selection.getFilter());
+                filter.add("values", values);
+
+                JsonObject item = new JsonObject();
+                item.addProperty("code", selection.getCode());
+                item.add("selection", filter);
+                query.add(item);
+            }
+
+            JsonObject response = new JsonObject();
+            response.addProperty("format", format);
+
+            JsonObject root = new JsonObject();
+            root.add("query", query);
+            root.add("response", response);
+            return root;
+        }
+    }
+
+    /**
+     * A query with the values of one variable left open. Templates are immutable and can be shared
+     * between threads.
+     */
+    public static final class Template {
+        // Stands in for the open values while the template is serialized; it cannot be a real value code
+        private static final String PLACEHOLDER = "\u0000parameter\u0000";
+
+        private final String tableUrl;
+        private final List<Selection> selections;
+        private final String format;
+        private final String parameterCode;
+        private final byte[] prefix;
+        private final byte[] suffix;
+
+        private Template(String tableUrl, List<Selection> selections, String format, String parameterCode,
+                         byte[] prefix, byte[] suffix) {
+            this.tableUrl = tableUrl;
+            this.selections = selections;
+            this.format = format;
+            this.parameterCode = parameterCode;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        public String getParameterCode() {
+            return parameterCode;
+        }
+
+        // Returns the query with the given values selected for the open variable
+        public PxWebQuery bind(String... values) {
+            return bind(Arrays.asList(values));
+        }
+
+        public PxWebQuery bind(List<String> values) {
+            Selection parameter = new Selection(parameterCode, FILTER_ITEM, values);
+            List<Selection> bound = new ArrayList<>(selections.size());
+            for (Selection selection : selections) {
+                bound.add(selection.getCode().equals(parameterCode) ? parameter : selection);
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream(prefix.length + suffix.length + 16 * values.size());
+            body.writeBytes(prefix);
+            body.write('[');
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    body.write(',');
+                }
+                body.writeBytes(new JsonPrimitive(values.get(i)).toString().getBytes(StandardCharsets.UTF_8));
+            }
+            body.write(']');
+            body.writeBytes(suffix);
+            return new PxWebQuery(tableUrl, Collections.unmodifiableList(bound), format, body.toByteArray());
+        }
+    }
+}
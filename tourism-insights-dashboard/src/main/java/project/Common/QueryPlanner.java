@@ -0,0 +1,202 @@
+package project.Common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * The QueryPlanner class keeps queries for a PxWeb table under the number of cells the API answers in one
+ * response. It estimates the cells of a query from the table metadata, the response to a GET of the table
+ * URL, and splits a query over the limit along its largest variable into chunks under the limit; a chunk
+ * still too large is split again along the next variable.
+ *
+ * fetch() sends the chunks concurrently on TaskExecutors, where TaskExecutors.onHost() keeps them within
+ * the request budget of the host, and stitches the responses back into one DataCube. A query under the
+ * limit is sent as it is, so its cache key and snapshot stay the same.
+ *
+ * Only variables selected with the "item" filter, or with the "all" filter and "*", are split. The limit
+ * is set with the system property tourism.pxweb.maxCells (default 100000).
+ */
+public class QueryPlanner {
+    public static final int MAX_CELLS = Integer.getInteger("tourism.pxweb.maxCells", 100_000);
+
+    /**
+     * Fetches one chunk, e.g. EconomicImpactService.fetchCube().
+     */
+    @FunctionalInterface
+    public interface CubeFetch {
+        DataCube fetch(PxWebQuery query) throws IOException;
+    }
+
+    private final Map<String, List<String>> valueCodes = new HashMap<>();
+    private final long maxCells;
+
+    public QueryPlanner(JsonObject metadata) {
+        this(metadata, MAX_CELLS);
+    }
+
+    /**
+     * @param metadata The metadata of the table; variables it does not list are counted as one value
+     * @param maxCells The largest number of cells requested in one query
+     */
+    public QueryPlanner(JsonObject metadata, long maxCells) {
+        this.maxCells = maxCells;
+        JsonArray variables = metadata != null ? metadata.getAsJsonArray("variables") : null;
+        if (variables != null) {
+            for (JsonElement element : variables) {
+                JsonObject variable = element.getAsJsonObject();
+                List<String> codes = new ArrayList<>();
+                for (JsonElement value : variable.getAsJsonArray("values")) {
+                    codes.add(value.getAsString());
+                }
+                valueCodes.put(variable.get("code").getAsString(), codes);
+            }
+        }
+    }
+
+    // The number of cells the response to the query has; variables left out of the query count as one
+    public long estimateCells(PxWebQuery query) {
+        long cells = 1;
+        for (PxWebQuery.Selection selection : query.getSelections()) {
+            cells *= valueCount(selection);
+        }
+        return cells;
+    }
+
+    /**
+     * Splits the query into queries of at most maxCells cells that together select the same cells.
+     *
+     * @return The chunks in the order of the values they select; the query itself if it is under the limit
+     * or cannot be split further
+     */
+    public List<PxWebQuery> plan(PxWebQuery query) {
+        List<PxWebQuery> chunks = new ArrayList<>();
+        split(query, chunks);
+        return chunks;
+    }
+
+    /**
+     * Fetches the query in chunks under the limit and stitches them into one cube. The chunks run
+     * concurrently; a chunk no worker has started yet is run by the calling thread, so a fetch started on a
+     * busy pool cannot wait for itself.
+     *
+     * @return The cube of the whole query, or null if a chunk could not be fetched or decoded
+     * @throws IOException if a chunk fails
+     */
+    public DataCube fetch(PxWebQuery query, CubeFetch fetch) throws IOException {
+        List<PxWebQuery> chunks = plan(query);
+        if (chunks.size() == 1) {
+            return fetch.fetch(chunks.get(0));
+        }
+
+        List<FutureTask<DataCube>> tasks = new ArrayList<>(chunks.size());
+        for (PxWebQuery chunk : chunks) {
+            FutureTask<DataCube> task = new FutureTask<>(() -> fetch.fetch(chunk));
+            tasks.add(task);
+            TaskExecutors.submit(task);
+        }
+        List<DataCube> parts = new ArrayList<>(tasks.size());
+        for (FutureTask<DataCube> task : tasks) {
+            task.run();  // Does nothing if a worker has started it already
+            DataCube part = await(task);
+            if (part == null) {
+                return null;
+            }
+            parts.add(part);
+        }
+        return DataCube.stitch(parts);
+    }
+
+    private static DataCube await(FutureTask<DataCube> task) throws IOException {
+        try {
+            return task.get();
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof IOException) {
+                throw (IOException) exception.getCause();
+            }
+            throw new IOException(exception.getCause());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching a chunk", exception);
+        }
+    }
+
+    private void split(PxWebQuery query, List<PxWebQuery> chunks) {
+        long cells = estimateCells(query);
+        if (cells <= maxCells) {
+            chunks.add(query);
+            return;
+        }
+
+        // The largest variable that can be split; its values are cut into chunks of equal size
+        PxWebQuery.Selection largest = null;
+        List<String> largestValues = null;
+        for (PxWebQuery.Selection selection : query.getSelections()) {
+            List<String> values = splittableValues(selection);
+            if (values != null && values.size() > 1 && (largestValues == null || values.size() > largestValues.size())) {
+                largest = selection;
+                largestValues = values;
+            }
+        }
+        if (largest == null) {
+            chunks.add(query);
+            return;
+        }
+
+        long cellsPerValue = cells / largestValues.size();
+        int chunkSize = (int) Math.max(1, maxCells / cellsPerValue);
+        for (int from = 0; from < largestValues.size(); from += chunkSize) {
+            List<String> values = largestValues.subList(from, Math.min(from + chunkSize, largestValues.size()));
+            split(withValues(query, largest.getCode(), values), chunks);
+        }
+    }
+
+    private long valueCount(PxWebQuery.Selection selection) {
+        List<String> values = splittableValues(selection);
+        if (values != null) {
+            return values.size();
+        }
+        if (PxWebQuery.FILTER_TOP.equals(selection.getFilter()) && selection.getValues().size() == 1) {
+            try {
+                return Long.parseLong(selection.getValues().get(0));
+            } catch (NumberFormatException exception) {
+                return 1;
+            }
+        }
+        // Other filters, e.g. aggregations, are estimated by the number of values listed
+        List<String> all = valueCodes.get(selection.getCode());
+        return PxWebQuery.FILTER_ALL.equals(selection.getFilter()) && all != null
+                ? all.size() : Math.max(1, selection.getValues().size());
+    }
+
+    // The codes the selection stands for if it can be split by code; null otherwise
+    private List<String> splittableValues(PxWebQuery.Selection selection) {
+        if (PxWebQuery.FILTER_ITEM.equals(selection.getFilter())) {
+            return selection.getValues();
+        }
+        if (PxWebQuery.FILTER_ALL.equals(selection.getFilter()) && selection.getValues().equals(List.of("*"))) {
+            return valueCodes.get(selection.getCode());
+        }
+        return null;
+    }
+
+    private static PxWebQuery withValues(PxWebQuery query, String code, List<String> values) {
+        PxWebQuery.Builder builder = PxWebQuery.forTable(query.getTableUrl()).format(query.getFormat());
+        for (PxWebQuery.Selection selection : query.getSelections()) {
+            if (selection.getCode().equals(code)) {
+                builder.select(code, new ArrayList<>(values));
+            } else {
+                builder.select(selection.getCode(), selection.getFilter(), selection.getValues());
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,193 @@
+package project.Common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * The ResponseCache class keeps downloaded responses in memory so that repeated queries for the same data
+ * are answered without going to the network.
+ *
+ * Every entry has its own time-to-live, given when it is stored, and a weight, which is the approximate
+ * size of the response in bytes. When the total weight grows above the configured maximum, entries are
+ * evicted until it fits again, either the least recently used ones (LRU) or the least frequently used
+ * ones (LFU). Expired entries are dropped when they are looked up or when room is needed.
+ *
+ * Hit, miss and eviction counters can be read at any time, for example to check how well the cache works.
+ * All methods are thread-safe.
+ */
+public class ResponseCache<V> {
+
+    /**
+     * Decides which entries are evicted first when the cache is full.
+     */
+    public enum EvictionPolicy {
+        LRU,
+        LFU
+    }
+
+    private final long maxWeight;
+    private final EvictionPolicy policy;
+    private final LongSupplier clock;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public ResponseCache(long maxWeight, EvictionPolicy policy) {
+        this(maxWeight, policy, System::currentTimeMillis);
+    }
+
+    /**
+     * @param maxWeight Maximum total weight of the cached entries in bytes
+     * @param policy    Which entries to evict first when the cache is full
+     * @param clock     Source of the current time in milliseconds, used for the time-to-live of entries
+     */
+    public ResponseCache(long maxWeight, EvictionPolicy policy, LongSupplier clock) {
+        this.maxWeight = maxWeight;
+        this.policy = policy;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cached value for the key, or null if there is none or it has expired.
+     */
+    public synchronized V get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= clock.getAsLong()) {
+            remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        entry.useCount++;
+        return entry.value;
+    }
+
+    /**
+     * Stores the value under the key for the given time, replacing any value stored before. Values heavier
+     * than the whole cache are not stored.
+     *
+     * @param key        Identifies the value
+     * @param value      The value to store
+     * @param weight     Approximate size of the value in bytes
+     * @param ttlMillis  How long the value stays valid in milliseconds
+     */
+    public synchronized void put(String key, V value, long weight, long ttlMillis) {
+        remove(key);
+        if (value == null || weight > maxWeight || ttlMillis <= 0) {
+            return;
+        }
+
+        entries.put(key, new Entry<>(value, weight, clock.getAsLong() + ttlMillis));
+        this.weight += weight;
+        evictToFit(key);
+    }
+
+    // Drops the value stored under the key, if any
+    public synchronized void invalidate(String key) {
+        remove(key);
+    }
+
+    // Drops every cached value; the counters are kept
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Returns the total weight of the cached values in bytes
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    // Returns how many values were dropped to make room; expired values are not counted
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private void remove(String key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    // Drops expired entries first, then evicts by policy until the total weight fits. The entry that was
+    // just stored is never picked, otherwise LFU would always evict new entries before they could be used.
+    private void evictToFit(String storedKey) {
+        if (weight <= maxWeight) {
+            return;
+        }
+
+        long now = clock.getAsLong();
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next();
+            if (entry.expiresAt <= now) {
+                iterator.remove();
+                weight -= entry.weight;
+            }
+        }
+
+        while (weight > maxWeight && entries.size() > 1) {
+            String victim = policy == EvictionPolicy.LFU ? leastFrequentlyUsed(storedKey) : entries.keySet().iterator().next();
+            remove(victim);
+            evictionCount++;
+        }
+    }
+
+    // Returns the key used the fewest times other than the given one; ties go to the least recently used entry
+    private String leastFrequentlyUsed(String excludedKey) {
+        String victim = null;
+        long fewestUses = Long.MAX_VALUE;
+        for (Map.Entry<String, Entry<V>> entry : entries.entrySet()) {
+            if (!entry.getKey().equals(excludedKey) && entry.getValue().useCount < fewestUses) {
+                fewestUses = entry.getValue().useCount;
+                victim = entry.getKey();
+            }
+        }
+        return victim;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+        private long useCount;
+
+        Entry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package project.Common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+import javafx.scene.chart.PieChart;
+import javafx.scene.chart.XYChart;
+
+/**
+ * The Rollup class groups model objects by one or more dimensions and aggregates a measure per group, the
+ * way the charts sum a value per age group, product or year. A controller declares the rollup once, e.g.
+ *
+ *  Rollup.by(VisitorStatistics.AGE_GROUPS, VisitorStatistics::getAgeGroupCode)
+ *        .measure(VisitorStatistics::getPercentage)
+ *
+ * and aggregate() returns the non-empty buckets with their sum, count, mean, minimum and maximum, ready to
+ * be turned into pie slices or a chart series.
+ *
+ * Dimensions are the codes of a LabelDictionary, so the accumulators are primitive arrays indexed by code
+ * (by the combination of codes for several dimensions) and nothing is boxed while the rows are read.
+ * Models that store labels instead of codes can be grouped with byLabel(), which encodes each label in a
+ * dictionary of the rollup. Rows whose code is LabelDictionary.NOT_FOUND are left out. Buckets are listed
+ * in code order, that is in the order the labels were first seen. A declared rollup can be shared and
+ * aggregated from several threads.
+ */
+public final class Rollup<T> {
+
+    /**
+     * What is reported for a bucket.
+     */
+    public enum Measure {
+        SUM, COUNT, MEAN, MIN, MAX
+    }
+
+    private final LabelDictionary[] dictionaries;
+    private final List<ToIntFunction<? super T>> codes;
+    private final Predicate<? super T> filter;
+    private final ToDoubleFunction<? super T> measure;
+
+    private Rollup(Builder<T> builder, ToDoubleFunction<? super T> measure) {
+        this.dictionaries = builder.dictionaries.toArray(new LabelDictionary[0]);
+        this.codes = List.copyOf(builder.codes);
+        this.filter = builder.filter;
+        this.measure = measure;
+    }
+
+    // Starts a rollup grouping by the codes of the dictionary
+    public static <T> Builder<T> by(LabelDictionary dictionary, ToIntFunction<? super T> code) {
+        return new Builder<T>().thenBy(dictionary, code);
+    }
+
+    // Starts a rollup grouping by a label the model stores as a String
+    public static <T> Builder<T> byLabel(Function<? super T, String> label) {
+        return new Builder<T>().thenByLabel(label);
+    }
+
+    /**
+     * Declares the dimensions, an optional filter and then the measure of a rollup.
+     */
+    public static final class Builder<T> {
+        private final List<LabelDictionary> dictionaries = new ArrayList<>();
+        private final List<ToIntFunction<? super T>> codes = new ArrayList<>();
+        private Predicate<? super T> filter;
+
+        private Builder() {
+        }
+
+        public Builder<T> thenBy(LabelDictionary dictionary, ToIntFunction<? super T> code) {
+            dictionaries.add(dictionary);
+            codes.add(code);
+            return this;
+        }
+
+        public Builder<T> thenByLabel(Function<? super T, String> label) {
+            LabelDictionary dictionary = new LabelDictionary("group");
+            return thenBy(dictionary, row -> dictionary.encode(label.apply(row)));
+        }
+
+        // Only rows passing the filter are aggregated
+        public Builder<T> where(Predicate<? super T> filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        // Finishes the rollup with the value aggregated per bucket
+        public Rollup<T> measure(ToDoubleFunction<? super T> measure) {
+            return new Rollup<>(this, measure);
+        }
+    }
+
+    /**
+     * Aggregates the rows into buckets.
+     *
+     * @param rows The model objects, e.g. a filtered list of a service
+     * @return The non-empty buckets in code order
+     */
+    public Buckets aggregate(Iterable<? extends T> rows) {
+        int dimensions = dictionaries.length;
+        int[][] rowCodes = new int[dimensions][];
+        List<T> accepted = new ArrayList<>();
+        for (T row : rows) {
+            if (filter == null || filter.test(row)) {
+                accepted.add(row);
+            }
+        }
+
+        // Codes are read before the sizes, so labels that byLabel() adds now fit in the radix below
+        for (int d = 0; d < dimensions; d++) {
+            rowCodes[d] = new int[accepted.size()];
+            for (int i = 0; i < accepted.size(); i++) {
+                rowCodes[d][i] = codes.get(d).applyAsInt(accepted.get(i));
+            }
+        }
+        int[] radix = new int[dimensions];
+        long slots = 1;
+        for (int d = 0; d < dimensions; d++) {
+            radix[d] = Math.max(dictionaries[d].size(), 1);
+            slots *= radix[d];
+        }
+        if (slots > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many groups: " + slots);
+        }
+
+        int size = (int) slots;
+        double[] sums = new double[size];
+        int[] counts = new int[size];
+        double[] mins = new double[size];
+        double[] maxs = new double[size];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+
+        rows:
+        for (int i = 0; i < accepted.size(); i++) {
+            int slot = 0;
+            for (int d = 0; d < dimensions; d++) {
+                int code = rowCodes[d][i];
+                if (code < 0) {
+                    continue rows;
+                }
+                slot = slot * radix[d] + code;
+            }
+            double value = measure.applyAsDouble(accepted.get(i));
+            sums[slot] += value;
+            counts[slot]++;
+            mins[slot] = Math.min(mins[slot], value);
+            maxs[slot] = Math.max(maxs[slot], value);
+        }
+
+        int used = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                used++;
+            }
+        }
+        int[] slotOfBucket = new int[used];
+        int next = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (counts[slot] > 0) {
+                slotOfBucket[next++] = slot;
+            }
+        }
+        return new Buckets(dictionaries, radix, slotOfBucket, sums, counts, mins, maxs);
+    }
+
+    /**
+     * The result of a rollup: one bucket per combination of codes that had rows.
+     */
+    public static final class Buckets {
+        private final LabelDictionary[] dictionaries;
+        private final int[] radix;
+        private final int[] slots;
+        private final double[] sums;
+        private final int[] counts;
+        private final double[] mins;
+        private final double[] maxs;
+
+        private Buckets(LabelDictionary[] dictionaries, int[] radix, int[] slots, double[] sums, int[] counts, double[] mins, double[] maxs) {
+            this.dictionaries = dictionaries;
+            this.radix = radix;
+            this.slots = slots;
+            this.sums = sums;
+            this.counts = counts;
+            this.mins = mins;
+            this.maxs = maxs;
+        }
+
+        public int size() {
+            return slots.length;
+        }
+
+        public boolean isEmpty() {
+            return slots.length == 0;
+        }
+
+        // The code of the bucket in the dimension, in the order the dimensions were declared
+        public int getCode(int bucket, int dimension) {
+            int slot = slots[bucket];
+            for (int d = radix.length - 1; d > dimension; d--) {
+                slot /= radix[d];
+            }
+            return slot % radix[dimension];
+        }
+
+        public String getLabel(int bucket, int dimension) {
+            return dictionaries[dimension].decode(getCode(bucket, dimension));
+        }
+
+        // The labels of the bucket in all dimensions, joined with " / "
+        public String getLabel(int bucket) {
+            if (radix.length == 1) {
+                return getLabel(bucket, 0);
+            }
+            StringBuilder label = new StringBuilder();
+            for (int d = 0; d < radix.length; d++) {
+                if (d > 0) {
+                    label.append(" / ");
+                }
+                label.append(getLabel(bucket, d));
+            }
+            return label.toString();
+        }
+
+        public double get(int bucket, Measure measure) {
+            int slot = slots[bucket];
+            switch (measure) {
+                case SUM:
+                    return sums[slot];
+                case COUNT:
+                    return counts[slot];
+                case MEAN:
+                    return sums[slot] / counts[slot];
+                case MIN:
+                    return mins[slot];
+                case MAX:
+                    return maxs[slot];
+                default:
+                    throw new IllegalArgumentException("Unknown measure " + measure);
+            }
+        }
+
+        public double getSum(int bucket) {
+            return sums[slots[bucket]];
+        }
+
+        public int getCount(int bucket) {
+            return counts[slots[bucket]];
+        }
+
+        // One pie slice per bucket, named after its label
+        public List<PieChart.Data> toPieData(Measure measure) {
+            List<PieChart.Data> slices = new ArrayList<>(slots.length);
+            for (int bucket = 0; bucket < slots.length; bucket++) {
+                slices.add(new PieChart.Data(getLabel(bucket), get(bucket, measure)));
+            }
+            return slices;
+        }
+
+        // One data point per bucket, with the label on the category axis
+        public XYChart.Series<String, Number> toSeries(String name, Measure measure) {
+            XYChart.Series<String, Number> series = new XYChart.Series<>();
+            series.setName(name);
+            for (int bucket = 0; bucket < slots.length; bucket++) {
+                series.getData().add(new XYChart.Data<>(getLabel(bucket), get(bucket, measure)));
+            }
+            return series;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package project.Common;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * The ServiceRegistry class keeps application-scoped instances, such as the service facades, alive for the
+ * lifetime of the application. Controllers are created again every time a page is shown; by asking the
+ * registry for their facade instead of constructing one, they reuse the facade and the data it has already
+ * downloaded, so switching between pages does not repeat the network queries.
+ *
+ * An instance is created by the first caller, outside of the map: facade constructors may download their
+ * tables, and other types must not wait for that. Callers asking for the same type meanwhile wait for the
+ * instance being created; if the factory fails, the next get() tries again.
+ *
+ * Data is only downloaded again after an explicit refresh: refreshAll() drops every instance, after which
+ * the next get() builds a fresh one, and runs the actions registered with onRefresh(). Through these the
+ * services clear the in-memory caches they share across instances, so the fresh facades do not get their
+ * data from memory: a table is then served from its disk copy, if it has one, and downloaded again in the
+ * background. Main calls refreshAll() when the user presses F5.
+ */
+public class ServiceRegistry {
+    private static final Map<Class<?>, CompletableFuture<Object>> instances = new ConcurrentHashMap<>();
+    private static final List<Runnable> refreshActions = new CopyOnWriteArrayList<>();
+
+    private ServiceRegistry() {
+    }
+
+    /**
+     * Returns the registered instance of the given type, creating it with the factory on first use.
+     * Concurrent callers asking for the same type wait for a single instance to be created.
+     *
+     * @throws RuntimeException thrown by the factory, to every caller waiting for the instance
+     */
+    public static <T> T get(Class<T> type, Supplier<? extends T> factory) {
+        CompletableFuture<Object> instance = instances.get(type);
+        if (instance == null) {
+            CompletableFuture<Object> created = new CompletableFuture<>();
+            instance = instances.putIfAbsent(type, created);
+            if (instance == null) {
+                instance = created;
+                try {
+                    created.complete(factory.get());
+                } catch (RuntimeException | Error exception) {
+                    instances.remove(type, created);  // The next get() tries again
+                    created.completeExceptionally(exception);
+                    throw exception;
+                }
+            }
+        }
+        try {
+            return type.cast(TaskExecutors.await(instance));
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exception.getCause();
+            }
+            throw exception;
+        }
+    }
+
+    // Returns the registered instance of the given type, or null if none has been created yet
+    public static <T> T peek(Class<T> type) {
+        CompletableFuture<Object> instance = instances.get(type);
+        if (instance == null || !instance.isDone() || instance.isCompletedExceptionally()) {
+            return null;
+        }
+        return type.cast(instance.join());
+    }
+
+    // Registers an action run by refreshAll(), e.g. one that clears a cache shared by the instances
+    public static void onRefresh(Runnable action) {
+        refreshActions.add(action);
+    }
+
+    // Drops every registered instance so the next get() creates it, and downloads its data, again
+    public static void refreshAll() {
+        instances.clear();
+        refreshActions.forEach(Runnable::run);
+    }
+}
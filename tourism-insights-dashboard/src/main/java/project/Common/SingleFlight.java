@@ -0,0 +1,142 @@
+package project.Common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The SingleFlight class makes identical requests that overlap share one execution. The first caller for a
+ * key runs the request; callers that ask for the same key while it is in flight wait for it and get the
+ * same result (or the same exception) instead of starting their own.
+ *
+ * A successful result stays shared for a short linger time after it completes, so requests that arrive
+ * just after each other, such as a page asking for the same station list twice while it is being built,
+ * are answered by one request as well. Null results and failures are not kept once the request is over,
+ * so the next caller tries again.
+ *
+ * Shared results are handed to every caller, so callers must treat them as read-only. The linger time is
+ * set with the tourism.singleflight.lingerMillis system property (default 2000).
+ */
+public class SingleFlight<K, V> {
+    public static final long DEFAULT_LINGER_MILLIS = Long.getLong("tourism.singleflight.lingerMillis", 2000L);
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long lingerMillis;
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    public SingleFlight() {
+        this(DEFAULT_LINGER_MILLIS);
+    }
+
+    // @param lingerMillis How long a successful result stays shared after it completes; 0 for not at all
+    public SingleFlight(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * A blocking request that may throw a checked exception.
+     */
+    @FunctionalInterface
+    public interface Call<V, E extends Exception> {
+        V run() throws E;
+    }
+
+    /**
+     * Runs the request on the calling thread, or waits for the identical request already in flight.
+     *
+     * @param key  Identifies the request, e.g. its URL and body
+     * @param call Runs the request if no identical one is in flight
+     * @return The result of the request that ran
+     * @throws E if the request that ran threw it
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Exception> V call(K key, Call<V, E> call) throws E {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            shared.incrementAndGet();
+            try {
+                return TaskExecutors.await(existing);
+            } catch (CompletionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                // Every caller of a key runs the same kind of request, so the cause is an E
+                throw (E) cause;
+            }
+        }
+
+        executions.incrementAndGet();
+        try {
+            V result = call.run();
+            created.complete(result);
+            release(key, created, result);
+            return result;
+        } catch (Exception | Error exception) {
+            created.completeExceptionally(exception);
+            release(key, created, null);
+            throw exception;
+        }
+    }
+
+    /**
+     * Starts the asynchronous request, or joins the identical request already in flight. Every caller gets
+     * its own copy of the shared future, so completing or cancelling it does not affect the others.
+     *
+     * @param key  Identifies the request, e.g. its URL and body
+     * @param call Starts the request if no identical one is in flight
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            shared.incrementAndGet();
+            return existing.copy();
+        }
+
+        executions.incrementAndGet();
+        try {
+            call.get().whenComplete((result, exception) -> {
+                if (exception != null) {
+                    created.completeExceptionally(exception);
+                } else {
+                    created.complete(result);
+                }
+                release(key, created, exception == null ? result : null);
+            });
+        } catch (RuntimeException exception) {
+            created.completeExceptionally(exception);
+            release(key, created, null);
+        }
+        return created.copy();
+    }
+
+    // Number of requests that were run
+    public long getExecutionCount() {
+        return executions.get();
+    }
+
+    // Number of callers that were answered by a request another caller ran
+    public long getSharedCount() {
+        return shared.get();
+    }
+
+    // Removes the finished request right away, or after the linger time if it has a result to share
+    private void release(K key, CompletableFuture<V> future, V result) {
+        if (result == null || lingerMillis <= 0) {
+            inFlight.remove(key, future);
+        } else {
+            CompletableFuture.delayedExecutor(lingerMillis, TimeUnit.MILLISECONDS)
+                    .execute(() -> inFlight.remove(key, future));
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package project.Common;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Snapshot class is a compact binary file format for decoded tables, such as a DataCube or a
+ * PxJsonTable, that can be opened and queried without deserializing the values.
+ *
+ * A snapshot holds string properties, named dictionaries (string arrays, e.g. the category codes of a
+ * dimension) and named columns of bytes, ints or doubles. The file starts with a small header with the
+ * properties, the dictionaries and the position of every column, followed by the columns themselves as
+ * contiguous little-endian arrays aligned to 8 bytes:
+ *
+ *   magic     8 bytes "TISNAP01"
+ *   length    int, the length of the header in bytes
+ *   header    the properties, dictionaries and column positions
+ *   columns   the column data
+ *
+ * open() maps the file with FileChannel.map and reads only the header; the columns are returned as
+ * ByteBuffer, IntBuffer and DoubleBuffer views of the mapped file, so opening a snapshot costs the same whether its
+ * columns hold ten values or ten million, and pages are read from disk as cells are visited.
+ *
+ * Snapshots are written with a Writer, to a temporary file that is then moved in place.
+ */
+public final class Snapshot {
+    private static final byte[] MAGIC = "TISNAP01".getBytes(StandardCharsets.US_ASCII);
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_BYTE = 3;
+
+    private final Map<String, String> properties;
+    private final Map<String, String[]> dictionaries;
+    private final Map<String, Column> columns;
+    private final ByteBuffer data;
+
+    private Snapshot(Map<String, String> properties, Map<String, String[]> dictionaries, Map<String, Column> columns,
+                     ByteBuffer data) {
+        this.properties = properties;
+        this.dictionaries = dictionaries;
+        this.columns = columns;
+        this.data = data;
+    }
+
+    /**
+     * Maps the snapshot file and reads its header.
+     *
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static Snapshot open(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return read(mapped);
+    }
+
+    // Reads a snapshot held in memory, e.g. one produced by Writer.toBuffer()
+    public static Snapshot read(ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a snapshot file");
+            }
+            in.getInt();
+
+            Map<String, String> properties = new LinkedHashMap<>();
+            int propertyCount = in.getInt();
+            for (int i = 0; i < propertyCount; i++) {
+                properties.put(readString(in), readString(in));
+            }
+
+            Map<String, String[]> dictionaries = new LinkedHashMap<>();
+            int dictionaryCount = in.getInt();
+            for (int i = 0; i < dictionaryCount; i++) {
+                String name = readString(in);
+                String[] entries = new String[in.getInt()];
+                for (int j = 0; j < entries.length; j++) {
+                    entries[j] = readString(in);
+                }
+                dictionaries.put(name, entries);
+            }
+
+            Map<String, Column> columns = new LinkedHashMap<>();
+            int columnCount = in.getInt();
+            for (int i = 0; i < columnCount; i++) {
+                String name = readString(in);
+                Column column = new Column(in.get(), in.getInt(), in.getLong());
+                long end = column.offset + (long) column.length * column.width();
+                if (column.offset < 0 || end > buffer.capacity()) {
+                    throw new IOException("Column " + name + " lies outside the snapshot");
+                }
+                columns.put(name, column);
+            }
+
+            return new Snapshot(Collections.unmodifiableMap(properties), Collections.unmodifiableMap(dictionaries),
+                    Collections.unmodifiableMap(columns), buffer);
+        } catch (RuntimeException exception) {
+            throw new IOException("Snapshot is damaged: " + exception.getMessage(), exception);
+        }
+    }
+
+    // Returns the property, or null if the snapshot does not have it
+    public String getProperty(String name) {
+        return properties.get(name);
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    // Returns the dictionary, or null if the snapshot does not have it
+    public String[] getDictionary(String name) {
+        String[] dictionary = dictionaries.get(name);
+        return dictionary != null ? dictionary.clone() : null;
+    }
+
+    // Returns a read-only view of the byte column, or null if the snapshot has no byte column with the name
+    public ByteBuffer getByteColumn(String name) {
+        Column column = columns.get(name);
+        return column != null && column.type == TYPE_BYTE ? slice(column) : null;
+    }
+
+    // Returns a read-only view of the int column, or null if the snapshot has no int column with the name
+    public IntBuffer getIntColumn(String name) {
+        Column column = columns.get(name);
+        return column != null && column.type == TYPE_INT ? slice(column).asIntBuffer() : null;
+    }
+
+    // Returns a read-only view of the double column, or null if the snapshot has no double column with the name
+    public DoubleBuffer getDoubleColumn(String name) {
+        Column column = columns.get(name);
+        return column != null && column.type == TYPE_DOUBLE ? slice(column).asDoubleBuffer() : null;
+    }
+
+    private ByteBuffer slice(Column column) {
+        ByteBuffer view = data.asReadOnlyBuffer();
+        view.position((int) column.offset);
+        view.limit((int) (column.offset + (long) column.length * column.width()));
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int typeWidth(byte type) {
+        return type == TYPE_INT ? Integer.BYTES : type == TYPE_DOUBLE ? Double.BYTES : 1;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Column {
+        private final byte type;
+        private final int length;
+        private final long offset;
+
+        Column(byte type, int length, long offset) {
+            this.type = type;
+            this.length = length;
+            this.offset = offset;
+        }
+
+        int width() {
+            return typeWidth(type);
+        }
+    }
+
+    /**
+     * Collects the contents of a snapshot and writes them out. The buffers given to the writer are read
+     * when the snapshot is written, from their position to their limit.
+     */
+    public static final class Writer {
+        private final Map<String, String> properties = new LinkedHashMap<>();
+        private final Map<String, String[]> dictionaries = new LinkedHashMap<>();
+        private final List<String> columnNames = new ArrayList<>();
+        private final List<Object> columnData = new ArrayList<>();
+
+        public Writer property(String name, String value) {
+            properties.put(name, value);
+            return this;
+        }
+
+        public Writer dictionary(String name, String[] entries) {
+            dictionaries.put(name, entries.clone());
+            return this;
+        }
+
+        public Writer byteColumn(String name, byte[] values) {
+            return column(name, ByteBuffer.wrap(values));
+        }
+
+        public Writer intColumn(String name, IntBuffer values) {
+            return column(name, values.duplicate());
+        }
+
+        public Writer intColumn(String name, int[] values) {
+            return column(name, IntBuffer.wrap(values));
+        }
+
+        public Writer doubleColumn(String name, DoubleBuffer values) {
+            return column(name, values.duplicate());
+        }
+
+        public Writer doubleColumn(String name, double[] values) {
+            return column(name, DoubleBuffer.wrap(values));
+        }
+
+        private Writer column(String name, Object values) {
+            int existing = columnNames.indexOf(name);
+            if (existing >= 0) {
+                columnData.set(existing, values);
+            } else {
+                columnNames.add(name);
+                columnData.add(values);
+            }
+            return this;
+        }
+
+        /**
+         * Writes the snapshot to the file, replacing it. The file is written under a temporary name and
+         * then moved in place, so readers never see a half-written snapshot.
+         */
+        public void write(Path file) throws IOException {
+            ByteBuffer buffer = toBuffer();
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        // Lays the snapshot out in a heap buffer, ready to be written or read back with Snapshot.read()
+        public ByteBuffer toBuffer() {
+            byte[] header = header(new long[columnNames.size()]);
+            long[] offsets = new long[columnNames.size()];
+            long position = align(MAGIC.length + Integer.BYTES + header.length);
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = position;
+                position = align(position + (long) remaining(columnData.get(i)) * width(columnData.get(i)));
+            }
+            if (position > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Snapshot is larger than 2 GB");
+            }
+            // The offsets are fixed-width, so the header keeps its length once they are filled in
+            header = header(offsets);
+
+            ByteBuffer out = ByteBuffer.allocate((int) position).order(ByteOrder.LITTLE_ENDIAN);
+            out.put(MAGIC);
+            out.putInt(header.length);
+            out.put(header);
+            for (int i = 0; i < offsets.length; i++) {
+                out.position((int) offsets[i]);
+                Object values = columnData.get(i);
+                if (values instanceof ByteBuffer) {
+                    out.put(((ByteBuffer) values).duplicate());
+                } else if (values instanceof IntBuffer) {
+                    out.asIntBuffer().put(((IntBuffer) values).duplicate());
+                } else {
+                    out.asDoubleBuffer().put(((DoubleBuffer) values).duplicate());
+                }
+            }
+            out.clear();
+            return out;
+        }
+
+        private byte[] header(long[] offsets) {
+            GrowingBuffer out = new GrowingBuffer();
+            out.putInt(properties.size());
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                out.putString(property.getKey());
+                out.putString(property.getValue());
+            }
+            out.putInt(dictionaries.size());
+            for (Map.Entry<String, String[]> dictionary : dictionaries.entrySet()) {
+                out.putString(dictionary.getKey());
+                out.putInt(dictionary.getValue().length);
+                for (String entry : dictionary.getValue()) {
+                    out.putString(entry);
+                }
+            }
+            out.putInt(columnNames.size());
+            for (int i = 0; i < columnNames.size(); i++) {
+                Object values = columnData.get(i);
+                out.putString(columnNames.get(i));
+                out.put(type(values));
+                out.putInt(remaining(values));
+                out.putLong(offsets[i]);
+            }
+            return out.toByteArray();
+        }
+
+        private static byte type(Object values) {
+            return values instanceof ByteBuffer ? TYPE_BYTE : values instanceof IntBuffer ? TYPE_INT : TYPE_DOUBLE;
+        }
+
+        private static int remaining(Object values) {
+            return ((Buffer) values).remaining();
+        }
+
+        private static int width(Object values) {
+            return typeWidth(type(values));
+        }
+
+        private static long align(long position) {
+            return (position + 7) & ~7L;
+        }
+    }
+
+    // A little-endian byte buffer that grows as the header is written
+    private static final class GrowingBuffer {
+        private ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+
+        void put(byte value) {
+            ensure(1).put(value);
+        }
+
+        void putInt(int value) {
+            ensure(Integer.BYTES).putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(Long.BYTES).putLong(value);
+        }
+
+        void putString(String value) {
+            byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length).put(bytes);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        private ByteBuffer ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            return buffer;
+        }
+    }
+}
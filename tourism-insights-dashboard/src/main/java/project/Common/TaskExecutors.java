@@ -0,0 +1,249 @@
+package project.Common;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The TaskExecutors class holds the application-scoped executor that runs all background work: the loads
+ * started by the controllers through AsyncLoader and the blocking work of the services, such as reading
+ * a local table. Nothing else in the application starts threads of its own.
+ *
+ * On a runtime with virtual threads (Java 21 and later) every task gets its own virtual thread; otherwise
+ * the tasks share a bounded pool of daemon threads and wait in its queue when all of them are busy. Both
+ * kinds of threads are named "tourism-worker-N". Independent of the executor, onHost() and onHostAsync()
+ * admit the requests to one remote host through the HostLimiter of that host, which caps both the rate
+ * and the number of concurrent requests, so a burst of tasks cannot flood digitraffic or PxWeb; requests
+ * over the limits wait in its queue, the asynchronous ones without holding a thread. The limiter of a
+ * host is shared by every service.
+ *
+ * The executor is shut down by Main.stop() when the stage closes. It is tuned with these system
+ * properties:
+ *
+ *  tourism.executor.virtual      use virtual threads when the runtime has them (default true)
+ *  tourism.executor.poolSize     number of threads of the bounded pool (default 8)
+ *  tourism.executor.maxPerHost   maximum number of concurrent requests to one host (default 4)
+ *
+ * The request rate per host is set with the properties listed in HostLimiter.
+ */
+public final class TaskExecutors {
+    private static final boolean USE_VIRTUAL = Boolean.parseBoolean(System.getProperty("tourism.executor.virtual", "true"));
+    private static final int POOL_SIZE = Integer.getInteger("tourism.executor.poolSize", 8);
+    private static final int MAX_PER_HOST = Integer.getInteger("tourism.executor.maxPerHost", 4);
+    private static final String THREAD_PREFIX = "tourism-worker-";
+
+    private static final Map<String, HostLimiter> hostLimiters = new ConcurrentHashMap<>();
+    private static final AtomicInteger running = new AtomicInteger();
+    private static final AtomicInteger peakQueued = new AtomicInteger();
+    private static final AtomicLong completed = new AtomicLong();
+
+    private static ExecutorService executor;
+    private static boolean virtual;
+
+    private TaskExecutors() {
+    }
+
+    /**
+     * A blocking request to a remote host.
+     */
+    @FunctionalInterface
+    public interface HostCall<V, E extends Exception> {
+        V call() throws E;
+    }
+
+    /**
+     * Returns the shared executor, creating it on first use, e.g. to run CompletableFuture stages on. Tasks
+     * given to it directly are not counted as running or completed; use submit() for that.
+     */
+    public static synchronized ExecutorService getExecutor() {
+        if (executor == null || executor.isShutdown()) {
+            ExecutorService virtualExecutor = USE_VIRTUAL ? newVirtualThreadExecutor() : null;
+            virtual = virtualExecutor != null;
+            executor = virtual ? virtualExecutor : newBoundedPool();
+        }
+        return executor;
+    }
+
+    /**
+     * Waits for the future like join(), but gives up when the thread is interrupted, e.g. because the
+     * AsyncLoader load it runs was cancelled, so the thread is free again at once. The future itself keeps
+     * running, as other loads may share it, and its result still fills the caches.
+     *
+     * @throws CompletionException if the future failed, with the failure as its cause
+     * @throws CancellationException if the thread is interrupted while it waits; the interrupt status is kept
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Stopped waiting, the load was cancelled");
+        } catch (ExecutionException exception) {
+            throw new CompletionException(exception.getCause());
+        }
+    }
+
+    // Runs the task in the background; JavaFX Tasks can be submitted as they are
+    public static Future<?> submit(Runnable task) {
+        return submit(Executors.callable(task));
+    }
+
+    public static <T> Future<T> submit(Callable<T> task) {
+        Future<T> future = getExecutor().submit(() -> {
+            running.incrementAndGet();
+            try {
+                return task.call();
+            } finally {
+                running.decrementAndGet();
+                completed.incrementAndGet();
+            }
+        });
+        peakQueued.accumulateAndGet(getQueueDepth(), Math::max);
+        return future;
+    }
+
+    /**
+     * Runs a blocking request to the host of the URL once the host's limiter admits it, waiting first if
+     * the request rate or the number of running requests of that host is at its limit.
+     *
+     * @param url  The URL the request is sent to
+     * @param call Sends the request; throws a HostLimiter.ThrottledException for a 429 response
+     * @throws E if the request throws it
+     * @throws HostLimiter.ThrottledException if the host still throttles the request after the retries
+     */
+    public static <V, E extends Exception> V onHost(String url, HostCall<V, E> call) throws E {
+        return onHost(url, HostLimiter.Priority.NORMAL, call);
+    }
+
+    public static <V, E extends Exception> V onHost(String url, HostLimiter.Priority priority, HostCall<V, E> call) throws E {
+        return getHostLimiter(url).run(priority, call);
+    }
+
+    /**
+     * Starts a non-blocking request to the host of the URL once the host's limiter admits it; no thread
+     * waits for the admission. The request holds its slot until the returned future completes.
+     *
+     * @param call Starts the request; its future completes with a HostLimiter.ThrottledException for a 429
+     */
+    public static <V> CompletableFuture<V> onHostAsync(String url, HostLimiter.Priority priority, Supplier<CompletableFuture<V>> call) {
+        return getHostLimiter(url).runAsync(priority, call, getExecutor());
+    }
+
+    // The limiter of the host of the URL, e.g. to read its wait times
+    public static HostLimiter getHostLimiter(String url) {
+        return hostLimiters.computeIfAbsent(hostOf(url),
+                host -> new HostLimiter(HostLimiter.REQUESTS_PER_WINDOW, HostLimiter.WINDOW, MAX_PER_HOST));
+    }
+
+    // Whether the executor runs every task on its own virtual thread
+    public static synchronized boolean isVirtual() {
+        getExecutor();
+        return virtual;
+    }
+
+    // Number of submitted tasks waiting for a pool thread; always 0 with virtual threads, which start at once
+    public static synchronized int getQueueDepth() {
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+    }
+
+    // Largest number of submitted tasks that were waiting to start at the same time
+    public static int getPeakQueueDepth() {
+        return peakQueued.get();
+    }
+
+    public static int getRunningCount() {
+        return running.get();
+    }
+
+    // Number of requests waiting to be admitted by the limiter of their host
+    public static int getHostWaitCount() {
+        int waiting = 0;
+        for (HostLimiter limiter : hostLimiters.values()) {
+            waiting += limiter.getWaitingCount();
+        }
+        return waiting;
+    }
+
+    public static long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * Stops accepting tasks and gives the running ones a moment to finish before interrupting them. Called
+     * by Main.stop() when the stage closes.
+     */
+    public static void shutdown() {
+        ExecutorService current;
+        synchronized (TaskExecutors.class) {
+            current = executor;
+            executor = null;
+        }
+        if (current == null) {
+            return;
+        }
+        current.shutdown();
+        try {
+            if (!current.awaitTermination(2, TimeUnit.SECONDS)) {
+                current.shutdownNow();
+            }
+        } catch (InterruptedException exception) {
+            current.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase() : url;
+        } catch (IllegalArgumentException exception) {
+            return url;
+        }
+    }
+
+    private static ExecutorService newBoundedPool() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, THREAD_PREFIX + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Creates Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(...).factory()) through reflection,
+     * as the application is compiled for Java 11. Returns null if the runtime has no virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, THREAD_PREFIX, 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException exception) {
+            return null;
+        }
+    }
+}
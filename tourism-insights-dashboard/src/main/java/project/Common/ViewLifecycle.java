@@ -0,0 +1,16 @@
+package project.Common;
+
+/**
+ * The ViewLifecycle interface is implemented by controllers whose views are kept in the view cache of Main.
+ * A cached view is not rebuilt when the user comes back to it, so these hooks tell the controller when its
+ * view is hidden and when it is shown again, for example to stop background work while it is not visible.
+ */
+public interface ViewLifecycle {
+    // Called when the user navigates away and the view is hidden (it stays in the cache)
+    default void onDeactivate() {
+    }
+
+    // Called when a cached view is shown again; views that were just built are not activated
+    default void onActivate() {
+    }
+}
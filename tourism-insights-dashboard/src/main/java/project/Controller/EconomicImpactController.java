@@ -11,6 +11,12 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
 import project.Main;
+import project.Common.AsyncLoader;
+import project.Common.CellValues;
+import project.Common.DataCube;
+import project.Common.PxWebQuery;
+import project.Common.ServiceRegistry;
+import project.Common.ViewLifecycle;
 import project.Model.EconomicImpactData;
 import project.ServiceFacade.EconomicImpactServiceFacade;
 import org.controlsfx.control.CheckComboBox;
@@ -23,8 +29,22 @@ import java.util.*;
  * The EconomicImpactController handles the user interface logic for displaying economic impact data.
  * It manages the filters (product, region, year, type) and updates the UI with relevant data.
  * It interacts with the EconomicImpactServiceFacade to fetch and process data from an external source.
+ * Requests to the facade run in the background through an AsyncLoader so the filters stay responsive.
  */
-public class EconomicImpactController {
+public class EconomicImpactController implements ViewLifecycle {
+
+    // What a selection shows: the rows of the table, and the totals per product and per year of the charts
+    private static final class SelectionData {
+        private final List<EconomicImpactData> rows;
+        private final Map<String, Double> totalsByProduct;
+        private final Map<String, Double> totalsByYear;
+
+        SelectionData(List<EconomicImpactData> rows, Map<String, Double> totalsByProduct, Map<String, Double> totalsByYear) {
+            this.rows = rows;
+            this.totalsByProduct = totalsByProduct;
+            this.totalsByYear = totalsByYear;
+        }
+    }
 
     // FXML fields for the user interface components
     @FXML
@@ -48,22 +68,45 @@ public class EconomicImpactController {
     // Data for populating dropdowns
     public Map<String, Map<String, String>> dropdownData;
 
+    // Runs the facade calls off the application thread
+    private final AsyncLoader loader = new AsyncLoader();
+
+    // Whether a data load has been started and has not delivered its result yet
+    private boolean dataPending;
+
     /**
      * Initializes the controller by fetching the initial data and populating dropdowns.
      */
     @FXML
     public void initialize() {
-        facade = new EconomicImpactServiceFacade(); // Initialize the service facade
+        // The facade is shared across page visits, so the dropdown metadata is downloaded only once
+        facade = ServiceRegistry.get(EconomicImpactServiceFacade.class, EconomicImpactServiceFacade::new);
+
+        loadInitialData();
+    }
+
+    @Override
+    public void onDeactivate() {
+        loader.cancelAll();
+    }
 
-        try {
-            // Fetch initial data from the service
-            JsonObject initialData = facade.fetchInitialData();
-            dropdownData = facade.processInitialData(initialData); // Process dropdown data
+    @Override
+    public void onActivate() {
+        // Restart the loads that were cancelled when the page was hidden
+        if (dropdownData == null) {
+            loadInitialData();
+        } else if (dataPending) {
+            fetchData(null);  // The filters still show the selection that was being loaded
+        }
+    }
+
+    private void loadInitialData() {
+        // Fetch initial data from the service in the background; IO failures are reported by the loader
+        loader.load("initialData", () -> facade.processInitialData(facade.fetchInitialData()), data -> {
+            dropdownData = data; // Processed dropdown data
             populateDropdowns(); // Populate the dropdown menus
             loadPreferences(); // Load saved preferences (if any)
-        } catch (IOException e) {
-            e.printStackTrace(); // Handle potential IO exceptions
-        }
+        }, dataTableView, lineChart, pieChart);
     }
 
     // Navigation methods for switching between pages
@@ -125,6 +168,10 @@ public class EconomicImpactController {
      */
     @FXML
     public void fetchData(ActionEvent event) {
+        if (dropdownData == null) {
+            return; // The filters are not populated yet
+        }
+
         // Get the selected items from the CheckComboBoxes
         List<String> selectedProducts = new ArrayList<>(productChoiceBox.getCheckModel().getCheckedItems());
         List<String> selectedRegions = new ArrayList<>(regionChoiceBox.getCheckModel().getCheckedItems());
@@ -138,17 +185,19 @@ public class EconomicImpactController {
         List<String> selectedTypeCodes = getSelectedCodes("Matkailutyyppi", selectedTypes);
 
         // Build the query JSON based on selected codes
-        String jsonQuery = buildQuery(selectedProductCodes, selectedRegionCodes, selectedYearCodes, selectedTypeCodes);
-
-        try {
-            // Fetch data from the API based on the constructed query
-            JsonObject responseData = facade.fetchDataFromAPI(jsonQuery);
-            List<EconomicImpactData> dataModels = facade.processResponseData(responseData); // Process the fetched data
-            updateUI(dataModels); // Update the UI with the fetched data
+        PxWebQuery query = buildQuery(selectedProductCodes, selectedRegionCodes, selectedYearCodes, selectedTypeCodes);
+
+        // Fetch data from the API based on the constructed query; a newer request replaces a pending one
+        dataPending = true;
+        loader.load("data", () -> {
+            DataCube cube = facade.fetchCube(query);
+            // The charts show the cube rolled up to one product or year per point
+            return new SelectionData(facade.processCube(cube), facade.totalsBy(cube, "Tuotteet"), facade.totalsBy(cube, "Vuosi"));
+        }, data -> {
+            dataPending = false;
+            updateUI(data.rows, data.totalsByProduct, data.totalsByYear); // Update the UI with the fetched data
             savePreferences(selectedProducts, selectedRegions, selectedYears, selectedTypes); // Save user preferences
-        } catch (IOException e) {
-            e.printStackTrace(); // Handle IO exceptions
-        }
+        }, dataTableView, lineChart, pieChart);
     }
 
     /**
@@ -171,71 +220,44 @@ public class EconomicImpactController {
     }
 
     /**
-     * Constructs the query string in JSON format based on the selected filters.
-     */
-    public String buildQuery(List<String> products, List<String> regions, List<String> years, List<String> types) {
-        JsonArray queryArray = new JsonArray();
-        queryArray.add(buildQueryItem("Tuotteet", products)); // Add product filter
-        queryArray.add(buildQueryItem("Maakunta", regions)); // Add region filter
-        queryArray.add(buildQueryItem("Vuosi", years)); // Add year filter
-        queryArray.add(buildQueryItem("Matkailutyyppi", types)); // Add type filter
-
-        JsonObject responseObject = new JsonObject();
-        responseObject.addProperty("format", "json-stat2");
-
-        JsonObject queryObject = new JsonObject();
-        queryObject.add("query", queryArray);
-        queryObject.add("response", responseObject);
-
-        return queryObject.toString(); // Return the query string
-    }
-
-    /**
-     * Builds a query item for a specific filter, such as products, regions, etc.
+     * Constructs the query for the selected filters.
      */
-    public JsonObject buildQueryItem(String code, List<String> values) {
-        JsonObject item = new JsonObject();
-        item.addProperty("code", code);
-
-        JsonObject selection = new JsonObject();
-        selection.addProperty("filter", "item");
-
-        // Add the selected values to the query item
-        JsonArray valuesArray = new JsonArray();
-        for (String value : values) {
-            valuesArray.add(value);
-        }
-        selection.add("values", valuesArray);
-
-        item.add("selection", selection);
-
-        return item; // Return the query item
+    public PxWebQuery buildQuery(List<String> products, List<String> regions, List<String> years, List<String> types) {
+        return facade.newQuery()
+                .select("Tuotteet", products) // Add product filter
+                .select("Maakunta", regions) // Add region filter
+                .select("Vuosi", years) // Add year filter
+                .select("Matkailutyyppi", types) // Add type filter
+                .format(PxWebQuery.FORMAT_JSON_STAT2)
+                .build();
     }
 
     /**
      * Updates the user interface with the fetched data (e.g., populating the table and charts).
      *
-     * @param dataModels List of EconomicImpactData to display in the UI
+     * @param dataModels      List of EconomicImpactData to display in the UI
+     * @param totalsByProduct The value of each product over the selection, shown in the pie chart
+     * @param totalsByYear    The value of each year over the selection, shown in the line chart
      */
-    public void updateUI(List<EconomicImpactData> dataModels) {
+    public void updateUI(List<EconomicImpactData> dataModels, Map<String, Double> totalsByProduct, Map<String, Double> totalsByYear) {
         ObservableList<EconomicImpactData> data = FXCollections.observableArrayList(dataModels);
         dataTableView.setItems(data);
 
         if (dataTableView.getColumns().isEmpty()) {
             TableColumn<EconomicImpactData, String> productCol = new TableColumn<>("Product");
-            productCol.setCellValueFactory(cellData -> cellData.getValue().productProperty());
+            productCol.setCellValueFactory(CellValues.of(EconomicImpactData::getProduct));
 
             TableColumn<EconomicImpactData, String> regionCol = new TableColumn<>("Region");
-            regionCol.setCellValueFactory(cellData -> cellData.getValue().regionProperty());
+            regionCol.setCellValueFactory(CellValues.of(EconomicImpactData::getRegion));
 
             TableColumn<EconomicImpactData, String> yearCol = new TableColumn<>("Year");
-            yearCol.setCellValueFactory(cellData -> cellData.getValue().yearProperty());
+            yearCol.setCellValueFactory(CellValues.of(EconomicImpactData::getYear));
 
             TableColumn<EconomicImpactData, String> typeCol = new TableColumn<>("Type");
-            typeCol.setCellValueFactory(cellData -> cellData.getValue().typeProperty());
+            typeCol.setCellValueFactory(CellValues.of(EconomicImpactData::getType));
 
             TableColumn<EconomicImpactData, Double> valueCol = new TableColumn<>("Value");
-            valueCol.setCellValueFactory(cellData -> cellData.getValue().valueProperty().asObject());
+            valueCol.setCellValueFactory(CellValues.of(EconomicImpactData::getValue));
 
             dataTableView.getColumns().addAll(productCol, regionCol, yearCol, typeCol, valueCol);
         }
@@ -243,15 +265,15 @@ public class EconomicImpactController {
         lineChart.getData().clear();
         XYChart.Series<String, Number> lineSeries = new XYChart.Series<>();
         lineSeries.setName("Value over Years");
-        for (EconomicImpactData dm : dataModels) {
-            XYChart.Data<String, Number> dataPoint = new XYChart.Data<>(dm.getYear(), dm.getValue());
+        for (Map.Entry<String, Double> total : totalsByYear.entrySet()) {
+            XYChart.Data<String, Number> dataPoint = new XYChart.Data<>(total.getKey(), total.getValue());
             lineSeries.getData().add(dataPoint);
 
             dataPoint.nodeProperty().addListener((observable, oldValue, newValue) -> {
                 if (newValue != null) {
-                    Tooltip tooltip = new Tooltip("Year: " + dm.getYear() + "\nValue: " + dm.getValue());
+                    Tooltip tooltip = new Tooltip("Year: " + total.getKey() + "\nValue: " + total.getValue());
                     Tooltip.install(newValue, tooltip);
-                    Label label = new Label(String.format("%.2f", dm.getValue()));
+                    Label label = new Label(String.format("%.2f", total.getValue()));
                     label.setStyle("-fx-font-size: 10px; -fx-text-fill: black;");
                     StackPane.setAlignment(label, Pos.TOP_CENTER);
                     ((StackPane) newValue).getChildren().add(label);
@@ -261,19 +283,12 @@ public class EconomicImpactController {
         lineChart.getData().add(lineSeries);
 
         pieChart.getData().clear();
-        Map<String, Double> categoryValues = new HashMap<>();
-        for (EconomicImpactData dm : dataModels) {
-            String category = dm.getProduct();
-            double value = dm.getValue();
-            categoryValues.merge(category, value, Double::sum);
-        }
-        if (categoryValues.isEmpty()) {
+        if (totalsByProduct.isEmpty()) {
             PieChart.Data slice = new PieChart.Data("No Data", 1);
             pieChart.getData().add(slice);
         } else {
-            for (Map.Entry<String, Double> entry : categoryValues.entrySet()) {
-                PieChart.Data slice = new PieChart.Data(entry.getKey(), entry.getValue());
-                pieChart.getData().add(slice);
+            for (Map.Entry<String, Double> total : totalsByProduct.entrySet()) {
+                pieChart.getData().add(new PieChart.Data(total.getKey(), total.getValue()));
             }
         }
     }
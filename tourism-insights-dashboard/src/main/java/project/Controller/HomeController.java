@@ -10,14 +10,16 @@ import javafx.scene.control.Tooltip;
 import javafx.scene.input.MouseEvent;
 import javafx.stage.Stage;
 import project.Main;
+import project.Common.AsyncLoader;
 import project.Common.PreferenceManager;
+import project.Common.Rollup;
+import project.Common.ServiceRegistry;
+import project.Common.ViewLifecycle;
 import javafx.scene.Node;
 import javafx.collections.FXCollections;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import project.Model.*;
 import project.ServiceFacade.HomeServiceFacade;
@@ -29,16 +31,27 @@ import project.ServiceFacade.HomeServiceFacade;
  * 
  * It also manages the filtering and display of tourism statistics based on the user's selected filters.
  * 
+ * All facade calls that may go to the network run in the background through an AsyncLoader, so the page
+ * stays responsive while the charts show their loading state. Pending loads are cancelled while the page is
+ * hidden and restarted when it is shown again.
  */
-public class HomeController {
+public class HomeController implements ViewLifecycle {
+
+    // Rollups of the pie charts: tourists summed per purpose and per year
+    private static final Rollup<TouristDatabyPurpose> TOURISTS_BY_PURPOSE =
+            Rollup.<TouristDatabyPurpose>byLabel(TouristDatabyPurpose::getPurpose)
+                    .measure(data -> data.getTrouristsNo().doubleValue());
+    private static final Rollup<TouristYearData> TOURISTS_BY_YEAR =
+            Rollup.<TouristYearData>byLabel(TouristYearData::getYear)
+                    .measure(data -> data.getTrouristsNo().doubleValue());
 
     private List<TouristData> touristsData = new ArrayList<>();
     private List<TouristDatabyPurpose> touristDatabyPurpose = new ArrayList<>();
     private HomeServiceFacade homeService;
     private PreferenceManager preferenceManager;
+    private final AsyncLoader loader = new AsyncLoader();
 
     public HomeController(){
-        homeService = new HomeServiceFacade();
         preferenceManager = new PreferenceManager();
     }
     
@@ -71,12 +84,43 @@ public class HomeController {
     
     @FXML
     public void initialize() {
-        touristsData = homeService.getTouriseDataList();
-        touristDatabyPurpose = homeService.getTourisePurposeDataList();
+        LoadHomeData();
+    }
 
-        InitializeLocationcomboBox();
-        InitializeTouristData();
-        InitializeTouristDataByPurpose();
+    @Override
+    public void onDeactivate() {
+        // Pending loads are of no use while the page is hidden
+        loader.cancelAll();
+    }
+
+    @Override
+    public void onActivate() {
+        // Restart whatever was cancelled when the page was hidden
+        if (homeService == null) {
+            LoadHomeData();
+        } else if (visitorLineChart.getData().isEmpty()) {
+            InitializeTouristData();
+        }
+    }
+
+    private void LoadHomeData()
+    {
+        // The facade is shared across page visits; creating it the first time downloads the tables,
+        // so getting it and preparing its datasets happens off the application thread
+        loader.load("home", () -> {
+            HomeServiceFacade facade = ServiceRegistry.get(HomeServiceFacade.class, HomeServiceFacade::new);
+            facade.getTouriseDataList();
+            facade.getTourisePurposeDataList();
+            return facade;
+        }, facade -> {
+            homeService = facade;
+            touristsData = homeService.getTouriseDataList();
+            touristDatabyPurpose = homeService.getTourisePurposeDataList();
+
+            InitializeLocationcomboBox();
+            InitializeTouristData();
+            InitializeTouristDataByPurpose();
+        }, visitorLineChart, visitorPieChart, purposePiChart, purposeLineChart);
     }
 
     private void InitializeLocationcomboBox()
@@ -96,11 +140,17 @@ public class HomeController {
 
         var filteredTouristData = homeService.getLocationWiseTouriseDataList((touristsData), selectedLocation);
 
-        var filteredTouristyearData = homeService.getLocationAndYearWiseTouriseDataList(selectedLocation);
-
         UpdateTouristDataByLocation(filteredTouristData, selectedLocation);
-        UpdateVisitorLineChart(filteredTouristyearData, selectedLocation);
-        UpdateVisitorPieChart(filteredTouristyearData, selectedLocation);
+        LoadTouristYearData(selectedLocation, selectedLocation);
+    }
+
+    // Fetches the year-wise history in the background; a newer selection replaces a pending one
+    private void LoadTouristYearData(String locationKey, String selectedLocation)
+    {
+        loader.load("yearWise", () -> homeService.getLocationAndYearWiseTouriseDataList(locationKey), filteredTouristyearData -> {
+            UpdateVisitorLineChart(filteredTouristyearData, selectedLocation);
+            UpdateVisitorPieChart(filteredTouristyearData, selectedLocation);
+        }, visitorLineChart, visitorPieChart);
     }
     
     private void InitializeTouristDataByPurpose()
@@ -108,24 +158,7 @@ public class HomeController {
         var filterFor_1_6 = homeService.getPurposeWiseTouriseDataList((touristDatabyPurpose), "1,6");
 
         purposePiChart.getData().clear();
-        Map<String, Double> dataCounts = new HashMap<>();
-
-        for (TouristDatabyPurpose data : filterFor_1_6) {
-            String purposeGroup = data.getPurpose();
-            Double touristNo = (Double) data.getTrouristsNo();
-
-            System.out.println(purposeGroup);
-
-            dataCounts.put(purposeGroup, dataCounts.getOrDefault(purposeGroup, 0.0) + touristNo);
-        }
-
-        for (Map.Entry<String, Double> entry : dataCounts.entrySet()) {
-            String purposeGroup = entry.getKey();
-            Double totaltouristNo = entry.getValue();
-
-            PieChart.Data slice = new PieChart.Data(purposeGroup, totaltouristNo);
-            purposePiChart.getData().add(slice);
-        } 
+        purposePiChart.getData().addAll(TOURISTS_BY_PURPOSE.aggregate(filterFor_1_6).toPieData(Rollup.Measure.SUM));
         purposePiChart.setLabelLineLength(10); 
         purposePiChart.setTitle("Personal & Work");
 
@@ -185,6 +218,9 @@ public class HomeController {
 
     @FXML
     private void LoadTouristDataByLocation() {
+        if (homeService == null) {
+            return;
+        }
         var selectedLocation = locationsDropdown.getValue();
         preferenceManager.savePreferences("selectedLocation", selectedLocation);
 
@@ -193,11 +229,8 @@ public class HomeController {
         
         var filteredTouristData = homeService.getLocationWiseTouriseDataList((touristsData), preferenceManager.getPreference("selectedLocation", "Finland"));
 
-        var filteredTouristyearData = homeService.getLocationAndYearWiseTouriseDataList(preferenceManager.getPreference("selectedLocationCode", "Finland"));
-
         UpdateTouristDataByLocation(filteredTouristData, preferenceManager.getPreference("selectedLocation", "Finland"));
-        UpdateVisitorLineChart(filteredTouristyearData, preferenceManager.getPreference("selectedLocation", "Finland"));
-        UpdateVisitorPieChart(filteredTouristyearData, preferenceManager.getPreference("selectedLocation", "Finland"));
+        LoadTouristYearData(preferenceManager.getPreference("selectedLocationCode", "Finland"), preferenceManager.getPreference("selectedLocation", "Finland"));
     }
     
     private void UpdateTouristDataByLocation(List<TouristData> touristsData, String selectedLocation) {
@@ -263,22 +296,7 @@ public class HomeController {
     private void UpdateVisitorPieChart(List<TouristYearData> touristyearData, String selectedLocation)
     {
         visitorPieChart.getData().clear();
-        Map<String, Double> dataCounts = new HashMap<>();
-
-        for (TouristYearData data : touristyearData) {
-            String yearGroup = data.getYear();
-            Double touristNo = (Double) data.getTrouristsNo();
-
-            dataCounts.put(yearGroup, dataCounts.getOrDefault(yearGroup, 0.0) + touristNo);
-        }
-
-        for (Map.Entry<String, Double> entry : dataCounts.entrySet()) {
-            String yearGroup = entry.getKey();
-            Double totaltouristNo = entry.getValue();
-
-            PieChart.Data slice = new PieChart.Data(yearGroup, totaltouristNo);
-            visitorPieChart.getData().add(slice);
-        }  
+        visitorPieChart.getData().addAll(TOURISTS_BY_YEAR.aggregate(touristyearData).toPieData(Rollup.Measure.SUM));
         visitorPieChart.setTitle("Yearly Data - " + selectedLocation);
 
         for (PieChart.Data data : visitorPieChart.getData()) {
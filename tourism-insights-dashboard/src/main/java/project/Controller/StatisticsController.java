@@ -18,13 +18,15 @@ import project.Model.TripDataAndDuration;
 import project.Model.TripStatistics;
 import project.Model.VisitorStatistics;
 import project.ServiceFacade.StatisticsServiceFacade;
+import project.Common.AsyncLoader;
+import project.Common.Rollup;
 import project.Common.PreferenceManager;
+import project.Common.ServiceRegistry;
+import project.Common.ViewLifecycle;
 import java.io.IOException;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.List;
 
 /**
@@ -35,8 +37,18 @@ import java.util.List;
  * It interacts with the StatisticsServiceFacade to fetch and process data, such as trips and 
  * visitor related data. Additionally, it handles user preferences and updates the UI components with relevant information.
  * 
+ * The facade downloads its tables when it is first created, so that happens in the background through an AsyncLoader
+ * and the filters are wired up only once the data is available.
  */
-public class StatisticsController {
+public class StatisticsController implements ViewLifecycle {
+
+    // Rollups of the visitor pie chart: the percentages of a trip type summed per age group or gender
+    private static final Rollup<VisitorStatistics> PERCENTAGE_BY_AGE_GROUP =
+            Rollup.<VisitorStatistics>by(VisitorStatistics.AGE_GROUPS, VisitorStatistics::getAgeGroupCode)
+                    .measure(VisitorStatistics::getPercentage);
+    private static final Rollup<VisitorStatistics> PERCENTAGE_BY_GENDER =
+            Rollup.<VisitorStatistics>by(VisitorStatistics.GENDERS, VisitorStatistics::getGenderCode)
+                    .measure(VisitorStatistics::getPercentage);
     
         @FXML
         private ComboBox<String> seasonFilter;
@@ -82,9 +94,9 @@ public class StatisticsController {
     
         private StatisticsServiceFacade serviceFacade;
         private PreferenceManager preferenceManager;
+        private final AsyncLoader loader = new AsyncLoader();
     
         public StatisticsController(){
-            this.serviceFacade = new StatisticsServiceFacade();
             this.preferenceManager = new PreferenceManager();
         }
     
@@ -110,10 +122,41 @@ public class StatisticsController {
             genderRadioButton.setToggleGroup(purposeToggleGroup);
             ageRadioButton.setSelected(true);
 
-            tripDataByDestination = this.serviceFacade.getTripsByDestination();
-            visiotrData = this.serviceFacade.getVisitorStatistics();
-            tripDataAndDuration = this.serviceFacade.getTripsAndDuration();
+            loadStatistics();
+        }
+
+        @Override
+        public void onDeactivate() {
+            loader.cancelAll();
+        }
+
+        @Override
+        public void onActivate() {
+            // Restart the load if it was cancelled when the page was hidden
+            if (serviceFacade == null) {
+                loadStatistics();
+            }
+        }
+
+        private void loadStatistics() {
+            // The facade is shared across page visits; creating it the first time downloads the tables
+            loader.load("statistics", () -> {
+                StatisticsServiceFacade facade = ServiceRegistry.get(StatisticsServiceFacade.class, StatisticsServiceFacade::new);
+                facade.getTripsByDestination();
+                facade.getVisitorStatistics();
+                facade.getTripsAndDuration();
+                return facade;
+            }, facade -> {
+                this.serviceFacade = facade;
+                tripDataByDestination = this.serviceFacade.getTripsByDestination();
+                visiotrData = this.serviceFacade.getVisitorStatistics();
+                tripDataAndDuration = this.serviceFacade.getTripsAndDuration();
+                initializeFilters();
+            }, tripCountBarChart, visitorPieChart, statisticsTable);
+        }
 
+        // Wires the filters to the charts once the data has been loaded
+        private void initializeFilters() {
             seasonFilter.setOnAction(event -> {
                 String selectedSeason = seasonFilter.getValue();
                 preferenceManager.savePreferences("season", selectedSeason);
@@ -170,57 +213,20 @@ public class StatisticsController {
     }
     
     private void updateAgeGroupPieChart(String selectedTripType) {
-        visitorPieChart.getData().clear();
-        visitorPieChart.setTitle("Visitors by Age Group");
-
-        List<VisitorStatistics> filteredData = this.serviceFacade.getVisitorsByTripType(visiotrData, selectedTripType);
-        // Create a map to hold total percentages for each trip type
-        Map<String, Double> ageCounts = new HashMap<>();
-
-        // Add slices to the pie chart based on total percentages by trip type
-        for (VisitorStatistics stats : filteredData) {
-            String ageGroup = stats.getAgeGroup();
-            Double percentage = stats.getPercentage();
-
-            ageCounts.put(ageGroup, ageCounts.getOrDefault(ageGroup, 0.0) + percentage);
-        }
-
-         // Add slices to the pie chart based on total percentages by trip type
-        for (Map.Entry<String, Double> entry : ageCounts.entrySet()) {
-            String ageGroup = entry.getKey();
-            Double totalPercentage = entry.getValue();
-
-            // Add data to pie chart
-            PieChart.Data slice = new PieChart.Data(ageGroup, totalPercentage);
-            visitorPieChart.getData().add(slice);
-        }  
+        updateVisitorPieChart("Visitors by Age Group", selectedTripType, PERCENTAGE_BY_AGE_GROUP);
     }
 
     private void updateGenderPieChart(String selectedTripType) {
-        visitorPieChart.getData().clear();
-        visitorPieChart.setTitle("Visitors by Gender");
-        
-        List<VisitorStatistics> filteredData = this.serviceFacade.getVisitorsByTripType(visiotrData, selectedTripType);
-        // Create a map to hold total percentages for each trip type
-        Map<String, Double> genderCounts = new HashMap<>();
-
-        // Add slices to the pie chart based on total percentages by trip type
-        for (VisitorStatistics stats : filteredData) {
-            String gender = stats.getGender();
-            Double percentage = stats.getPercentage();
-
-            genderCounts.put(gender, genderCounts.getOrDefault(gender, 0.0) + percentage);
-        }
+        updateVisitorPieChart("Visitors by Gender", selectedTripType, PERCENTAGE_BY_GENDER);
+    }
 
-         // Add slices to the pie chart based on total percentages by trip type
-        for (Map.Entry<String, Double> entry : genderCounts.entrySet()) {
-            String gender = entry.getKey();
-            Double totalPercentage = entry.getValue();
+    // Adds one slice per group with the total percentage of the trip type
+    private void updateVisitorPieChart(String title, String selectedTripType, Rollup<VisitorStatistics> rollup) {
+        visitorPieChart.getData().clear();
+        visitorPieChart.setTitle(title);
 
-            // Add data to pie chart
-            PieChart.Data slice = new PieChart.Data(gender, totalPercentage);
-            visitorPieChart.getData().add(slice);
-        }  
+        List<VisitorStatistics> filteredData = this.serviceFacade.getVisitorsByTripType(visiotrData, selectedTripType);
+        visitorPieChart.getData().addAll(rollup.aggregate(filteredData).toPieData(Rollup.Measure.SUM));
     }
 
     private void updateStatisticsTable(String selectedYear) {
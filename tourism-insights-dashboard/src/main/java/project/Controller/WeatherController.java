@@ -4,20 +4,22 @@ import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.ListChangeListener;
-import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.Node;
 import javafx.scene.chart.*;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.input.MouseEvent;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import project.Main;
 import project.Model.TrafficData;
 import project.Model.WeatherData;
-import project.Service.TrafficService;
-import project.Service.WeatherService;
+import project.ServiceFacade.WeatherServiceFacade;
+import project.Common.AsyncLoader;
+import project.Common.CellValues;
 import project.Common.PreferenceManager;
+import project.Common.ServiceRegistry;
+import project.Common.ViewLifecycle;
 
 import java.io.IOException;
 import java.time.LocalDate;
@@ -29,8 +31,29 @@ import java.util.List;
 /**
  * The Controller is responsible for managing the interactions between the weather and traffic services in the application.
  * It initializes these services and provides methods to fetch and display relevant data (weather conditions and traffic statistics).
+ *
+ * The station lists are loaded in the background as well, and the filters are filled once they arrive.
+ * Changes to the station filters and date pickers refresh the data through an AsyncLoader with a short debounce:
+ * a burst of events, such as selecting every station, starts one download of the final selection, a newer
+ * refresh cancels the one in flight, and only the latest result is shown.
  */
-public class WeatherController {
+public class WeatherController implements ViewLifecycle {
+
+    // How long the filters have to stay unchanged before the data is refreshed
+    private static final Duration REFRESH_DELAY = Duration.millis(300);
+
+    // The facade and the stations it lists, loaded together before the filters are filled
+    private static final class StationLists {
+        private final WeatherServiceFacade facade;
+        private final List<Integer> weatherStationIds;
+        private final List<Integer> trafficStationIds;
+
+        StationLists(WeatherServiceFacade facade, List<Integer> weatherStationIds, List<Integer> trafficStationIds) {
+            this.facade = facade;
+            this.weatherStationIds = weatherStationIds;
+            this.trafficStationIds = trafficStationIds;
+        }
+    }
 
     // Weather Filters
     @FXML
@@ -82,14 +105,11 @@ public class WeatherController {
     @FXML
     private LineChart<String, Number> combinedLineChart;
 
-    private WeatherService weatherService;
-    private TrafficService trafficService;
+    private WeatherServiceFacade weatherFacade;
+    private final AsyncLoader loader = new AsyncLoader();
 
     @FXML
     public void initialize() {
-        weatherService = new WeatherService();
-        trafficService = new TrafficService();
-
         // Set default dates for weather and traffic
         LocalDate defaultFromDate = LocalDate.now().minusDays(1);
         LocalDate defaultToDate = LocalDate.now();
@@ -100,44 +120,80 @@ public class WeatherController {
         trafficToDatePicker.setValue(defaultToDate);
 
         // Initialize Weather Table Columns
-        stationIdColumn.setCellValueFactory(new PropertyValueFactory<>("stationId"));
-        dateColumn.setCellValueFactory(new PropertyValueFactory<>("measurementTime"));
-        temperatureColumn.setCellValueFactory(new PropertyValueFactory<>("airTemperature"));
-        precipitationColumn.setCellValueFactory(new PropertyValueFactory<>("precipitation"));
-        windSpeedColumn.setCellValueFactory(new PropertyValueFactory<>("windSpeed"));
+        stationIdColumn.setCellValueFactory(CellValues.of(WeatherData::getStationId));
+        dateColumn.setCellValueFactory(CellValues.of(WeatherData::getMeasurementTime));
+        temperatureColumn.setCellValueFactory(CellValues.of(WeatherData::getAirTemperature));
+        precipitationColumn.setCellValueFactory(CellValues.of(WeatherData::getPrecipitation));
+        windSpeedColumn.setCellValueFactory(CellValues.of(WeatherData::getWindSpeed));
 
         // Initialize Traffic Table Columns
-        trafficStationIdColumn.setCellValueFactory(new PropertyValueFactory<>("stationId"));
-        trafficDateColumn.setCellValueFactory(new PropertyValueFactory<>("measurementTime"));
-        volumeColumn.setCellValueFactory(new PropertyValueFactory<>("volume"));
-        speedColumn.setCellValueFactory(new PropertyValueFactory<>("speed"));
+        trafficStationIdColumn.setCellValueFactory(CellValues.of(TrafficData::getStationId));
+        trafficDateColumn.setCellValueFactory(CellValues.of(TrafficData::getMeasurementTime));
+        volumeColumn.setCellValueFactory(CellValues.of(TrafficData::getVolume));
+        speedColumn.setCellValueFactory(CellValues.of(TrafficData::getSpeed));
 
-        // Initialize Filters with separate station IDs for weather and traffic
-        weatherStationFilter.setItems(FXCollections.observableArrayList(getAvailableWeatherStationIds()));
-        trafficStationFilter.setItems(FXCollections.observableArrayList(getAvailableTrafficStationIds()));
-
-        // Load preferences if they exist
-        loadPreferences();
+        loadStations();
+    }
 
-        // Select all stations by default
-        weatherStationFilter.getSelectionModel().selectAll();
-        trafficStationFilter.getSelectionModel().selectAll();
+    private void loadStations() {
+        // The facade is shared across page visits so the station lists are downloaded only once; creating it
+        // or downloading the lists must not hold up the application thread
+        loader.load("stations", () -> {
+            WeatherServiceFacade facade = ServiceRegistry.get(WeatherServiceFacade.class, WeatherServiceFacade::new);
+            return new StationLists(facade, facade.getWeatherStationIds(), facade.getTrafficStationIds());
+        }, stations -> {
+            weatherFacade = stations.facade;
+
+            // Initialize Filters with separate station IDs for weather and traffic
+            weatherStationFilter.setItems(FXCollections.observableArrayList(stations.weatherStationIds));
+            trafficStationFilter.setItems(FXCollections.observableArrayList(stations.trafficStationIds));
+
+            // Load preferences if they exist
+            loadPreferences();
+
+            // Select all stations by default
+            weatherStationFilter.getSelectionModel().selectAll();
+            trafficStationFilter.getSelectionModel().selectAll();
+
+            // Set multiple selection mode
+            weatherStationFilter.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+            trafficStationFilter.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+
+            // Load initial data
+            updateData();
+
+            // Add listeners to update data when filters change; bursts of changes are coalesced into one refresh
+            weatherFromDatePicker.setOnAction(e -> scheduleWeatherUpdate());
+            weatherToDatePicker.setOnAction(e -> scheduleWeatherUpdate());
+            trafficFromDatePicker.setOnAction(e -> scheduleTrafficUpdate());
+            trafficToDatePicker.setOnAction(e -> scheduleTrafficUpdate());
+
+            weatherStationFilter.getSelectionModel().getSelectedItems().addListener((ListChangeListener<Integer>) c -> scheduleWeatherUpdate());
+            trafficStationFilter.getSelectionModel().getSelectedItems().addListener((ListChangeListener<Integer>) c -> scheduleTrafficUpdate());
+        }, weatherStationFilter, trafficStationFilter);
+    }
 
-        // Set multiple selection mode
-        weatherStationFilter.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
-        trafficStationFilter.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+    @Override
+    public void onDeactivate() {
+        loader.cancelAll();
+    }
 
-        // Load initial data
-        updateData();
+    @Override
+    public void onActivate() {
+        // The measurements are live, and a refresh may have been cancelled when the page was hidden
+        if (weatherFacade == null) {
+            loadStations();
+        } else {
+            updateData();
+        }
+    }
 
-        // Add listeners to update data when filters change
-        weatherFromDatePicker.setOnAction(e -> updateWeatherData());
-        weatherToDatePicker.setOnAction(e -> updateWeatherData());
-        trafficFromDatePicker.setOnAction(e -> updateTrafficData());
-        trafficToDatePicker.setOnAction(e -> updateTrafficData());
+    private void scheduleWeatherUpdate() {
+        loader.debounce("weather", REFRESH_DELAY, this::updateWeatherData);
+    }
 
-        weatherStationFilter.getSelectionModel().getSelectedItems().addListener((ListChangeListener<Integer>) c -> updateWeatherData());
-        trafficStationFilter.getSelectionModel().getSelectedItems().addListener((ListChangeListener<Integer>) c -> updateTrafficData());
+    private void scheduleTrafficUpdate() {
+        loader.debounce("traffic", REFRESH_DELAY, this::updateTrafficData);
     }
 
     public void loadPreferences() {
@@ -155,8 +211,8 @@ public class WeatherController {
             }
         }
 
-        // Set the weather station filter selections based on saved preferences
-        ObservableList<Integer> availableWeatherStationIds = FXCollections.observableArrayList(getAvailableWeatherStationIds());
+        // Set the weather station filter selections based on saved preferences; the filter already lists the available stations
+        ObservableList<Integer> availableWeatherStationIds = weatherStationFilter.getItems();
         List<Integer> validWeatherLocationIds = new ArrayList<>();
 
         for (Integer locationId : weatherLocationIds) {
@@ -189,8 +245,8 @@ public class WeatherController {
             }
         }
 
-        // Set the traffic station filter selections based on saved preferences
-        ObservableList<Integer> availableTrafficStationIds = FXCollections.observableArrayList(getAvailableTrafficStationIds());
+        // Set the traffic station filter selections based on saved preferences; the filter already lists the available stations
+        ObservableList<Integer> availableTrafficStationIds = trafficStationFilter.getItems();
         List<Integer> validTrafficLocationIds = new ArrayList<>();
 
         for (Integer locationId : trafficLocationIds) {
@@ -233,20 +289,11 @@ public class WeatherController {
         PreferenceManager.savePreferences("weather_location", selectedWeatherStations.toString());
         PreferenceManager.savePreferences("weather_date", weatherFromDate.toString());
 
-        Task<List<WeatherData>> fetchWeatherDataTask = new Task<>() {
-            @Override
-            protected List<WeatherData> call() throws Exception {
-                return weatherService.fetchWeatherData(selectedWeatherStations, weatherFromDateTime, weatherToDateTime);
-            }
-        };
-
-        fetchWeatherDataTask.setOnSucceeded(event -> {
-            List<WeatherData> data = fetchWeatherDataTask.getValue();
+        // A newer refresh cancels this one, and only the latest result reaches the table and charts
+        loader.load("weather", () -> weatherFacade.getWeatherData(selectedWeatherStations, weatherFromDateTime, weatherToDateTime), data -> {
             updateWeatherUI(data);
             updateCombinedLineChart(data, null); // Update only weather data in the line chart
-        });
-
-        new Thread(fetchWeatherDataTask).start();
+        }, weatherTable, weatherPieChart);
     }
 
     public void updateTrafficData() {
@@ -267,20 +314,10 @@ public class WeatherController {
         PreferenceManager.savePreferences("traffic_location", selectedTrafficStations.toString());
         PreferenceManager.savePreferences("traffic_date", trafficFromDate.toString());
 
-        Task<List<TrafficData>> fetchTrafficDataTask = new Task<>() {
-            @Override
-            protected List<TrafficData> call() throws Exception {
-                return trafficService.fetchTrafficData(selectedTrafficStations, trafficFromDateTime, trafficToDateTime);
-            }
-        };
-
-        fetchTrafficDataTask.setOnSucceeded(event -> {
-            List<TrafficData> data = fetchTrafficDataTask.getValue();
+        loader.load("traffic", () -> weatherFacade.getTrafficData(selectedTrafficStations, trafficFromDateTime, trafficToDateTime), data -> {
             updateTrafficUI(data);
             updateCombinedLineChart(null, data); // Update only traffic data in the line chart
-        });
-
-        new Thread(fetchTrafficDataTask).start();
+        }, trafficTable, trafficPieChart);
     }
 
     public void updateWeatherUI(List<WeatherData> weatherDataList) {
@@ -349,14 +386,6 @@ public class WeatherController {
         }
     }
 
-    private List<Integer> getAvailableWeatherStationIds() {
-        return weatherService.fetchWeatherStationIds();
-    }
-
-    private List<Integer> getAvailableTrafficStationIds() {
-        return trafficService.fetchTrafficStationIds();
-    }
-
     @FXML
     public void switchToHomePage() throws IOException {
         Main.setRoot("/Views/HomePage.fxml");
@@ -1,12 +1,20 @@
 package project;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javafx.application.Application;
 import javafx.stage.Stage;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.fxml.FXMLLoader;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import project.Common.HttpClientProvider;
+import project.Common.ServiceRegistry;
+import project.Common.TaskExecutors;
+import project.Common.ViewLifecycle;
 
 /**
  * The Main class serves as the entry point for the JavaFX application, responsible for launching the user interface 
@@ -19,28 +27,104 @@ import javafx.fxml.FXMLLoader;
  *  Loading the FXML files for different views dynamically, allowing for scene transitions within the application.
  *  Setting the title of the application window and providing the structure for switching between different views.
  * 
+ * Views that have been built are kept in a least-recently-used cache together with their controllers, so
+ * switching back to a page reuses its scene graph instead of parsing the FXML and building the charts again.
+ * The number of cached views can be limited with the tourism.views.maxCached system property (default 4,
+ * enough for every page). Controllers implementing ViewLifecycle are told when their view is hidden or shown.
+ *
+ * Pressing F5 refreshes the data: the facades kept by the ServiceRegistry, the tables the services keep in
+ * memory and the cached views are dropped, and the current page is built again, which requests its data
+ * again instead of taking it from the caches.
  */
 public class Main extends Application {
 
+    private static final int MAX_CACHED_VIEWS = Integer.getInteger("tourism.views.maxCached", 4);
+
     private static Scene scene;
+    private static CachedView currentView;
+
+    // Access-ordered, so the least recently shown view is dropped first when the cache is full
+    private static final Map<String, CachedView> viewCache = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedView> eldest) {
+            return size() > MAX_CACHED_VIEWS;
+        }
+    };
     
     @Override
     public void start(Stage primaryStage) throws Exception {
 
-        Parent root = FXMLLoader.load(getClass().getResource("/Views/HomePage.fxml"));
-        scene = new Scene(root);
+        currentView = loadView("/Views/HomePage.fxml");
+        viewCache.put("/Views/HomePage.fxml", currentView);
+        scene = new Scene(currentView.root);
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.F5), Main::refresh);
         primaryStage.setTitle("Tourism Insights Dashboard");
         primaryStage.setScene(scene);
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        // Stop the background work first, then release the pooled HTTP connections shared by all services
+        TaskExecutors.shutdown();
+        HttpClientProvider.shutdown();
+    }
+
     public static void setRoot(String fxml) throws IOException {
-        scene.setRoot(loadFXML(fxml));
+        if (currentView != null && currentView.controller instanceof ViewLifecycle) {
+            ((ViewLifecycle) currentView.controller).onDeactivate();
+        }
+
+        CachedView view = viewCache.get(fxml);
+        boolean fromCache = view != null;
+        if (!fromCache) {
+            view = loadView(fxml);
+            viewCache.put(fxml, view);
+        }
+
+        scene.setRoot(view.root);
+        currentView = view;
+
+        if (fromCache && view.controller instanceof ViewLifecycle) {
+            ((ViewLifecycle) view.controller).onActivate();
+        }
+    }
+
+    // Drops the data of every page and builds the current page again; the other pages are built on their next visit
+    private static void refresh() {
+        if (currentView.controller instanceof ViewLifecycle) {
+            ((ViewLifecycle) currentView.controller).onDeactivate();
+        }
+        ServiceRegistry.refreshAll();
+        viewCache.clear();
+
+        try {
+            currentView = loadView(currentView.fxml);
+        } catch (IOException exception) {
+            System.err.println("Could not reload " + currentView.fxml + ": " + exception.getMessage());
+            return;
+        }
+        viewCache.put(currentView.fxml, currentView);
+        scene.setRoot(currentView.root);
     }
 
-    private static Parent loadFXML(String fxml) throws IOException {
+    private static CachedView loadView(String fxml) throws IOException {
         FXMLLoader fxmlLoader = new FXMLLoader(Main.class.getResource(fxml));
-        return fxmlLoader.load();
+        Parent root = fxmlLoader.load();
+        return new CachedView(fxml, root, fxmlLoader.getController());
+    }
+
+    // A built view and the controller that belongs to it
+    private static class CachedView {
+        private final String fxml;
+        private final Parent root;
+        private final Object controller;
+
+        CachedView(String fxml, Parent root, Object controller) {
+            this.fxml = fxml;
+            this.root = root;
+            this.controller = controller;
+        }
     }
 
     public static void main(String[] args) {
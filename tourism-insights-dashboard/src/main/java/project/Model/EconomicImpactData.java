@@ -1,46 +1,52 @@
 package project.Model;
 
-import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleStringProperty;
+import project.Common.LabelDictionary;
 
 /**
  * This class represents the economic impact data model for 
- * region, year, and type, along with its associated value. This class is designed 
- * using properties for data binding and UI integration.
+ * region, year, and type, along with its associated value. Instances are immutable and hold plain
+ * fields; the table of the economic impact page wraps the values of the rows it shows in read-only
+ * properties when it renders them (see CellValues).
+ *
+ * The product, region, year and type labels are stored as codes of the shared dictionaries below, so a
+ * row is a handful of ints and grouping can index by code.
  */
-public class EconomicImpactData {
-    private SimpleStringProperty product;
-    private SimpleStringProperty region;
-    private SimpleStringProperty year;
-    private SimpleStringProperty type;
-    private SimpleDoubleProperty value;
+public final class EconomicImpactData {
+    public static final LabelDictionary PRODUCTS = new LabelDictionary("product");
+    public static final LabelDictionary REGIONS = new LabelDictionary("region");
+    public static final LabelDictionary YEARS = new LabelDictionary("year");
+    public static final LabelDictionary TYPES = new LabelDictionary("tourism type");
+
+    private final int product;
+    private final int region;
+    private final int year;
+    private final int type;
+    private final double value;
 
     public EconomicImpactData(String product, String region, String year, String type, double value) {
-        this.product = new SimpleStringProperty(product);
-        this.region = new SimpleStringProperty(region);
-        this.year = new SimpleStringProperty(year);
-        this.type = new SimpleStringProperty(type);
-        this.value = new SimpleDoubleProperty(value);
+        this(PRODUCTS.encode(product), REGIONS.encode(region), YEARS.encode(year), TYPES.encode(type), value);
     }
 
-    public String getProduct() { return product.get(); }
-    public void setProduct(String product) { this.product.set(product); }
+    // Creates a row from codes of the dictionaries, e.g. codes looked up once per dimension category
+    public EconomicImpactData(int productCode, int regionCode, int yearCode, int typeCode, double value) {
+        this.product = productCode;
+        this.region = regionCode;
+        this.year = yearCode;
+        this.type = typeCode;
+        this.value = value;
+    }
 
-    public String getRegion() { return region.get(); }
-    public void setRegion(String region) { this.region.set(region); }
+    public String getProduct() { return PRODUCTS.decode(product); }
+    public int getProductCode() { return product; }
 
-    public String getYear() { return year.get(); }
-    public void setYear(String year) { this.year.set(year); }
+    public String getRegion() { return REGIONS.decode(region); }
+    public int getRegionCode() { return region; }
 
-    public String getType() { return type.get(); }
-    public void setType(String type) { this.type.set(type); }
+    public String getYear() { return YEARS.decode(year); }
+    public int getYearCode() { return year; }
 
-    public double getValue() { return value.get(); }
-    public void setValue(double value) { this.value.set(value); }
-    public SimpleStringProperty productProperty() { return product; }
-    public SimpleStringProperty regionProperty() { return region; }
-    public SimpleStringProperty yearProperty() { return year; }
-    public SimpleStringProperty typeProperty() { return type; }
-    public SimpleDoubleProperty valueProperty() { return value; }
+    public String getType() { return TYPES.decode(type); }
+    public int getTypeCode() { return type; }
 
-}
\ No newline at end of file
+    public double getValue() { return value; }
+}
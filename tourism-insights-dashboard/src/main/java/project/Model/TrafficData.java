@@ -1,40 +1,37 @@
 package project.Model;
 
-import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
-
 /**
  * The TrafficData class represents traffic measurement data from a specific station at a given time. 
  * It includes the station ID, the time the measurement was taken, the traffic volume, and the average speed.
- * enables easy data binding with UI components.
+ * Instances are immutable; the traffic table wraps the values of the rows it shows in read-only properties
+ * when it renders them (see CellValues).
  */
-public class TrafficData {
-    private final SimpleIntegerProperty stationId;
-    private final SimpleStringProperty measurementTime;
-    private final SimpleDoubleProperty volume;
-    private final SimpleDoubleProperty speed;
+public final class TrafficData {
+    private final int stationId;
+    private final String measurementTime;
+    private final double volume;
+    private final double speed;
 
     public TrafficData(int stationId, String measurementTime, double volume, double speed) {
-        this.stationId = new SimpleIntegerProperty(stationId);
-        this.measurementTime = new SimpleStringProperty(measurementTime);
-        this.volume = new SimpleDoubleProperty(volume);
-        this.speed = new SimpleDoubleProperty(speed);
+        this.stationId = stationId;
+        this.measurementTime = measurementTime;
+        this.volume = volume;
+        this.speed = speed;
     }
 
     public int getStationId() {
-        return stationId.get();
+        return stationId;
     }
 
     public String getMeasurementTime() {
-        return measurementTime.get();
+        return measurementTime;
     }
 
     public double getVolume() {
-        return volume.get();
+        return volume;
     }
 
     public double getSpeed() {
-        return speed.get();
+        return speed;
     }
 }
@@ -1,65 +1,67 @@
 package project.Model;
 
+import project.Common.LabelDictionary;
+
 /**
  * The VisitorStatistics class represents statistical data for visitors, including the year, 
  * age group, gender, trip type, and the percentage of visitors in each category.
  * 
  * This class is used to store and analyze visitor data, providing insights based on demographics 
  * such as age group, gender, and trip type for a particular year.
+ *
+ * The year, age group, gender and trip type repeat in every row, so they are stored as codes of the
+ * shared dictionaries below; grouping by them can compare and index the codes instead of the labels.
  */
-public class VisitorStatistics {
-    private String year;
-    private String ageGroup;
-    private String gender;
-    private String tripType;
-    private double percentage;
+public final class VisitorStatistics {
+    public static final LabelDictionary YEARS = new LabelDictionary("year");
+    public static final LabelDictionary AGE_GROUPS = new LabelDictionary("age group");
+    public static final LabelDictionary GENDERS = new LabelDictionary("gender");
+    public static final LabelDictionary TRIP_TYPES = new LabelDictionary("trip type");
+
+    private final int year;
+    private final int ageGroup;
+    private final int gender;
+    private final int tripType;
+    private final double percentage;
 
     // Constructors
     public VisitorStatistics(String year, String ageGroup, String gender, String tripType, Double percentage) {
-        this.year = year;
-        this.ageGroup = ageGroup;
-        this.gender = gender;
-        this.tripType = tripType;
+        this.year = YEARS.encode(year);
+        this.ageGroup = AGE_GROUPS.encode(ageGroup);
+        this.gender = GENDERS.encode(gender);
+        this.tripType = TRIP_TYPES.encode(tripType);
         this.percentage = percentage;
     }
 
     public String getYear() {
-        return year;
-    }
-
-    public void setYear(String year) {
-        this.year = year;
+        return YEARS.decode(year);
     }
 
     public String getAgeGroup() {
-        return ageGroup;
+        return AGE_GROUPS.decode(ageGroup);
     }
 
-    public void setAgeGroup(String ageGroup) {
-        this.ageGroup = ageGroup;
+    public int getAgeGroupCode() {
+        return ageGroup;
     }
 
     public String getGender() {
-        return gender;
+        return GENDERS.decode(gender);
     }
 
-    public void setGender(String gender) {
-        this.gender = gender;
+    public int getGenderCode() {
+        return gender;
     }
 
     public String getTripType() {
-        return tripType;
+        return TRIP_TYPES.decode(tripType);
     }
 
-    public void setTripType(String type) {
-        this.tripType = type;
+    public int getTripTypeCode() {
+        return tripType;
     }
 
     public double getPercentage() {
         return percentage;
     }
-
-    public void setPercentage(double percentage) {
-        this.percentage = percentage;
-    }
 }
@@ -1,46 +1,48 @@
 package project.Model;
 
-import javafx.beans.property.*;
-
 /**
  * The WeatherData class represents weather-related data collected at a particular station at a specific time.
  * It includes information such as air temperature, wind speed, and precipitation.
  * 
  * This class is used to store weather data measurements from a station, such as air temperature, wind speed,
  * and precipitation levels at a given point in time.
+ *
+ * Instances are immutable and hold their values in plain fields, as most rows are only aggregated into
+ * charts; the weather table wraps the values of the rows it shows in read-only properties when it renders
+ * them (see CellValues).
  */
-public class WeatherData {
-    private final SimpleIntegerProperty stationId;
-    private final SimpleStringProperty measurementTime;
-    private final SimpleDoubleProperty airTemperature;
-    private final SimpleDoubleProperty windSpeed;
-    private final SimpleDoubleProperty precipitation;
+public final class WeatherData {
+    private final int stationId;
+    private final String measurementTime;
+    private final double airTemperature;
+    private final double windSpeed;
+    private final double precipitation;
 
     public WeatherData(int stationId, String measurementTime, double airTemperature, double windSpeed, double precipitation) {
-        this.stationId = new SimpleIntegerProperty(stationId);
-        this.measurementTime = new SimpleStringProperty(measurementTime);
-        this.airTemperature = new SimpleDoubleProperty(airTemperature);
-        this.windSpeed = new SimpleDoubleProperty(windSpeed);
-        this.precipitation = new SimpleDoubleProperty(precipitation);
+        this.stationId = stationId;
+        this.measurementTime = measurementTime;
+        this.airTemperature = airTemperature;
+        this.windSpeed = windSpeed;
+        this.precipitation = precipitation;
     }
 
     public int getStationId() {
-        return stationId.get();
+        return stationId;
     }
 
     public String getMeasurementTime() {
-        return measurementTime.get();
+        return measurementTime;
     }
 
     public double getAirTemperature() {
-        return airTemperature.get();
+        return airTemperature;
     }
 
     public double getWindSpeed() {
-        return windSpeed.get();
+        return windSpeed;
     }
 
     public double getPrecipitation() {
-        return precipitation.get();
+        return precipitation;
     }
 }
@@ -0,0 +1,181 @@
+package project.Service;
+
+import java.util.concurrent.CompletableFuture;
+
+import project.Common.CachingDataRetrievable;
+import project.Common.DiskResponseCache;
+import project.Common.HostLimiter;
+import project.Common.PxWebQuery;
+import project.Common.ResponseCache;
+import project.Common.SingleFlight;
+import project.Common.TaskExecutors;
+import project.Common.Snapshot;
+
+/**
+ * The DecodedTableDataService class is a base service for StatisticsFinland tables that are decoded from
+ * the raw response body into a primitive form, such as a PxJsonTable or a DataCube, instead of a JsonObject.
+ * Subclasses say how a body is decoded and how the decoded table is written to and opened from a Snapshot.
+ *
+ * A table is looked up in these tiers, fastest first:
+ *
+ *  1. the in-memory cache of decoded tables given by getDecodedCache()
+ *  2. the decoded snapshot in the DiskResponseCache, which is mapped and used without parsing
+ *  3. the raw response body in the DiskResponseCache, which is decoded and written as a snapshot
+ *  4. the network (or the offline LocalTableStore), whose body is decoded and written as a snapshot
+ *
+ * A table served from disk is downloaded again in the background. The snapshot records the SHA-256 hash of
+ * the body it was decoded from, so an unchanged download is recognized without decoding it; a changed one
+ * replaces the table and the listener set with setOnRevalidated() is called. The new table is written as a
+ * new snapshot file next to the mapped one, which is deleted once it can be. Services that load the same
+ * table at the same time share one pass through the disk tiers and the network, so the table is read,
+ * revalidated or downloaded once, and decoded once.
+ */
+public abstract class DecodedTableDataService<T> extends StatisticsFinlandDataService {
+    private static final String BODY_HASH = "bodyHash";
+    // Keyed by URL and query; the query names the format, so every key always decodes to the same type
+    // Only downloads in flight are shared, as the decoded cache shares the tables once they are in
+    private static final SingleFlight<String, Object> downloads = new SingleFlight<>(0);
+
+    private CompletableFuture<T> pendingDecodedLoad;
+
+    protected DecodedTableDataService(PxWebQuery query) {
+        super(query);
+    }
+
+    // Returns the in-memory cache the decoded tables are kept in
+    protected abstract ResponseCache<T> getDecodedCache();
+
+    // Decodes a response body; returns null if the body cannot be decoded
+    protected abstract T decode(String responseBody);
+
+    // Opens a table written with writeSnapshot(); returns null if the snapshot does not hold one
+    protected abstract T fromSnapshot(Snapshot snapshot);
+
+    // Adds the table to the snapshot
+    protected abstract void writeSnapshot(T table, Snapshot.Writer writer);
+
+    // Approximate memory held by the table in bytes, used as its weight in the cache
+    protected abstract long estimateBytes(T table);
+
+    @Override
+    public CompletableFuture<?> preload() {
+        return loadDecodedAsync();
+    }
+
+    /**
+     * Starts loading the table described by the query given to the constructor, if that has not happened
+     * yet. Every call returns the same future as long as the load succeeds; a failed load (null) is not
+     * kept, so the next call tries again.
+     */
+    protected synchronized CompletableFuture<T> loadDecodedAsync() {
+        CompletableFuture<T> load = pendingDecodedLoad;
+        if (load == null) {
+            CompletableFuture<T> newLoad = fetchDecodedAsync(jsonQuery);
+            pendingDecodedLoad = newLoad;
+            // Not on the completing thread: a caller may hold this service's lock while it waits for the load
+            newLoad.thenAcceptAsync(table -> {
+                if (table == null) {
+                    clearFailedDecodedLoad(newLoad);
+                }
+            }, TaskExecutors.getExecutor());
+            load = newLoad;
+        }
+        return load;
+    }
+
+    private synchronized void clearFailedDecodedLoad(CompletableFuture<T> load) {
+        if (pendingDecodedLoad == load) {
+            pendingDecodedLoad = null;
+        }
+    }
+
+    // Returns the table, waiting for loadDecodedAsync() to complete if it is still in flight; null if it failed
+    protected T getDecoded() {
+        return TaskExecutors.await(loadDecodedAsync());
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<T> fetchDecodedAsync(String query) {
+        String key = CachingDataRetrievable.cacheKey(apiUrl, query);
+        T cached = getDecodedCache().get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        // Overlapping loads of the table share the disk reads, the revalidation they start and the download
+        return downloads.execute(key, () -> load(key, query).thenApply(table -> (Object) table))
+                .thenApply(table -> (T) table);
+    }
+
+    // Looks the table up in the disk tiers, then downloads it
+    private CompletableFuture<T> load(String key, String query) {
+        DiskResponseCache diskCache = DiskResponseCache.getDefault();
+        Snapshot snapshot = diskCache != null ? diskCache.readSnapshot(apiUrl, query) : null;
+        T mapped = snapshot != null ? fromSnapshot(snapshot) : null;
+        if (mapped != null) {
+            System.out.println("Serving snapshot from " + DiskResponseCache.getFetchedAt(snapshot) + " for " + apiUrl);
+            store(key, mapped);
+            revalidate(query, snapshot.getProperty(BODY_HASH));
+            return CompletableFuture.completedFuture(mapped);
+        }
+
+        String storedBody = readBodyFromDisk(query);
+        T stored = decode(storedBody);
+        if (stored != null) {
+            String bodyHash = CachingDataRetrievable.sha256(storedBody);
+            store(key, stored);
+            storeSnapshot(query, stored, bodyHash);
+            revalidate(query, bodyHash);
+            return CompletableFuture.completedFuture(stored);
+        }
+
+        return requestBodyAsync(query).thenApply(responseBody -> {
+            T table = decode(responseBody);
+            if (table != null) {
+                store(key, table);
+                storeSnapshot(query, table, CachingDataRetrievable.sha256(responseBody));
+            }
+            return table;
+        });
+    }
+
+    // Downloads the table again and replaces the copy it was served from if the body has changed
+    private void revalidate(String query, String storedBodyHash) {
+        requestBodyAsync(query, HostLimiter.Priority.BACKGROUND).thenAccept(responseBody -> {
+            if (responseBody == null) {
+                return;
+            }
+            String bodyHash = CachingDataRetrievable.sha256(responseBody);
+            if (bodyHash.equals(storedBodyHash)) {
+                return;
+            }
+            T fresh = decode(responseBody);
+            if (fresh == null) {
+                return;
+            }
+            store(CachingDataRetrievable.cacheKey(apiUrl, query), fresh);
+            storeSnapshot(query, fresh, bodyHash);
+            replaceDecodedLoad(query, fresh);
+            notifyRevalidated();
+        });
+    }
+
+    private synchronized void replaceDecodedLoad(String query, T fresh) {
+        if (pendingDecodedLoad != null && query.equals(jsonQuery)) {
+            pendingDecodedLoad = CompletableFuture.completedFuture(fresh);
+        }
+    }
+
+    private void store(String key, T table) {
+        getDecodedCache().put(key, table, estimateBytes(table), getCacheTtlMillis());
+    }
+
+    private void storeSnapshot(String query, T table, String bodyHash) {
+        DiskResponseCache diskCache = DiskResponseCache.getDefault();
+        if (diskCache != null) {
+            Snapshot.Writer writer = new Snapshot.Writer().property(BODY_HASH, bodyHash);
+            writeSnapshot(table, writer);
+            // Named after the body, so a revalidated table never replaces the file an older one is mapped from
+            diskCache.writeSnapshot(apiUrl, query, bodyHash.substring(0, 16), writer);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package project.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * The DigitrafficStationReader class reads the /stations/data payloads of the Digitraffic weather and TMS
+ * APIs as a stream, without building a JSON tree of the whole payload first.
+ *
+ * The payload lists every station in Finland, while the dashboard only shows a few of them and only a few
+ * sensors per station. Stations that are not selected are skipped without being parsed, and of the
+ * selected stations only the values of the requested sensors are kept. readStationIds() reads the ids of
+ * all stations alone, skipping their sensors.
+ */
+class DigitrafficStationReader {
+    private final String[] sensorNames;
+
+    /**
+     * @param sensorNames Names of the sensors to keep, e.g. "ILMA"; their position in this list is the
+     *                    index of their value in each StationReading
+     */
+    DigitrafficStationReader(String... sensorNames) {
+        this.sensorNames = sensorNames;
+    }
+
+    /**
+     * Reads the payload and returns the readings of the selected stations in payload order.
+     *
+     * @param in         The payload, read until its end
+     * @param stationIds The stations to keep, or null to keep every station
+     * @return One reading for every selected station that has a sensorValues list
+     * @throws IOException if the payload cannot be read or is not valid JSON
+     */
+    List<StationReading> read(Reader in, Set<Integer> stationIds) throws IOException {
+        List<StationReading> readings = new ArrayList<>();
+
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("stations".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    StationReading reading = readStation(reader, stationIds);
+                    if (reading != null) {
+                        readings.add(reading);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return readings;
+    }
+
+    /**
+     * Reads the ids of every station in the payload, in payload order. Stations without an id are left out.
+     *
+     * @throws IOException if the payload cannot be read or is not valid JSON
+     */
+    static List<Integer> readStationIds(Reader in) throws IOException {
+        List<Integer> stationIds = new ArrayList<>();
+
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("stations".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("id".equals(reader.nextName()) && reader.peek() == JsonToken.NUMBER) {
+                            stationIds.add(reader.nextInt());
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return stationIds;
+    }
+
+    /**
+     * Writes the ids as a payload with no sensors, which readStationIds() reads back. Used to keep the
+     * station list on disk without the measurements that come with it.
+     */
+    static String writeStationIds(List<Integer> stationIds) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject().name("stations").beginArray();
+            for (int stationId : stationIds) {
+                writer.beginObject().name("id").value(stationId).endObject();
+            }
+            writer.endArray().endObject();
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);  // A StringWriter does not fail
+        }
+        return out.toString();
+    }
+
+    // Reads one station object; returns null if it is not selected or has no sensor values
+    private StationReading readStation(JsonReader reader, Set<Integer> stationIds) throws IOException {
+        Integer stationId = null;
+        StationReading reading = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                stationId = reader.nextInt();
+            } else if ("sensorValues".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY
+                    && (stationId == null || isSelected(stationId, stationIds))) {
+                // The id normally comes first; if it does not, the sensors are read and the check is done below
+                reading = readSensors(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (reading == null || stationId == null || !isSelected(stationId, stationIds)) {
+            return null;
+        }
+        reading.stationId = stationId;
+        return reading;
+    }
+
+    /**
+     * Reads the sensorValues array. As in the tree-based parsing this replaces, the measured time of the
+     * reading is the one of the last sensor in the list, and sensors without a name, value or measured
+     * time are ignored.
+     */
+    private StationReading readSensors(JsonReader reader) throws IOException {
+        double[] values = new double[sensorNames.length];
+        Arrays.fill(values, Double.NaN);
+        String measuredTime = null;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String name = null;
+            double value = Double.NaN;
+            String time = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                JsonToken token = reader.peek();
+                if ("name".equals(field) && token == JsonToken.STRING) {
+                    name = reader.nextString();
+                } else if ("value".equals(field) && (token == JsonToken.NUMBER || token == JsonToken.STRING)) {
+                    value = readDouble(reader);
+                } else if ("measuredTime".equals(field) && token == JsonToken.STRING) {
+                    time = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            measuredTime = time;
+            if (name == null || time == null || Double.isNaN(value)) {
+                continue;
+            }
+            int index = indexOf(name);
+            if (index >= 0) {
+                values[index] = value;
+            }
+        }
+        reader.endArray();
+
+        return new StationReading(measuredTime, values);
+    }
+
+    // Reads a number, which some stations send as a string; values that are not numbers become NaN
+    private static double readDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            return reader.nextDouble();
+        }
+        try {
+            return Double.parseDouble(reader.nextString());
+        } catch (NumberFormatException exception) {
+            return Double.NaN;
+        }
+    }
+
+    private int indexOf(String sensorName) {
+        for (int i = 0; i < sensorNames.length; i++) {
+            if (sensorNames[i].equals(sensorName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSelected(int stationId, Set<Integer> stationIds) {
+        return stationIds == null || stationIds.contains(stationId);
+    }
+
+    /**
+     * The requested sensor values of one station. Sensors that were missing or invalid have the value NaN.
+     */
+    static class StationReading {
+        private int stationId;
+        private final String measuredTime;
+        private final double[] values;
+
+        StationReading(String measuredTime, double[] values) {
+            this.measuredTime = measuredTime;
+            this.values = values;
+        }
+
+        int getStationId() {
+            return stationId;
+        }
+
+        // Measured time of the last sensor of the station, or null if it had none
+        String getMeasuredTime() {
+            return measuredTime;
+        }
+
+        // Value of the sensor at the given position of the names given to the reader
+        double getValue(int sensorIndex) {
+            return values[sensorIndex];
+        }
+    }
+}
@@ -1,10 +1,39 @@
 package project.Service;
 
 import com.google.gson.*;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import project.Common.CachingDataRetrievable;
+import project.Common.CubeStore;
+import project.Common.DataCube;
+import project.Common.DiskResponseCache;
+import project.Common.HostLimiter;
+import project.Common.HttpClientProvider;
+import project.Common.LabelDictionary;
+import project.Common.TaskExecutors;
+import project.Common.JsonStatDecoder;
+import project.Common.LocalTableStore;
+import project.Common.PxWebQuery;
+import project.Common.QueryPlanner;
+import project.Common.ServiceRegistry;
+import project.Common.SingleFlight;
+import project.Common.Snapshot;
 import project.Model.EconomicImpactData;
 
-import java.io.*;
-import java.net.*;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 
 /**
@@ -12,12 +41,41 @@ import java.util.*;
  * related to tourism from an external API provided by VisitFinland.
  * <p>
  * This service handles the interaction with the VisitFinland API by making HTTP requests to fetch
- * the data in JSON format. It supports both GET and POST requests and parses the fetched JSON data
- * for further processing.
+ * the data in JSON format. It supports both GET and POST requests, sent over the shared pooled
+ * client from {@link HttpClientProvider}, and parses the fetched JSON data for further processing.
+ * In the offline mode of {@link LocalTableStore} both the metadata and the data queries are answered from
+ * the local copy of the table.
+ * <p>
+ * {@link #fetchCube(PxWebQuery)} keeps every selection it downloads as a {@link Snapshot} in the
+ * {@link DiskResponseCache}, so a selection made again within a week is opened from the mapped snapshot
+ * instead of being downloaded and parsed, unless the data has been refreshed since (see
+ * {@link ServiceRegistry}). Selections over the cell limit of the API are split by a
+ * {@link QueryPlanner} into chunks that are fetched concurrently and stitched back together.
+ * <p>
+ * Identical requests that overlap, e.g. when a selection is applied twice in quick succession, share one
+ * HTTP exchange and one parsed response through a {@link SingleFlight}.
  */
 public class EconomicImpactService {
     // The API URL for accessing economic impact data
     private static final String API_URL = "https://visitfinland.stat.fi/PXWeb/api/v1/en/VisitFinland/Alueellinen_matkailutilinpito/040_amtp_tau_104.px";
+    // The table is updated once a year, so a week old selection is still current
+    private static final Duration SNAPSHOT_MAX_AGE = Duration.ofDays(7);
+    // Snapshots written before the last explicit refresh are not used
+    private static volatile Instant refreshedAt = Instant.EPOCH;
+    private static final SingleFlight<String, JsonObject> requests = new SingleFlight<>();
+    private static final SingleFlight<String, DataCube> cubeRequests = new SingleFlight<>();
+
+    static {
+        ServiceRegistry.onRefresh(() -> refreshedAt = Instant.now());
+    }
+
+    /**
+     * Reads the body of a successful response.
+     */
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(HttpEntity entity) throws IOException, ParseException;
+    }
 
     /**
      * Fetches the initial data from the VisitFinland API.
@@ -27,30 +85,115 @@ public class EconomicImpactService {
      * @throws IOException if there is an error during the HTTP request or data reading
      */
     public JsonObject fetchInitialData() throws IOException {
-        URL url = new URL(API_URL);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.connect();
-
-        int responseCode = conn.getResponseCode();
-        if (responseCode != 200) {
-            throw new IOException("Failed to fetch initial data: HTTP code " + responseCode);
+        return requests.call(API_URL, this::requestInitialData);
+    }
+
+    private JsonObject requestInitialData() throws IOException {
+        LocalTableStore localTables = LocalTableStore.getDefault();
+        String localBody = localTables != null ? localTables.answerMetadata(API_URL) : null;
+        if (localBody != null) {
+            return JsonParser.parseString(localBody).getAsJsonObject();
         }
+        HttpGet request = new HttpGet(API_URL);
+        return execute(request, "Failed to fetch initial data: HTTP code ");
+    }
+
+    // Creates an empty in-memory store of the table from its metadata; null if it cannot be kept in memory
+    public CubeStore createCubeStore(JsonObject metadata) {
+        return CubeStore.fromMetadata(API_URL, metadata);
+    }
+
+    // Creates the planner that keeps queries under the cell limit of the API, from the table metadata
+    public QueryPlanner createQueryPlanner(JsonObject metadata) {
+        return new QueryPlanner(metadata);
+    }
 
-        // Reading the response from the API
-        BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"));
-        String inputLine;
-        StringBuilder response = new StringBuilder();
+    // Starts building a query for the economic impact table
+    public PxWebQuery.Builder newQuery() {
+        return PxWebQuery.forTable(API_URL);
+    }
 
-        while ((inputLine = in.readLine()) != null) {
-            response.append(inputLine);
+    /**
+     * Fetches data from the VisitFinland API using a POST request.
+     * The query is posted as the UTF-8 bytes it was serialized to when it was built.
+     *
+     * @param query The query built with newQuery()
+     * @return A JsonObject containing the response data from the API
+     * @throws IOException if there is an error during the HTTP request or data reading
+     */
+    public JsonObject fetchDataFromAPI(PxWebQuery query) throws IOException {
+        return requests.call(query.getCacheKey(), () -> requestData(query));
+    }
+
+    private JsonObject requestData(PxWebQuery query) throws IOException {
+        JsonObject local = answerLocally(query.toJson());
+        if (local != null) {
+            return local;
         }
-        in.close();
-        conn.disconnect();
+        HttpPost request = new HttpPost(query.getTableUrl());
+        request.setEntity(new ByteArrayEntity(query.toBytes(), ContentType.APPLICATION_JSON));
+        return execute(request, "Failed to fetch data: HTTP code ");
+    }
 
-        // Parse the response string into a JsonObject
-        JsonParser parser = new JsonParser();
-        return parser.parse(response.toString()).getAsJsonObject();
+    /**
+     * Fetches the selection as a DataCube, from its snapshot on disk if one is less than a week old and
+     * otherwise from the API. A downloaded selection is written as a snapshot for the next time.
+     *
+     * @param query The query built with newQuery(), in the json-stat2 format
+     * @return The cube, or null if the response is not a json-stat2 dataset
+     * @throws IOException if there is an error during the HTTP request or data reading
+     */
+    public DataCube fetchCube(PxWebQuery query) throws IOException {
+        DiskResponseCache diskCache = DiskResponseCache.getDefault();
+        Snapshot snapshot = diskCache != null ? diskCache.readSnapshot(query.getTableUrl(), query.toJson()) : null;
+        Instant fetchedAt = snapshot != null ? DiskResponseCache.getFetchedAt(snapshot) : null;
+        if (fetchedAt != null && fetchedAt.isAfter(Instant.now().minus(SNAPSHOT_MAX_AGE)) && fetchedAt.isAfter(refreshedAt)) {
+            DataCube cube = DataCube.fromSnapshot(snapshot);
+            if (cube != null) {
+                return cube;
+            }
+        }
+
+        DataCube cube = cubeRequests.call(query.getCacheKey(), () -> requestCube(query));
+        if (cube != null && diskCache != null) {
+            Snapshot.Writer writer = new Snapshot.Writer();
+            cube.writeTo(writer);
+            diskCache.writeSnapshot(query.getTableUrl(), query.toJson(), writer);
+        }
+        return cube;
+    }
+
+    /**
+     * Fetches the selection as a DataCube like fetchCube(PxWebQuery), split by the planner into chunks the
+     * API answers in one response. The chunks are fetched concurrently, each from its own snapshot when it
+     * has one, and stitched into one cube.
+     *
+     * @param query   The query built with newQuery(), in the json-stat2 format
+     * @param planner The planner created from the table metadata with createQueryPlanner()
+     * @return The cube, or null if a response is not a json-stat2 dataset
+     * @throws IOException if there is an error during an HTTP request or data reading
+     */
+    public DataCube fetchCube(PxWebQuery query, QueryPlanner planner) throws IOException {
+        return planner.fetch(query, this::fetchCube);
+    }
+
+    // Decodes the response while it is read, so no JSON tree of the selection is built
+    private DataCube requestCube(PxWebQuery query) throws IOException {
+        LocalTableStore localTables = LocalTableStore.getDefault();
+        String localBody = localTables != null ? localTables.answer(API_URL, query.toJson()) : null;
+        if (localBody != null) {
+            return JsonStatDecoder.decode(localBody);
+        }
+        HttpPost request = new HttpPost(query.getTableUrl());
+        request.setEntity(new ByteArrayEntity(query.toBytes(), ContentType.APPLICATION_JSON));
+        return execute(request, "Failed to fetch data: HTTP code ", entity -> {
+            try (Reader in = new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8)) {
+                return JsonStatDecoder.decode(in);
+            } catch (IllegalStateException | ArithmeticException | NumberFormatException exception) {
+                System.err.println("Could not decode JSON-stat2 response: " + exception.getMessage());
+                return null;
+            }
+        });
     }
 
     /**
@@ -62,35 +205,72 @@ public class EconomicImpactService {
      * @throws IOException if there is an error during the HTTP request or data reading
      */
     public JsonObject fetchDataFromAPI(String jsonQuery) throws IOException {
-        URL url = new URL(API_URL);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
+        return requests.call(CachingDataRetrievable.cacheKey(API_URL, jsonQuery), () -> requestData(jsonQuery));
+    }
 
-        // Sending the JSON query data in the POST request
-        try (OutputStream os = conn.getOutputStream()) {
-            byte[] input = jsonQuery.getBytes("utf-8");
-            os.write(input, 0, input.length);
+    private JsonObject requestData(String jsonQuery) throws IOException {
+        JsonObject local = answerLocally(jsonQuery);
+        if (local != null) {
+            return local;
         }
+        HttpPost request = new HttpPost(API_URL);
+        request.setHeader("Content-Type", "application/json");
+        // Sending the JSON query data in the POST request
+        request.setEntity(new StringEntity(jsonQuery, ContentType.APPLICATION_JSON));
+        return execute(request, "Failed to fetch data: HTTP code ");
+    }
 
-        int responseCode = conn.getResponseCode();
-        if (responseCode != 200) {
-            throw new IOException("Failed to fetch data: HTTP code " + responseCode);
-        }
+    // Answers the query from the local copy of the table in the offline mode; null if it has to be sent
+    private JsonObject answerLocally(String jsonQuery) {
+        LocalTableStore localTables = LocalTableStore.getDefault();
+        String localBody = localTables != null ? localTables.answer(API_URL, jsonQuery) : null;
+        return localBody != null ? JsonParser.parseString(localBody).getAsJsonObject() : null;
+    }
 
-        // Reading the response from the API
-        BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"));
-        StringBuilder response = new StringBuilder();
-        String responseLine;
-        while ((responseLine = br.readLine()) != null) {
-            response.append(responseLine.trim());
+    // Executes the request and parses the response body into a JsonObject
+    private JsonObject execute(ClassicHttpRequest request, String errorMessage) throws IOException {
+        return execute(request, errorMessage,
+                entity -> JsonParser.parseString(EntityUtils.toString(entity, StandardCharsets.UTF_8)).getAsJsonObject());
+    }
+
+    /**
+     * Executes the request on the shared pooled client, once the limiter of the PxWeb host admits it, and
+     * reads the response body. A 429 response is retried by the limiter after the wait the API asks for.
+     * Only the response is closed, so the connection is handed back to the pool for reuse.
+     *
+     * @param request      The request to execute
+     * @param errorMessage The message prefix used when the API does not answer with HTTP 200
+     * @param bodyReader   Reads the body of the response
+     * @return What the body reader returned
+     * @throws IOException if the request fails or the API returns an error code
+     */
+    private <T> T execute(ClassicHttpRequest request, String errorMessage, BodyReader<T> bodyReader) throws IOException {
+        try {
+            return TaskExecutors.onHost(API_URL, () -> send(request, errorMessage, bodyReader));
+        } catch (HostLimiter.ThrottledException exception) {
+            throw new IOException(errorMessage + exception.getStatusCode(), exception);
         }
-        conn.disconnect();
+    }
 
-        // Parse the response string into a JsonObject
-        JsonParser parser = new JsonParser();
-        return parser.parse(response.toString()).getAsJsonObject();
+    private <T> T send(ClassicHttpRequest request, String errorMessage, BodyReader<T> bodyReader) throws IOException {
+        try (ClassicHttpResponse response = HttpClientProvider.getClient().executeOpen(null, request, null)) {
+            int responseCode = response.getCode();
+            HttpEntity entity = response.getEntity();
+            if (HostLimiter.isThrottled(response)) {
+                EntityUtils.consume(entity);
+                throw HostLimiter.throttled(response);  // The limiter waits and sends the request again
+            }
+            if (responseCode != 200) {
+                EntityUtils.consume(entity);
+                throw new IOException(errorMessage + responseCode);
+            }
+
+            T body = bodyReader.read(entity);
+            EntityUtils.consume(entity);
+            return body;
+        } catch (ParseException e) {
+            throw new IOException(e);
+        }
     }
 
     /**
@@ -122,84 +302,94 @@ public class EconomicImpactService {
 
     /**
      * Processes the economic impact data fetched from the API.
-     * This method maps the raw data into a list of EconomicImpactData objects.
+     * The response is decoded into a DataCube and the returned list is a read-only view over it: each
+     * EconomicImpactData row is created from the cube when it is read, instead of building all rows up front.
      *
      * @param responseData The response data fetched from the API in JSON format
      * @return A list of EconomicImpactData objects containing the processed data
      */
     public List<EconomicImpactData> processData(JsonObject responseData) {
-        List<EconomicImpactData> dataList = new ArrayList<>();
-
-        JsonArray values = responseData.getAsJsonArray("value");
-        JsonObject dimension = responseData.has("dimension") ? responseData.getAsJsonObject("dimension") : null;
-
-        if (dimension != null) {
-            // Extracting indices and labels for each dimension (product, region, year, type)
-            JsonObject productIndex = dimension.getAsJsonObject("Tuotteet").getAsJsonObject("category").getAsJsonObject("index");
-            JsonObject regionIndex = dimension.getAsJsonObject("Maakunta").getAsJsonObject("category").getAsJsonObject("index");
-            JsonObject yearIndex = dimension.getAsJsonObject("Vuosi").getAsJsonObject("category").getAsJsonObject("index");
-            JsonObject typeIndex = dimension.getAsJsonObject("Matkailutyyppi").getAsJsonObject("category").getAsJsonObject("index");
-
-            JsonObject productLabels = dimension.getAsJsonObject("Tuotteet").getAsJsonObject("category").getAsJsonObject("label");
-            JsonObject regionLabels = dimension.getAsJsonObject("Maakunta").getAsJsonObject("category").getAsJsonObject("label");
-            JsonObject yearLabels = dimension.getAsJsonObject("Vuosi").getAsJsonObject("category").getAsJsonObject("label");
-            JsonObject typeLabels = dimension.getAsJsonObject("Matkailutyyppi").getAsJsonObject("category").getAsJsonObject("label");
-
-            // Sorting keys by index to maintain proper order
-            List<String> productKeys = sortKeysByIndex(productIndex);
-            List<String> regionKeys = sortKeysByIndex(regionIndex);
-            List<String> yearKeys = sortKeysByIndex(yearIndex);
-            List<String> typeKeys = sortKeysByIndex(typeIndex);
-
-            int index = 0;
-            // Loop through all combinations of product, region, year, and type
-            for (String productKey : productKeys) {
-                String productLabel = productLabels.get(productKey).getAsString();
-                for (String regionKey : regionKeys) {
-                    String regionLabel = regionLabels.get(regionKey).getAsString();
-                    for (String yearKey : yearKeys) {
-                        String yearLabel = yearLabels.get(yearKey).getAsString();
-                        for (String typeKey : typeKeys) {
-                            String typeLabel = typeLabels.get(typeKey).getAsString();
-
-                            // Get the economic impact value for the current combination of filters
-                            double value = 0.0;
-                            if (index < values.size() && !values.get(index).isJsonNull()) {
-                                value = values.get(index).getAsDouble();
-                            }
-
-                            // Create an EconomicImpactData object and add it to the list
-                            EconomicImpactData dataModel = new EconomicImpactData(productLabel, regionLabel, yearLabel, typeLabel, value);
-                            dataList.add(dataModel);
-                            index++;
-                        }
-                    }
-                }
-            }
-        } else {
+        return processData(JsonStatDecoder.decode(responseData));
+    }
+
+    /**
+     * Processes an economic impact cube, e.g. one returned by fetchCube(). The returned list is a read-only
+     * view over the cube.
+     *
+     * @param cube The decoded response; null if the response could not be decoded
+     * @return A list of EconomicImpactData objects containing the processed data
+     */
+    public List<EconomicImpactData> processData(DataCube cube) {
+        if (cube == null) {
             // Handle case where "dimension" is missing or null
             System.out.println("Dimension data is missing in the response.");
+            return new ArrayList<>();
         }
 
-        return dataList;
+        int productDimension = cube.dimensionIndex("Tuotteet");
+        int regionDimension = cube.dimensionIndex("Maakunta");
+        int yearDimension = cube.dimensionIndex("Vuosi");
+        int typeDimension = cube.dimensionIndex("Matkailutyyppi");
+        if (productDimension < 0 || regionDimension < 0 || yearDimension < 0 || typeDimension < 0) {
+            System.out.println("Dimension data is incomplete in the response.");
+            return new ArrayList<>();
+        }
+
+        return new EconomicImpactRows(cube, productDimension, regionDimension, yearDimension, typeDimension);
     }
 
     /**
-     * Helper method to sort the keys based on their corresponding index value.
-     * This ensures the correct order when processing the data.
-     *
-     * @param indexObject The JSON object containing the index values
-     * @return A list of sorted keys
+     * One row per cell of the cube, in cell order. Cells without a value are shown as 0.0. The labels of
+     * each dimension are encoded once, so creating a row only looks up codes by category.
      */
-    private List<String> sortKeysByIndex(JsonObject indexObject) {
-        List<Map.Entry<String, JsonElement>> entries = new ArrayList<>(indexObject.entrySet());
-        // Sorting the entries by the index value (ascending)
-        entries.sort(Comparator.comparingInt(e -> e.getValue().getAsInt()));
-
-        List<String> sortedKeys = new ArrayList<>();
-        for (Map.Entry<String, JsonElement> entry : entries) {
-            sortedKeys.add(entry.getKey());
+    private static class EconomicImpactRows extends AbstractList<EconomicImpactData> implements RandomAccess {
+        private final DataCube cube;
+        private final int productDimension;
+        private final int regionDimension;
+        private final int yearDimension;
+        private final int typeDimension;
+        private final int[] productCodes;
+        private final int[] regionCodes;
+        private final int[] yearCodes;
+        private final int[] typeCodes;
+
+        EconomicImpactRows(DataCube cube, int productDimension, int regionDimension, int yearDimension, int typeDimension) {
+            this.cube = cube;
+            this.productDimension = productDimension;
+            this.regionDimension = regionDimension;
+            this.yearDimension = yearDimension;
+            this.typeDimension = typeDimension;
+            this.productCodes = encode(productDimension, EconomicImpactData.PRODUCTS);
+            this.regionCodes = encode(regionDimension, EconomicImpactData.REGIONS);
+            this.yearCodes = encode(yearDimension, EconomicImpactData.YEARS);
+            this.typeCodes = encode(typeDimension, EconomicImpactData.TYPES);
+        }
+
+        @Override
+        public EconomicImpactData get(int offset) {
+            if (offset < 0 || offset >= cube.getCellCount()) {
+                throw new IndexOutOfBoundsException("Row " + offset + " of " + cube.getCellCount());
+            }
+            double value = cube.getAt(offset);
+            return new EconomicImpactData(
+                    productCodes[cube.coordinate(offset, productDimension)],
+                    regionCodes[cube.coordinate(offset, regionDimension)],
+                    yearCodes[cube.coordinate(offset, yearDimension)],
+                    typeCodes[cube.coordinate(offset, typeDimension)],
+                    Double.isNaN(value) ? 0.0 : value);
+        }
+
+        @Override
+        public int size() {
+            return cube.getCellCount();
+        }
+
+        private int[] encode(int dimension, LabelDictionary dictionary) {
+            int[] codes = new int[cube.getSize(dimension)];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = dictionary.encode(cube.getLabel(dimension, i));
+            }
+            return codes;
         }
-        return sortedKeys;
     }
 }
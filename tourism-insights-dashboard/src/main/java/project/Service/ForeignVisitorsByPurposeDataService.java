@@ -1,91 +1,37 @@
 package project.Service;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import java.util.Set;
+import java.util.function.Function;
+import project.Common.DataCube;
 import project.Common.IDataService;
+import project.Common.IndexedDataset;
+import project.Common.PxWebQuery;
 import project.Model.*;
 
 /**
- * This class is a service that extends the StatisticsFinlandDataService
+ * This class is a service that extends the JsonStatCubeDataService
  * and implements the IDataService interface to process and retrieve tourist data by trip purpose from the VisitFinland API.
  * 
  * This service fetches and processes data related to foreign visitors categorized by the purpose of their visit 
  * (e.g., leisure, business, etc.). It uses a predefined JSON query to interact with the VisitFinland API, 
  * parsing the response to extract relevant tourist data by purpose.
  */
-public class ForeignVisitorsByPurposeDataService extends StatisticsFinlandDataService implements IDataService<TouristDatabyPurpose> {
+public class ForeignVisitorsByPurposeDataService extends JsonStatCubeDataService implements IDataService<TouristDatabyPurpose> {
   
     private static final String API_URL = "https://visitfinland.stat.fi:443/PXWeb/api/v1/fi/VisitFinland/Matkailijamittari/visitfinland_ulma_pxt_14tj.px";
-    private static String jsonQuery = "{\r\n" + //
-                "  \"query\": [\r\n" + //
-                "    {\r\n" + //
-                "      \"code\": \"Matkan tarkoitus\",\r\n" + //
-                "      \"selection\": {\r\n" + //
-                "        \"filter\": \"item\",\r\n" + //
-                "        \"values\": [\r\n" + //
-                "          \"1\",\r\n" + //
-                "          \"2\",\r\n" + //
-                "          \"3\",\r\n" + //
-                "          \"4\",\r\n" + //
-                "          \"5\",\r\n" + //
-                "          \"6\",\r\n" + //
-                "          \"7\",\r\n" + //
-                "          \"8\",\r\n" + //
-                "          \"9\",\r\n" + //
-                "          \"10\"\r\n" + //
-                "        ]\r\n" + //
-                "      }\r\n" + //
-                "    },\r\n" + //
-                "    {\r\n" + //
-                "      \"code\": \"Matkan kesto\",\r\n" + //
-                "      \"selection\": {\r\n" + //
-                "        \"filter\": \"item\",\r\n" + //
-                "        \"values\": [\r\n" + //
-                "          \"0\"\r\n" + //
-                "        ]\r\n" + //
-                "      }\r\n" + //
-                "    },\r\n" + //
-                "    {\r\n" + //
-                "      \"code\": \"Kulkuväline\",\r\n" + //
-                "      \"selection\": {\r\n" + //
-                "        \"filter\": \"item\",\r\n" + //
-                "        \"values\": [\r\n" + //
-                "          \"0\"\r\n" + //
-                "        ]\r\n" + //
-                "      }\r\n" + //
-                "    },\r\n" + //
-                "    {\r\n" + //
-                "      \"code\": \"Matkustajan asuinmaa\",\r\n" + //
-                "      \"selection\": {\r\n" + //
-                "        \"filter\": \"item\",\r\n" + //
-                "        \"values\": [\r\n" + //
-                "          \"SSS\"\r\n" + //
-                "        ]\r\n" + //
-                "      }\r\n" + //
-                "    },\r\n" + //
-                "    {\r\n" + //
-                "      \"code\": \"Tiedot\",\r\n" + //
-                "      \"selection\": {\r\n" + //
-                "        \"filter\": \"item\",\r\n" + //
-                "        \"values\": [\r\n" + //
-                "          \"matkoja_r12\"\r\n" + //
-                "        ]\r\n" + //
-                "      }\r\n" + //
-                "    }\r\n" + //
-                "  ],\r\n" + //
-                "  \"response\": {\r\n" + //
-                "    \"format\": \"json-stat2\"\r\n" + //
-                "  }\r\n" + //
-                "}";
+    private static final PxWebQuery QUERY = PxWebQuery.forTable(API_URL)
+            .select("Matkan tarkoitus", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10")
+            .select("Matkan kesto", "0")
+            .select("Kulkuväline", "0")
+            .select("Matkustajan asuinmaa", "SSS")
+            .select("Tiedot", "matkoja_r12")
+            .format(PxWebQuery.FORMAT_JSON_STAT2)
+            .build();
 
-    JsonObject objVisitors = new JsonObject();
-    JsonArray visitorsData = null;
-    
-    
     private static final Map<String, String> purposeMap = Map.of(
         "1", "Personal",
         "2", "Holiday",
@@ -99,54 +45,51 @@ public class ForeignVisitorsByPurposeDataService extends StatisticsFinlandDataSe
         "10", "Other work reasons"
     );
 
+    // filterData looks the rows up by the ID of the purpose
+    public static final String PURPOSE_ID = "purposeId";
+    private static final Map<String, Function<? super TouristDatabyPurpose, String>> INDEXES = Map.of(
+        PURPOSE_ID, TouristDatabyPurpose::getPurposeID
+    );
+
     public ForeignVisitorsByPurposeDataService() {
-        super(API_URL);
-        objVisitors = super.fetchData(jsonQuery); 
+        super(QUERY);
     }
 
     @Override
-    public List<TouristDatabyPurpose> processData()
+    public IndexedDataset<TouristDatabyPurpose> processData()
     {
         List<TouristDatabyPurpose> touristDatabyPurposeList = new ArrayList<>();
-        if(objVisitors != null)
+        DataCube cube = getCube();
+        int purposeDimension = cube != null ? cube.dimensionIndex("Matkan tarkoitus") : -1;
+        if(purposeDimension >= 0)
         {
-            JsonObject dimension = objVisitors.getAsJsonObject("dimension");
-            JsonObject matkantarkoitus = dimension.getAsJsonObject("Matkan tarkoitus");
-            JsonObject category = matkantarkoitus.getAsJsonObject("category");
-            JsonObject index = category.getAsJsonObject("index");
-            JsonObject label = category.getAsJsonObject("label");
-            JsonArray values = objVisitors.getAsJsonArray("value");
-            
-            for (Map.Entry<String, JsonElement> entry : index.entrySet()) {
-                String purposeId = entry.getKey();
-                int indexValue = entry.getValue().getAsInt();
-                String purpose = purposeMap.get(purposeId);
-                Double touristno;
-                if (values.get(indexValue) != null && !values.get(indexValue).isJsonNull()) {
-                    touristno = values.get(indexValue).getAsDouble();
-                } else {
-                    touristno = 0.0;
-                }
-                touristDatabyPurposeList.add(new TouristDatabyPurpose(purposeId, purpose, touristno));
+            // One value per purpose of the trip; the other dimensions have a single category
+            int[] coordinates = new int[cube.getDimensionCount()];
+            for (int i = 0; i < cube.getSize(purposeDimension); i++) {
+                coordinates[purposeDimension] = i;
+                String purposeId = cube.getCode(purposeDimension, i);
+                double value = cube.get(coordinates);
+                double touristno = Double.isNaN(value) ? 0.0 : value;
+                touristDatabyPurposeList.add(new TouristDatabyPurpose(purposeId, purposeMap.get(purposeId), touristno));
             }
         }
-        return touristDatabyPurposeList;
+        return index(touristDatabyPurposeList);
     }
 
     @Override
     public List<TouristDatabyPurpose> filterData(List<TouristDatabyPurpose> touristDatabyPurposeList, String filterStr) 
     {
-        List<TouristDatabyPurpose> filteredList = new ArrayList<>();
-        
-        var purposeIDs = filterStr.split(",");
-        for (String purposeID : purposeIDs) {
-            for (TouristDatabyPurpose touristDatabyPurpose : touristDatabyPurposeList) {
-                if (touristDatabyPurpose.getPurposeID().equalsIgnoreCase(purposeID)) {
-                    filteredList.add(touristDatabyPurpose); 
-                }
-            }
+        // The rows come grouped by purpose, in the order the IDs are listed; an ID listed twice counts once
+        Set<String> purposeIds = new LinkedHashSet<>();
+        for (String purposeId : filterStr.split(",")) {
+            purposeIds.add(IndexedDataset.normalize(purposeId));
         }
-        return filteredList;
+        return index(touristDatabyPurposeList).lookupAll(PURPOSE_ID, purposeIds.toArray(new String[0]));
+    }
+
+    @Override
+    public IndexedDataset<TouristDatabyPurpose> index(List<TouristDatabyPurpose> data) {
+        return IndexedDataset.of(data, INDEXES);
     }
     
 }
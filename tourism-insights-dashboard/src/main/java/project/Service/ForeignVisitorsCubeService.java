@@ -0,0 +1,174 @@
+package project.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import project.Common.DataCube;
+import project.Common.PxWebQuery;
+import project.Model.TouristData;
+import project.Model.TouristYearData;
+
+/**
+ * The ForeignVisitorsCubeService class downloads the overnight stays ("yot") of table 133i for every
+ * destination municipality and every year in a single query, and keeps them as a dense
+ * double[municipality][year] matrix.
+ *
+ * ForeignVisitorsDataService and ForeignVisitorsYearWiseDataService both read this table, one by
+ * municipality for a single year and the other by year for a single municipality. Constructed with a shared
+ * ForeignVisitorsCubeService they answer from the matrix instead of querying the table themselves, so the
+ * table is downloaded once and changing the location on the home page needs no network.
+ */
+public class ForeignVisitorsCubeService extends JsonStatCubeDataService {
+
+    private static final String API_URL = "https://pxdata.stat.fi:443/PxWeb/api/v1/en/StatFin_Passiivi/smat/statfinpas_smat_pxt_133i_2021.px";
+    private static final String MUNICIPALITY = "Matkan kohdekunta";
+    private static final String YEAR = "Vuosi";
+    private static final PxWebQuery QUERY = PxWebQuery.forTable(API_URL)
+            .select("Majoitus", "0")
+            .selectAll(MUNICIPALITY)
+            .selectAll(YEAR)
+            .select("Tiedot", "yot")
+            .format(PxWebQuery.FORMAT_JSON_STAT2)
+            .build();
+
+    private Matrix matrix;
+
+    public ForeignVisitorsCubeService() {
+        super(QUERY);
+    }
+
+    // The table is archived and no longer updated, so it can stay cached for long
+    @Override
+    protected long getCacheTtlMillis() {
+        return TimeUnit.DAYS.toMillis(30);
+    }
+
+    /**
+     * Returns the number of overnight stays in every municipality in the given year, in table order. The
+     * whole of Finland ("SSS") is listed like a municipality. Missing values are returned as 0.
+     *
+     * @return The totals, or an empty list if the table could not be downloaded or has no such year
+     */
+    public List<TouristData> getMunicipalityTotals(String year) {
+        Matrix current = getMatrix();
+        Integer column = current != null ? current.yearPositions.get(year) : null;
+        if (column == null) {
+            return new ArrayList<>();
+        }
+
+        List<TouristData> totals = new ArrayList<>(current.municipalityCodes.length);
+        for (int row = 0; row < current.municipalityCodes.length; row++) {
+            double value = current.values[row][column];
+            int touristno = Double.isNaN(value) ? 0 : (int) value;
+            totals.add(new TouristData(current.municipalityCodes[row], current.municipalityLabels[row], touristno));
+        }
+        return totals;
+    }
+
+    /**
+     * Returns the number of overnight stays in the municipality in every year. Missing values are returned
+     * as 0.
+     *
+     * @param municipalityCode The code of the municipality, e.g. "KU091", or "SSS" for the whole of Finland
+     * @return The series, or an empty list if the table could not be downloaded or has no such municipality
+     */
+    public List<TouristYearData> getYearSeries(String municipalityCode) {
+        Matrix current = getMatrix();
+        Integer row = current != null ? current.municipalityPositions.get(municipalityCode) : null;
+        if (row == null) {
+            return new ArrayList<>();
+        }
+
+        double[] series = current.values[row];
+        List<TouristYearData> touristYearDataList = new ArrayList<>(series.length);
+        for (int column = 0; column < series.length; column++) {
+            double touristno = Double.isNaN(series[column]) ? 0.0 : series[column];
+            touristYearDataList.add(new TouristYearData(current.yearLabels[column], touristno));
+        }
+        return touristYearDataList;
+    }
+
+    // Returns the matrix, building it from the downloaded table the first time; null if the download failed
+    private synchronized Matrix getMatrix() {
+        if (matrix == null) {
+            matrix = Matrix.of(getCube());
+        }
+        return matrix;
+    }
+
+    // A newer table has been downloaded, so the matrix is built again from it on the next request
+    @Override
+    protected void notifyRevalidated() {
+        synchronized (this) {
+            matrix = null;
+        }
+        super.notifyRevalidated();
+    }
+
+    /**
+     * The overnight stays as rows of municipalities and columns of years. Missing values are NaN.
+     */
+    private static final class Matrix {
+        private final String[] municipalityCodes;
+        private final String[] municipalityLabels;
+        private final String[] yearLabels;
+        private final Map<String, Integer> municipalityPositions;
+        private final Map<String, Integer> yearPositions;
+        private final double[][] values;
+
+        private Matrix(String[] municipalityCodes, String[] municipalityLabels, String[] yearCodes, String[] yearLabels,
+                       double[][] values) {
+            this.municipalityCodes = municipalityCodes;
+            this.municipalityLabels = municipalityLabels;
+            this.yearLabels = yearLabels;
+            this.values = values;
+            this.municipalityPositions = positions(municipalityCodes);
+            this.yearPositions = positions(yearCodes);
+        }
+
+        // Copies the municipality and year dimensions out of the cube; the others have a single category
+        static Matrix of(DataCube cube) {
+            int municipalityDimension = cube != null ? cube.dimensionIndex(MUNICIPALITY) : -1;
+            int yearDimension = cube != null ? cube.dimensionIndex(YEAR) : -1;
+            if (municipalityDimension < 0 || yearDimension < 0) {
+                return null;
+            }
+
+            int municipalities = cube.getSize(municipalityDimension);
+            int years = cube.getSize(yearDimension);
+            int municipalityStride = cube.getStride(municipalityDimension);
+            int yearStride = cube.getStride(yearDimension);
+
+            String[] codes = new String[municipalities];
+            String[] labels = new String[municipalities];
+            double[][] values = new double[municipalities][years];
+            for (int row = 0; row < municipalities; row++) {
+                codes[row] = cube.getCode(municipalityDimension, row);
+                labels[row] = cube.getLabel(municipalityDimension, row);
+                for (int column = 0; column < years; column++) {
+                    values[row][column] = cube.getAt(row * municipalityStride + column * yearStride);
+                }
+            }
+
+            String[] yearCodes = new String[years];
+            String[] yearLabels = new String[years];
+            for (int column = 0; column < years; column++) {
+                yearCodes[column] = cube.getCode(yearDimension, column);
+                yearLabels[column] = cube.getLabel(yearDimension, column);
+            }
+            return new Matrix(codes, labels, yearCodes, yearLabels, values);
+        }
+
+        private static Map<String, Integer> positions(String[] codes) {
+            Map<String, Integer> positions = new HashMap<>(codes.length * 2);
+            for (int i = 0; i < codes.length; i++) {
+                positions.put(codes[i], i);
+            }
+            return Collections.unmodifiableMap(positions);
+        }
+    }
+}
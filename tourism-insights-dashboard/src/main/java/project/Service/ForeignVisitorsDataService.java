@@ -3,118 +3,117 @@ package project.Service;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import project.Common.DataCube;
 import project.Common.IDataService;
+import project.Common.IndexedDataset;
+import project.Common.PxWebQuery;
 import project.Model.*;
 
 /**
- * This class is a service that extends the StatisticsFinlandDataService
+ * This class is a service that extends the JsonStatCubeDataService
  * and implements the IDataService interface to retrieve and process foreign visitor data from the StatisticsFinland API.
  * 
  * This service interacts with the StatisticsFinland API to fetch data on foreign visitors, categorized by destination
  * and other criteria. It uses a predefined JSON query to fetch the data, then processes the API response to extract
- * relevant tourist data and maps it into a list of TouristData objects.
+ * relevant tourist data and maps it into a list of TouristData objects. In combined mode the data is read from
+ * a shared ForeignVisitorsCubeService instead.
  */
-public class ForeignVisitorsDataService extends StatisticsFinlandDataService implements IDataService<TouristData> {
+public class ForeignVisitorsDataService extends JsonStatCubeDataService implements IDataService<TouristData> {
   
     private static final String API_URL = "https://pxdata.stat.fi:443/PxWeb/api/v1/en/StatFin_Passiivi/smat/statfinpas_smat_pxt_133i_2021.px";
-    private static String jsonQuery = "{\r\n" + //
-                "  \"query\": [\r\n" + //
-                "    {\r\n" + //
-                "      \"code\": \"Majoitus\",\r\n" + //
-                "      \"selection\": {\r\n" + //
-                "        \"filter\": \"item\",\r\n" + //
-                "        \"values\": [\r\n" + //
-                "          \"0\"\r\n" + //
-                "        ]\r\n" + //
-                "      }\r\n" + //
-                "    },\r\n" + //
-                "    {\r\n" + //
-                "      \"code\": \"Vuosi\",\r\n" + //
-                "      \"selection\": {\r\n" + //
-                "        \"filter\": \"item\",\r\n" + //
-                "        \"values\": [\r\n" + //
-                "          \"2021\"\r\n" + //
-                "        ]\r\n" + //
-                "      }\r\n" + //
-                "    },\r\n" + //
-                "    {\r\n" + //
-                "      \"code\": \"Tiedot\",\r\n" + //
-                "      \"selection\": {\r\n" + //
-                "        \"filter\": \"item\",\r\n" + //
-                "        \"values\": [\r\n" + //
-                "          \"yot\"\r\n" + //
-                "        ]\r\n" + //
-                "      }\r\n" + //
-                "    }\r\n" + //
-                "  ],\r\n" + //
-                "  \"response\": {\r\n" + //
-                "    \"format\": \"json-stat2\"\r\n" + //
-                "  }\r\n" + //
-                "}";
+    private static final String YEAR = "2021";
+    private static final PxWebQuery QUERY = PxWebQuery.forTable(API_URL)
+            .select("Majoitus", "0")
+            .select("Vuosi", YEAR)
+            .select("Tiedot", "yot")
+            .format(PxWebQuery.FORMAT_JSON_STAT2)
+            .build();
 
-    JsonObject objVisitors = new JsonObject();
-    JsonArray visitorsData = null;
+    // filterData looks the rows up by region code and region name
+    public static final String REGION_CODE = "regionCode";
+    public static final String REGION_NAME = "regionName";
+    private static final String WHOLE_COUNTRY_CODE = "SSS";
+    private static final Map<String, Function<? super TouristData, String>> INDEXES = Map.of(
+        REGION_CODE, TouristData::getRegionID,
+        REGION_NAME, TouristData::getRegionName
+    );
+
+    // Set in combined mode, where the totals are read from the shared municipality by year matrix
+    private final ForeignVisitorsCubeService cubeService;
 
     public ForeignVisitorsDataService() {
-        super(API_URL);
-        objVisitors = super.fetchData(jsonQuery); 
+        this(null);
+    }
+
+    /**
+     * Creates the service in combined mode: the totals are read from the cube service, which downloads
+     * the whole table once for this service and ForeignVisitorsYearWiseDataService. Without a cube service
+     * the service queries the year it needs itself.
+     */
+    public ForeignVisitorsDataService(ForeignVisitorsCubeService cubeService) {
+        super(QUERY);
+        this.cubeService = cubeService;
+    }
+
+    @Override
+    public CompletableFuture<?> preload() {
+        return cubeService != null ? cubeService.preload() : super.preload();
     }
 
+    // The table is archived and no longer updated, so it can stay cached for long
     @Override
-    public List<TouristData> processData()
+    protected long getCacheTtlMillis() {
+        return TimeUnit.DAYS.toMillis(30);
+    }
+
+    @Override
+    public IndexedDataset<TouristData> processData()
     {
+        if (cubeService != null) {
+            return index(cubeService.getMunicipalityTotals(YEAR));
+        }
+
         List<TouristData> touristCountDataList = new ArrayList<>();
 
-        if(objVisitors != null)
+        DataCube cube = getCube();
+        int regionDimension = cube != null ? cube.dimensionIndex("Matkan kohdekunta") : -1;
+        if(regionDimension >= 0)
         {
-            JsonObject dimension = objVisitors.getAsJsonObject("dimension");
-            JsonObject matkanKohdekunta = dimension.getAsJsonObject("Matkan kohdekunta");
-            JsonObject category = matkanKohdekunta.getAsJsonObject("category");
-            JsonObject index = category.getAsJsonObject("index");
-            JsonObject label = category.getAsJsonObject("label");
-            JsonArray values = objVisitors.getAsJsonArray("value");
-            
-            for (Map.Entry<String, JsonElement> entry : index.entrySet()) {
-                String regionCode = entry.getKey();
-                int indexValue = entry.getValue().getAsInt();
-                String regionName = label.get(regionCode).getAsString();
-                int touristno;
-                if (values.get(indexValue) != null && !values.get(indexValue).isJsonNull()) {
-                    touristno = values.get(indexValue).getAsInt();
-                } else {
-                    touristno = 0;
-                }
-                touristCountDataList.add(new TouristData(regionCode, regionName, touristno));
+            // One value per destination municipality; the other dimensions have a single category
+            int[] coordinates = new int[cube.getDimensionCount()];
+            for (int i = 0; i < cube.getSize(regionDimension); i++) {
+                coordinates[regionDimension] = i;
+                double value = cube.get(coordinates);
+                int touristno = Double.isNaN(value) ? 0 : (int) value;
+                touristCountDataList.add(new TouristData(cube.getCode(regionDimension, i), cube.getLabel(regionDimension, i), touristno));
             }
         }
-        return touristCountDataList;
+        return index(touristCountDataList);
     }
 
     @Override
     public List<TouristData> filterData(List<TouristData> touristDataList, String selectedRegion) 
     {
-
-        List<TouristData> filteredList = new ArrayList<>();
-        String wholeCountryCode = "SSS";
-        for (TouristData touristData : touristDataList) {
-            if (touristData.getRegionID().equalsIgnoreCase(wholeCountryCode)) {
-                filteredList.add(touristData); 
-            }
+        IndexedDataset<TouristData> dataset = index(touristDataList);
+        List<TouristData> wholeCountry = dataset.lookup(REGION_CODE, WHOLE_COUNTRY_CODE);
+        if (selectedRegion == null || selectedRegion.equals("Finland")) {
+            return wholeCountry;
         }
 
-        if(selectedRegion != null && selectedRegion != "Finland")
-        {
-            for (TouristData touristData : touristDataList) {
-                if (touristData.getRegionName().equalsIgnoreCase(selectedRegion)) {
-                    filteredList.add(touristData); 
-                }
-            }
-         }
-
+        // The whole country first, then the selected region
+        List<TouristData> region = dataset.lookup(REGION_NAME, selectedRegion);
+        List<TouristData> filteredList = new ArrayList<>(wholeCountry.size() + region.size());
+        filteredList.addAll(wholeCountry);
+        filteredList.addAll(region);
         return filteredList;
     }
+
+    @Override
+    public IndexedDataset<TouristData> index(List<TouristData> data) {
+        return IndexedDataset.of(data, INDEXES);
+    }
     
 }
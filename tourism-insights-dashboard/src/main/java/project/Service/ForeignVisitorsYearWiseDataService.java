@@ -2,13 +2,12 @@ package project.Service;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import java.util.concurrent.TimeUnit;
 
+import project.Common.DataCube;
 import project.Common.ISpecificKeywiseDataService;
+import project.Common.JsonStatDecoder;
+import project.Common.PxWebQuery;
 import project.Model.*;
 
 /**
@@ -18,51 +17,40 @@ import project.Model.*;
  * 
  * This service interacts with the StatisticsFinland API to fetch year-wise foreign visitor data. It uses a predefined
  * JSON query to retrieve the data and processes the API response to extract the relevant statistics on foreign visitors
- * for each year. The processed data is then mapped into a list of TouristYearData objects.
+ * for each year. The processed data is then mapped into a list of TouristYearData objects. In combined mode the
+ * data is read from a shared ForeignVisitorsCubeService instead.
  */
 public class ForeignVisitorsYearWiseDataService extends StatisticsFinlandDataService implements ISpecificKeywiseDataService<TouristYearData>{
   
     private static final String API_URL = "https://pxdata.stat.fi:443/PxWeb/api/v1/en/StatFin_Passiivi/smat/statfinpas_smat_pxt_133i_2021.px";
-    private static String jsonQuery = "{\r\n" + //
-                "    \"query\": [\r\n" + //
-                "        {\r\n" + //
-                "            \"code\": \"Majoitus\",\r\n" + //
-                "            \"selection\": {\r\n" + //
-                "                \"filter\": \"item\",\r\n" + //
-                "                \"values\": [\r\n" + //
-                "                    \"0\"\r\n" + //
-                "                ]\r\n" + //
-                "            }\r\n" + //
-                "        },\r\n" + //
-                "        {\r\n" + //
-                "            \"code\": \"Matkan kohdekunta\",\r\n" + //
-                "            \"selection\": {\r\n" + //
-                "                \"filter\": \"item\",\r\n" + //
-                "                \"values\": [\r\n" + //
-                "                    _locationsCode_\r\n" + //
-                "                ]\r\n" + //
-                "            }\r\n" + //
-                "        },\r\n" + //
-                "        {\r\n" + //
-                "            \"code\": \"Tiedot\",\r\n" + //
-                "            \"selection\": {\r\n" + //
-                "                \"filter\": \"item\",\r\n" + //
-                "                \"values\": [\r\n" + //
-                "                    \"yot\"\r\n" + //
-                "                ]\r\n" + //
-                "            }\r\n" + //
-                "        }\r\n" + //
-                "    ],\r\n" + //
-                "    \"response\": {\r\n" + //
-                "        \"format\": \"json-stat2\"\r\n" + //
-                "    }\r\n" + //
-                "}";
+    // The municipality is bound per request; "SSS" is the whole of Finland
+    private static final PxWebQuery.Template QUERY_TEMPLATE = PxWebQuery.forTable(API_URL)
+            .select("Majoitus", "0")
+            .select("Tiedot", "yot")
+            .format(PxWebQuery.FORMAT_JSON_STAT2)
+            .template("Matkan kohdekunta");
 
-    JsonObject objVisitors = new JsonObject();
-    JsonArray visitorsData = null;
+    // Set in combined mode, where the series are read from the shared municipality by year matrix
+    private final ForeignVisitorsCubeService cubeService;
 
     public ForeignVisitorsYearWiseDataService() {
+        this(null);
+    }
+
+    /**
+     * Creates the service in combined mode: every location is answered from the cube service, which
+     * downloads the whole table once, so changing the location needs no request. Without a cube service
+     * each location is queried on its own.
+     */
+    public ForeignVisitorsYearWiseDataService(ForeignVisitorsCubeService cubeService) {
         super(API_URL);
+        this.cubeService = cubeService;
+    }
+
+    // The table is archived and no longer updated, so it can stay cached for long
+    @Override
+    protected long getCacheTtlMillis() {
+        return TimeUnit.DAYS.toMillis(30);
     }
 
     @Override
@@ -72,35 +60,22 @@ public class ForeignVisitorsYearWiseDataService extends StatisticsFinlandDataSer
 
         try
         {
-            if(LocationCode == null || LocationCode == "" || LocationCode == "Finland")
-            {
-                jsonQuery = jsonQuery.replace("_locationsCode_", "\"SSS\"");
-            }
-            else
-            {
-                jsonQuery = jsonQuery.replace("_locationsCode_", "\"" + LocationCode + "\"");
+            String locationCode = LocationCode == null || LocationCode.isEmpty() || LocationCode.equals("Finland") ? "SSS" : LocationCode;
+            if (cubeService != null) {
+                return cubeService.getYearSeries(locationCode);
             }
-            objVisitors = super.fetchData(jsonQuery); 
-            if(objVisitors != null)
+            PxWebQuery query = QUERY_TEMPLATE.bind(locationCode);
+            DataCube cube = JsonStatDecoder.decode(super.fetchData(query.toJson()));
+            int yearDimension = cube != null ? cube.dimensionIndex("Vuosi") : -1;
+            if(yearDimension >= 0)
             {
-                JsonObject dimension = objVisitors.getAsJsonObject("dimension");
-                JsonObject vuosi = dimension.getAsJsonObject("Vuosi");
-                JsonObject category = vuosi.getAsJsonObject("category");
-                JsonObject index = category.getAsJsonObject("index");
-                JsonObject label = category.getAsJsonObject("label");
-                JsonArray values = objVisitors.getAsJsonArray("value");
-                
-                for (Map.Entry<String, JsonElement> entry : index.entrySet()) {
-                    String year = entry.getKey();
-                    int indexValue = entry.getValue().getAsInt();
-                    String yearTxt = label.get(year).getAsString();
-                    Double touristno;
-                    if (values.get(indexValue) != null && !values.get(indexValue).isJsonNull()) {
-                        touristno = values.get(indexValue).getAsDouble();
-                    } else {
-                        touristno = 0.0;
-                    }
-                    touristYearDataList.add(new TouristYearData(yearTxt,  touristno));
+                // One value per year; the other dimensions have a single category
+                int[] coordinates = new int[cube.getDimensionCount()];
+                for (int i = 0; i < cube.getSize(yearDimension); i++) {
+                    coordinates[yearDimension] = i;
+                    double value = cube.get(coordinates);
+                    double touristno = Double.isNaN(value) ? 0.0 : value;
+                    touristYearDataList.add(new TouristYearData(cube.getLabel(yearDimension, i), touristno));
                 }
             }
         }
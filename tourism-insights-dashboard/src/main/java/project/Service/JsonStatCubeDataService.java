@@ -0,0 +1,64 @@
+package project.Service;
+
+import project.Common.DataCube;
+import project.Common.JsonStatDecoder;
+import project.Common.PxWebQuery;
+import project.Common.ResponseCache;
+import project.Common.ServiceRegistry;
+import project.Common.Snapshot;
+
+/**
+ * The JsonStatCubeDataService class is a base service for StatisticsFinland tables requested in the
+ * "json-stat2" format. The raw response body is decoded by JsonStatDecoder into a DataCube, which
+ * subclasses read with getCube().
+ *
+ * Cubes go through the tiers of DecodedTableDataService, so after a restart a cube is opened from its
+ * mapped snapshot instead of being parsed from the response again.
+ */
+public abstract class JsonStatCubeDataService extends DecodedTableDataService<DataCube> {
+    private static final ResponseCache<DataCube> cubeCache = new ResponseCache<>(
+            getResponseCache().getMaxWeight(), getResponseCache().getPolicy());
+
+    static {
+        ServiceRegistry.onRefresh(cubeCache::clear);
+    }
+
+    protected JsonStatCubeDataService(PxWebQuery query) {
+        super(query);
+    }
+
+    // Returns the cache of decoded cubes shared by all json-stat2 services, e.g. to read its counters
+    public static ResponseCache<DataCube> getCubeCache() {
+        return cubeCache;
+    }
+
+    // Returns the cube, waiting for the load to complete if it is still in flight; null if it failed
+    protected DataCube getCube() {
+        return getDecoded();
+    }
+
+    @Override
+    protected ResponseCache<DataCube> getDecodedCache() {
+        return cubeCache;
+    }
+
+    @Override
+    protected DataCube decode(String responseBody) {
+        return JsonStatDecoder.decode(responseBody);
+    }
+
+    @Override
+    protected DataCube fromSnapshot(Snapshot snapshot) {
+        return DataCube.fromSnapshot(snapshot);
+    }
+
+    @Override
+    protected void writeSnapshot(DataCube cube, Snapshot.Writer writer) {
+        cube.writeTo(writer);
+    }
+
+    @Override
+    protected long estimateBytes(DataCube cube) {
+        return cube.estimateBytes();
+    }
+}
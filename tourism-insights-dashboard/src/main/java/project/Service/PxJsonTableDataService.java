@@ -0,0 +1,73 @@
+package project.Service;
+
+import java.util.concurrent.CompletableFuture;
+
+import project.Common.PxJsonDecoder;
+import project.Common.PxJsonTable;
+import project.Common.PxWebQuery;
+import project.Common.ResponseCache;
+import project.Common.ServiceRegistry;
+import project.Common.Snapshot;
+
+/**
+ * The PxJsonTableDataService class is a base service for StatisticsFinland tables requested in the PxWeb
+ * "json" format. Instead of parsing the response into a JsonObject, the raw response body is decoded by
+ * PxJsonDecoder into a PxJsonTable of primitive columns, which subclasses read in processData().
+ *
+ * A new table plugs in by extending this class with a PxWebQuery in the "json" format and reading
+ * getTable(). Tables go through the tiers of DecodedTableDataService: decoded tables are kept in a shared
+ * in-memory cache and as snapshots on disk, and a table served from disk is downloaded again in the
+ * background and replaced if it has changed.
+ */
+public abstract class PxJsonTableDataService extends DecodedTableDataService<PxJsonTable> {
+    private static final ResponseCache<PxJsonTable> tableCache = new ResponseCache<>(
+            getResponseCache().getMaxWeight(), getResponseCache().getPolicy());
+
+    static {
+        ServiceRegistry.onRefresh(tableCache::clear);
+    }
+
+    protected PxJsonTableDataService(PxWebQuery query) {
+        super(query);
+    }
+
+    // Returns the cache of decoded tables shared by all PxWeb "json" services, e.g. to read its counters
+    public static ResponseCache<PxJsonTable> getTableCache() {
+        return tableCache;
+    }
+
+    // Starts loading the table, see loadDecodedAsync()
+    public CompletableFuture<PxJsonTable> loadTableAsync() {
+        return loadDecodedAsync();
+    }
+
+    // Returns the table, waiting for loadTableAsync() to complete if it is still in flight; null if it failed
+    protected PxJsonTable getTable() {
+        return getDecoded();
+    }
+
+    @Override
+    protected ResponseCache<PxJsonTable> getDecodedCache() {
+        return tableCache;
+    }
+
+    @Override
+    protected PxJsonTable decode(String responseBody) {
+        return PxJsonDecoder.decode(responseBody);
+    }
+
+    @Override
+    protected PxJsonTable fromSnapshot(Snapshot snapshot) {
+        return PxJsonTable.fromSnapshot(snapshot);
+    }
+
+    @Override
+    protected void writeSnapshot(PxJsonTable table, Snapshot.Writer writer) {
+        table.writeTo(writer);
+    }
+
+    @Override
+    protected long estimateBytes(PxJsonTable table) {
+        return table.estimateBytes();
+    }
+}
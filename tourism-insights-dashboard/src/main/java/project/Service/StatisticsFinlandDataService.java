@@ -1,18 +1,32 @@
 package project.Service;
 
-import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.concurrent.FutureCallback;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
+import project.Common.CachingDataRetrievable;
 import project.Common.DataRetrievable;
+import project.Common.DiskResponseCache;
+import project.Common.HostLimiter;
+import project.Common.HttpClientProvider;
+import project.Common.TaskExecutors;
+import project.Common.LocalTableStore;
+import project.Common.PxWebQuery;
+import project.Common.ResponseCache;
+import project.Common.ServiceRegistry;
+import project.Common.SingleFlight;
 
 /**
  * The StatisticsFinlandDataService class is an abstract base service for interacting with the StatisticsFinland API.
@@ -21,51 +35,389 @@ import project.Common.DataRetrievable;
  * It provides functionality for sending POST requests with a JSON payload to the StatisticsFinland API. 
  * The response is then parsed into a JsonObject. It also contains common logic for interacting with the API that 
  * can be extended by concrete subclasses to implement specific data processing tasks.
+ *
+ * Subclasses that always work on the same dataset pass their PxWebQuery to the constructor. The dataset is not
+ * downloaded there; it is requested on the non-blocking client by loadAsync(), so a facade can start the
+ * downloads of all of its services at once and wait only as long as the slowest one.
+ *
+ * The tables only change a few times a year, so responses are kept in a response cache shared by all
+ * services. Each subclass can set how long its table stays cached by overriding getCacheTtlMillis(). The
+ * cache is sized and tuned with these system properties:
+ *
+ *  tourism.cache.maxBytes    maximum size of the cached responses in bytes (default 67108864)
+ *  tourism.cache.policy      LRU or LFU eviction (default LRU)
+ *  tourism.cache.ttlHours    default time-to-live of a cached table in hours (default 24)
+ *
+ * Below the in-memory cache, every downloaded response is also written to the DiskResponseCache. When a
+ * table is not in memory but a copy is on disk, as after a restart, the copy is served right away and the
+ * table is downloaded again in the background (stale-while-revalidate). If the new download differs from
+ * the copy, it replaces the copy and the listener set with setOnRevalidated() is called, so a facade can
+ * drop the data it processed from the stale copy. An explicit refresh (see ServiceRegistry) clears the
+ * in-memory cache, so every table is revalidated the next time it is loaded.
+ *
+ * Requests for the same query that overlap, from any service, share one HTTP exchange through a SingleFlight,
+ * and CachingDataRetrievable lets them share one parsed response as well. Every request is admitted by the
+ * HostLimiter of the PxWeb host, shared with the other services, which keeps them under the request quota of
+ * PxWeb; a request the API answers with 429 waits for the time it asks for and is sent again instead of
+ * failing. Revalidation of disk copies has background priority, so it waits behind the pages being loaded.
+ *
+ * With the offline mode of LocalTableStore turned on, queries are answered from complete local copies of the
+ * tables instead of being sent to PxWeb; see LocalTableStore.
  */
 public  abstract class StatisticsFinlandDataService implements DataRetrievable{
+    private static final ResponseCache<JsonObject> responseCache = new ResponseCache<>(
+            Long.getLong("tourism.cache.maxBytes", 64L * 1024 * 1024),
+            ResponseCache.EvictionPolicy.valueOf(System.getProperty("tourism.cache.policy", "LRU").toUpperCase()));
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(Long.getLong("tourism.cache.ttlHours", 24L));
+    // Completed responses are shared by the caches, so only requests in flight are shared here
+    private static final SingleFlight<String, String> bodyRequests = new SingleFlight<>(0);
+
+    static {
+        // After a refresh a table is read from its disk copy, if any, and downloaded again
+        ServiceRegistry.onRefresh(responseCache::clear);
+    }
+
     String apiUrl = "";
     String jsonQuery = "";
 
+    private CompletableFuture<JsonObject> pendingLoad;
+    private CachingDataRetrievable cachedSource;
+    private volatile Runnable onRevalidated;
+
     public StatisticsFinlandDataService(String apiUrl){
         this.apiUrl = apiUrl;
     }
 
+    public StatisticsFinlandDataService(String apiUrl, String jsonQuery){
+        this.apiUrl = apiUrl;
+        this.jsonQuery = jsonQuery;
+    }
+
+    // Uses the table of the query as the endpoint and the query's canonical JSON as the dataset query
+    public StatisticsFinlandDataService(PxWebQuery query){
+        this(query.getTableUrl(), query.toJson());
+    }
+
+    /**
+     * Starts downloading the dataset described by the query given to the constructor, if that has not
+     * happened yet. Every call returns the same future, so the dataset is requested only once as long as
+     * the download succeeds.
+     */
+    public synchronized CompletableFuture<JsonObject> loadAsync() {
+        CompletableFuture<JsonObject> load = pendingLoad;
+        if (load == null) {
+            CompletableFuture<JsonObject> newLoad = fetchDataAsync(jsonQuery);
+            pendingLoad = newLoad;
+            // A failed download is not kept, so the next call requests the dataset again. The check runs on the
+            // executor: a caller may hold this service's lock while it waits for the load to complete
+            newLoad.thenAcceptAsync(result -> {
+                if (result == null) {
+                    clearFailedLoad(newLoad);
+                }
+            }, TaskExecutors.getExecutor());
+            load = newLoad;
+        }
+        return load;
+    }
+
+    /**
+     * Starts loading this service's dataset in whatever form the service works with, so a facade can
+     * start the loads of all of its services at once. By default this is loadAsync().
+     */
+    public CompletableFuture<?> preload() {
+        return loadAsync();
+    }
+
+    private synchronized void clearFailedLoad(CompletableFuture<JsonObject> load) {
+        if (pendingLoad == load) {
+            pendingLoad = null;
+        }
+    }
+
+    // Returns the dataset, waiting for loadAsync() to complete if it is still in flight
+    protected JsonObject getData() {
+        return TaskExecutors.await(loadAsync());
+    }
+
+    /**
+     * Sets the listener called, on a background thread, when a table that was served from the disk copy
+     * has been downloaded again and has changed.
+     */
+    public void setOnRevalidated(Runnable listener) {
+        this.onRevalidated = listener;
+    }
+
+    // Returns the response cache shared by all Statistics Finland services, e.g. to read its counters
+    public static ResponseCache<JsonObject> getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Returns how long responses of this service's table stay cached, in milliseconds. Subclasses whose
+     * table is updated more or less often than daily override this.
+     */
+    protected long getCacheTtlMillis() {
+        return DEFAULT_TTL_MILLIS;
+    }
+
+    private synchronized CachingDataRetrievable getSource() {
+        if (cachedSource == null) {
+            // Memory misses are answered from the disk copy if there is one, otherwise from the network
+            cachedSource = new CachingDataRetrievable(new DataRetrievable() {
+                @Override
+                public JsonObject fetchData(String jsonQuery) {
+                    JsonObject stored = readFromDisk(jsonQuery);
+                    return stored != null ? stored : requestData(jsonQuery);
+                }
+
+                @Override
+                public CompletableFuture<JsonObject> fetchDataAsync(String jsonQuery) {
+                    JsonObject stored = readFromDisk(jsonQuery);
+                    return stored != null ? CompletableFuture.completedFuture(stored) : requestDataAsync(jsonQuery, HostLimiter.Priority.NORMAL);
+                }
+            }, apiUrl, getCacheTtlMillis(), responseCache);
+        }
+        return cachedSource;
+    }
+
+    // Returns the disk copy of the response and starts downloading it again, or null if there is no copy
+    private JsonObject readFromDisk(String jsonQuery) {
+        String responseBody = readBodyFromDisk(jsonQuery);
+        if (responseBody == null) {
+            return null;
+        }
+
+        JsonObject stored;
+        try {
+            stored = parseData(responseBody);
+        } catch (RuntimeException exception) {
+            return null;
+        }
+        if (stored == null) {
+            return null;
+        }
+        revalidate(jsonQuery, stored);
+        return stored;
+    }
+
+    // Returns the raw response body stored on disk for the query, or null if there is none
+    protected String readBodyFromDisk(String jsonQuery) {
+        DiskResponseCache diskCache = DiskResponseCache.getDefault();
+        DiskResponseCache.Entry entry = diskCache != null ? diskCache.read(apiUrl, jsonQuery) : null;
+        if (entry == null) {
+            return null;
+        }
+        System.out.println("Serving cached response from " + entry.getFetchedAt() + " for " + apiUrl);
+        return entry.getBody();
+    }
+
+    private void revalidate(String jsonQuery, JsonObject stored) {
+        requestDataAsync(jsonQuery, HostLimiter.Priority.BACKGROUND).thenAccept(fresh -> {
+            if (fresh == null || fresh.equals(stored)) {
+                return;
+            }
+            getSource().update(jsonQuery, fresh);
+            replaceLoad(jsonQuery, fresh);
+            notifyRevalidated();
+        });
+    }
+
+    // Tells the listener that a table served from the disk copy has changed
+    protected void notifyRevalidated() {
+        Runnable listener = onRevalidated;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    // Makes getData() return the newer download if it was served from the stale copy
+    private synchronized void replaceLoad(String query, JsonObject fresh) {
+        if (pendingLoad != null && query.equals(jsonQuery)) {
+            pendingLoad = CompletableFuture.completedFuture(fresh);
+        }
+    }
+
+    // Answers from the response cache, downloading the table only if it is not cached yet
     @Override
     public JsonObject fetchData(String jsonQuery) {
-        JsonObject apiResult = null;
-       
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpPost httpPost = new HttpPost(apiUrl);
-            httpPost.setHeader("Content-Type", "application/json");
-            StringEntity requestEntity = new StringEntity(jsonQuery, ContentType.APPLICATION_JSON);
-            httpPost.setEntity(requestEntity);
-
-            // Execute the request and process the response
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                int statusCode = response.getCode();
-                System.out.println("Response Status: " + statusCode);
-
-                if (statusCode == 200) {
-                    // Get the response entity
-                    HttpEntity entity = response.getEntity();
-                    String responseBody = EntityUtils.toString(entity);
-                    EntityUtils.consume(entity);
-
-                    //parse the response using Gson
-                    apiResult = parseData(responseBody);
-                } else {
-                    System.out.println("POST request failed. Response Code: " + statusCode);
-                }
+        return getSource().fetchData(jsonQuery);
+    }
+
+    @Override
+    public CompletableFuture<JsonObject> fetchDataAsync(String jsonQuery) {
+        return getSource().fetchDataAsync(jsonQuery);
+    }
+
+    private JsonObject requestData(String jsonQuery) {
+        String responseBody = requestBody(jsonQuery);
+        if (responseBody == null) {
+            return null;
+        }
+        try {
+            //parse the response using Gson
+            return parseData(responseBody);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            return null;
+        }
+    }
+
+    private CompletableFuture<JsonObject> requestDataAsync(String jsonQuery, HostLimiter.Priority priority) {
+        return requestBodyAsync(jsonQuery, priority).thenApply(responseBody -> {
+            if (responseBody == null) {
+                return null;
             }
-            catch(Exception exception){
+            try {
+                return parseData(responseBody);
+            } catch (Exception exception) {
                 exception.printStackTrace();
+                return null;
             }
+        });
+    }
+
+    // Sends the query and returns the raw response body, which is also stored on disk; null if the request fails
+    private String requestBody(String jsonQuery) {
+        return bodyRequests.call(CachingDataRetrievable.cacheKey(apiUrl, jsonQuery), () -> sendBody(jsonQuery));
+    }
+
+    private String sendBody(String jsonQuery) {
+        LocalTableStore localTables = LocalTableStore.getDefault();
+        String responseBody = localTables != null ? localTables.answer(apiUrl, jsonQuery) : null;
+        if (responseBody != null) {
+            return responseBody;
+        }
+        try {
+            return TaskExecutors.onHost(apiUrl, () -> post(jsonQuery));
+        } catch (HostLimiter.ThrottledException exception) {
+            System.out.println("POST request failed. Response Code: " + exception.getStatusCode());
+            return null;
+        }
+    }
+
+    private String post(String jsonQuery) {
+        String responseBody = null;
+        HttpPost httpPost = new HttpPost(apiUrl);
+        httpPost.setHeader("Content-Type", "application/json");
+        StringEntity requestEntity = new StringEntity(jsonQuery, ContentType.APPLICATION_JSON);
+        httpPost.setEntity(requestEntity);
+
+        // Execute the request and process the response. The pooled client is shared,
+        // so only the response is closed here and the connection goes back to the pool.
+        try (ClassicHttpResponse response = HttpClientProvider.getClient().executeOpen(null, httpPost, null)) {
+            int statusCode = response.getCode();
+            System.out.println("Response Status: " + statusCode);
+
+            // Get the response entity
+            HttpEntity entity = response.getEntity();
+            if (HostLimiter.isThrottled(response)) {
+                EntityUtils.consume(entity);
+                throw HostLimiter.throttled(response);  // The limiter waits and sends the request again
+            }
+            if (statusCode == 200) {
+                responseBody = EntityUtils.toString(entity);
+                DiskResponseCache.storeBody(apiUrl, jsonQuery, responseBody);
+            } else {
+                System.out.println("POST request failed. Response Code: " + statusCode);
+            }
+            EntityUtils.consume(entity);
+        }
+        catch(HostLimiter.ThrottledException exception){
+            throw exception;
+        }
+        catch(Exception exception){
+            exception.printStackTrace();
+        }
+
+        return responseBody;
+    }
+
+    /**
+     * Sends the query on the non-blocking client and completes with the raw response body, which is also
+     * stored on disk. Failures complete the future with null, the same way fetchData returns null.
+     * In the offline mode the query is answered from the local copy of the table when possible.
+     */
+    protected CompletableFuture<String> requestBodyAsync(String jsonQuery) {
+        return requestBodyAsync(jsonQuery, HostLimiter.Priority.NORMAL);
+    }
+
+    // Like requestBodyAsync(String), queued with the given priority while the PxWeb host is busy
+    protected CompletableFuture<String> requestBodyAsync(String jsonQuery, HostLimiter.Priority priority) {
+        return bodyRequests.execute(CachingDataRetrievable.cacheKey(apiUrl, jsonQuery), () -> sendBodyAsync(jsonQuery, priority));
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    private CompletableFuture<String> sendBodyAsync(String jsonQuery, HostLimiter.Priority priority) {
+        LocalTableStore localTables = LocalTableStore.getDefault();
+        if (localTables == null) {
+            return limitedPostAsync(jsonQuery, priority);
         }
+        // Reading or downloading the local table blocks, so it runs off the caller's thread
+        return CompletableFuture.supplyAsync(() -> localTables.answer(apiUrl, jsonQuery), TaskExecutors.getExecutor())
+                .thenCompose(responseBody -> responseBody != null ? CompletableFuture.completedFuture(responseBody) : limitedPostAsync(jsonQuery, priority));
+    }
+
+    // Sends the query once the limiter of the host admits it; a request still throttled after the retries completes with null
+    private CompletableFuture<String> limitedPostAsync(String jsonQuery, HostLimiter.Priority priority) {
+        return TaskExecutors.onHostAsync(apiUrl, priority, () -> postAsync(jsonQuery)).exceptionally(failure -> {
+            Throwable cause = failure.getCause() != null ? failure.getCause() : failure;
+            if (cause instanceof HostLimiter.ThrottledException) {
+                System.out.println("POST request failed. Response Code: " + ((HostLimiter.ThrottledException) cause).getStatusCode());
+            } else {
+                cause.printStackTrace();
+            }
+            return null;
+        });
+    }
+
+    private CompletableFuture<String> postAsync(String jsonQuery) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+
+        SimpleHttpRequest request = SimpleRequestBuilder.post(apiUrl)
+                .setBody(jsonQuery, ContentType.APPLICATION_JSON)
+                .build();
 
-        return apiResult != null ? apiResult : null;
+        // The callback runs on the client's I/O thread, so the response is read and stored on the pool
+        HttpClientProvider.getAsyncClient().execute(request, new FutureCallback<SimpleHttpResponse>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                result.completeAsync(() -> readResponse(response, jsonQuery), TaskExecutors.getExecutor());
+            }
+
+            @Override
+            public void failed(Exception exception) {
+                exception.printStackTrace();
+                result.complete(null);
+            }
+
+            @Override
+            public void cancelled() {
+                result.complete(null);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns the body of a successful response after storing it on disk, or null for a failed one.
+     *
+     * @throws HostLimiter.ThrottledException if the response is throttled; the limiter waits and sends the
+     *                                        request again
+     */
+    private String readResponse(SimpleHttpResponse response, String jsonQuery) {
+        int statusCode = response.getCode();
+        System.out.println("Response Status: " + statusCode);
+
+        if (HostLimiter.isThrottled(response)) {
+            throw HostLimiter.throttled(response);
+        }
+        if (statusCode != 200) {
+            System.out.println("POST request failed. Response Code: " + statusCode);
+            return null;
+        }
+        String responseBody = response.getBodyText();
+        DiskResponseCache.storeBody(apiUrl, jsonQuery, responseBody);
+        return responseBody;
     }
 
     // Method to parse the JSON response into objects
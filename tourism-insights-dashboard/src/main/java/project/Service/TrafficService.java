@@ -1,39 +1,52 @@
 package project.Service;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
-import org.apache.hc.core5.http.ParseException;
+import project.Common.DiskResponseCache;
+import project.Common.HttpClientProvider;
+import project.Common.TaskExecutors;
 import project.Common.HttpGetWithEntity;
 import project.Model.TrafficData;
 import project.Common.PreferenceManager;
+import project.Common.SingleFlight;
 
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.client5.http.entity.EntityBuilder;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.HttpEntity;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.*;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.TreeSet;
 
 /**
  * The TrafficService class is responsible for fetching and processing traffic data
  * from the Digitraffic API. It provides methods to retrieve traffic data based on
- * specific station IDs and time ranges.
+ * specific station IDs and time ranges. Identical requests that overlap share one download through a
+ * SingleFlight.
  */
 public class TrafficService {
 
     // Base URL for the API request
     private static final String API_URL = "https://tie.digitraffic.fi/api/tms/v1/stations/data?lastUpdated=false";
 
+    // Sensors read from the payload; the constants are their positions in the reader
+    private static final DigitrafficStationReader STATION_READER = new DigitrafficStationReader(
+            "OHITUKSET_60MIN_KIINTEA_SUUNTA1", "NOPEUS_KIINTEA_SUUNTA1");
+    private static final int VOLUME = 0;
+    private static final int SPEED = 1;
+
+    // Identical requests made while one is in flight, e.g. by a page being built, share one download
+    private static final SingleFlight<String, List<TrafficData>> DATA_REQUESTS = new SingleFlight<>();
+    private static final SingleFlight<String, List<Integer>> STATION_ID_REQUESTS = new SingleFlight<>();
+
     /**
      * Fetches traffic data for specific station IDs within a given time range.
      *
@@ -43,31 +56,35 @@ public class TrafficService {
      * @return A list of TrafficData objects containing the fetched data.
      */
     public List<TrafficData> fetchTrafficData(List<Integer> stationIds, LocalDateTime fromDate, LocalDateTime toDate) {
+        String key = (stationIds == null || stationIds.isEmpty() ? "all" : new TreeSet<>(stationIds).toString())
+                + "|" + fromDate + "|" + toDate;
+        return DATA_REQUESTS.call(key, () -> TaskExecutors.onHost(API_URL, () -> downloadTrafficData(stationIds, fromDate, toDate)));
+    }
+
+    private List<TrafficData> downloadTrafficData(List<Integer> stationIds, LocalDateTime fromDate, LocalDateTime toDate) {
         List<TrafficData> trafficDataList = new ArrayList<>();
 
         // Retrieve user preferences for location and date
         String location = PreferenceManager.getPreference("location", "Default Location");
         String date = PreferenceManager.getPreference("date", "2024-12-01");
 
-        // HTTP client setup
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            String url = API_URL;
-            HttpGetWithEntity request = new HttpGetWithEntity(url);
-
-            // Set request headers
-            request.addHeader("Accept", "application/json");
-            request.addHeader("User-Agent", "Mozilla/5.0");
+        // HTTP request setup
+        String url = API_URL;
+        HttpGetWithEntity request = new HttpGetWithEntity(url);
 
-            // Set empty entity (no data in body)
-            HttpEntity emptyEntity = EntityBuilder.create()
-                    .setText("")
-                    .setContentType(ContentType.TEXT_PLAIN)
-                    .build();
-            request.setEntity(emptyEntity);
+        // Set request headers
+        request.addHeader("Accept", "application/json");
+        request.addHeader("User-Agent", "Mozilla/5.0");
 
-            // Execute the HTTP request
-            ClassicHttpResponse response = httpClient.executeOpen(null, request, null);
+        // Set empty entity (no data in body)
+        HttpEntity emptyEntity = EntityBuilder.create()
+                .setText("")
+                .setContentType(ContentType.TEXT_PLAIN)
+                .build();
+        request.setEntity(emptyEntity);
 
+        // Execute the HTTP request on the shared pooled client; closing the response returns the connection
+        try (ClassicHttpResponse response = HttpClientProvider.getClient().executeOpen(null, request, null)) {
             int responseCode = response.getCode();
             System.out.println("Response Code: " + responseCode);
 
@@ -77,61 +94,20 @@ public class TrafficService {
                 return trafficDataList;
             }
 
-            // Parse JSON response
-            String jsonOutput = EntityUtils.toString(response.getEntity(), "UTF-8");
-            JsonObject jsonResponse = new Gson().fromJson(jsonOutput, JsonObject.class);
-
-            // Get the stations data from the response
-            JsonArray stations = jsonResponse.getAsJsonArray("stations");
-            if (stations == null) {
-                System.err.println("No stations data found in the response.");
-                return trafficDataList;
+            // Stream the payload straight from the response, keeping only the selected stations and sensors
+            List<DigitrafficStationReader.StationReading> readings;
+            try (Reader reader = new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8)) {
+                readings = STATION_READER.read(reader, stationIds == null || stationIds.isEmpty() ? null : new HashSet<>(stationIds));
             }
 
-            // Iterate through the stations and process the sensor values
-            for (int i = 0; i < stations.size(); i++) {
-                JsonObject station = stations.get(i).getAsJsonObject();
-                int stationId = station.get("id").getAsInt();
-
-                // Skip stations that are not in the provided stationIds list
-                if (stationIds != null && !stationIds.isEmpty() && !stationIds.contains(stationId)) {
-                    continue;
-                }
-
-                JsonArray sensorValues = station.getAsJsonArray("sensorValues");
-                if (sensorValues == null) {
-                    continue;
-                }
+            // Iterate through the selected stations and their sensor values
+            for (DigitrafficStationReader.StationReading reading : readings) {
+                int stationId = reading.getStationId();
 
-                // Initialize variables to hold traffic data values
-                double volume = Double.NaN;
-                double speed = Double.NaN;
-                String measuredTime = null;
-
-                // Process each sensor value in the station
-                for (int j = 0; j < sensorValues.size(); j++) {
-                    JsonObject sensor = sensorValues.get(j).getAsJsonObject();
-                    String name = sensor.has("name") ? sensor.get("name").getAsString() : null;
-                    double value = sensor.has("value") ? sensor.get("value").getAsDouble() : Double.NaN;
-                    measuredTime = sensor.has("measuredTime") ? sensor.get("measuredTime").getAsString() : null;
-
-                    // Skip invalid sensor data
-                    if (name == null || measuredTime == null || Double.isNaN(value)) {
-                        continue;
-                    }
-
-                    // Assign values based on sensor name
-                    switch (name) {
-                        case "OHITUKSET_60MIN_KIINTEA_SUUNTA1": // Volume
-                            volume = value;
-                            break;
-                        case "NOPEUS_KIINTEA_SUUNTA1": // Speed
-                            speed = value;
-                            break;
-                        default:
-                            break;
-                    }
-                }
+                // Traffic data values mapped from the sensors, NaN when the station did not report them
+                double volume = reading.getValue(VOLUME);
+                double speed = reading.getValue(SPEED);
+                String measuredTime = reading.getMeasuredTime();
 
                 // If measured time is valid, process the data
                 if (measuredTime != null) {
@@ -165,10 +141,9 @@ public class TrafficService {
         } catch (IOException e) {
             e.printStackTrace();
             System.err.println("IOException occurred while fetching traffic data: " + e.getMessage());
-        } catch (JsonSyntaxException e) {
+        } catch (IllegalStateException e) {
+            // Gson reports payloads of unexpected shape with IllegalStateException
             e.printStackTrace();
-        } catch (ParseException e) {
-            throw new RuntimeException(e);
         }
 
         return trafficDataList;
@@ -180,32 +155,38 @@ public class TrafficService {
      * @return A list of station IDs.
      */
     public List<Integer> fetchTrafficStationIds() {
-        List<Integer> stationIds = new ArrayList<>();
+        return STATION_ID_REQUESTS.call(API_URL, () -> TaskExecutors.onHost(API_URL, this::downloadTrafficStationIds));
+    }
 
-        // HTTP client setup
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpGetWithEntity request = new HttpGetWithEntity(API_URL);
-            request.addHeader("Accept", "application/json");
-            request.addHeader("User-Agent", "Mozilla/5.0");
+    private List<Integer> downloadTrafficStationIds() {
+        HttpGetWithEntity request = new HttpGetWithEntity(API_URL);
+        request.addHeader("Accept", "application/json");
+        request.addHeader("User-Agent", "Mozilla/5.0");
 
-            // Execute the HTTP request
-            ClassicHttpResponse response = httpClient.executeOpen(null, request, null);
+        // Stream the ids from the response; the payload also carries the sensor values of every station
+        try (ClassicHttpResponse response = HttpClientProvider.getClient().executeOpen(null, request, null)) {
             if (response.getCode() == 200) {
-                String jsonOutput = EntityUtils.toString(response.getEntity(), "UTF-8");
-                JsonObject jsonResponse = new Gson().fromJson(jsonOutput, JsonObject.class);
-
-                // Get the stations data from the response
-                JsonArray stations = jsonResponse.getAsJsonArray("stations");
-                for (int i = 0; i < stations.size(); i++) {
-                    JsonObject station = stations.get(i).getAsJsonObject();
-                    int stationId = station.get("id").getAsInt();
-                    stationIds.add(stationId); // Add station ID to the list
+                List<Integer> stationIds;
+                try (Reader reader = new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8)) {
+                    stationIds = DigitrafficStationReader.readStationIds(reader);
                 }
+                // Only the ids are kept on disk, in the shape of the payload so they are read back the same way
+                DiskResponseCache.storeBody(API_URL, null, DigitrafficStationReader.writeStationIds(stationIds));
+                return stationIds;
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        return stationIds;
+        // The station list rarely changes, so the last stored copy is used when the download fails
+        String stored = DiskResponseCache.readBody(API_URL, null);
+        if (stored != null) {
+            try {
+                return DigitrafficStationReader.readStationIds(new StringReader(stored));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new ArrayList<>();
     }
 }
@@ -4,74 +4,33 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import project.Common.IDataService;
+import project.Common.IndexedDataset;
+import project.Common.PxJsonTable;
+import project.Common.PxWebQuery;
 import project.Model.TripStatistics;
 
 /**
- * The TripsByDestinationDataService class is a service that extends the StatisticsFinlandDataService
+ * The TripsByDestinationDataService class is a service that extends the PxJsonTableDataService
  * and implements the IDataService interface to retrieve and process data about trips by destination from the StatisticsFinland API.
  * 
  * It interacts with the StatisticsFinland API to fetch data on trips categorized by destination, such as regions or countries 
  * of travel. The service uses a predefined JSON query to retrieve this data and processes the API response to extract relevant statistics 
  * on trip destinations. The extracted data is then mapped into a list of TripStatistics objects for further analysis.
  */
-public class TripsByDestinationDataService extends StatisticsFinlandDataService implements IDataService<TripStatistics> {
+public class TripsByDestinationDataService extends PxJsonTableDataService implements IDataService<TripStatistics> {
     private static final String API_URL = "https://pxdata.stat.fi:443/PxWeb/api/v1/en/StatFin/smat/statfin_smat_pxt_13mn.px";
-    private static final String jsonQuery = "{\n" +
-    "  \"query\": [\n" +
-    "    {\n" +
-    "      \"code\": \"Matkan kohdemaakunta\",\n" +
-    "      \"selection\": {\n" +
-    "        \"filter\": \"item\",\n" +
-    "        \"values\": [\n" +
-    "          \"MK01\",\n" +
-    "          \"MK02\",\n" +
-    "          \"MK06\",\n" +
-    "          \"MK19\"\n" +
-    "        ]\n" +
-    "      }\n" +
-    "    },\n" +
-    "    {\n" +
-    "      \"code\": \"Matkan tarkoitus\",\n" +
-    "      \"selection\": {\n" +
-    "        \"filter\": \"item\",\n" +
-    "        \"values\": [\n" +
-    "          \"1\"\n" +
-    "        ]\n" +
-    "      }\n" +
-    "    },\n" +
-    "    {\n" +
-    "      \"code\": \"Vuosi\",\n" +
-    "      \"selection\": {\n" +
-    "        \"filter\": \"item\",\n" +
-    "        \"values\": [\n" +
-    "          \"2021\"\n" +
-    "        ]\n" +
-    "      }\n" +
-    "    },\n" +
-    "    {\n" +
-    "      \"code\": \"Kausi\",\n" +
-    "      \"selection\": {\n" +
-    "        \"filter\": \"item\",\n" +
-    "        \"values\": [\n" +
-    "          \"1\",\n" +
-    "          \"2\",\n" +
-    "          \"3\"\n" +
-    "        ]\n" +
-    "      }\n" +
-    "    }\n" +
-    "  ],\n" +
-    "  \"response\": {\n" +
-    "    \"format\": \"json\"\n" +
-    "  }\n" +
-    "}";
-
-    JsonObject objStatistic = new JsonObject();
-    JsonArray statistics = null;
+    private static final PxWebQuery QUERY = PxWebQuery.forTable(API_URL)
+            .select("Matkan kohdemaakunta", "MK01", "MK02", "MK06", "MK19")
+            .select("Matkan tarkoitus", "1")
+            .select("Vuosi", "2021")
+            .select("Kausi", "1", "2", "3")
+            .format(PxWebQuery.FORMAT_JSON)
+            .build();
+
 
     // Mapping of keys to destination names
     private static final Map<String, String> DESTINATION_NAME_MAP = new HashMap<>();
@@ -97,50 +56,50 @@ public class TripsByDestinationDataService extends StatisticsFinlandDataService
         "4", "Winter"
     );
 
+    // filterData looks the rows up by season
+    public static final String SEASON = "season";
+    private static final Map<String, Function<? super TripStatistics, String>> INDEXES = Map.of(
+        SEASON, TripStatistics::getSeason
+    );
+
     public TripsByDestinationDataService() {
-        super(API_URL);
-        objStatistic= super.fetchData(jsonQuery);  
-        statistics = objStatistic.getAsJsonArray("data");   
+        super(QUERY);
+    }
+
+    // The travel survey tables are updated a few times a year
+    @Override
+    protected long getCacheTtlMillis() {
+        return TimeUnit.DAYS.toMillis(7);
     }
 
     @Override
-    public List<TripStatistics> processData(){
+    public IndexedDataset<TripStatistics> processData(){
          List<TripStatistics> tripDataList = new ArrayList<>();
 
-         try {
-            for (int i = 0; i < statistics.size(); i++) {
-                JsonObject dataObject = statistics.get(i).getAsJsonObject();
-                JsonArray keyArray = dataObject.getAsJsonArray("key");
-
-                String destinationKey = keyArray.get(0).getAsString();
-                String destinationName = destinationMap.get(destinationKey);
-                String seasonKey = keyArray.get(3).getAsString(); // Extract season
-                String season = seasonMap.get(seasonKey);
-                String tripCount = dataObject.getAsJsonArray("values").get(0).getAsString();
-
-                tripDataList.add(new TripStatistics(destinationName, season, Double.parseDouble(tripCount)));        
-            }
-        } catch (JsonParseException e) {
-            System.err.println("Error while processing JSON data");
-        } catch (Exception e) {
-            System.err.println("Unexpected error during data processing");
-        }
-
-        return tripDataList;
+         PxJsonTable table = getTable();
+         if (table == null) {
+             return index(tripDataList);
+         }
+
+         // The destination is the first key and the season the fourth; missing counts are shown as 0
+         for (int row = 0; row < table.getRowCount(); row++) {
+             String destinationName = destinationMap.get(table.getKey(0, row));
+             String season = seasonMap.get(table.getKey(3, row)); // Extract season
+             double tripCount = table.getValue(0, row);
+
+             tripDataList.add(new TripStatistics(destinationName, season, Double.isNaN(tripCount) ? 0.0 : tripCount));
+         }
+
+        return index(tripDataList);
     }
 
     @Override
     public List<TripStatistics> filterData(List<TripStatistics> tripDataList, String selectedSeason) {
+        return index(tripDataList).lookup(SEASON, selectedSeason);
+    }
 
-        List<TripStatistics> filteredList = new ArrayList<>();
-    
-        for (TripStatistics tripStatistics : tripDataList) {
-            // Check if the current season matches the selected season
-            if (tripStatistics.getSeason().equalsIgnoreCase(selectedSeason)) {
-                filteredList.add(tripStatistics); // Add the matching entry to the filtered list
-            }
-        }
-
-        return filteredList;
+    @Override
+    public IndexedDataset<TripStatistics> index(List<TripStatistics> data) {
+        return IndexedDataset.of(data, INDEXES);
     }
 }
@@ -3,17 +3,21 @@ package project.Service;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.HashMap;
+import java.util.function.Function;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
 
 import project.Common.IDataService;
+import project.Common.IndexedDataset;
+import project.Common.LabelDictionary;
+import project.Common.PxJsonTable;
+import project.Common.PxWebQuery;
+import project.Common.Rollup;
 import project.Model.VisitorStatistics;
 
 /**
- * The VisitorStatisticsDataService class is a service that extends the StatisticsFinlandDataService
+ * The VisitorStatisticsDataService class is a service that extends the PxJsonTableDataService
  * and implements the IDataService interface to retrieve and process visitor statistics data from the StatisticsFinland API.
  * 
  * This service interacts with the StatisticsFinland API to fetch data on visitor statistics, such as the number of visitors
@@ -21,46 +25,16 @@ import project.Model.VisitorStatistics;
  * the data, then processes the response to extract relevant statistics. The extracted data is mapped into a list of 
  * VisitorStatistics objects for further analysis or display in the application.
  */
-public class VisitorStatisticsDataService extends StatisticsFinlandDataService implements IDataService<VisitorStatistics>{
+public class VisitorStatisticsDataService extends PxJsonTableDataService implements IDataService<VisitorStatistics>{
     private static final String API_URL = "https://pxdata.stat.fi:443/PxWeb/api/v1/en/StatFin/smat/statfin_smat_pxt_13yi.px";
-    private static final String jsonQuery = "{"
-    + "\"query\": ["
-    + "{"
-    + "\"code\": \"Vuosi\","
-    + "\"selection\": {"
-    + "\"filter\": \"item\","
-    + "\"values\": [\"2023\"]"
-    + "}"
-    + "},"
-    + "{"
-    + "\"code\": \"Ikäryhmä\","
-    + "\"selection\": {"
-    + "\"filter\": \"item\","
-    + "\"values\": [\"1\", \"2\", \"3\"]"
-    + "}"
-    + "},"
-    + "{"
-    + "\"code\": \"Sukupuoli\","
-    + "\"selection\": {"
-    + "\"filter\": \"item\","
-    + "\"values\": [\"1\", \"2\"]"
-    + "}"
-    + "},"
-    + "{"
-    + "\"code\": \"Tiedot\","
-    + "\"selection\": {"
-    + "\"filter\": \"item\","
-    + "\"values\": [\"ulkvap_os\", \"rist_os\", \"paivam_os\", \"yopvap_os\", \"kotvap_os\"]"
-    + "}"
-    + "}"
-    + "],"
-    + "\"response\": {"
-    + "\"format\": \"json\""
-    + "}"
-    + "}";
-
-    JsonObject objStatistic = new JsonObject();
-    JsonArray statistics = null;
+    private static final PxWebQuery QUERY = PxWebQuery.forTable(API_URL)
+            .select("Vuosi", "2023")
+            .select("Ikäryhmä", "1", "2", "3")
+            .select("Sukupuoli", "1", "2")
+            .select("Tiedot", "ulkvap_os", "rist_os", "paivam_os", "yopvap_os", "kotvap_os")
+            .format(PxWebQuery.FORMAT_JSON)
+            .build();
+
 
     // Maps for readable labels
     private static final Map<String, String> ageGroupMap = Map.of(
@@ -83,86 +57,89 @@ public class VisitorStatisticsDataService extends StatisticsFinlandDataService i
         "Domestic Visit"
     };
 
+    // filterData looks the rows up by trip type
+    public static final String TRIP_TYPE = "tripType";
+    private static final Map<String, Function<? super VisitorStatistics, String>> INDEXES = Map.of(
+        TRIP_TYPE, VisitorStatistics::getTripType
+    );
+
     public VisitorStatisticsDataService() {
-        super(API_URL);
-        objStatistic= super.fetchData(jsonQuery);  
-        statistics = objStatistic.getAsJsonArray("data");  
+        super(QUERY);
+    }
+
+    // The travel survey tables are updated a few times a year
+    @Override
+    protected long getCacheTtlMillis() {
+        return TimeUnit.DAYS.toMillis(7);
     }
 
     @Override
-    public List<VisitorStatistics> processData(){
+    public IndexedDataset<VisitorStatistics> processData(){
         List<VisitorStatistics> visitorDataList = new ArrayList<>();
 
-        try {
-            // Loop through the data array
-            for (int i = 0; i < statistics.size(); i++) {
-                JsonObject dataObject = statistics.get(i).getAsJsonObject();
-                JsonArray keyArray = dataObject.getAsJsonArray("key");
-                JsonArray valuesArray = dataObject.getAsJsonArray("values");
-    
-                // Extract values from the key array
-                String year = keyArray.get(0).getAsString();
-                String ageGroupCode = keyArray.get(1).getAsString();
-                String genderCode = keyArray.get(2).getAsString();
-    
-                // Map age group and gender to readable values
-                String ageGroup = ageGroupMap.getOrDefault(ageGroupCode, "Unknown age group");
-                String gender = genderMap.getOrDefault(genderCode, "Unknown gender");
-    
-                // Loop through each trip type and corresponding percentage
-                for (int j = 0; j < tripTypes.length; j++) {
-                    String tripType = tripTypes[j];
-                    double percentage = Double.parseDouble(valuesArray.get(j).getAsString());
-    
-                    // Create a new VisitorStatistics object for each trip type
-                    VisitorStatistics visitorStatistics = new VisitorStatistics(
-                        year, 
-                        ageGroup, 
-                        gender, 
-                        tripType, 
-                        percentage
-                    );
-    
-                    // Add the object to the list
-                    visitorDataList.add(visitorStatistics);
-                }
+        PxJsonTable table = getTable();
+        if (table == null) {
+            return index(visitorDataList);
+        }
+
+        // Loop through the rows of the table
+        for (int row = 0; row < table.getRowCount(); row++) {
+            // Extract values from the key columns
+            String year = table.getKey(0, row);
+            String ageGroupCode = table.getKey(1, row);
+            String genderCode = table.getKey(2, row);
+
+            // Map age group and gender to readable values
+            String ageGroup = ageGroupMap.getOrDefault(ageGroupCode, "Unknown age group");
+            String gender = genderMap.getOrDefault(genderCode, "Unknown gender");
+
+            // Loop through each trip type and corresponding percentage; missing ones are shown as 0
+            for (int j = 0; j < tripTypes.length && j < table.getValueColumnCount(); j++) {
+                String tripType = tripTypes[j];
+                double percentage = table.getValue(j, row);
+
+                // Create a new VisitorStatistics object for each trip type
+                VisitorStatistics visitorStatistics = new VisitorStatistics(
+                    year, 
+                    ageGroup, 
+                    gender, 
+                    tripType, 
+                    Double.isNaN(percentage) ? 0.0 : percentage
+                );
+
+                // Add the object to the list
+                visitorDataList.add(visitorStatistics);
             }
-        } catch (JsonParseException e) {
-            System.err.println("Error while processing JSON data");
-        } catch (Exception e) {
-            System.err.println("Unexpected error during data processing");
         }
 
-    return visitorDataList;
+    return index(visitorDataList);
 }
 
     @Override
     public List<VisitorStatistics> filterData(List<VisitorStatistics> visitorDataList, String tripType) {
-        List<VisitorStatistics> filteredList = new ArrayList<>();
-    
-        for (VisitorStatistics visitorStatistics : visitorDataList) {
-            // Check if the trip type matches the desired tripType
-            if (visitorStatistics.getTripType().equalsIgnoreCase(tripType)) {
-                filteredList.add(visitorStatistics); 
-            }
-        }
-    
-        return filteredList;
+        return index(visitorDataList).lookup(TRIP_TYPE, tripType);
+    }
+
+    @Override
+    public IndexedDataset<VisitorStatistics> index(List<VisitorStatistics> data) {
+        return IndexedDataset.of(data, INDEXES);
     }
 
     public Map<String, Double> GetAgeGroupCounts(List<VisitorStatistics> visitorDataList, String tripType){
-        // Create a map to hold total percentages for each trip type
+        // Create a map to hold total percentages for each age group
         Map<String, Double> ageCounts = new HashMap<>();
+        int tripTypeCode = VisitorStatistics.TRIP_TYPES.lookup(tripType);
+        if (tripTypeCode == LabelDictionary.NOT_FOUND) {
+            return ageCounts;
+        }
 
-        // Filter and sum percentages by trip type for the selected age group
-        for (VisitorStatistics stats : visitorDataList) {
-            if (stats.getTripType().equals(tripType)) {
-                String ageGroup = stats.getAgeGroup();
-                double percentage = stats.getPercentage();
-
-                // Accumulate the percentage for each trip type
-                ageCounts.put(ageGroup, ageCounts.getOrDefault(ageGroup, 0.0) + percentage);
-            }
+        // Filter by trip type and sum the percentages per age group, comparing codes
+        Rollup.Buckets totals = Rollup.<VisitorStatistics>by(VisitorStatistics.AGE_GROUPS, VisitorStatistics::getAgeGroupCode)
+                .where(stats -> stats.getTripTypeCode() == tripTypeCode)
+                .measure(VisitorStatistics::getPercentage)
+                .aggregate(visitorDataList);
+        for (int bucket = 0; bucket < totals.size(); bucket++) {
+            ageCounts.put(totals.getLabel(bucket), totals.getSum(bucket));
         }
 
         return ageCounts;
@@ -1,32 +1,36 @@
 package project.Service;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
-import org.apache.hc.core5.http.ParseException;
+import project.Common.DiskResponseCache;
+import project.Common.HttpClientProvider;
+import project.Common.TaskExecutors;
 import project.Common.HttpGetWithEntity;
 import project.Model.WeatherData;
 import project.Common.PreferenceManager;
+import project.Common.SingleFlight;
 
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.client5.http.entity.EntityBuilder;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.HttpEntity;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.time.*;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.TreeSet;
 
 /**
  * The WeatherService class is responsible for fetching and processing weather data from the Digitraffic API.
  * It provides functionality for retrieving weather data for specified stations, allowing you to make GET requests
  * to fetch relevant weather information such as temperature, humidity, and other meteorological conditions.
+ * Identical requests that overlap, such as the station list asked for twice while the page is built, share one
+ * download through a SingleFlight.
  *
  * Author: Waqas Hameed
  */
@@ -35,6 +39,16 @@ public class WeatherService {
     // Base URL for the weather data API
     private static final String API_URL = "https://tie.digitraffic.fi/api/weather/v1/stations/data";
 
+    // Sensors read from the payload; the constants are their positions in the reader
+    private static final DigitrafficStationReader STATION_READER = new DigitrafficStationReader("ILMA", "KESKITUULI", "SADE");
+    private static final int AIR_TEMPERATURE = 0;
+    private static final int WIND_SPEED = 1;
+    private static final int PRECIPITATION = 2;
+
+    // Identical requests made while one is in flight, e.g. by a page being built, share one download
+    private static final SingleFlight<String, List<WeatherData>> DATA_REQUESTS = new SingleFlight<>();
+    private static final SingleFlight<String, List<Integer>> STATION_ID_REQUESTS = new SingleFlight<>();
+
     /**
      * Fetches weather data for the specified station IDs and date range.
      *
@@ -44,30 +58,35 @@ public class WeatherService {
      * @return List of WeatherData objects containing weather data for the requested stations.
      */
     public List<WeatherData> fetchWeatherData(List<Integer> stationIds, LocalDateTime fromDate, LocalDateTime toDate) {
+        String key = (stationIds == null || stationIds.isEmpty() ? "all" : new TreeSet<>(stationIds).toString())
+                + "|" + fromDate + "|" + toDate;
+        return DATA_REQUESTS.call(key, () -> TaskExecutors.onHost(API_URL, () -> downloadWeatherData(stationIds, fromDate, toDate)));
+    }
+
+    private List<WeatherData> downloadWeatherData(List<Integer> stationIds, LocalDateTime fromDate, LocalDateTime toDate) {
         List<WeatherData> weatherDataList = new ArrayList<>();
 
         // Fetch location and date preferences from the PreferenceManager
         String location = PreferenceManager.getPreference("location", "Default Location");
         String date = PreferenceManager.getPreference("date", "2024-12-01");
 
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            // Build the API URL with the required parameters
-            String url = API_URL + "?lastUpdated=false";
-            HttpGetWithEntity request = new HttpGetWithEntity(url);
+        // Build the API URL with the required parameters
+        String url = API_URL + "?lastUpdated=false";
+        HttpGetWithEntity request = new HttpGetWithEntity(url);
 
-            // Set necessary headers for the HTTP request
-            request.addHeader("Accept", "application/json");
-            request.addHeader("User-Agent", "Mozilla/5.0");
+        // Set necessary headers for the HTTP request
+        request.addHeader("Accept", "application/json");
+        request.addHeader("User-Agent", "Mozilla/5.0");
 
-            // Prepare an empty entity (body) for the GET request
-            HttpEntity emptyEntity = EntityBuilder.create()
-                    .setText("")
-                    .setContentType(ContentType.TEXT_PLAIN)
-                    .build();
-            request.setEntity(emptyEntity);
+        // Prepare an empty entity (body) for the GET request
+        HttpEntity emptyEntity = EntityBuilder.create()
+                .setText("")
+                .setContentType(ContentType.TEXT_PLAIN)
+                .build();
+        request.setEntity(emptyEntity);
 
-            // Execute the HTTP request and retrieve the response
-            ClassicHttpResponse response = httpClient.executeOpen(null, request, null);
+        // Execute the HTTP request on the shared pooled client; closing the response returns the connection
+        try (ClassicHttpResponse response = HttpClientProvider.getClient().executeOpen(null, request, null)) {
             int responseCode = response.getCode();
             System.out.println("Response Code: " + responseCode);
 
@@ -77,66 +96,21 @@ public class WeatherService {
                 return weatherDataList;
             }
 
-            // Parse the JSON response into a JsonObject
-            String jsonOutput = EntityUtils.toString(response.getEntity(), "UTF-8");
-            JsonObject jsonResponse = new Gson().fromJson(jsonOutput, JsonObject.class);
-
-            // Extract the stations array from the JSON response
-            JsonArray stations = jsonResponse.getAsJsonArray("stations");
-            if (stations == null) {
-                System.err.println("No stations data found in the response.");
-                return weatherDataList;
+            // Stream the payload straight from the response, keeping only the selected stations and sensors
+            List<DigitrafficStationReader.StationReading> readings;
+            try (Reader reader = new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8)) {
+                readings = STATION_READER.read(reader, stationIds == null || stationIds.isEmpty() ? null : new HashSet<>(stationIds));
             }
 
-            // Process each station in the response
-            for (int i = 0; i < stations.size(); i++) {
-                JsonObject station = stations.get(i).getAsJsonObject();
-                int stationId = station.get("id").getAsInt();
-
-                // If the station ID is not in the provided list of station IDs, skip it
-                if (stationIds != null && !stationIds.isEmpty() && !stationIds.contains(stationId)) {
-                    continue;
-                }
-
-                // Extract sensor values for the station
-                JsonArray sensorValues = station.getAsJsonArray("sensorValues");
-                if (sensorValues == null) {
-                    continue;
-                }
-
-                // Initialize variables for weather data
-                double airTemperature = Double.NaN;
-                double windSpeed = Double.NaN;
-                double precipitation = Double.NaN;
-                String measuredTime = null;
-
-                // Process each sensor's data
-                for (int j = 0; j < sensorValues.size(); j++) {
-                    JsonObject sensor = sensorValues.get(j).getAsJsonObject();
-                    String name = sensor.has("name") ? sensor.get("name").getAsString() : null;
-                    double value = sensor.has("value") ? sensor.get("value").getAsDouble() : Double.NaN;
-                    measuredTime = sensor.has("measuredTime") ? sensor.get("measuredTime").getAsString() : null;
-
-                    // Skip if the sensor data is incomplete or invalid
-                    if (name == null || measuredTime == null || Double.isNaN(value)) {
-                        continue;
-                    }
+            // Process each selected station in the response
+            for (DigitrafficStationReader.StationReading reading : readings) {
+                int stationId = reading.getStationId();
 
-                    // Map sensor data to weather parameters based on sensor name
-                    switch (name) {
-                        case "ILMA": // Air temperature
-                            airTemperature = value;
-                            break;
-                        case "KESKITUULI": // Average wind speed
-                            windSpeed = value;
-                            break;
-                        case "SADE": // Precipitation
-                            precipitation = value;
-                            break;
-                        default:
-                            break;
-                    }
-                }
+                // Weather parameters mapped from the sensors, NaN when the station did not report them
+                double airTemperature = reading.getValue(AIR_TEMPERATURE);
+                double windSpeed = reading.getValue(WIND_SPEED);
+                double precipitation = reading.getValue(PRECIPITATION);
+                String measuredTime = reading.getMeasuredTime();
 
                 // Only process data if air temperature is valid and measured time is present
                 if (!Double.isNaN(airTemperature) && measuredTime != null) {
@@ -169,10 +143,9 @@ public class WeatherService {
                 }
             }
 
-        } catch (IOException | JsonSyntaxException e) {
+        } catch (IOException | IllegalStateException e) {
+            // Gson reports payloads of unexpected shape with IllegalStateException
             e.printStackTrace();
-        } catch (ParseException e) {
-            throw new RuntimeException(e);
         }
 
         // Return the list of WeatherData objects
@@ -185,30 +158,39 @@ public class WeatherService {
      * @return List of station IDs.
      */
     public List<Integer> fetchWeatherStationIds() {
-        List<Integer> stationIds = new ArrayList<>();
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            // Make a request to the weather API to get the list of stations
-            HttpGetWithEntity request = new HttpGetWithEntity(API_URL);
-            request.addHeader("Accept", "application/json");
-            request.addHeader("User-Agent", "Mozilla/5.0");
-
-            // Execute the HTTP request
-            ClassicHttpResponse response = httpClient.executeOpen(null, request, null);
+        return STATION_ID_REQUESTS.call(API_URL, () -> TaskExecutors.onHost(API_URL, this::downloadWeatherStationIds));
+    }
+
+    private List<Integer> downloadWeatherStationIds() {
+        // Make a request to the weather API to get the list of stations
+        HttpGetWithEntity request = new HttpGetWithEntity(API_URL);
+        request.addHeader("Accept", "application/json");
+        request.addHeader("User-Agent", "Mozilla/5.0");
+
+        // Stream the ids from the response; the payload also carries the sensor values of every station
+        try (ClassicHttpResponse response = HttpClientProvider.getClient().executeOpen(null, request, null)) {
             if (response.getCode() == 200) {
-                // Parse the JSON response to extract station IDs
-                String jsonOutput = EntityUtils.toString(response.getEntity(), "UTF-8");
-                JsonObject jsonResponse = new Gson().fromJson(jsonOutput, JsonObject.class);
-                JsonArray stations = jsonResponse.getAsJsonArray("stations");
-                for (int i = 0; i < stations.size(); i++) {
-                    JsonObject station = stations.get(i).getAsJsonObject();
-                    int stationId = station.get("id").getAsInt();
-                    stationIds.add(stationId);
+                List<Integer> stationIds;
+                try (Reader reader = new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8)) {
+                    stationIds = DigitrafficStationReader.readStationIds(reader);
                 }
+                // Only the ids are kept on disk, in the shape of the payload so they are read back the same way
+                DiskResponseCache.storeBody(API_URL, null, DigitrafficStationReader.writeStationIds(stationIds));
+                return stationIds;
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
-        // Return the list of station IDs
-        return stationIds;
+
+        // The station list rarely changes, so the last stored copy is used when the download fails
+        String stored = DiskResponseCache.readBody(API_URL, null);
+        if (stored != null) {
+            try {
+                return DigitrafficStationReader.readStationIds(new StringReader(stored));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new ArrayList<>();
     }
 }
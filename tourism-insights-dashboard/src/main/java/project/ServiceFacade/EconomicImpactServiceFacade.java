@@ -1,25 +1,108 @@
 package project.ServiceFacade;
 
 import com.google.gson.JsonObject;
+import project.Common.CubeStore;
+import project.Common.DataCube;
 import project.Model.EconomicImpactData;
 import project.Service.EconomicImpactService;
 import project.Common.PreferenceManager;
+import project.Common.PxWebQuery;
+import project.Common.QueryPlanner;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * The EconomicImpactServiceFacade class gives the economic impact page a single entry point to the
+ * EconomicImpactService and the user preferences. It is application-scoped (see ServiceRegistry) and keeps
+ * the table metadata used for the dropdowns once it has been downloaded.
+ *
+ * It also keeps every cell fetched for the page in a CubeStore. fetchCube() answers a selection from the
+ * store and asks the API only for the cells that are not in it yet, so narrowing or re-ordering the
+ * filters, or going back to an earlier selection, costs no request, and ticking one more year or region
+ * requests the new cells alone, in as few rectangular queries as they fit in. Queries over the cell limit
+ * of the API are split into chunks by a QueryPlanner.
+ *
+ * Missing cells are fetched by one selection at a time: a selection that overlaps one being fetched waits
+ * for it and then requests only the cells still missing, so the same cells are never requested twice.
+ *
+ * totalsBy() rolls a fetched cube up into the totals the charts of the page show, e.g. the value per
+ * product or per year over the rest of the selection.
+ */
 public class EconomicImpactServiceFacade {
     private EconomicImpactService economicImpactService;
     private PreferenceManager preferenceManager;
+    private JsonObject initialData;
+    private CubeStore cubeStore;
+    private QueryPlanner queryPlanner;
+    // Held while the missing cells of a selection are fetched and merged into the store
+    private final Object deltaLock = new Object();
 
     public EconomicImpactServiceFacade() {
         this.economicImpactService = new EconomicImpactService();
         this.preferenceManager = new PreferenceManager();
     }
 
-    public JsonObject fetchInitialData() throws IOException {
-        return economicImpactService.fetchInitialData();  // Fetches dropdown data
+    public synchronized JsonObject fetchInitialData() throws IOException {
+        if (initialData == null) {
+            initialData = economicImpactService.fetchInitialData();  // Fetches dropdown data once
+        }
+        return initialData;
+    }
+
+    public PxWebQuery.Builder newQuery() {
+        return economicImpactService.newQuery();
+    }
+
+    public JsonObject fetchDataFromAPI(PxWebQuery query) throws IOException {
+        return economicImpactService.fetchDataFromAPI(query);  // Fetches actual data based on filters
+    }
+
+    /**
+     * Returns the cells of the query, fetching the ones not in memory yet. Queries the store cannot answer
+     * are sent as they are.
+     *
+     * @return The cube, or null if the missing cells could not be fetched
+     */
+    public DataCube fetchCube(PxWebQuery query) throws IOException {
+        CubeStore store = getCubeStore();
+        if (store == null || !store.handles(query)) {
+            return fetchPlanned(query);  // Opens the selection from its snapshot when it is recent
+        }
+        if (store.missingQueries(query).isEmpty()) {
+            return store.dice(query);
+        }
+        synchronized (deltaLock) {
+            // Computed again now, since the selection fetched before may have brought some of the cells
+            for (PxWebQuery missing : store.missingQueries(query)) {
+                if (!store.merge(fetchPlanned(missing))) {
+                    return null;  // The cells fetched before stay in the store for the next attempt
+                }
+            }
+            return store.dice(query);
+        }
+    }
+
+    // Splits queries over the cell limit of the API into chunks once the table metadata is known
+    private DataCube fetchPlanned(PxWebQuery query) throws IOException {
+        return economicImpactService.fetchCube(query, getQueryPlanner());
+    }
+
+    private synchronized QueryPlanner getQueryPlanner() throws IOException {
+        if (queryPlanner == null) {
+            queryPlanner = economicImpactService.createQueryPlanner(fetchInitialData());
+        }
+        return queryPlanner;
+    }
+
+    // Creates the store once the table metadata is known
+    private synchronized CubeStore getCubeStore() throws IOException {
+        if (cubeStore == null) {
+            cubeStore = economicImpactService.createCubeStore(fetchInitialData());
+        }
+        return cubeStore;
     }
 
     public JsonObject fetchDataFromAPI(String jsonQuery) throws IOException {
@@ -39,6 +122,36 @@ public class EconomicImpactServiceFacade {
         return economicImpactService.processData(responseData);  // Return actual data as List
     }
 
+    /**
+     * Sums the cells of the cube over every dimension but the given one.
+     *
+     * @return The totals by category label, in the order of the cube; categories without any value are
+     *         left out, and the map is empty if the cube has no such dimension
+     */
+    public Map<String, Double> totalsBy(DataCube cube, String dimensionId) {
+        Map<String, Double> totals = new LinkedHashMap<>();
+        if (cube == null || cube.dimensionIndex(dimensionId) < 0) {
+            return totals;
+        }
+        DataCube rolledUp = cube;
+        for (int d = 0; d < cube.getDimensionCount(); d++) {
+            if (!cube.getDimensionId(d).equals(dimensionId)) {
+                rolledUp = rolledUp.rollup(cube.getDimensionId(d));
+            }
+        }
+        for (int i = 0; i < rolledUp.getSize(0); i++) {
+            if (rolledUp.isPresentAt(i)) {
+                totals.put(rolledUp.getLabel(0, i), rolledUp.getAt(i));
+            }
+        }
+        return totals;
+    }
+
+    // This method extracts economic impact data from a cube returned by fetchCube
+    public List<EconomicImpactData> processCube(DataCube cube) {
+        return economicImpactService.processData(cube);
+    }
+
     // This method processes initial dropdown data
     public Map<String, Map<String, String>> processInitialData(JsonObject data) {
         return economicImpactService.processInitialData(data);  // Return dropdown options as Map
@@ -1,13 +1,18 @@
 package project.ServiceFacade;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import project.Common.IDataService;
 import project.Common.ISpecificKeywiseDataService;
+import project.Common.TaskExecutors;
 import project.Model.TouristData;
 import project.Model.TouristDatabyPurpose;
 import project.Model.TouristYearData;
 import project.Service.ForeignVisitorsByPurposeDataService;
+import project.Service.ForeignVisitorsCubeService;
 import project.Service.ForeignVisitorsDataService;
 import project.Service.ForeignVisitorsYearWiseDataService;
 
@@ -19,21 +24,53 @@ import project.Service.ForeignVisitorsYearWiseDataService;
  * By using the HomeServiceFacade, clients of the application can interact with a single service class
  * without needing to manage each individual data service separately.
  * 
+ * The tables behind the services are requested concurrently when the facade is created, so construction
+ * takes as long as the slowest query instead of the sum of all of them. The visitor totals and the
+ * year-wise history of every location come from one municipality by year table, which is downloaded once
+ * and answers every location locally.
+ *
+ * The facade is application-scoped (see ServiceRegistry) and keeps the processed datasets, including the
+ * year-wise history of every location asked for so far, so they are not downloaded again when the user
+ * comes back to the home page. On a cold start the tables are served from the disk cache; when the
+ * background download brings a newer table, the datasets processed from it are dropped and built again
+ * on the next request.
  */
 public class HomeServiceFacade{
     private IDataService<TouristData> foreignVisitorsDataService;
     private ISpecificKeywiseDataService<TouristYearData> foreignVisitorsYearWiseDataService;
     private IDataService<TouristDatabyPurpose> foreignVisitorsByPurposeDataService;
 
+    private List<TouristData> touristDataList;
+    private List<TouristDatabyPurpose> touristDatabyPurposeList;
+    private final Map<String, List<TouristYearData>> touristYearDataByLocation = new ConcurrentHashMap<>();
 
     public HomeServiceFacade() {
-        this.foreignVisitorsDataService = new ForeignVisitorsDataService();
-        this.foreignVisitorsYearWiseDataService = new ForeignVisitorsYearWiseDataService();
-        this.foreignVisitorsByPurposeDataService = new ForeignVisitorsByPurposeDataService();
+        // Both services read table 133i, so they share one download of the municipality by year matrix
+        ForeignVisitorsCubeService cubeService = new ForeignVisitorsCubeService();
+        ForeignVisitorsDataService visitorsDataService = new ForeignVisitorsDataService(cubeService);
+        ForeignVisitorsByPurposeDataService visitorsByPurposeDataService = new ForeignVisitorsByPurposeDataService();
+        ForeignVisitorsYearWiseDataService yearWiseDataService = new ForeignVisitorsYearWiseDataService(cubeService);
+
+        cubeService.setOnRevalidated(() -> {
+            dropTouristDataList();
+            touristYearDataByLocation.clear();
+        });
+        visitorsByPurposeDataService.setOnRevalidated(this::dropTouristDatabyPurposeList);
+
+        this.foreignVisitorsDataService = visitorsDataService;
+        this.foreignVisitorsYearWiseDataService = yearWiseDataService;
+        this.foreignVisitorsByPurposeDataService = visitorsByPurposeDataService;
+
+        // Issue both table queries at once and wait until the slower one has answered
+        TaskExecutors.await(CompletableFuture.allOf(visitorsDataService.preload(), visitorsByPurposeDataService.preload()));
     }
 
-    public List<TouristData> getTouriseDataList(){
-        return foreignVisitorsDataService.processData();
+    public synchronized List<TouristData> getTouriseDataList(){
+        if (touristDataList == null || touristDataList.isEmpty()) {
+            // An empty list means the download failed, so it is not kept
+            touristDataList = foreignVisitorsDataService.processData();
+        }
+        return touristDataList;
     }
 
     public List<TouristData> getLocationWiseTouriseDataList(List<TouristData> touristDataList, String selectedRegion){
@@ -41,11 +78,31 @@ public class HomeServiceFacade{
     }
 
     public List<TouristYearData> getLocationAndYearWiseTouriseDataList(String selectedRegion){
-        return foreignVisitorsYearWiseDataService.processData(selectedRegion);
+        String key = selectedRegion == null ? "" : selectedRegion;
+        List<TouristYearData> touristYearData = touristYearDataByLocation.get(key);
+        if (touristYearData == null) {
+            touristYearData = foreignVisitorsYearWiseDataService.processData(selectedRegion);
+            // Failed downloads come back empty; those are not kept so the next call tries again
+            if (!touristYearData.isEmpty()) {
+                touristYearDataByLocation.put(key, touristYearData);
+            }
+        }
+        return touristYearData;
     }
     
-    public List<TouristDatabyPurpose> getTourisePurposeDataList(){
-        return foreignVisitorsByPurposeDataService.processData();
+    public synchronized List<TouristDatabyPurpose> getTourisePurposeDataList(){
+        if (touristDatabyPurposeList == null || touristDatabyPurposeList.isEmpty()) {
+            touristDatabyPurposeList = foreignVisitorsByPurposeDataService.processData();
+        }
+        return touristDatabyPurposeList;
+    }
+
+    private synchronized void dropTouristDataList() {
+        touristDataList = null;
+    }
+
+    private synchronized void dropTouristDatabyPurposeList() {
+        touristDatabyPurposeList = null;
     }
 
     public List<TouristDatabyPurpose> getPurposeWiseTouriseDataList(List<TouristDatabyPurpose> touristDatabyPurposeList, String filterStr){
@@ -1,7 +1,10 @@
 package project.ServiceFacade;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import project.Common.IDataService;
+import project.Common.TaskExecutors;
 import project.Model.TripDataAndDuration;
 import project.Model.TripStatistics;
 import project.Model.VisitorStatistics;
@@ -17,28 +20,76 @@ import project.Service.VisitorStatisticsDataService;
  * By using the StatisticsServiceFacade, clients can access the statistical data from these different services 
  * through a single interface without the need to manage each individual service separately.
  * 
+ * The three tables are requested concurrently when the facade is created, so construction takes as long
+ * as the slowest query instead of the sum of all of them.
+ *
+ * The facade is application-scoped (see ServiceRegistry) and keeps the processed datasets, so they are not
+ * downloaded again when the user comes back to the statistics page. On a cold start the tables are served
+ * from the disk cache; when the background download brings a newer table, its processed dataset is dropped
+ * and built again on the next request.
  */
 public class StatisticsServiceFacade{
     private IDataService<TripStatistics> tripsByDestinationService;
     private IDataService<VisitorStatistics> visitorStatService;
     private IDataService<TripDataAndDuration> tripsAndDurationService;
 
+    private List<TripStatistics> tripStatistics;
+    private List<VisitorStatistics> visitorStatistics;
+    private List<TripDataAndDuration> tripDataAndDuration;
+
     public StatisticsServiceFacade() {
-        this.tripsByDestinationService = new TripsByDestinationDataService();
-        this.visitorStatService = new VisitorStatisticsDataService();
-        this.tripsAndDurationService = new TripsAndDurationDataService();
+        TripsByDestinationDataService tripsByDestinationDataService = new TripsByDestinationDataService();
+        VisitorStatisticsDataService visitorStatisticsDataService = new VisitorStatisticsDataService();
+        TripsAndDurationDataService tripsAndDurationDataService = new TripsAndDurationDataService();
+
+        this.tripsByDestinationService = tripsByDestinationDataService;
+        this.visitorStatService = visitorStatisticsDataService;
+        this.tripsAndDurationService = tripsAndDurationDataService;
+
+        tripsByDestinationDataService.setOnRevalidated(this::dropTripStatistics);
+        visitorStatisticsDataService.setOnRevalidated(this::dropVisitorStatistics);
+        tripsAndDurationDataService.setOnRevalidated(this::dropTripDataAndDuration);
+
+        // Issue the three table queries at once and wait until the slowest one has answered
+        TaskExecutors.await(CompletableFuture.allOf(
+            tripsByDestinationDataService.preload(),
+            visitorStatisticsDataService.preload(),
+            tripsAndDurationDataService.preload()
+        ));
+    }
+
+    public synchronized List<TripStatistics> getTripsByDestination() {
+        if (tripStatistics == null || tripStatistics.isEmpty()) {
+            // An empty list means the download failed, so it is not kept
+            tripStatistics = tripsByDestinationService.processData();
+        }
+        return tripStatistics;
+    }
+
+    public synchronized List<VisitorStatistics> getVisitorStatistics() {
+        if (visitorStatistics == null || visitorStatistics.isEmpty()) {
+            visitorStatistics = visitorStatService.processData();
+        }
+        return visitorStatistics;
+    }
+
+    public synchronized List<TripDataAndDuration> getTripsAndDuration() {
+        if (tripDataAndDuration == null || tripDataAndDuration.isEmpty()) {
+            tripDataAndDuration = tripsAndDurationService.processData();
+        }
+        return tripDataAndDuration;
     }
 
-    public List<TripStatistics> getTripsByDestination() {
-        return tripsByDestinationService.processData();
+    private synchronized void dropTripStatistics() {
+        tripStatistics = null;
     }
 
-    public List<VisitorStatistics> getVisitorStatistics() {
-        return visitorStatService.processData();
+    private synchronized void dropVisitorStatistics() {
+        visitorStatistics = null;
     }
 
-    public List<TripDataAndDuration> getTripsAndDuration() {
-        return tripsAndDurationService.processData();
+    private synchronized void dropTripDataAndDuration() {
+        tripDataAndDuration = null;
     }
 
     public List<TripStatistics> getTripsBySeason(List<TripStatistics> tripDataList, String selectedSeason) {
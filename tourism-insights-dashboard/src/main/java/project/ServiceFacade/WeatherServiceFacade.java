@@ -9,9 +9,19 @@ import project.Common.PreferenceManager;
 import java.time.LocalDateTime;
 import java.util.List;
 
+/**
+ * The WeatherServiceFacade class gives the weather page a single entry point to the weather and traffic
+ * services. It is application-scoped (see ServiceRegistry): the station lists, which rarely change, are
+ * downloaded once and kept, while the measurements themselves are always fetched live.
+ *
+ * The getters are not synchronized: the services already let overlapping identical requests share one
+ * download, so the weather and traffic station lists can be downloaded at the same time.
+ */
 public class WeatherServiceFacade {
     private WeatherService weatherService;
     private TrafficService trafficService;
+    private volatile List<Integer> weatherStationIds;
+    private volatile List<Integer> trafficStationIds;
 
     public WeatherServiceFacade() {
         this.weatherService = new WeatherService();
@@ -27,6 +37,25 @@ public class WeatherServiceFacade {
         return weatherService.fetchWeatherData(stationIds, fromDate, toDate);
     }
 
+    public List<Integer> getWeatherStationIds() {
+        // An empty list means the download failed, so it is not kept
+        List<Integer> stationIds = weatherStationIds;
+        if (stationIds == null || stationIds.isEmpty()) {
+            stationIds = weatherService.fetchWeatherStationIds();
+            weatherStationIds = stationIds;
+        }
+        return stationIds;
+    }
+
+    public List<Integer> getTrafficStationIds() {
+        List<Integer> stationIds = trafficStationIds;
+        if (stationIds == null || stationIds.isEmpty()) {
+            stationIds = trafficService.fetchTrafficStationIds();
+            trafficStationIds = stationIds;
+        }
+        return stationIds;
+    }
+
     public List<TrafficData> getTrafficData(List<Integer> stationIds, LocalDateTime fromDate, LocalDateTime toDate) {
         return trafficService.fetchTrafficData(stationIds, fromDate, toDate);
     }
@@ -0,0 +1,100 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import project.Common.CubeStore;
+import project.Common.DataCube;
+import project.Common.PxWebQuery;
+
+import java.nio.DoubleBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CubeStoreTest {
+    private static final String TABLE = "https://example.org/table.px";
+
+    private static CubeStore store() {
+        return new CubeStore(TABLE, new String[]{"Vuosi", "Maakunta"},
+                new String[][]{{"2020", "2021", "2022"}, {"MK01", "MK02"}},
+                new String[][]{{"2020", "2021", "2022"}, {"Uusimaa", "Varsinais-Suomi"}});
+    }
+
+    private static PxWebQuery query(List<String> years, List<String> regions) {
+        return PxWebQuery.forTable(TABLE).select("Vuosi", years).select("Maakunta", regions).build();
+    }
+
+    // A response laid out the other way round than the table, to check that cells are matched by code
+    private static DataCube response(String[] regions, String[] years, double... values) {
+        return new DataCube(new String[]{"Maakunta", "Vuosi"}, new String[][]{regions, years},
+                new String[][]{regions, years}, DoubleBuffer.wrap(values));
+    }
+
+    @Test
+    void testAnswersSubsetsAndReorderingsLocally() {
+        CubeStore store = store();
+        PxWebQuery wide = query(List.of("2020", "2021"), List.of("MK01", "MK02"));
+        assertEquals(wide, store.missing(wide));
+
+        assertTrue(store.merge(response(new String[]{"MK01", "MK02"}, new String[]{"2020", "2021"}, 1, 2, 3, 4)));
+        assertNull(store.missing(wide));
+
+        DataCube reordered = store.dice(query(List.of("2021", "2020"), List.of("MK02")));
+        assertEquals("Vuosi", reordered.getDimensionId(0));
+        assertEquals("2021", reordered.getCode(0, 0));
+        assertEquals(4.0, reordered.get(0, 0));
+        assertEquals(3.0, reordered.get(1, 0));
+        assertEquals("Varsinais-Suomi", reordered.getLabel(1, 0));
+    }
+
+    @Test
+    void testRequestsOnlyMissingValues() {
+        CubeStore store = store();
+        store.merge(response(new String[]{"MK01", "MK02"}, new String[]{"2020", "2021"}, 1, 2, 3, 4));
+
+        PxWebQuery missing = store.missing(query(List.of("2020", "2021", "2022"), List.of("MK02")));
+        assertEquals(List.of("2022"), missing.getSelection("Vuosi").getValues());
+        assertEquals(List.of("MK02"), missing.getSelection("Maakunta").getValues());
+        assertNull(store.dice(query(List.of("2022"), List.of("MK02"))));
+        assertFalse(store.handles(query(List.of("2023"), List.of("MK02"))));
+        assertFalse(store.handles(PxWebQuery.forTable(TABLE).select("Vuosi", "2020").build()));
+    }
+
+    @Test
+    void testSplitsMissingCellsIntoRectangles() {
+        CubeStore store = store();
+        store.merge(response(new String[]{"MK01"}, new String[]{"2020", "2021"}, 1, 2));
+
+        // One more year and one more region: only the L-shaped rest is requested, in two rectangles
+        PxWebQuery all = query(List.of("2020", "2021", "2022"), List.of("MK01", "MK02"));
+        List<PxWebQuery> missing = store.missingQueries(all);
+        assertEquals(2, missing.size());
+        assertEquals(query(List.of("2020", "2021"), List.of("MK02")), missing.get(0));
+        assertEquals(query(List.of("2022"), List.of("MK01", "MK02")), missing.get(1));
+
+        store.merge(response(new String[]{"MK02"}, new String[]{"2020", "2021"}, 3, 4));
+        store.merge(response(new String[]{"MK01", "MK02"}, new String[]{"2022"}, 5, 6));
+        assertTrue(store.missingQueries(all).isEmpty());
+        assertEquals(6.0, store.dice(all).get(2, 1));
+    }
+
+    @Test
+    void testSliceRollupAndPivot() {
+        CubeStore store = store();
+        store.merge(response(new String[]{"MK01", "MK02"}, new String[]{"2020", "2021", "2022"}, 1, 2, Double.NaN, 4, 5, 6));
+        DataCube cube = store.dice(PxWebQuery.forTable(TABLE).selectAll("Vuosi").selectAll("Maakunta").build());
+
+        DataCube uusimaa = cube.slice("Maakunta", "MK01");
+        assertEquals(1, uusimaa.getDimensionCount());
+        assertEquals(2.0, uusimaa.get(1));
+
+        DataCube totals = cube.rollup("Maakunta");
+        assertEquals(5.0, totals.get(0));
+        assertEquals(6.0, totals.get(2));
+
+        DataCube pivoted = cube.pivot("Maakunta", "Vuosi");
+        assertEquals("MK02", pivoted.getCode(0, 1));
+        assertEquals(5.0, pivoted.get(1, 1));
+        assertTrue(Double.isNaN(pivoted.get(0, 2)));
+        assertThrows(IllegalArgumentException.class, () -> cube.pivot("Vuosi"));
+    }
+}
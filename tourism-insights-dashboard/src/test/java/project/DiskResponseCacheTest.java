@@ -0,0 +1,108 @@
+package project;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import project.Common.DiskResponseCache;
+import project.Common.Snapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskResponseCacheTest {
+    private static final String URL = "https://example.org/table.px";
+
+    private AtomicLong now;
+
+    @BeforeEach
+    public void setUp() {
+        now = new AtomicLong(1_000_000);
+    }
+
+    @Test
+    void testRoundTripUntilExpiry(@TempDir Path directory) {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1_000_000, Duration.ofMinutes(1), now::get);
+        cache.write(URL, "{\"query\":[]}", "{\"value\":[1,2]}");
+
+        DiskResponseCache.Entry entry = cache.read(URL, "{ \"query\" : [ ] }");
+        assertNotNull(entry);
+        assertEquals("{\"value\":[1,2]}", entry.getBody());
+        assertEquals(URL, entry.getUrl());
+        assertEquals(15, entry.getSize());
+        assertEquals(Instant.ofEpochMilli(1_000_000), entry.getFetchedAt());
+        assertNull(cache.read(URL, "{\"query\":[1]}"));
+
+        now.addAndGet(Duration.ofSeconds(59).toMillis());
+        assertNotNull(cache.read(URL, "{\"query\":[]}"));
+
+        // An expired entry is not served, and its file is deleted
+        now.addAndGet(Duration.ofSeconds(1).toMillis());
+        assertNull(cache.read(URL, "{\"query\":[]}"));
+        assertEquals(0, fileCount(directory));
+    }
+
+    @Test
+    void testEvictsOldestFilesOverTheLimit(@TempDir Path directory) {
+        String body = "x".repeat(1000);
+        DiskResponseCache cache = new DiskResponseCache(directory, 3000, Duration.ofDays(1), now::get);
+        cache.write(URL, "{\"query\":[1]}", body);
+        now.addAndGet(1000);
+        cache.write(URL, "{\"query\":[2]}", body);
+        assertEquals(2, fileCount(directory));
+
+        // The third response takes the cache over its limit, so the first one is deleted
+        now.addAndGet(1000);
+        cache.write(URL, "{\"query\":[3]}", body);
+        assertEquals(2, fileCount(directory));
+        assertNull(cache.read(URL, "{\"query\":[1]}"));
+        assertNotNull(cache.read(URL, "{\"query\":[2]}"));
+        assertNotNull(cache.read(URL, "{\"query\":[3]}"));
+    }
+
+    @Test
+    void testTrimDeletesExpiredFiles(@TempDir Path directory) {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1_000_000, Duration.ofMinutes(1), now::get);
+        cache.write(URL, "{\"query\":[1]}", "{}");
+        now.addAndGet(Duration.ofMinutes(2).toMillis());
+        cache.write(URL, "{\"query\":[2]}", "{}");
+
+        assertEquals(1, fileCount(directory));
+        assertNotNull(cache.read(URL, "{\"query\":[2]}"));
+    }
+
+    @Test
+    void testNewSnapshotVersionLeavesTheMappedOneIntact(@TempDir Path directory) {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1_000_000, Duration.ofDays(1), now::get);
+        cache.writeSnapshot(URL, "{\"query\":[]}", "aaaa", new Snapshot.Writer().doubleColumn("values", new double[]{1, 2}));
+        Snapshot first = cache.readSnapshot(URL, "{\"query\":[]}");
+        assertNotNull(first);
+
+        // A revalidated table is written under its own name; the older version is deleted once it can be
+        now.addAndGet(1000);
+        cache.writeSnapshot(URL, "{\"query\":[]}", "bbbb", new Snapshot.Writer().doubleColumn("values", new double[]{3, 4}));
+        assertEquals(2.0, first.getDoubleColumn("values").get(1));
+        assertEquals(4.0, cache.readSnapshot(URL, "{\"query\":[]}").getDoubleColumn("values").get(1));
+        assertEquals(1, fileCount(directory));
+
+        // A version already stored is marked as the newest and not written again
+        now.addAndGet(1000);
+        cache.writeSnapshot(URL, "{\"query\":[]}", "bbbb", new Snapshot.Writer().doubleColumn("values", new double[]{5, 6}));
+        assertEquals(4.0, cache.readSnapshot(URL, "{\"query\":[]}").getDoubleColumn("values").get(1));
+        assertNull(cache.readSnapshot(URL, "{\"query\":[1]}"));
+    }
+
+    private static long fileCount(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        } catch (IOException exception) {
+            throw new AssertionError(exception);
+        }
+    }
+}
@@ -2,12 +2,16 @@ package project;
 
 import com.google.gson.JsonObject;
 import org.junit.jupiter.api.TestInstance;
+import project.Common.DataCube;
 import project.Model.EconomicImpactData;
 import project.ServiceFacade.EconomicImpactServiceFacade;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -60,4 +64,23 @@ public class EconomicImpactServiceFacadeTest {
         assertEquals("Region1", serviceFacade.getUserPreferences("region", ""));
     }
     
+
+    @Test
+    void testTotalsBy() {
+        // Two products by two years by two regions; the second product has no value in 2021
+        double[] values = {1, 2, 3, 4, 5, 6, 0, 0};
+        BitSet present = new BitSet();
+        present.set(0, 6);
+        DataCube cube = new DataCube(new String[]{"Tuotteet", "Vuosi", "Maakunta"},
+                new String[][]{{"P1", "P2"}, {"2020", "2021"}, {"MK01", "MK02"}},
+                new String[][]{{"Food", "Lodging"}, {"2020", "2021"}, {"Uusimaa", "Lapland"}},
+                values, present);
+
+        assertEquals(Map.of("Food", 10.0, "Lodging", 11.0), serviceFacade.totalsBy(cube, "Tuotteet"));
+        Map<String, Double> byYear = serviceFacade.totalsBy(cube, "Vuosi");
+        assertEquals(List.of("2020", "2021"), List.copyOf(byYear.keySet()));
+        assertEquals(14.0, byYear.get("2020"));
+        assertEquals(7.0, byYear.get("2021"));
+        assertTrue(serviceFacade.totalsBy(cube, "Matkailutyyppi").isEmpty());
+    }
 }
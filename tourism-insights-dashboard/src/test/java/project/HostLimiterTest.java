@@ -0,0 +1,181 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import project.Common.HostLimiter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HostLimiterTest {
+
+    @Test
+    void testRequestsOverTheRateWait() {
+        HostLimiter limiter = new HostLimiter(2, Duration.ofMillis(200), 4);
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("ok", limiter.run(HostLimiter.Priority.NORMAL, () -> "ok"));
+        }
+
+        // The bucket holds two requests; the third waits for a token, about 100 ms
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 80);
+        assertEquals(3, limiter.getAdmittedCount());
+        assertEquals(1, limiter.getWaitedCount());
+        assertTrue(limiter.getMaxWaitMillis() >= 80);
+    }
+
+    @Test
+    void testThrottledRequestIsRetriedWithASmallerLimit() {
+        HostLimiter limiter = new HostLimiter(30, Duration.ofSeconds(10), 4);
+        AtomicInteger attempts = new AtomicInteger();
+        String result = limiter.run(HostLimiter.Priority.NORMAL, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new HostLimiter.ThrottledException(429, 50);
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(2, attempts.get());
+        assertEquals(1, limiter.getThrottledCount());
+        assertEquals(2, limiter.getConcurrencyLimit());
+        assertEquals(0, limiter.getInFlightCount());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<String> async = limiter.runAsync(HostLimiter.Priority.NORMAL,
+                    () -> attempts.incrementAndGet() == 3
+                            ? CompletableFuture.failedFuture(new HostLimiter.ThrottledException(429, 0))
+                            : CompletableFuture.completedFuture("async"),
+                    executor);
+            assertEquals("async", async.join());
+            assertEquals(2, limiter.getThrottledCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testNormalRequestsGoBeforeBackgroundOnes() throws Exception {
+        HostLimiter limiter = new HostLimiter(30, Duration.ofSeconds(10), 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        Thread holder = new Thread(() -> {
+            try {
+                limiter.run(HostLimiter.Priority.NORMAL, () -> release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        holder.start();
+        awaitInFlight(limiter);
+        Thread background = new Thread(() -> limiter.run(HostLimiter.Priority.BACKGROUND, () -> order.add("background")));
+        background.start();
+        awaitWaiting(limiter, 1);
+        Thread normal = new Thread(() -> limiter.run(HostLimiter.Priority.NORMAL, () -> order.add("normal")));
+        normal.start();
+        awaitWaiting(limiter, 2);
+
+        release.countDown();
+        for (Thread thread : List.of(holder, background, normal)) {
+            thread.join(5000);
+        }
+        assertEquals(List.of("normal", "background"), order);
+        assertEquals(2, limiter.getWaitedCount());
+    }
+
+    @Test
+    void testInterruptedWaiterLeavesTheQueue() throws Exception {
+        HostLimiter limiter = new HostLimiter(30, Duration.ofSeconds(10), 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger sent = new AtomicInteger();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+        Thread holder = new Thread(() -> {
+            try {
+                limiter.run(HostLimiter.Priority.NORMAL, () -> release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        holder.start();
+        awaitInFlight(limiter);
+        Thread cancelled = new Thread(() -> {
+            try {
+                limiter.run(HostLimiter.Priority.NORMAL, sent::incrementAndGet);
+            } catch (RuntimeException exception) {
+                failures.add(exception);
+            }
+        });
+        cancelled.start();
+        awaitWaiting(limiter, 1);
+
+        cancelled.interrupt();
+        cancelled.join(5000);
+        assertEquals(0, limiter.getWaitingCount());
+        assertEquals(1, failures.size());
+        assertInstanceOf(CancellationException.class, failures.get(0));
+
+        release.countDown();
+        holder.join(5000);
+        assertEquals(0, sent.get());
+        assertEquals(1, limiter.getAdmittedCount());
+        assertEquals(0, limiter.getInFlightCount());
+    }
+
+    @Test
+    void testQueuedAsyncRequestsHoldNoThread() throws Exception {
+        HostLimiter limiter = new HostLimiter(30, Duration.ofSeconds(10), 1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<String> response = new CompletableFuture<>();
+            CompletableFuture<String> first = limiter.runAsync(HostLimiter.Priority.NORMAL, () -> response, executor);
+            List<CompletableFuture<String>> queued = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                queued.add(limiter.runAsync(HostLimiter.Priority.BACKGROUND, () -> CompletableFuture.completedFuture("queued"), executor));
+            }
+            assertEquals(5, limiter.getWaitingCount());
+
+            // The only thread of the executor is still free while the requests wait for the slot
+            assertEquals("free", executor.submit(() -> "free").get(1, TimeUnit.SECONDS));
+
+            // A cancelled request leaves the queue; the others start one by one as the slot frees up
+            queued.remove(0).cancel(false);
+            assertEquals(4, limiter.getWaitingCount());
+            response.complete("first");
+            assertEquals("first", first.get(5, TimeUnit.SECONDS));
+            for (CompletableFuture<String> request : queued) {
+                assertEquals("queued", request.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(5, limiter.getAdmittedCount());
+            assertEquals(0, limiter.getInFlightCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitInFlight(HostLimiter limiter) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (limiter.getInFlightCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitWaiting(HostLimiter limiter, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (limiter.getWaitingCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, limiter.getWaitingCount());
+    }
+}
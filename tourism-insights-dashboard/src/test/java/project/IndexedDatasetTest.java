@@ -0,0 +1,54 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import project.Common.IndexedDataset;
+import project.Model.TouristDatabyPurpose;
+import project.Model.TripStatistics;
+import project.Service.ForeignVisitorsByPurposeDataService;
+import project.Service.TripsByDestinationDataService;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexedDatasetTest {
+
+    @Test
+    void testLookupIgnoresCaseAndKeepsOrder() {
+        TripsByDestinationDataService service = new TripsByDestinationDataService();
+        IndexedDataset<TripStatistics> dataset = service.index(List.of(
+                new TripStatistics("Uusimaa", "Summer", 10.0),
+                new TripStatistics("Lapland", "Winter", 20.0),
+                new TripStatistics("Lapland", "Summer", 30.0),
+                new TripStatistics("Pirkanmaa", null, 40.0)));
+
+        List<TripStatistics> summer = service.filterData(dataset, "summer");
+
+        assertEquals(2, summer.size());
+        assertEquals("Uusimaa", summer.get(0).getDestination());
+        assertEquals("Lapland", summer.get(1).getDestination());
+        assertTrue(service.filterData(dataset, "Autumn").isEmpty());
+        assertEquals(1, dataset.count(TripsByDestinationDataService.SEASON, " WINTER "));
+        assertThrows(UnsupportedOperationException.class, () -> summer.remove(0));
+    }
+
+    @Test
+    void testIndexedListsAreNotIndexedAgain() {
+        ForeignVisitorsByPurposeDataService service = new ForeignVisitorsByPurposeDataService();
+        IndexedDataset<TouristDatabyPurpose> dataset = service.index(List.of(
+                new TouristDatabyPurpose("1", "Personal", 5.0),
+                new TouristDatabyPurpose("2", "Holiday", 6.0),
+                new TouristDatabyPurpose("6", "Work", 7.0)));
+
+        assertSame(dataset, service.index(dataset));
+
+        // Grouped in the order the IDs are given
+        List<TouristDatabyPurpose> filtered = service.filterData(dataset, "6,1");
+        assertEquals(2, filtered.size());
+        assertEquals("Work", filtered.get(0).getPurpose());
+        assertEquals("Personal", filtered.get(1).getPurpose());
+
+        // An ID listed twice, with or without spaces, returns its rows once
+        assertEquals(filtered, service.filterData(dataset, "6, 1,1 ,6"));
+    }
+}
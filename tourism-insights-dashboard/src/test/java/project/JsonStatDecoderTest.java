@@ -0,0 +1,131 @@
+package project;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import project.Common.DataCube;
+import project.Common.JsonStatDecoder;
+import project.Model.EconomicImpactData;
+import project.Service.EconomicImpactService;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonStatDecoderTest {
+
+    // Two years by three regions; the regions use an array index, the years an object index
+    private static final String DATASET = "{"
+            + "\"version\": \"2.0\", \"class\": \"dataset\","
+            + "\"id\": [\"Vuosi\", \"Maakunta\"], \"size\": [2, 3],"
+            + "\"dimension\": {"
+            + "  \"Vuosi\": {\"category\": {\"index\": {\"2022\": 1, \"2021\": 0}, \"label\": {\"2021\": \"2021\", \"2022\": \"2022\"}}},"
+            + "  \"Maakunta\": {\"category\": {\"index\": [\"MK01\", \"MK02\", \"MK04\"], \"label\": {\"MK01\": \"Uusimaa\", \"MK02\": \"Varsinais-Suomi\"}}}"
+            + "},"
+            + "\"value\": [1, 2, null, 4, 5, 6]"
+            + "}";
+
+    private static JsonObject parse(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    @Test
+    void testDecodeDimensionsAndStrides() {
+        DataCube cube = JsonStatDecoder.decode(parse(DATASET));
+
+        assertNotNull(cube);
+        assertEquals(2, cube.getDimensionCount());
+        assertEquals(1, cube.dimensionIndex("Maakunta"));
+        assertEquals(-1, cube.dimensionIndex("Tuotteet"));
+        assertEquals(3, cube.getStride(0));
+        assertEquals(1, cube.getStride(1));
+        assertEquals("2022", cube.getCode(0, 1));
+        assertEquals(2, cube.indexOf(1, "MK04"));
+        assertEquals("Uusimaa", cube.getLabel(1, 0));
+        // Categories without a label are labelled with their code
+        assertEquals("MK04", cube.getLabel(1, 2));
+    }
+
+    @Test
+    void testCellLookup() {
+        DataCube cube = JsonStatDecoder.decode(parse(DATASET));
+
+        assertEquals(6, cube.getCellCount());
+        assertEquals(5.0, cube.get(1, 1));
+        assertEquals(2.0, cube.get(0, 1));
+        assertFalse(cube.isPresent(0, 2));
+        assertTrue(Double.isNaN(cube.get(0, 2)));
+        assertEquals(1, cube.coordinate(4, 0));
+        assertEquals(1, cube.coordinate(4, 1));
+    }
+
+    @Test
+    void testSparseValues() {
+        String sparse = DATASET.replace("[1, 2, null, 4, 5, 6]", "{\"5\": 6, \"0\": 1}");
+        DataCube cube = JsonStatDecoder.decode(parse(sparse));
+
+        assertEquals(6.0, cube.get(1, 2));
+        assertFalse(cube.isPresent(1, 1));
+    }
+
+    @Test
+    void testValuesBeforeDimensions() {
+        String valuesFirst = "{\"value\": [1, 2, null, 4, 5, 6]," + DATASET.substring(1).replace(",\"value\": [1, 2, null, 4, 5, 6]", "");
+        DataCube cube = JsonStatDecoder.decode(valuesFirst);
+
+        assertEquals(6, cube.getCellCount());
+        assertEquals(5.0, cube.get(1, 1));
+        assertFalse(cube.isPresent(0, 2));
+    }
+
+    @Test
+    void testMalformedDatasets() {
+        // Offsets outside the cube are ignored
+        DataCube cube = JsonStatDecoder.decode(DATASET.replace("[1, 2, null, 4, 5, 6]", "{\"-1\": 7, \"6\": 8, \"2\": 3}"));
+        assertEquals(3.0, cube.get(0, 2));
+        assertFalse(cube.isPresent(0, 0));
+
+        // A cube larger than an int can count is rejected rather than overflowing
+        StringBuilder index = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            index.append(i == 0 ? "" : ",").append("\"c").append(i).append('"');
+        }
+        String huge = "{\"id\": [\"a\", \"b\", \"c\"], \"dimension\": {"
+                + "\"a\": {\"category\": {\"index\": [" + index + "]}},"
+                + "\"b\": {\"category\": {\"index\": [" + index + "]}},"
+                + "\"c\": {\"category\": {\"index\": [" + index + "]}}}, \"value\": []}";
+        assertNull(JsonStatDecoder.decode(huge));
+        assertNull(JsonStatDecoder.decode(parse(DATASET.replace("\"2022\": 1", "\"2022\": 5"))));
+        assertNull(JsonStatDecoder.decode("[1, 2]"));
+    }
+
+    @Test
+    void testNotADataset() {
+        JsonObject response = new JsonObject();
+        response.addProperty("data", "mockResponseData");
+
+        assertNull(JsonStatDecoder.decode(response));
+    }
+
+    @Test
+    void testEconomicImpactRowsAreViewOverCube() {
+        String dataset = "{"
+                + "\"id\": [\"Tuotteet\", \"Maakunta\", \"Vuosi\", \"Matkailutyyppi\"], \"size\": [1, 1, 2, 1],"
+                + "\"dimension\": {"
+                + "  \"Tuotteet\": {\"category\": {\"index\": {\"T1\": 0}, \"label\": {\"T1\": \"Accommodation\"}}},"
+                + "  \"Maakunta\": {\"category\": {\"index\": {\"MK01\": 0}, \"label\": {\"MK01\": \"Uusimaa\"}}},"
+                + "  \"Vuosi\": {\"category\": {\"index\": {\"2020\": 0, \"2021\": 1}, \"label\": {\"2020\": \"2020\", \"2021\": \"2021\"}}},"
+                + "  \"Matkailutyyppi\": {\"category\": {\"index\": {\"S\": 0}, \"label\": {\"S\": \"Total\"}}}"
+                + "},"
+                + "\"value\": [12.5, null]"
+                + "}";
+
+        List<EconomicImpactData> rows = new EconomicImpactService().processData(parse(dataset));
+
+        assertEquals(2, rows.size());
+        assertEquals("Accommodation", rows.get(0).getProduct());
+        assertEquals("2021", rows.get(1).getYear());
+        assertEquals(12.5, rows.get(0).getValue());
+        assertEquals(0.0, rows.get(1).getValue());
+    }
+}
@@ -0,0 +1,44 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import project.Common.LabelDictionary;
+import project.Model.VisitorStatistics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LabelDictionaryTest {
+
+    @Test
+    void testCodesAreDenseAndStable() {
+        LabelDictionary dictionary = new LabelDictionary("region");
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, dictionary.encode("Region " + i));
+        }
+
+        assertEquals(3, dictionary.encode("Region 3"));
+        assertEquals("Region 17", dictionary.decode(17));
+        assertEquals(20, dictionary.size());
+        assertEquals(LabelDictionary.NOT_FOUND, dictionary.lookup("Lapland"));
+        assertEquals(20, dictionary.size());
+        assertThrows(IllegalArgumentException.class, () -> dictionary.decode(20));
+    }
+
+    @Test
+    void testNullLabelsRoundTrip() {
+        LabelDictionary dictionary = new LabelDictionary("gender");
+
+        assertEquals(LabelDictionary.NOT_FOUND, dictionary.encode(null));
+        assertNull(dictionary.decode(LabelDictionary.NOT_FOUND));
+        assertEquals(0, dictionary.size());
+    }
+
+    @Test
+    void testRowsShareCodes() {
+        VisitorStatistics first = new VisitorStatistics("2023", "15 - 24", "Male", "Cruise", 12.5);
+        VisitorStatistics second = new VisitorStatistics("2023", "25 - 64", "Male", "Cruise", 7.5);
+
+        assertEquals(first.getGenderCode(), second.getGenderCode());
+        assertNotEquals(first.getAgeGroupCode(), second.getAgeGroupCode());
+        assertEquals("Cruise", second.getTripType());
+    }
+}
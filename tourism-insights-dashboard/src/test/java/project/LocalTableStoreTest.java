@@ -0,0 +1,133 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import project.Common.DataCube;
+import project.Common.LocalTableStore;
+import project.Common.PxTable;
+import project.Common.PxWebQuery;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalTableStoreTest {
+
+    private static final String TABLE_URL = "https://pxdata.stat.fi/PxWeb/api/v1/en/StatFin/matk/nights.px";
+
+    private static final List<String> YEARS = List.of("2022", "2023", "2024");
+    private static final List<String> REGIONS = List.of("KU091", "KU049", "KU109", "SSS");
+    private static final List<String> REGION_TEXTS = List.of("Helsinki", "Espoo", "Hameenlinna", "Whole country");
+
+    private static final String METADATA = "{\"title\":\"Nights by year and region\",\"variables\":["
+            + "{\"code\":\"Vuosi\",\"text\":\"Year\",\"values\":[\"2022\",\"2023\",\"2024\"],\"valueTexts\":[\"2022\",\"2023\",\"2024\"]},"
+            + "{\"code\":\"Alue\",\"text\":\"Region\",\"values\":[\"KU091\",\"KU049\",\"KU109\",\"SSS\"],"
+            + "\"valueTexts\":[\"Helsinki\",\"Espoo\",\"Hameenlinna\",\"Whole country\"]}]}";
+
+    // Answers like PxWeb with a cell limit: the selected regions of every year, as a PX file
+    private static class FakePxWeb implements LocalTableStore.TableFetch {
+        private final long maxCells;
+        private final List<List<String>> posted = new ArrayList<>();
+
+        FakePxWeb(long maxCells) {
+            this.maxCells = maxCells;
+        }
+
+        @Override
+        public byte[] fetch(String tableUrl, String jsonQuery) throws IOException {
+            if (jsonQuery == null) {
+                return METADATA.getBytes(StandardCharsets.UTF_8);
+            }
+            PxWebQuery.Selection selection = PxWebQuery.parse(tableUrl, jsonQuery).getSelection("Alue");
+            List<String> regions = PxWebQuery.FILTER_ALL.equals(selection.getFilter()) ? REGIONS : selection.getValues();
+            if ((long) YEARS.size() * regions.size() > maxCells) {
+                throw new IOException("HTTP code 403");
+            }
+            posted.add(regions);
+            return px(regions).getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    // The value of a cell is 1000 times the year's position plus the region's position
+    private static String px(List<String> regions) {
+        StringBuilder data = new StringBuilder();
+        List<String> texts = new ArrayList<>();
+        for (String region : regions) {
+            texts.add(REGION_TEXTS.get(REGIONS.indexOf(region)));
+        }
+        for (int y = 0; y < YEARS.size(); y++) {
+            for (String region : regions) {
+                data.append(1000 * y + REGIONS.indexOf(region)).append(' ');
+            }
+            data.append("\r\n");
+        }
+        return "CHARSET=\"ANSI\";\r\n"
+                + "CODEPAGE=\"iso-8859-15\";\r\n"
+                + "TITLE=\"Nights by year and region\";\r\n"
+                + "STUB=\"Year\";\r\n"
+                + "HEADING=\"Region\";\r\n"
+                + "VALUES(\"Year\")=" + quoted(YEARS) + ";\r\n"
+                + "VALUES(\"Region\")=" + quoted(texts) + ";\r\n"
+                + "CODES(\"Region\")=" + quoted(regions) + ";\r\n"
+                + "VARIABLECODE(\"Year\")=\"Vuosi\";\r\n"
+                + "VARIABLECODE(\"Region\")=\"Alue\";\r\n"
+                + "ELIMINATION(\"Region\")=\"Whole country\";\r\n"
+                + "DATA=\r\n" + data.toString().trim() + ";\r\n";
+    }
+
+    private static String quoted(List<String> values) {
+        return "\"" + String.join("\",\"", values) + "\"";
+    }
+
+    @Test
+    void testOversizedTableIsDownloadedInChunks(@TempDir Path directory) throws IOException {
+        FakePxWeb pxWeb = new FakePxWeb(4);
+        PxTable table = new LocalTableStore(directory, 4, pxWeb).getTable(TABLE_URL);
+
+        // 12 cells are fetched three at a time, one region per query
+        assertNotNull(table);
+        assertEquals(4, pxWeb.posted.size());
+        assertEquals(4, fileCount(directory));
+        DataCube cube = table.getCube();
+        assertEquals(12, cube.getCellCount());
+        assertEquals(REGIONS, List.of(cube.getCode(1, 0), cube.getCode(1, 1), cube.getCode(1, 2), cube.getCode(1, 3)));
+        assertEquals(2002.0, cube.get(2, 2));
+        assertEquals("Nights by year and region", table.getTitle());
+        // The value to answer with when the region is eliminated came in the last chunk
+        assertEquals(3, table.getEliminationPosition(1));
+
+        // After a restart the chunks are read from disk
+        PxTable stored = new LocalTableStore(directory, 4, (url, query) -> {
+            throw new IOException("Offline");
+        }).getTable(TABLE_URL);
+        assertNotNull(stored);
+        assertEquals(1003.0, stored.getCube().get(1, 3));
+    }
+
+    @Test
+    void testIngestReplacesEveryChunk(@TempDir Path directory) throws IOException {
+        new LocalTableStore(directory, 4, new FakePxWeb(4)).ingest(TABLE_URL);
+        assertEquals(4, fileCount(directory));
+
+        // A table that now fits in one query leaves no chunks of the earlier download behind
+        FakePxWeb pxWeb = new FakePxWeb(100);
+        PxTable table = new LocalTableStore(directory, 100, pxWeb).ingest(TABLE_URL);
+        assertEquals(1, pxWeb.posted.size());
+        assertEquals(1, fileCount(directory));
+        assertEquals(12, table.getCube().getCellCount());
+    }
+
+    private static long fileCount(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        } catch (IOException exception) {
+            throw new AssertionError(exception);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package project;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import project.Common.DataCube;
+import project.Common.JsonStatDecoder;
+import project.Common.LocalTableStore;
+import project.Common.PxFileReader;
+import project.Common.PxJsonDecoder;
+import project.Common.PxJsonTable;
+import project.Common.PxTable;
+import project.Common.PxWebQuery;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PxFileReaderTest {
+
+    private static final String TABLE_URL = "https://pxdata.stat.fi:443/PxWeb/api/v1/en/StatFin/smat/statfin_smat_pxt_13h2.px";
+
+    // Two years by three municipalities by two measures; the municipality can be eliminated by summing
+    private static final String PX = "CHARSET=\"ANSI\";\r\n"
+            + "AXIS-VERSION=\"2013\";\r\n"
+            + "CODEPAGE=\"iso-8859-15\";\r\n"
+            + "LANGUAGE=\"en\";\r\n"
+            + "TITLE=\"Overnight trips by year, \"\r\n\"municipality and information\";\r\n"
+            + "CONTVARIABLE=\"Information\";\r\n"
+            + "STUB=\"Year\",\"Municipality\";\r\n"
+            + "HEADING=\"Information\";\r\n"
+            + "VALUES(\"Year\")=\"2022\",\"2023\";\r\n"
+            + "VALUES[fi](\"Vuosi\")=\"2022\",\"2023\";\r\n"
+            + "VALUES(\"Municipality\")=\"Helsinki\",\"Espoo\",\"H\u00e4meenlinna\";\r\n"
+            + "VALUES(\"Information\")=\"Overnight trips\",\"Average length\";\r\n"
+            + "TIMEVAL(\"Year\")=TLIST(A1),\"2022\",\"2023\";\r\n"
+            + "CODES(\"Municipality\")=\"KU091\",\"KU049\",\"KU109\";\r\n"
+            + "CODES(\"Information\")=\"yop_matkoja\",\"viipyma\";\r\n"
+            + "VARIABLECODE(\"Year\")=\"Vuosi\";\r\n"
+            + "VARIABLECODE(\"Municipality\")=\"Matkan kohdekunta\";\r\n"
+            + "VARIABLECODE(\"Information\")=\"Tiedot\";\r\n"
+            + "ELIMINATION(\"Municipality\")=YES;\r\n"
+            + "DATA=\r\n"
+            + "1200 2.5 300 \".\" 40 1.25\r\n"
+            + "1300 2.4 310 3 \"..\" \"..\";\r\n";
+
+    private static PxTable read() throws IOException {
+        return PxFileReader.read(new ByteArrayInputStream(PX.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    void testReadMetadata() throws IOException {
+        PxTable table = read();
+        DataCube cube = table.getCube();
+
+        assertEquals("Overnight trips by year, municipality and information", table.getTitle());
+        assertEquals(3, cube.getDimensionCount());
+        assertEquals("Matkan kohdekunta", cube.getDimensionId(1));
+        assertEquals("Municipality", table.getVariableText(1));
+        assertEquals("KU109", cube.getCode(1, 2));
+        assertEquals("H\u00e4meenlinna", cube.getLabel(1, 2));
+        assertEquals(2, table.getContentDimension());
+        assertEquals(0, table.getTimeDimension());
+        assertTrue(table.isEliminable(1));
+        assertFalse(table.isEliminable(0));
+    }
+
+    @Test
+    void testReadData() throws IOException {
+        DataCube cube = read().getCube();
+
+        assertEquals(12, cube.getCellCount());
+        assertEquals(1200.0, cube.get(0, 0, 0));
+        assertEquals(1.25, cube.get(0, 2, 1));
+        assertFalse(cube.isPresent(0, 1, 1));
+        assertEquals(3.0, cube.get(1, 1, 1));
+        assertFalse(cube.isPresent(1, 2, 0));
+    }
+
+    @Test
+    void testAnswerJsonStatQuery() throws IOException {
+        PxWebQuery query = PxWebQuery.forTable(TABLE_URL)
+                .select("Vuosi", "2023")
+                .select("Matkan kohdekunta", "KU109", "KU091")
+                .select("Tiedot", "yop_matkoja")
+                .build();
+
+        String body = LocalTableStore.answer(read(), query);
+        DataCube cube = JsonStatDecoder.decode(JsonParser.parseString(body).getAsJsonObject());
+
+        assertNotNull(cube);
+        // Values come back in table order, whatever order the query lists them in
+        assertEquals("KU091", cube.getCode(1, 0));
+        assertEquals(1300.0, cube.get(0, 0, 0));
+        assertFalse(cube.isPresent(0, 1, 0));
+    }
+
+    @Test
+    void testAnswerJsonQueryWithElimination() throws IOException {
+        PxWebQuery query = PxWebQuery.forTable(TABLE_URL)
+                .selectAll("Vuosi")
+                .select("Tiedot", "yop_matkoja", "viipyma")
+                .format(PxWebQuery.FORMAT_JSON)
+                .build();
+
+        PxJsonTable table = PxJsonDecoder.decode(LocalTableStore.answer(read(), query));
+
+        assertNotNull(table);
+        assertEquals(2, table.getRowCount());
+        assertEquals(1, table.getKeyColumnCount());
+        assertEquals("viipyma", table.getValueColumn(1));
+        // The municipality is left out, so it is summed over
+        assertEquals(1540.0, table.getValue(0, 0));
+        assertEquals(3.75, table.getValue(1, 0));
+        assertEquals("2023", table.getKey(0, 1));
+    }
+
+    @Test
+    void testUnanswerableQueries() throws IOException {
+        PxTable table = read();
+
+        // The year cannot be eliminated, and the table has no KU999
+        assertNull(LocalTableStore.answer(table, PxWebQuery.forTable(TABLE_URL).select("Tiedot", "yop_matkoja").build()));
+        assertNull(LocalTableStore.answer(table, PxWebQuery.forTable(TABLE_URL)
+                .selectAll("Vuosi").select("Matkan kohdekunta", "KU999").build()));
+    }
+}
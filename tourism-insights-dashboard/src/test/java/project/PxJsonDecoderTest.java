@@ -0,0 +1,63 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import project.Common.PxJsonDecoder;
+import project.Common.PxJsonTable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PxJsonDecoderTest {
+
+    // Two keys and two content variables; the second row has a missing value
+    private static final String TABLE = "{"
+            + "\"columns\": ["
+            + "  {\"code\": \"Vuosi\", \"text\": \"Year\", \"type\": \"t\"},"
+            + "  {\"code\": \"Kohde\", \"text\": \"Destination\", \"type\": \"d\"},"
+            + "  {\"code\": \"yop_matkoja\", \"text\": \"Overnight trips\", \"type\": \"c\"},"
+            + "  {\"code\": \"kesto\", \"text\": \"Average length\", \"type\": \"c\"}"
+            + "],"
+            + "\"comments\": [],"
+            + "\"data\": ["
+            + "  {\"key\": [\"2022\", \"1\"], \"values\": [\"1200\", \"2.5\"]},"
+            + "  {\"key\": [\"2022\", \"2\"], \"values\": [\"300\", \".\"]},"
+            + "  {\"key\": [\"2023\", \"1\"], \"values\": [\"1300\", \"2.4\"]}"
+            + "],"
+            + "\"metadata\": [{\"updated\": \"2024-01-01T00:00:00Z\"}]"
+            + "}";
+
+    @Test
+    void testColumnsAndDictionaries() {
+        PxJsonTable table = PxJsonDecoder.decode(TABLE);
+
+        assertNotNull(table);
+        assertEquals(3, table.getRowCount());
+        assertEquals(2, table.getKeyColumnCount());
+        assertEquals(2, table.getValueColumnCount());
+        assertEquals(1, table.keyColumnIndex("Kohde"));
+        assertEquals(1, table.valueColumnIndex("kesto"));
+        // Every distinct key is stored once per column
+        assertEquals(2, table.getDictionarySize(0));
+        assertEquals(table.getKeyCode(0, 0), table.getKeyCode(0, 1));
+        assertEquals("2023", table.getKey(0, 2));
+        assertEquals(1, table.lookupKeyCode(1, "2"));
+        assertEquals(-1, table.lookupKeyCode(1, "3"));
+    }
+
+    @Test
+    void testValuesAndMissing() {
+        PxJsonTable table = PxJsonDecoder.decode(TABLE);
+
+        assertEquals(1300.0, table.getValue(0, 2));
+        assertEquals(2.5, table.getValue(1, 0));
+        assertTrue(table.isMissing(1, 1));
+        assertTrue(Double.isNaN(table.getValue(1, 1)));
+        assertFalse(table.isMissing(0, 1));
+    }
+
+    @Test
+    void testInvalidResponse() {
+        assertNull(PxJsonDecoder.decode((String) null));
+        assertNull(PxJsonDecoder.decode("{\"data\": [{\"key\": [\"2022\"], \"values\": [\"1\"]}, {\"key\": [], \"values\": []}]}"));
+        assertNull(PxJsonDecoder.decode("not json"));
+    }
+}
@@ -0,0 +1,85 @@
+package project;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import project.Common.CachingDataRetrievable;
+import project.Common.PxWebQuery;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PxWebQueryTest {
+
+    private static final String TABLE = "https://pxdata.stat.fi:443/PxWeb/api/v1/en/StatFin/smat/statfin_smat_pxt_13h2.px";
+
+    @Test
+    void testSelectionOrderDoesNotMatter() {
+        PxWebQuery first = PxWebQuery.forTable(TABLE)
+                .select("Vuosi", "2022", "2023")
+                .select("Tiedot", "yop_matkoja")
+                .format(PxWebQuery.FORMAT_JSON)
+                .build();
+        PxWebQuery second = PxWebQuery.forTable(TABLE)
+                .format(PxWebQuery.FORMAT_JSON)
+                .select("Tiedot", "yop_matkoja")
+                .select("Vuosi", "2022", "2023")
+                .build();
+
+        assertEquals(first, second);
+        assertEquals(first.toJson(), second.toJson());
+        assertEquals("Tiedot", first.getSelections().get(0).getCode());
+        assertEquals(List.of("2022", "2023"), first.getSelection("Vuosi").getValues());
+    }
+
+    @Test
+    void testCanonicalJsonMatchesResponseCacheKey() {
+        PxWebQuery query = PxWebQuery.forTable(TABLE)
+                .select("Matkan kohdekunta", "KU091")
+                .selectAll("Vuosi")
+                .build();
+
+        assertEquals(CachingDataRetrievable.normalizeQuery(query.toJson()), query.toJson());
+        assertEquals(CachingDataRetrievable.cacheKey(TABLE, query.toJson()), query.getCacheKey());
+        assertEquals(query.toJson(), new String(query.toBytes(), StandardCharsets.UTF_8));
+
+        JsonObject parsed = JsonParser.parseString(query.toJson()).getAsJsonObject();
+        assertEquals("json-stat2", parsed.getAsJsonObject("response").get("format").getAsString());
+        assertEquals("all", parsed.getAsJsonArray("query").get(1).getAsJsonObject()
+                .getAsJsonObject("selection").get("filter").getAsString());
+    }
+
+    @Test
+    void testTemplateBindsEachValueSeparately() {
+        PxWebQuery.Template template = PxWebQuery.forTable(TABLE)
+                .select("Majoitus", "0")
+                .select("Tiedot", "yot")
+                .template("Matkan kohdekunta");
+
+        PxWebQuery helsinki = template.bind("KU091");
+        PxWebQuery finland = template.bind("SSS");
+        PxWebQuery built = PxWebQuery.forTable(TABLE)
+                .select("Tiedot", "yot")
+                .select("Matkan kohdekunta", "KU091")
+                .select("Majoitus", "0")
+                .build();
+
+        // Binding does not consume the template, and the bound query is the same as one built directly
+        assertEquals(built, helsinki);
+        assertEquals(built.getCacheKey(), helsinki.getCacheKey());
+        assertNotEquals(helsinki.getCacheKey(), finland.getCacheKey());
+        assertEquals(List.of("SSS"), finland.getSelection("Matkan kohdekunta").getValues());
+    }
+
+    @Test
+    void testTemplateEscapesValues() {
+        PxWebQuery query = PxWebQuery.forTable(TABLE).template("Alue").bind("a\"b", "Kulkuväline");
+
+        JsonObject parsed = JsonParser.parseString(query.toJson()).getAsJsonObject();
+        assertEquals("a\"b", parsed.getAsJsonArray("query").get(0).getAsJsonObject()
+                .getAsJsonObject("selection").getAsJsonArray("values").get(0).getAsString());
+        assertEquals(CachingDataRetrievable.normalizeQuery(query.toJson()), query.toJson());
+    }
+}
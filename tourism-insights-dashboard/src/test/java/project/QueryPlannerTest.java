@@ -0,0 +1,83 @@
+package project;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import project.Common.DataCube;
+import project.Common.PxWebQuery;
+import project.Common.QueryPlanner;
+
+import java.nio.DoubleBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryPlannerTest {
+    private static final String TABLE = "https://example.org/table.px";
+
+    private static final String METADATA = "{\"variables\":["
+            + "{\"code\":\"Vuosi\",\"values\":[\"2019\",\"2020\",\"2021\",\"2022\"],\"valueTexts\":[\"2019\",\"2020\",\"2021\",\"2022\"]},"
+            + "{\"code\":\"Maakunta\",\"values\":[\"MK01\",\"MK02\",\"MK04\"],\"valueTexts\":[\"Uusimaa\",\"Varsinais-Suomi\",\"Satakunta\"]}]}";
+
+    private static QueryPlanner planner(long maxCells) {
+        return new QueryPlanner(JsonParser.parseString(METADATA).getAsJsonObject(), maxCells);
+    }
+
+    // Answers a chunk with the value year * 10 + region number for every cell, laid out like PxWeb would
+    private static DataCube answer(PxWebQuery query) {
+        List<String> years = query.getSelection("Vuosi").getValues();
+        List<String> regions = query.getSelection("Maakunta").getValues();
+        double[] cells = new double[years.size() * regions.size()];
+        for (int y = 0; y < years.size(); y++) {
+            for (int r = 0; r < regions.size(); r++) {
+                cells[y * regions.size() + r] = Integer.parseInt(years.get(y)) * 10 + Integer.parseInt(regions.get(r).substring(2));
+            }
+        }
+        String[][] codes = {years.toArray(new String[0]), regions.toArray(new String[0])};
+        return new DataCube(new String[]{"Vuosi", "Maakunta"}, codes, codes, DoubleBuffer.wrap(cells));
+    }
+
+    @Test
+    void testEstimatesCellsFromMetadata() {
+        QueryPlanner planner = planner(100);
+        assertEquals(12, planner.estimateCells(PxWebQuery.forTable(TABLE).selectAll("Vuosi").selectAll("Maakunta").build()));
+        assertEquals(6, planner.estimateCells(PxWebQuery.forTable(TABLE).select("Vuosi", "2020", "2021").selectAll("Maakunta").build()));
+        assertEquals(2, planner.estimateCells(PxWebQuery.forTable(TABLE).select("Vuosi", PxWebQuery.FILTER_TOP, List.of("2")).build()));
+    }
+
+    @Test
+    void testSplitsAlongTheLargestVariable() {
+        PxWebQuery query = PxWebQuery.forTable(TABLE).selectAll("Vuosi").select("Maakunta", "MK01", "MK02").build();
+        assertEquals(List.of(query), planner(8).plan(query));
+
+        List<PxWebQuery> chunks = planner(5).plan(query);
+        assertEquals(2, chunks.size());
+        assertEquals(List.of("2019", "2020"), chunks.get(0).getSelection("Vuosi").getValues());
+        assertEquals(List.of("2021", "2022"), chunks.get(1).getSelection("Vuosi").getValues());
+
+        // One year is still too large, so each year is split by region as well
+        List<PxWebQuery> small = planner(1).plan(query);
+        assertEquals(8, small.size());
+        for (PxWebQuery chunk : small) {
+            assertEquals(1, planner(1).estimateCells(chunk));
+        }
+    }
+
+    @Test
+    void testFetchesChunksAndStitchesThem() throws Exception {
+        PxWebQuery query = PxWebQuery.forTable(TABLE).selectAll("Vuosi").select("Maakunta", "MK01", "MK02", "MK04").build();
+        AtomicInteger requests = new AtomicInteger();
+        DataCube cube = planner(4).fetch(query, chunk -> {
+            requests.incrementAndGet();
+            return answer(chunk);
+        });
+
+        assertEquals(4, requests.get());
+        assertEquals(12, cube.getCellCount());
+        assertEquals("2022", cube.getCode(0, 3));
+        assertEquals(20224.0, cube.get(3, 2));
+        assertEquals(20191.0, cube.get(0, 0));
+
+        assertNull(planner(4).fetch(query, chunk -> chunk.getSelection("Vuosi").getValues().contains("2022") ? null : answer(chunk)));
+    }
+}
@@ -0,0 +1,110 @@
+package project;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import project.Common.CachingDataRetrievable;
+import project.Common.DataRetrievable;
+import project.Common.ResponseCache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseCacheTest {
+
+    private AtomicLong now;
+
+    @BeforeEach
+    public void setUp() {
+        now = new AtomicLong(1_000);
+    }
+
+    @Test
+    void testEntryExpiresAfterTtl() {
+        ResponseCache<String> cache = new ResponseCache<>(100, ResponseCache.EvictionPolicy.LRU, now::get);
+        cache.put("a", "value", 10, 500);
+
+        assertEquals("value", cache.get("a"));
+        now.addAndGet(500);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    void testLruEvictsLeastRecentlyUsed() {
+        ResponseCache<String> cache = new ResponseCache<>(30, ResponseCache.EvictionPolicy.LRU, now::get);
+        cache.put("a", "A", 10, 1_000);
+        cache.put("b", "B", 10, 1_000);
+        cache.put("c", "C", 10, 1_000);
+        cache.get("a");
+
+        cache.put("d", "D", 10, 1_000);
+
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(30, cache.getWeight());
+    }
+
+    @Test
+    void testLfuEvictsLeastFrequentlyUsed() {
+        ResponseCache<String> cache = new ResponseCache<>(30, ResponseCache.EvictionPolicy.LFU, now::get);
+        cache.put("a", "A", 10, 1_000);
+        cache.put("b", "B", 10, 1_000);
+        cache.put("c", "C", 10, 1_000);
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+        cache.get("c");
+
+        cache.put("d", "D", 10, 1_000);
+
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+    }
+
+    @Test
+    void testNormalizedQueriesShareCacheKey() {
+        String query = "{\"query\": [{\"code\": \"Vuosi\", \"selection\": {\"filter\": \"item\"}}], \"response\": {\"format\": \"json-stat2\"}}";
+        String reordered = "{\r\n \"response\": {\"format\": \"json-stat2\"},\r\n \"query\": [{\"selection\": {\"filter\": \"item\"}, \"code\": \"Vuosi\"}]\r\n}";
+
+        assertEquals(CachingDataRetrievable.cacheKey("url", query), CachingDataRetrievable.cacheKey("url", reordered));
+        assertNotEquals(CachingDataRetrievable.cacheKey("url", query), CachingDataRetrievable.cacheKey("other", query));
+    }
+
+    @Test
+    void testDecoratorFetchesOnlyOnMiss() {
+        AtomicInteger requests = new AtomicInteger();
+        DataRetrievable source = new DataRetrievable() {
+            @Override
+            public JsonObject fetchData(String jsonQuery) {
+                requests.incrementAndGet();
+                JsonObject result = new JsonObject();
+                result.addProperty("query", jsonQuery);
+                return result;
+            }
+
+            @Override
+            public CompletableFuture<JsonObject> fetchDataAsync(String jsonQuery) {
+                return CompletableFuture.completedFuture(fetchData(jsonQuery));
+            }
+        };
+        ResponseCache<JsonObject> cache = new ResponseCache<>(10_000, ResponseCache.EvictionPolicy.LRU, now::get);
+        CachingDataRetrievable cached = new CachingDataRetrievable(source, "url", 1_000, cache);
+
+        JsonObject first = cached.fetchData("{\"a\": 1}");
+        assertSame(first, cached.fetchDataAsync("{ \"a\" : 1 }").join());
+        assertEquals(1, requests.get());
+
+        now.addAndGet(1_000);
+        cached.fetchData("{\"a\": 1}");
+        assertEquals(2, requests.get());
+    }
+}
@@ -0,0 +1,76 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import project.Common.LabelDictionary;
+import project.Common.Rollup;
+import project.Model.EconomicImpactData;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RollupTest {
+
+    private static final List<EconomicImpactData> ROWS = List.of(
+            new EconomicImpactData("Rollup food", "Rollup Uusimaa", "2020", "Domestic", 10.0),
+            new EconomicImpactData("Rollup lodging", "Rollup Uusimaa", "2020", "Domestic", 4.0),
+            new EconomicImpactData("Rollup food", "Rollup Lapland", "2021", "Inbound", 2.0),
+            new EconomicImpactData("Rollup food", "Rollup Lapland", "2021", "Domestic", 6.0));
+
+    @Test
+    void testSumsPerCodeInFirstSeenOrder() {
+        Rollup.Buckets buckets = Rollup.<EconomicImpactData>by(EconomicImpactData.PRODUCTS, EconomicImpactData::getProductCode)
+                .measure(EconomicImpactData::getValue)
+                .aggregate(ROWS);
+
+        int food = indexOf(buckets, "Rollup food");
+        int lodging = indexOf(buckets, "Rollup lodging");
+        assertTrue(food < lodging);
+        assertEquals(18.0, buckets.get(food, Rollup.Measure.SUM));
+        assertEquals(3, buckets.getCount(food));
+        assertEquals(6.0, buckets.get(food, Rollup.Measure.MEAN));
+        assertEquals(2.0, buckets.get(food, Rollup.Measure.MIN));
+        assertEquals(10.0, buckets.get(food, Rollup.Measure.MAX));
+        assertEquals(4.0, buckets.getSum(lodging));
+    }
+
+    @Test
+    void testGroupsByCombinedCodesAndFilters() {
+        Rollup.Buckets buckets = Rollup.<EconomicImpactData>by(EconomicImpactData.REGIONS, EconomicImpactData::getRegionCode)
+                .thenBy(EconomicImpactData.YEARS, EconomicImpactData::getYearCode)
+                .where(row -> row.getProduct().equals("Rollup food"))
+                .measure(EconomicImpactData::getValue)
+                .aggregate(ROWS);
+
+        assertEquals(2, buckets.size());
+        int lapland = indexOf(buckets, "Rollup Lapland / 2021");
+        assertEquals("2021", buckets.getLabel(lapland, 1));
+        assertEquals(8.0, buckets.getSum(lapland));
+        assertEquals(10.0, buckets.getSum(indexOf(buckets, "Rollup Uusimaa / 2020")));
+    }
+
+    @Test
+    void testLabelsAndMissingCodes() {
+        LabelDictionary seasons = new LabelDictionary("season");
+        Rollup<String> rollup = Rollup.<String>by(seasons, seasons::lookup).measure(String::length);
+        seasons.encode("Summer");
+
+        Rollup.Buckets buckets = rollup.aggregate(List.of("Summer", "Winter", "Summer"));
+        assertEquals(1, buckets.size());
+        assertEquals(12.0, buckets.toPieData(Rollup.Measure.SUM).get(0).getPieValue());
+
+        Rollup.Buckets labels = Rollup.<String>byLabel(String::toUpperCase).measure(value -> 1).aggregate(List.of("a", "b", "a"));
+        assertEquals("A", labels.getLabel(0));
+        assertEquals(2.0, labels.get(0, Rollup.Measure.COUNT));
+    }
+
+    private static int indexOf(Rollup.Buckets buckets, String label) {
+        for (int bucket = 0; bucket < buckets.size(); bucket++) {
+            if (buckets.getLabel(bucket).equals(label)) {
+                return bucket;
+            }
+        }
+        fail("No bucket " + label);
+        return -1;
+    }
+}
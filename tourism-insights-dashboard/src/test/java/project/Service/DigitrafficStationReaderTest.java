@@ -0,0 +1,64 @@
+package project.Service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// In the package of the reader, which is not public
+public class DigitrafficStationReaderTest {
+
+    private static final String PAYLOAD = "{\"dataUpdatedTime\":\"2024-12-01T10:00:00Z\",\"stations\":["
+            + "{\"id\":1001,\"sensorValues\":["
+            + "{\"name\":\"ILMA\",\"value\":-3.5,\"measuredTime\":\"2024-12-01T09:50:00Z\"},"
+            + "{\"name\":\"ILMAN_KOSTEUS\",\"value\":88,\"measuredTime\":\"2024-12-01T09:51:00Z\"},"
+            + "{\"name\":\"KESKITUULI\",\"value\":\"4.2\",\"measuredTime\":\"2024-12-01T09:52:00Z\"}]},"
+            + "{\"id\":1002,\"sensorValues\":[{\"name\":\"ILMA\",\"value\":1.0,\"measuredTime\":\"2024-12-01T09:40:00Z\"}]},"
+            + "{\"sensorValues\":[{\"name\":\"ILMA\",\"value\":2.0,\"measuredTime\":\"2024-12-01T09:40:00Z\"}]},"
+            + "{\"id\":1003},"
+            + "{\"sensorValues\":[{\"name\":\"ILMA\",\"measuredTime\":\"2024-12-01T09:45:00Z\"},"
+            + "{\"name\":\"KESKITUULI\",\"value\":\"calm\",\"measuredTime\":\"2024-12-01T09:46:00Z\"},"
+            + "{\"name\":\"SADE\",\"value\":0.4}],\"id\":1004}]}";
+
+    private static final DigitrafficStationReader READER = new DigitrafficStationReader("ILMA", "KESKITUULI", "SADE");
+
+    @Test
+    void testReadsRequestedSensorsOfSelectedStations() throws IOException {
+        List<DigitrafficStationReader.StationReading> readings = READER.read(new StringReader(PAYLOAD), Set.of(1001, 1003, 1004));
+
+        // 1002 is not selected, the station without an id and 1003 without sensors are skipped
+        assertEquals(2, readings.size());
+        DigitrafficStationReader.StationReading first = readings.get(0);
+        assertEquals(1001, first.getStationId());
+        // ILMAN_KOSTEUS is not requested, and SADE is not reported
+        assertEquals(-3.5, first.getValue(0));
+        assertEquals(4.2, first.getValue(1));  // Sent as a string
+        assertTrue(Double.isNaN(first.getValue(2)));
+        assertEquals("2024-12-01T09:52:00Z", first.getMeasuredTime());
+
+        // The id comes after the sensors; sensors without a value, a number or a measured time are ignored
+        DigitrafficStationReader.StationReading last = readings.get(1);
+        assertEquals(1004, last.getStationId());
+        assertTrue(Double.isNaN(last.getValue(0)));
+        assertTrue(Double.isNaN(last.getValue(1)));
+        assertTrue(Double.isNaN(last.getValue(2)));
+        assertNull(last.getMeasuredTime());
+
+        assertEquals(3, READER.read(new StringReader(PAYLOAD), null).size());
+    }
+
+    @Test
+    void testReadsStationIds() throws IOException {
+        List<Integer> stationIds = DigitrafficStationReader.readStationIds(new StringReader(PAYLOAD));
+        assertEquals(List.of(1001, 1002, 1003, 1004), stationIds);
+
+        String stored = DigitrafficStationReader.writeStationIds(stationIds);
+        assertEquals(stationIds, DigitrafficStationReader.readStationIds(new StringReader(stored)));
+        assertEquals(List.of(), DigitrafficStationReader.readStationIds(new StringReader("{\"stations\":[]}")));
+        assertThrows(IOException.class, () -> DigitrafficStationReader.readStationIds(new StringReader("{\"stations\":[")));
+    }
+}
@@ -0,0 +1,87 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import project.Common.ServiceRegistry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServiceRegistryTest {
+
+    // Each test registers its own types, as the registry is shared by the whole application
+    private static class SlowFacade {
+    }
+
+    private static class OtherFacade {
+    }
+
+    private static class FailingFacade {
+    }
+
+    @Test
+    void testSlowFactoryDoesNotBlockOtherTypes() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+        AtomicReference<SlowFacade> first = new AtomicReference<>();
+
+        Thread creator = new Thread(() -> first.set(ServiceRegistry.get(SlowFacade.class, () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            created.incrementAndGet();
+            return new SlowFacade();
+        })));
+        creator.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Another type is created while the slow one is still being built
+        assertNotNull(ServiceRegistry.get(OtherFacade.class, OtherFacade::new));
+        assertNull(ServiceRegistry.peek(SlowFacade.class));
+
+        AtomicReference<SlowFacade> second = new AtomicReference<>();
+        Thread waiter = new Thread(() -> second.set(ServiceRegistry.get(SlowFacade.class, () -> {
+            created.incrementAndGet();
+            return new SlowFacade();
+        })));
+        waiter.start();
+        release.countDown();
+        creator.join(5000);
+        waiter.join(5000);
+
+        assertEquals(1, created.get());
+        assertSame(first.get(), second.get());
+        assertSame(first.get(), ServiceRegistry.peek(SlowFacade.class));
+    }
+
+    @Test
+    void testFailedFactoryIsRetried() {
+        assertThrows(IllegalStateException.class, () -> ServiceRegistry.get(FailingFacade.class, () -> {
+            throw new IllegalStateException("No network");
+        }));
+        assertNull(ServiceRegistry.peek(FailingFacade.class));
+
+        FailingFacade facade = ServiceRegistry.get(FailingFacade.class, FailingFacade::new);
+        assertSame(facade, ServiceRegistry.get(FailingFacade.class, FailingFacade::new));
+
+        ServiceRegistry.refreshAll();
+        assertNull(ServiceRegistry.peek(FailingFacade.class));
+        assertNotSame(facade, ServiceRegistry.get(FailingFacade.class, FailingFacade::new));
+    }
+
+    @Test
+    void testRefreshRunsRegisteredActions() {
+        AtomicInteger cleared = new AtomicInteger();
+        ServiceRegistry.onRefresh(cleared::incrementAndGet);
+
+        ServiceRegistry.refreshAll();
+        assertEquals(1, cleared.get());
+    }
+}
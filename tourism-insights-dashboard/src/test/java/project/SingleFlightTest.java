@@ -0,0 +1,96 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import project.Common.SingleFlight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    void testOverlappingCallsShareOneExecution() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(0);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flight.call("stations", () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "payload";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            followers.add(CompletableFuture.supplyAsync(() -> flight.call("stations", () -> {
+                runs.incrementAndGet();
+                return "other";
+            })));
+        }
+        // Give the followers time to join the request in flight
+        while (flight.getSharedCount() < 3) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertEquals("payload", leader.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<String> follower : followers) {
+            assertEquals("payload", follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, runs.get());
+        assertEquals(1, flight.getExecutionCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    @Test
+    void testResultLingersForNearSimultaneousCalls() throws IOException {
+        SingleFlight<String, String> flight = new SingleFlight<>(60_000);
+        AtomicInteger runs = new AtomicInteger();
+
+        flight.call("key", () -> "v" + runs.incrementAndGet());
+        assertEquals("v1", flight.call("key", () -> "v" + runs.incrementAndGet()));
+        assertEquals("v2", flight.call("other", () -> "v" + runs.incrementAndGet()));
+    }
+
+    @Test
+    void testFailuresAndNullsAreNotKept() {
+        SingleFlight<String, String> flight = new SingleFlight<>(60_000);
+
+        assertThrows(IOException.class, () -> flight.call("key", () -> {
+            throw new IOException("offline");
+        }));
+        assertNull(flight.call("key", () -> null));
+        assertEquals("ok", flight.call("key", () -> "ok"));
+    }
+
+    @Test
+    void testAsyncCallersGetTheirOwnFuture() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>(0);
+        CompletableFuture<String> response = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flight.execute("key", () -> response);
+        CompletableFuture<String> second = flight.execute("key", () -> CompletableFuture.completedFuture("other"));
+        first.cancel(false);
+        response.complete("body");
+
+        assertEquals("body", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, flight.getExecutionCount());
+    }
+}
@@ -0,0 +1,110 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import project.Common.DataCube;
+import project.Common.DiskResponseCache;
+import project.Common.PxJsonDecoder;
+import project.Common.PxJsonTable;
+import project.Common.Snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotTest {
+
+    private static DataCube cube() {
+        String[] ids = {"Vuosi", "Maakunta"};
+        String[][] codes = {{"2021", "2022"}, {"MK01", "MK02", "MK04"}};
+        String[][] labels = {{"2021", "2022"}, {"Uusimaa", "Varsinais-Suomi", "Satakunta"}};
+        double[] values = {1.5, 2.5, 0, 4.5, 5.5, 6.5};
+        BitSet present = new BitSet();
+        present.set(0, 6);
+        present.clear(2);
+        return new DataCube(ids, codes, labels, values, present);
+    }
+
+    @Test
+    void testCubeRoundTrip(@TempDir Path directory) throws IOException {
+        Snapshot.Writer writer = new Snapshot.Writer().property("source", "test");
+        cube().writeTo(writer);
+        writer.write(directory.resolve("cube.snapshot"));
+
+        Snapshot snapshot = Snapshot.open(directory.resolve("cube.snapshot"));
+        DataCube cube = DataCube.fromSnapshot(snapshot);
+
+        assertEquals("test", snapshot.getProperty("source"));
+        assertNotNull(cube);
+        assertEquals(6, cube.getCellCount());
+        assertEquals("Maakunta", cube.getDimensionId(1));
+        assertEquals("Varsinais-Suomi", cube.getLabel(1, 1));
+        assertEquals(2, cube.indexOf(1, "MK04"));
+        assertEquals(4.5, cube.get(1, 0));
+        assertFalse(cube.isPresent(0, 2));
+        assertTrue(Double.isNaN(cube.get(0, 2)));
+    }
+
+    @Test
+    void testColumnsAreReadOnlyViews() throws IOException {
+        Snapshot.Writer writer = new Snapshot.Writer();
+        cube().writeTo(writer);
+        Snapshot snapshot = Snapshot.read(writer.toBuffer());
+
+        DoubleBuffer values = snapshot.getDoubleColumn("values");
+        assertEquals(6, values.remaining());
+        assertEquals(6.5, values.get(5));
+        assertTrue(values.isReadOnly());
+        assertThrows(ReadOnlyBufferException.class, () -> values.put(0, 1.0));
+        assertNull(snapshot.getIntColumn("values"));
+        assertNull(snapshot.getDoubleColumn("missing"));
+    }
+
+    @Test
+    void testTableRoundTrip() throws IOException {
+        String body = "{\"columns\":["
+                + "{\"code\":\"Vuosi\",\"text\":\"Year\",\"type\":\"t\"},"
+                + "{\"code\":\"yop_matkoja\",\"text\":\"Trips\",\"type\":\"c\"}],"
+                + "\"data\":[{\"key\":[\"2022\"],\"values\":[\"120\"]},{\"key\":[\"2023\"],\"values\":[\".\"]}]}";
+        Snapshot.Writer writer = new Snapshot.Writer();
+        PxJsonDecoder.decode(body).writeTo(writer);
+
+        PxJsonTable table = PxJsonTable.fromSnapshot(Snapshot.read(writer.toBuffer()));
+
+        assertNotNull(table);
+        assertEquals(2, table.getRowCount());
+        assertEquals("2023", table.getKey(0, 1));
+        assertEquals(1, table.lookupKeyCode(0, "2023"));
+        assertEquals(120.0, table.getValue(0, 0));
+        assertTrue(table.isMissing(0, 1));
+    }
+
+    @Test
+    void testResponseCacheStoresSnapshots(@TempDir Path directory) {
+        DiskResponseCache cache = new DiskResponseCache(directory);
+        String url = "https://example.org/table.px";
+        cache.write(url, "{\"query\":[]}", "{\"value\":[1,2]}");
+
+        DiskResponseCache.Entry entry = cache.read(url, "{ \"query\" : [ ] }");
+        assertNotNull(entry);
+        assertEquals("{\"value\":[1,2]}", entry.getBody());
+
+        Snapshot.Writer writer = new Snapshot.Writer();
+        cube().writeTo(writer);
+        cache.writeSnapshot(url, "{\"query\":[]}", writer);
+        Snapshot snapshot = cache.readSnapshot(url, "{\"query\":[]}");
+        assertNotNull(snapshot);
+        assertEquals(url, snapshot.getProperty("url"));
+        assertNull(cache.readSnapshot(url, "{\"query\":[1]}"));
+    }
+
+    @Test
+    void testRejectsOtherFiles() {
+        assertThrows(IOException.class, () -> Snapshot.read(ByteBuffer.wrap("not a snapshot".getBytes())));
+    }
+}
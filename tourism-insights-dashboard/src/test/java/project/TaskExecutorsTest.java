@@ -0,0 +1,91 @@
+package project;
+
+import org.junit.jupiter.api.Test;
+import project.Common.TaskExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaskExecutorsTest {
+
+    @Test
+    void testTasksRunOnNamedThreads() throws Exception {
+        Future<String> name = TaskExecutors.submit(() -> Thread.currentThread().getName());
+
+        assertTrue(name.get(5, TimeUnit.SECONDS).startsWith("tourism-worker-"));
+        assertTrue(TaskExecutors.getCompletedCount() >= 1);
+    }
+
+    @Test
+    void testRequestsToOneHostAreCapped() throws Exception {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<?>> requests = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            requests.add(TaskExecutors.submit(() -> TaskExecutors.onHost("https://capped.example.org/data?page=1", () -> {
+                peak.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                release.await(5, TimeUnit.SECONDS);
+                concurrent.decrementAndGet();
+                return null;
+            })));
+        }
+        // The two requests over the default cap of four wait for a permit
+        long deadline = System.currentTimeMillis() + 5000;
+        while (TaskExecutors.getHostWaitCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, TaskExecutors.getHostWaitCount());
+        release.countDown();
+
+        for (Future<?> request : requests) {
+            request.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(4, peak.get());
+        assertEquals(0, TaskExecutors.getHostWaitCount());
+    }
+
+    @Test
+    void testCancelledLoadStopsWaiting() throws Exception {
+        CompletableFuture<String> download = new CompletableFuture<>();
+        CountDownLatch waiting = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Future<?> load = TaskExecutors.submit(() -> {
+            waiting.countDown();
+            try {
+                TaskExecutors.await(download);
+            } catch (CancellationException exception) {
+                stopped.countDown();
+            }
+        });
+        assertTrue(waiting.await(5, TimeUnit.SECONDS));
+
+        // The thread gives up waiting, while the download it shared keeps going
+        load.cancel(true);
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        assertFalse(download.isDone());
+
+        download.completeExceptionally(new IllegalStateException("failed"));
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> TaskExecutors.submit(() -> TaskExecutors.await(download)).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, failure.getCause().getCause());
+        assertThrows(CancellationException.class, () -> {
+            Thread.currentThread().interrupt();
+            try {
+                TaskExecutors.await(new CompletableFuture<>());
+            } finally {
+                Thread.interrupted();
+            }
+        });
+    }
+}